@@ -16,11 +16,13 @@
  */
 package org.apache.kafka.clients;
 
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.network.ChannelBuilder;
 import org.apache.kafka.common.network.ChannelBuilders;
+import org.apache.kafka.common.record.ZstdDictionary;
 import org.apache.kafka.common.security.JaasContext;
 import org.apache.kafka.common.security.auth.SecurityProtocol;
 import org.apache.kafka.common.utils.LogContext;
@@ -28,12 +30,15 @@ import org.apache.kafka.common.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.apache.kafka.common.utils.Utils.getHost;
 import static org.apache.kafka.common.utils.Utils.getPort;
@@ -106,6 +111,33 @@ public final class ClientUtils {
                 clientSaslMechanism, time, true, logContext);
     }
 
+    /**
+     * Load the zstd dictionaries configured with {@link CommonClientConfigs#COMPRESSION_ZSTD_DICTIONARIES_CONFIG}
+     * and register them so that the batches compressed with them can be decompressed.
+     *
+     * @param entries The <code>topic:path</code> pairs of the config
+     * @return The dictionary of each topic
+     */
+    public static Map<String, ZstdDictionary> loadZstdDictionaries(List<String> entries) {
+        Map<String, ZstdDictionary> dictionaries = new HashMap<>();
+        for (String entry : entries) {
+            // topic names cannot contain ':', so the path starts after the first one
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1)
+                throw new ConfigException(CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_CONFIG, entry,
+                        "Expected a topic and a path separated by ':'");
+            ZstdDictionary dictionary;
+            try {
+                dictionary = ZstdDictionary.load(new File(entry.substring(separator + 1).trim()));
+                ZstdDictionary.register(dictionary);
+            } catch (KafkaException | IllegalArgumentException e) {
+                throw new ConfigException(CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_CONFIG, entry, e.getMessage());
+            }
+            dictionaries.put(entry.substring(0, separator).trim(), dictionary);
+        }
+        return dictionaries;
+    }
+
     static List<InetAddress> resolve(String host, ClientDnsLookup clientDnsLookup) throws UnknownHostException {
         InetAddress[] addresses = InetAddress.getAllByName(host);
         if (ClientDnsLookup.USE_ALL_DNS_IPS == clientDnsLookup) {
@@ -145,6 +145,15 @@ public class CommonClientConfigs {
     public static final String DEFAULT_API_TIMEOUT_MS_DOC = "Specifies the timeout (in milliseconds) for client APIs. " +
             "This configuration is used as the default timeout for all client operations that do not specify a <code>timeout</code> parameter.";
 
+    public static final String COMPRESSION_ZSTD_DICTIONARIES_CONFIG = "compression.zstd.dictionaries";
+    public static final String COMPRESSION_ZSTD_DICTIONARIES_DOC = "A list of <code>topic:path</code> pairs giving the zstd dictionary "
+                                                                   + "file of a topic. Dictionaries must be in the zstd format (e.g. trained with <code>zstd --train</code>) "
+                                                                   + "since their id is stored in the compressed batches. The producer compresses the batches of these topics "
+                                                                   + "with their dictionary when <code>compression.type</code> is <code>zstd</code>. The producer and the consumer "
+                                                                   + "can decompress batches compressed with any of these dictionaries, so older versions of the dictionary "
+                                                                   + "of a topic must be kept in the list for as long as data compressed with them is read; such entries may "
+                                                                   + "use any name which is not a topic of the cluster.";
+
     /**
      * Postprocess the configuration so that exponential backoff is disabled when reconnect backoff
      * is explicitly configured but the maximum reconnect backoff is not explicitly configured.
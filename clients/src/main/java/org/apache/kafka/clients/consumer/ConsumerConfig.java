@@ -217,6 +217,26 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String CHECK_CRCS_CONFIG = "check.crcs";
     private static final String CHECK_CRCS_DOC = "Automatically check the CRC32 of the records consumed. This ensures no on-the-wire or on-disk corruption to the messages occurred. This check adds some overhead, so it may be disabled in cases seeking extreme performance.";
 
+    /**
+     * <code>fetch.decode.threads</code>
+     */
+    public static final String FETCH_DECODE_THREADS_CONFIG = "fetch.decode.threads";
+    private static final String FETCH_DECODE_THREADS_DOC = "The number of threads used to decompress and deserialize fetched records " +
+            "ahead of <code>poll()</code>. Records are still returned in order for each partition. When set to 0, records are " +
+            "decoded by the thread calling <code>poll()</code>. Note that with a positive value the key and value deserializers " +
+            "are invoked from several threads concurrently, so they must be thread safe.";
+
+    /**
+     * <code>fetch.decode.max.prefetch.bytes</code>
+     */
+    public static final String FETCH_DECODE_MAX_PREFETCH_BYTES_CONFIG = "fetch.decode.max.prefetch.bytes";
+    private static final String FETCH_DECODE_MAX_PREFETCH_BYTES_DOC = "The maximum amount of fetched data which may be decoded " +
+            "ahead of <code>poll()</code> when <code>" + FETCH_DECODE_THREADS_CONFIG + "</code> is positive. The bound applies " +
+            "to the fetched, possibly compressed, data; the first fetch is always decoded ahead even if it is larger.";
+
+    /** <code>compression.zstd.dictionaries</code> */
+    public static final String COMPRESSION_ZSTD_DICTIONARIES_CONFIG = CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_CONFIG;
+
     /** <code>key.deserializer</code> */
     public static final String KEY_DESERIALIZER_CLASS_CONFIG = "key.deserializer";
     public static final String KEY_DESERIALIZER_CLASS_DOC = "Deserializer class for key that implements the <code>org.apache.kafka.common.serialization.Deserializer</code> interface.";
@@ -414,6 +434,23 @@ public class ConsumerConfig extends AbstractConfig {
                                         true,
                                         Importance.LOW,
                                         CHECK_CRCS_DOC)
+                                .define(FETCH_DECODE_THREADS_CONFIG,
+                                        Type.INT,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        FETCH_DECODE_THREADS_DOC)
+                                .define(FETCH_DECODE_MAX_PREFETCH_BYTES_CONFIG,
+                                        Type.INT,
+                                        DEFAULT_FETCH_MAX_BYTES,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        FETCH_DECODE_MAX_PREFETCH_BYTES_DOC)
+                                .define(COMPRESSION_ZSTD_DICTIONARIES_CONFIG,
+                                        Type.LIST,
+                                        Collections.emptyList(),
+                                        Importance.LOW,
+                                        CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_DOC)
                                 .define(METRICS_SAMPLE_WINDOW_MS_CONFIG,
                                         Type.LONG,
                                         30000,
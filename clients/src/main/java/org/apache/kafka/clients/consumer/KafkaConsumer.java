@@ -28,6 +28,7 @@ import org.apache.kafka.clients.consumer.internals.ConsumerInterceptors;
 import org.apache.kafka.clients.consumer.internals.ConsumerMetadata;
 import org.apache.kafka.clients.consumer.internals.ConsumerNetworkClient;
 import org.apache.kafka.clients.consumer.internals.Fetcher;
+import org.apache.kafka.clients.consumer.internals.FetchDecodePool;
 import org.apache.kafka.clients.consumer.internals.FetcherMetricsRegistry;
 import org.apache.kafka.clients.consumer.internals.KafkaConsumerMetrics;
 import org.apache.kafka.clients.consumer.internals.NoOpConsumerRebalanceListener;
@@ -788,6 +789,8 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                         enableAutoCommit,
                         config.getInt(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG),
                         this.interceptors);
+            // the fetched batches are decompressed with the registered dictionary they refer to
+            ClientUtils.loadZstdDictionaries(config.getList(ConsumerConfig.COMPRESSION_ZSTD_DICTIONARIES_CONFIG));
             this.fetcher = new Fetcher<>(
                     logContext,
                     this.client,
@@ -808,7 +811,8 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                     this.retryBackoffMs,
                     this.requestTimeoutMs,
                     isolationLevel,
-                    apiVersions);
+                    apiVersions,
+                    decodePool(config, clientId, metrics, metricsRegistry, time));
 
             this.kafkaConsumerMetrics = new KafkaConsumerMetrics(metrics, metricGrpPrefix);
 
@@ -889,6 +893,15 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
         return new Metrics(metricConfig, reporters, time);
     }
 
+    private static FetchDecodePool decodePool(ConsumerConfig config, String clientId, Metrics metrics,
+                                              FetcherMetricsRegistry metricsRegistry, Time time) {
+        int decodeThreads = config.getInt(ConsumerConfig.FETCH_DECODE_THREADS_CONFIG);
+        if (decodeThreads == 0)
+            return null;
+        return new FetchDecodePool(decodeThreads, config.getInt(ConsumerConfig.FETCH_DECODE_MAX_PREFETCH_BYTES_CONFIG),
+                clientId, metrics, metricsRegistry, time);
+    }
+
     /**
      * Get the set of partitions currently assigned to this consumer. If subscription happened by directly assigning
      * partitions using {@link #assign(Collection)} then this will simply return the same partitions that
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.utils.KafkaThread;
+import org.apache.kafka.common.utils.Time;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of threads used by the {@link Fetcher} to decompress and deserialize fetched data ahead of
+ * {@link org.apache.kafka.clients.consumer.KafkaConsumer#poll(java.time.Duration)}. The pool only runs the decode
+ * tasks and bounds the amount of fetched data they may hold; the fetcher is responsible for returning the decoded
+ * records in order.
+ * <p>
+ * The bound is expressed in fetched (i.e. possibly compressed) bytes. Data is reserved before it is decoded and
+ * released once the decoded records have been returned or discarded. A reservation larger than the bound is only
+ * accepted when nothing else is reserved, so that a single large fetch can still be decoded ahead.
+ */
+public class FetchDecodePool implements Closeable {
+
+    private final ExecutorService executor;
+    private final Time time;
+    private final long maxPrefetchBytes;
+    private final AtomicLong prefetchedBytes = new AtomicLong(0);
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+    private final Sensor decodeTime;
+
+    public FetchDecodePool(int numThreads,
+                           long maxPrefetchBytes,
+                           String clientId,
+                           Metrics metrics,
+                           FetcherMetricsRegistry metricsRegistry,
+                           Time time) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(numThreads, runnable ->
+            KafkaThread.daemon("kafka-consumer-decode-" + clientId + "-" + threadIndex.getAndIncrement(), runnable));
+        this.time = time;
+        this.maxPrefetchBytes = maxPrefetchBytes;
+
+        metrics.addMetric(metrics.metricInstance(metricsRegistry.decodeQueueSize),
+            (Measurable) (config, now) -> queueSize.get());
+        metrics.addMetric(metrics.metricInstance(metricsRegistry.decodePrefetchedBytes),
+            (Measurable) (config, now) -> prefetchedBytes.get());
+        this.decodeTime = metrics.sensor("decode-time");
+        this.decodeTime.add(metrics.metricInstance(metricsRegistry.decodeTimeAvg), new Avg());
+        this.decodeTime.add(metrics.metricInstance(metricsRegistry.decodeTimeMax), new Max());
+    }
+
+    /**
+     * Reserve room for decoding the given number of fetched bytes ahead of time.
+     *
+     * @return true if the bytes were reserved and may be decoded, false if the bound would be exceeded
+     */
+    boolean tryReserve(long bytes) {
+        while (true) {
+            long current = prefetchedBytes.get();
+            if (current > 0 && current + bytes > maxPrefetchBytes)
+                return false;
+            if (prefetchedBytes.compareAndSet(current, current + bytes))
+                return true;
+        }
+    }
+
+    /**
+     * Release bytes previously reserved with {@link #tryReserve(long)}.
+     */
+    void release(long bytes) {
+        prefetchedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Run the given decode task on one of the decode threads.
+     */
+    DecodeTask submit(Runnable decode) {
+        queueSize.incrementAndGet();
+        return new DecodeTask(decode);
+    }
+
+    /**
+     * Handle of a decode task submitted to the pool.
+     */
+    final class DecodeTask {
+        // set by whoever gets to the task first: the decode thread running it or a cancellation
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private final Future<?> future;
+
+        private DecodeTask(Runnable decode) {
+            this.future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true))
+                    return;
+                long startMs = time.milliseconds();
+                try {
+                    decode.run();
+                } finally {
+                    decodeTime.record(time.milliseconds() - startMs);
+                    queueSize.decrementAndGet();
+                }
+            });
+        }
+
+        /**
+         * Cancel the task if it has not started yet.
+         *
+         * @return true if the task was cancelled and will never run
+         */
+        boolean cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                queueSize.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Wait for the task to complete. Everything done by the task happens-before this method returns.
+         */
+        void await() throws InterruptedException, ExecutionException {
+            future.get();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.CorruptRecordException;
+import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.errors.InvalidTopicException;
 import org.apache.kafka.common.errors.RecordTooLargeException;
 import org.apache.kafka.common.errors.RetriableException;
@@ -61,6 +62,7 @@ import org.apache.kafka.common.record.BufferSupplier;
 import org.apache.kafka.common.record.ControlRecordType;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.RecordCursor;
 import org.apache.kafka.common.record.Records;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.common.requests.FetchRequest;
@@ -71,7 +73,6 @@ import org.apache.kafka.common.requests.MetadataRequest;
 import org.apache.kafka.common.requests.MetadataResponse;
 import org.apache.kafka.common.requests.OffsetsForLeaderEpochRequest;
 import org.apache.kafka.common.serialization.Deserializer;
-import org.apache.kafka.common.utils.CloseableIterator;
 import org.apache.kafka.common.utils.LogContext;
 import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Timer;
@@ -83,6 +84,7 @@ import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -97,6 +99,7 @@ import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -153,6 +156,7 @@ public class Fetcher<K, V> implements Closeable {
     private final OffsetsForLeaderEpochClient offsetsForLeaderEpochClient;
     private final Set<Integer> nodesWithPendingFetchRequests;
     private final ApiVersions apiVersions;
+    private final FetchDecodePool decodePool;
 
     private CompletedFetch nextInLineFetch = null;
 
@@ -176,6 +180,36 @@ public class Fetcher<K, V> implements Closeable {
                    long requestTimeoutMs,
                    IsolationLevel isolationLevel,
                    ApiVersions apiVersions) {
+        this(logContext, client, minBytes, maxBytes, maxWaitMs, fetchSize, maxPollRecords, checkCrcs, clientRackId,
+                keyDeserializer, valueDeserializer, metadata, subscriptions, metrics, metricsRegistry, time,
+                retryBackoffMs, requestTimeoutMs, isolationLevel, apiVersions, null);
+    }
+
+    /**
+     * @param decodePool The pool used to decode completed fetches ahead of {@link #fetchedRecords()}, or null to
+     *                   decode them on the calling thread. The fetcher takes ownership of the pool.
+     */
+    public Fetcher(LogContext logContext,
+                   ConsumerNetworkClient client,
+                   int minBytes,
+                   int maxBytes,
+                   int maxWaitMs,
+                   int fetchSize,
+                   int maxPollRecords,
+                   boolean checkCrcs,
+                   String clientRackId,
+                   Deserializer<K> keyDeserializer,
+                   Deserializer<V> valueDeserializer,
+                   ConsumerMetadata metadata,
+                   SubscriptionState subscriptions,
+                   Metrics metrics,
+                   FetcherMetricsRegistry metricsRegistry,
+                   Time time,
+                   long retryBackoffMs,
+                   long requestTimeoutMs,
+                   IsolationLevel isolationLevel,
+                   ApiVersions apiVersions,
+                   FetchDecodePool decodePool) {
         this.log = logContext.logger(Fetcher.class);
         this.logContext = logContext;
         this.time = time;
@@ -200,6 +234,7 @@ public class Fetcher<K, V> implements Closeable {
         this.sessionHandlers = new HashMap<>();
         this.offsetsForLeaderEpochClient = new OffsetsForLeaderEpochClient(client, logContext);
         this.nodesWithPendingFetchRequests = new HashSet<>();
+        this.decodePool = decodePool;
     }
 
     /**
@@ -317,6 +352,7 @@ public class Fetcher<K, V> implements Closeable {
                             }
 
                             sensors.fetchLatency.record(resp.requestLatencyMs());
+                            maybeDecodeAhead();
                         } finally {
                             nodesWithPendingFetchRequests.remove(fetchTarget.id());
                         }
@@ -602,6 +638,7 @@ public class Fetcher<K, V> implements Closeable {
                     CompletedFetch records = completedFetches.peek();
                     if (records == null) break;
 
+                    records.awaitDecoded();
                     if (records.notInitialized()) {
                         try {
                             nextInLineFetch = initializeCompletedFetch(records);
@@ -614,6 +651,7 @@ public class Fetcher<K, V> implements Closeable {
                             FetchResponse.PartitionData partition = records.partitionData;
                             if (fetched.isEmpty() && (partition.records == null || partition.records.sizeInBytes() == 0)) {
                                 completedFetches.poll();
+                                records.releasePrefetched();
                             }
                             throw e;
                         }
@@ -621,6 +659,8 @@ public class Fetcher<K, V> implements Closeable {
                         nextInLineFetch = records;
                     }
                     completedFetches.poll();
+                    if (nextInLineFetch == null)
+                        records.releasePrefetched();
                 } else if (subscriptions.isPaused(nextInLineFetch.partition)) {
                     // when the partition is paused we add the records back to the completedFetches queue instead of draining
                     // them so that they can be returned on a subsequent poll if the partition is resumed at that time
@@ -655,11 +695,39 @@ public class Fetcher<K, V> implements Closeable {
             // add any polled completed fetches for paused partitions back to the completed fetches queue to be
             // re-evaluated in the next poll
             completedFetches.addAll(pausedCompletedFetches);
+            // returning records may have freed room for decoding more of the completed fetches
+            maybeDecodeAhead();
         }
 
         return fetched;
     }
 
+    /**
+     * Hand the completed fetches which have not been taken by {@link #fetchedRecords()} yet to the decode pool, in
+     * order, for as long as the pool accepts more prefetched data. Only fetches with records for partitions which
+     * are still fetchable are decoded ahead; everything else is left for the calling thread.
+     */
+    private synchronized void maybeDecodeAhead() {
+        if (decodePool == null)
+            return;
+
+        for (CompletedFetch completedFetch : completedFetches) {
+            if (completedFetch.decodeClaimed
+                    || completedFetch.partitionData.error != Errors.NONE
+                    || completedFetch.partitionData.records == null
+                    || completedFetch.partitionData.records.sizeInBytes() == 0
+                    || !subscriptions.isFetchable(completedFetch.partition))
+                continue;
+
+            int sizeInBytes = completedFetch.partitionData.records.sizeInBytes();
+            if (!decodePool.tryReserve(sizeInBytes))
+                break;
+            completedFetch.decodeClaimed = true;
+            completedFetch.prefetchedBytes = sizeInBytes;
+            completedFetch.decodeTask = decodePool.submit(completedFetch::decode);
+        }
+    }
+
     private List<ConsumerRecord<K, V>> fetchRecords(CompletedFetch completedFetch, int maxRecords) {
         if (!subscriptions.isAssigned(completedFetch.partition)) {
             // this can happen when a rebalance happened before fetched records are returned to the consumer's poll call
@@ -1396,13 +1464,28 @@ public class Fetcher<K, V> implements Closeable {
         private int bytesRead;
         private RecordBatch currentBatch;
         private Record lastRecord;
-        private CloseableIterator<Record> records;
+        private RecordCursor records;
         private long nextFetchOffset;
         private Optional<Integer> lastEpoch;
         private boolean isConsumed = false;
         private Exception cachedRecordException = null;
         private boolean corruptLastRecord = false;
         private boolean initialized = false;
+        private BufferSupplier bufferSupplier = decompressionBufferSupplier;
+
+        // Decoding ahead on the decode pool. The task is scheduled with the fetcher lock held, and the fetch is only
+        // accessed by the decode thread until the thread calling fetchedRecords() has claimed it and awaited the task.
+        private boolean decodeClaimed = false;
+        private FetchDecodePool.DecodeTask decodeTask;
+        private long prefetchedBytes = 0;
+        private volatile boolean decodeCancelled = false;
+        private boolean decoding = false;
+        private List<ConsumerRecord<K, V>> decodedRecords;
+        private int[] decodedSizes;
+        private int decodedPosition = 0;
+        private boolean decodedToEnd = false;
+        private long decodedNextFetchOffset;
+        private Optional<Integer> decodedLastEpoch;
 
         private CompletedFetch(TopicPartition partition,
                                FetchResponse.PartitionData<Records> partitionData,
@@ -1423,7 +1506,11 @@ public class Fetcher<K, V> implements Closeable {
 
         private void drain() {
             if (!isConsumed) {
+                cancelDecode();
+                releasePrefetched();
                 maybeCloseRecordStream();
+                if (bufferSupplier != decompressionBufferSupplier)
+                    bufferSupplier.close();
                 cachedRecordException = null;
                 this.isConsumed = true;
                 this.metricAggregator.record(partition, bytesRead, recordsRead);
@@ -1466,7 +1553,7 @@ public class Fetcher<K, V> implements Closeable {
 
         private Record nextFetchedRecord() {
             while (true) {
-                if (records == null || !records.hasNext()) {
+                if (records == null || !records.advance()) {
                     maybeCloseRecordStream();
 
                     if (!batches.hasNext()) {
@@ -1477,7 +1564,9 @@ public class Fetcher<K, V> implements Closeable {
                         // fetching the same batch repeatedly).
                         if (currentBatch != null)
                             nextFetchOffset = currentBatch.nextOffset();
-                        drain();
+                        // when decoding ahead, the fetch is drained once the decoded records have been returned
+                        if (!decoding)
+                            drain();
                         return null;
                     }
 
@@ -1505,9 +1594,11 @@ public class Fetcher<K, V> implements Closeable {
                         }
                     }
 
-                    records = currentBatch.streamingIterator(decompressionBufferSupplier);
+                    // the cursor reuses a single record instance for the whole batch, which is fine since
+                    // each record is turned into a ConsumerRecord before the cursor is advanced
+                    records = currentBatch.cursor(bufferSupplier);
                 } else {
-                    Record record = records.next();
+                    Record record = records.current();
                     // skip any records out of range
                     if (record.offset() >= nextFetchOffset) {
                         // we only do validation when the message should not be skipped.
@@ -1526,6 +1617,13 @@ public class Fetcher<K, V> implements Closeable {
         }
 
         private List<ConsumerRecord<K, V>> fetchRecords(int maxRecords) {
+            // Records decoded ahead are returned before any error which stopped the decoding is raised below
+            if (decodedRecords != null && !isConsumed) {
+                List<ConsumerRecord<K, V>> records = fetchDecodedRecords(maxRecords);
+                if (!records.isEmpty() || isConsumed)
+                    return records;
+            }
+
             // Error when fetching the next record before deserialization.
             if (corruptLastRecord)
                 throw new KafkaException("Received exception when fetching the next record from " + partition
@@ -1569,6 +1667,118 @@ public class Fetcher<K, V> implements Closeable {
             return records;
         }
 
+        /**
+         * Decode the records of this fetch on a decode thread. Processing stops at the first exception, which is
+         * left for {@link #fetchRecords(int)} to handle once the records decoded before it have been returned. The
+         * position of the fetch is restored, so that the decoded records are returned exactly as if they had been
+         * decoded by {@link #fetchRecords(int)}.
+         */
+        private void decode() {
+            // buffer suppliers are not thread safe, so each fetch decoded ahead gets its own
+            bufferSupplier = BufferSupplier.create();
+            long fetchOffset = nextFetchOffset;
+            List<ConsumerRecord<K, V>> records = new ArrayList<>();
+            int[] sizes = new int[16];
+            decoding = true;
+            try {
+                while (!decodeCancelled) {
+                    corruptLastRecord = true;
+                    lastRecord = nextFetchedRecord();
+                    corruptLastRecord = false;
+                    if (lastRecord == null) {
+                        decodedToEnd = true;
+                        break;
+                    }
+                    records.add(parseRecord(partition, currentBatch, lastRecord));
+                    if (records.size() > sizes.length)
+                        sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                    sizes[records.size() - 1] = lastRecord.sizeInBytes();
+                    nextFetchOffset = lastRecord.offset() + 1;
+                }
+            } catch (RuntimeException e) {
+                cachedRecordException = e;
+            } finally {
+                decoding = false;
+            }
+            decodedRecords = records;
+            decodedSizes = sizes;
+            decodedNextFetchOffset = nextFetchOffset;
+            decodedLastEpoch = lastEpoch;
+            nextFetchOffset = fetchOffset;
+            lastEpoch = Optional.empty();
+        }
+
+        private List<ConsumerRecord<K, V>> fetchDecodedRecords(int maxRecords) {
+            int end = Math.min(decodedRecords.size(), decodedPosition + maxRecords);
+            List<ConsumerRecord<K, V>> records = new ArrayList<>(decodedRecords.subList(decodedPosition, end));
+            for (int i = decodedPosition; i < end; i++) {
+                recordsRead++;
+                bytesRead += decodedSizes[i];
+            }
+            decodedPosition = end;
+            if (!records.isEmpty()) {
+                ConsumerRecord<K, V> last = records.get(records.size() - 1);
+                nextFetchOffset = last.offset() + 1;
+                lastEpoch = last.leaderEpoch();
+            }
+
+            if (decodedPosition == decodedRecords.size()) {
+                // pick up where decoding stopped: the end of the fetch or the record which could not be decoded
+                nextFetchOffset = decodedNextFetchOffset;
+                lastEpoch = decodedLastEpoch;
+                decodedRecords = null;
+                decodedSizes = null;
+                if (decodedToEnd)
+                    drain();
+            }
+            return records;
+        }
+
+        /**
+         * Take this fetch away from the decode pool and wait for its decode task, if any, to complete. Must be called
+         * before the fetch is used by the thread calling {@link #fetchedRecords()}.
+         */
+        private void awaitDecoded() {
+            FetchDecodePool.DecodeTask task;
+            synchronized (Fetcher.this) {
+                decodeClaimed = true;
+                task = decodeTask;
+            }
+            if (task != null) {
+                try {
+                    task.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptException(e);
+                } catch (ExecutionException e) {
+                    throw new KafkaException("Failed to decode fetched records for partition " + partition, e.getCause());
+                }
+                decodeTask = null;
+            }
+        }
+
+        private void cancelDecode() {
+            FetchDecodePool.DecodeTask task;
+            synchronized (Fetcher.this) {
+                decodeClaimed = true;
+                task = decodeTask;
+            }
+            if (task != null) {
+                decodeCancelled = true;
+                if (!task.cancel())
+                    awaitDecoded();
+                decodeTask = null;
+                decodedRecords = null;
+                decodedSizes = null;
+            }
+        }
+
+        private void releasePrefetched() {
+            if (prefetchedBytes > 0) {
+                decodePool.release(prefetchedBytes);
+                prefetchedBytes = 0;
+            }
+        }
+
         private void consumeAbortedTransactionsUpTo(long offset) {
             if (abortedTransactions == null)
                 return;
@@ -1830,6 +2040,11 @@ public class Fetcher<K, V> implements Closeable {
     public void close() {
         if (nextInLineFetch != null)
             nextInLineFetch.drain();
+        if (decodePool != null) {
+            for (CompletedFetch completedFetch : completedFetches)
+                completedFetch.drain();
+            decodePool.close();
+        }
         decompressionBufferSupplier.close();
     }
 
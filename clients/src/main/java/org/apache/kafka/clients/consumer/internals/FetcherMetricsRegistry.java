@@ -41,6 +41,10 @@ public class FetcherMetricsRegistry {
     public MetricNameTemplate recordsLeadMin;
     public MetricNameTemplate fetchThrottleTimeAvg;
     public MetricNameTemplate fetchThrottleTimeMax;
+    public MetricNameTemplate decodeQueueSize;
+    public MetricNameTemplate decodePrefetchedBytes;
+    public MetricNameTemplate decodeTimeAvg;
+    public MetricNameTemplate decodeTimeMax;
     public MetricNameTemplate topicFetchSizeAvg;
     public MetricNameTemplate topicFetchSizeMax;
     public MetricNameTemplate topicBytesConsumedRate;
@@ -105,6 +109,15 @@ public class FetcherMetricsRegistry {
         this.fetchThrottleTimeMax = new MetricNameTemplate("fetch-throttle-time-max", groupName,
                 "The maximum throttle time in ms", tags);
 
+        this.decodeQueueSize = new MetricNameTemplate("decode-queue-size", groupName,
+                "The number of fetched partitions waiting to be decoded or being decoded by the decode threads", tags);
+        this.decodePrefetchedBytes = new MetricNameTemplate("decode-prefetched-bytes", groupName,
+                "The number of fetched bytes handed to the decode threads which have not been consumed yet", tags);
+        this.decodeTimeAvg = new MetricNameTemplate("decode-time-avg", groupName,
+                "The average time in ms taken by a decode thread to decode the data fetched for a partition", tags);
+        this.decodeTimeMax = new MetricNameTemplate("decode-time-max", groupName,
+                "The max time in ms taken by a decode thread to decode the data fetched for a partition", tags);
+
         /***** Topic level *****/
         Set<String> topicTags = new LinkedHashSet<>(tags);
         topicTags.add("topic");
@@ -162,6 +175,10 @@ public class FetcherMetricsRegistry {
             recordsLeadMin,
             fetchThrottleTimeAvg,
             fetchThrottleTimeMax,
+            decodeQueueSize,
+            decodePrefetchedBytes,
+            decodeTimeAvg,
+            decodeTimeMax,
             topicFetchSizeAvg,
             topicFetchSizeMax,
             topicBytesConsumedRate,
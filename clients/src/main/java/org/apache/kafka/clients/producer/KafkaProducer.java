@@ -25,12 +25,14 @@ import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.producer.internals.AdaptiveBatching;
 import org.apache.kafka.clients.producer.internals.BufferPool;
 import org.apache.kafka.clients.producer.internals.ProducerInterceptors;
 import org.apache.kafka.clients.producer.internals.ProducerMetadata;
 import org.apache.kafka.clients.producer.internals.ProducerMetrics;
 import org.apache.kafka.clients.producer.internals.RecordAccumulator;
 import org.apache.kafka.clients.producer.internals.Sender;
+import org.apache.kafka.clients.producer.internals.SlabBufferPool;
 import org.apache.kafka.clients.producer.internals.TransactionManager;
 import org.apache.kafka.clients.producer.internals.TransactionalRequestResult;
 import org.apache.kafka.common.Cluster;
@@ -74,6 +76,7 @@ import org.slf4j.Logger;
 
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -405,7 +408,10 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                     time,
                     apiVersions,
                     transactionManager,
-                    new BufferPool(this.totalMemorySize, config.getInt(ProducerConfig.BATCH_SIZE_CONFIG), metrics, time, PRODUCER_METRIC_GROUP_NAME));
+                    bufferPool(config, this.totalMemorySize, metrics, time),
+                    adaptiveBatching(config, this.compressionType, metrics),
+                    compressionLevel(config, this.compressionType),
+                    ClientUtils.loadZstdDictionaries(config.getList(ProducerConfig.COMPRESSION_ZSTD_DICTIONARIES_CONFIG)));
 
             List<InetSocketAddress> addresses = ClientUtils.parseAndValidateAddresses(
                     config.getList(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG),
@@ -482,6 +488,29 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
         return (int) Math.min(config.getLong(ProducerConfig.LINGER_MS_CONFIG), Integer.MAX_VALUE);
     }
 
+    private static BufferPool bufferPool(ProducerConfig config, long totalMemorySize, Metrics metrics, Time time) {
+        int batchSize = config.getInt(ProducerConfig.BATCH_SIZE_CONFIG);
+        if ("direct".equals(config.getString(ProducerConfig.BUFFER_MEMORY_TYPE_CONFIG)))
+            return new SlabBufferPool(totalMemorySize, batchSize, config.getInt(ProducerConfig.MAX_REQUEST_SIZE_CONFIG),
+                    metrics, time, PRODUCER_METRIC_GROUP_NAME);
+        return new BufferPool(totalMemorySize, batchSize, metrics, time, PRODUCER_METRIC_GROUP_NAME);
+    }
+
+    private static Integer compressionLevel(ProducerConfig config, CompressionType compressionType) {
+        Integer level = config.getInt(ProducerConfig.COMPRESSION_LEVEL_CONFIG);
+        if (level != null && !compressionType.isValidLevel(level))
+            throw new ConfigException(ProducerConfig.COMPRESSION_LEVEL_CONFIG, level,
+                    "Invalid level for compression type " + compressionType.name);
+        return level;
+    }
+
+    private static AdaptiveBatching adaptiveBatching(ProducerConfig config, CompressionType compressionType, Metrics metrics) {
+        if (!config.getBoolean(ProducerConfig.ENABLE_ADAPTIVE_BATCHING_CONFIG))
+            return null;
+        return new AdaptiveBatching(config.getInt(ProducerConfig.BATCH_SIZE_CONFIG), lingerMs(config), compressionType,
+                metrics, PRODUCER_METRIC_GROUP_NAME);
+    }
+
     private static int configureDeliveryTimeout(ProducerConfig config, Logger log) {
         int deliveryTimeoutMs = config.getInt(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG);
         int lingerMs = lingerMs(config);
@@ -881,22 +910,8 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
             nowMs += clusterAndWaitTime.waitedOnMetadataMs;
             long remainingWaitMs = Math.max(0, maxBlockTimeMs - clusterAndWaitTime.waitedOnMetadataMs);
             Cluster cluster = clusterAndWaitTime.cluster;
-            byte[] serializedKey;
-            try {
-                serializedKey = keySerializer.serialize(record.topic(), record.headers(), record.key());
-            } catch (ClassCastException cce) {
-                throw new SerializationException("Can't convert key of class " + record.key().getClass().getName() +
-                        " to class " + producerConfig.getClass(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG).getName() +
-                        " specified in key.serializer", cce);
-            }
-            byte[] serializedValue;
-            try {
-                serializedValue = valueSerializer.serialize(record.topic(), record.headers(), record.value());
-            } catch (ClassCastException cce) {
-                throw new SerializationException("Can't convert value of class " + record.value().getClass().getName() +
-                        " to class " + producerConfig.getClass(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG).getName() +
-                        " specified in value.serializer", cce);
-            }
+            byte[] serializedKey = serializeKey(record);
+            byte[] serializedValue = serializeValue(record);
             int partition = partition(record, serializedKey, serializedValue, cluster);
             tp = new TopicPartition(record.topic(), partition);
 
@@ -972,6 +987,189 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
         }
     }
 
+    /**
+     * Asynchronously send a list of records to a single partition and invoke the provided callback for each record
+     * when it has been acknowledged.
+     * <p>
+     * This is equivalent to calling {@link #send(ProducerRecord, Callback)} for each record in order, but the records
+     * are appended to the partition's batches together, taking the lock of the partition once per batch rather than
+     * once per record. This reduces lock contention when many application threads send to the same partitions.
+     * <p>
+     * All records must be for the same topic and must be assigned the same partition, either explicitly with
+     * {@link ProducerRecord#partition()} or by the configured partitioner.
+     * <p>
+     * If some records cannot be sent, for example because the producer could not allocate buffer memory in time, the
+     * records appended before the failure are sent as usual. For errors that {@link #send(ProducerRecord, Callback)}
+     * reports through its future, the futures of the remaining records are completed with the error and the callback
+     * is invoked for each of them. Other errors are thrown.
+     *
+     * @param records The records to send, in order
+     * @param callback A user-supplied callback to execute for each record when it has been acknowledged by the server
+     *                 (null indicates no callback)
+     * @return The futures of the records' metadata, in the same order as the records
+     * @throws IllegalArgumentException If the records are not all for the same topic partition
+     * @throws AuthenticationException if authentication fails. See the exception for more details
+     * @throws AuthorizationException fatal error indicating that the producer is not allowed to write
+     * @throws IllegalStateException if a transactional.id has been configured and no transaction has been started, or
+     *                               when send is invoked after producer has been closed.
+     * @throws InterruptException If the thread is interrupted while blocked
+     * @throws SerializationException If the key or value are not valid objects given the configured serializers
+     * @throws KafkaException If a Kafka related error occurs that does not belong to the public API exceptions.
+     */
+    @Override
+    public List<Future<RecordMetadata>> sendAll(List<ProducerRecord<K, V>> records, Callback callback) {
+        // intercept the records, which can be potentially modified; this method does not throw exceptions
+        List<ProducerRecord<K, V>> interceptedRecords = new ArrayList<>(records.size());
+        for (ProducerRecord<K, V> record : records)
+            interceptedRecords.add(this.interceptors.onSend(record));
+        return doSendAll(interceptedRecords, callback);
+    }
+
+    /**
+     * Implementation of asynchronously send a list of records to a single partition.
+     */
+    private List<Future<RecordMetadata>> doSendAll(List<ProducerRecord<K, V>> records, Callback callback) {
+        List<Future<RecordMetadata>> futures = new ArrayList<>(records.size());
+        if (records.isEmpty())
+            return futures;
+
+        TopicPartition tp = null;
+        List<RecordAccumulator.RecordAppendResult> results = new ArrayList<>(records.size());
+        try {
+            throwIfProducerClosed();
+            ProducerRecord<K, V> first = records.get(0);
+            // first make sure the metadata for the topic is available
+            long nowMs = time.milliseconds();
+            ClusterAndWaitTime clusterAndWaitTime;
+            try {
+                clusterAndWaitTime = waitOnMetadata(first.topic(), first.partition(), nowMs, maxBlockTimeMs);
+            } catch (KafkaException e) {
+                if (metadata.isClosed())
+                    throw new KafkaException("Producer closed while send in progress", e);
+                throw e;
+            }
+            nowMs += clusterAndWaitTime.waitedOnMetadataMs;
+            long remainingWaitMs = Math.max(0, maxBlockTimeMs - clusterAndWaitTime.waitedOnMetadataMs);
+            Cluster cluster = clusterAndWaitTime.cluster;
+
+            List<RecordAccumulator.SerializedRecord> serializedRecords = new ArrayList<>(records.size());
+            for (ProducerRecord<K, V> record : records) {
+                if (!record.topic().equals(first.topic()))
+                    throw new IllegalArgumentException("All records must be sent to the same topic, but got records " +
+                            "for topics " + first.topic() + " and " + record.topic());
+                byte[] serializedKey = serializeKey(record);
+                byte[] serializedValue = serializeValue(record);
+                int partition = partition(record, serializedKey, serializedValue, cluster);
+                if (tp == null)
+                    tp = new TopicPartition(record.topic(), partition);
+                else if (tp.partition() != partition)
+                    throw new IllegalArgumentException("All records must be sent to the same partition, but got records " +
+                            "for partitions " + tp + " and " + new TopicPartition(record.topic(), partition));
+
+                setReadOnly(record.headers());
+                Header[] headers = record.headers().toArray();
+
+                int serializedSize = AbstractRecords.estimateSizeInBytesUpperBound(apiVersions.maxUsableProduceMagic(),
+                        compressionType, serializedKey, serializedValue, headers);
+                ensureValidRecordSize(serializedSize);
+                long timestamp = record.timestamp() == null ? nowMs : record.timestamp();
+                // producer callback will make sure to call both 'callback' and interceptor callback
+                Callback interceptCallback = new InterceptorCallback<>(callback, this.interceptors, tp);
+                serializedRecords.add(new RecordAccumulator.SerializedRecord(timestamp, serializedKey, serializedValue,
+                        headers, interceptCallback));
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Attempting to append {} records with callback {} to topic {} partition {}", records.size(),
+                        callback, tp.topic(), tp.partition());
+            }
+
+            if (transactionManager != null && transactionManager.isTransactional()) {
+                transactionManager.failIfNotReadyForSend();
+            }
+            try {
+                accumulator.appendAll(tp, serializedRecords, remainingWaitMs, nowMs, results);
+            } finally {
+                if (!results.isEmpty())
+                    onRecordsAppended(tp, cluster, results);
+            }
+            for (RecordAccumulator.RecordAppendResult result : results)
+                futures.add(result.future);
+            return futures;
+            // handling exceptions and record the errors;
+            // for API exceptions return them in the futures of the records which were not appended,
+            // for other exceptions throw directly
+        } catch (ApiException e) {
+            log.debug("Exception occurred during message send:", e);
+            for (RecordAccumulator.RecordAppendResult result : results)
+                futures.add(result.future);
+            for (ProducerRecord<K, V> record : records.subList(results.size(), records.size())) {
+                if (callback != null)
+                    callback.onCompletion(null, e);
+                this.errors.record();
+                this.interceptors.onSendError(record, tp, e);
+                futures.add(new FutureFailure(e));
+            }
+            return futures;
+        } catch (InterruptedException e) {
+            onSendAllError(records.subList(results.size(), records.size()), tp, e);
+            throw new InterruptException(e);
+        } catch (KafkaException e) {
+            onSendAllError(records.subList(results.size(), records.size()), tp, e);
+            throw e;
+        } catch (Exception e) {
+            // we notify interceptor about all exceptions, since onSend is called before anything else in this method
+            for (ProducerRecord<K, V> record : records.subList(results.size(), records.size()))
+                this.interceptors.onSendError(record, tp, e);
+            throw e;
+        }
+    }
+
+    private void onRecordsAppended(TopicPartition tp, Cluster cluster, List<RecordAccumulator.RecordAppendResult> results) {
+        if (transactionManager != null && transactionManager.isTransactional())
+            transactionManager.maybeAddPartitionToTransaction(tp);
+
+        boolean newBatchCreated = false;
+        boolean batchIsFull = false;
+        for (RecordAccumulator.RecordAppendResult result : results) {
+            newBatchCreated |= result.newBatchCreated;
+            batchIsFull |= result.batchIsFull;
+        }
+        // let a sticky partitioner move on to another partition for the following sends
+        if (newBatchCreated)
+            partitioner.onNewBatch(tp.topic(), cluster, tp.partition());
+        if (batchIsFull || newBatchCreated) {
+            log.trace("Waking up the sender since topic {} partition {} is either full or getting a new batch", tp.topic(), tp.partition());
+            this.sender.wakeup();
+        }
+    }
+
+    private void onSendAllError(List<ProducerRecord<K, V>> records, TopicPartition tp, Exception e) {
+        for (ProducerRecord<K, V> record : records) {
+            this.errors.record();
+            this.interceptors.onSendError(record, tp, e);
+        }
+    }
+
+    private byte[] serializeKey(ProducerRecord<K, V> record) {
+        try {
+            return keySerializer.serialize(record.topic(), record.headers(), record.key());
+        } catch (ClassCastException cce) {
+            throw new SerializationException("Can't convert key of class " + record.key().getClass().getName() +
+                    " to class " + producerConfig.getClass(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG).getName() +
+                    " specified in key.serializer", cce);
+        }
+    }
+
+    private byte[] serializeValue(ProducerRecord<K, V> record) {
+        try {
+            return valueSerializer.serialize(record.topic(), record.headers(), record.value());
+        } catch (ClassCastException cce) {
+            throw new SerializationException("Can't convert value of class " + record.value().getClass().getName() +
+                    " to class " + producerConfig.getClass(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG).getName() +
+                    " specified in value.serializer", cce);
+        }
+    }
+
     private void setReadOnly(Headers headers) {
         if (headers instanceof RecordHeaders) {
             ((RecordHeaders) headers).setReadOnly();
@@ -323,6 +323,30 @@ public class MockProducer<K, V> implements Producer<K, V> {
         return future;
     }
 
+    /**
+     * Adds the records to the list of sent records, in order.
+     *
+     * @throws IllegalArgumentException If the records are not all for the same topic, or for the same partition when
+     *                                  it is set
+     * @see #history()
+     */
+    @Override
+    public synchronized List<Future<RecordMetadata>> sendAll(List<ProducerRecord<K, V>> records, Callback callback) {
+        if (!records.isEmpty()) {
+            ProducerRecord<K, V> first = records.get(0);
+            for (ProducerRecord<K, V> record : records) {
+                if (!record.topic().equals(first.topic()) || !Objects.equals(record.partition(), first.partition()))
+                    throw new IllegalArgumentException("All records must be sent to the same topic partition, but got " +
+                            "records for " + first.topic() + "-" + first.partition() + " and " + record.topic() + "-" +
+                            record.partition());
+            }
+        }
+        List<Future<RecordMetadata>> futures = new ArrayList<>(records.size());
+        for (ProducerRecord<K, V> record : records)
+            futures.add(send(record, callback));
+        return futures;
+    }
+
     /**
      * Get the next offset for this topic/partition
      */
@@ -26,6 +26,7 @@ import org.apache.kafka.common.errors.ProducerFencedException;
 
 import java.io.Closeable;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -80,6 +81,18 @@ public interface Producer<K, V> extends Closeable {
      */
     Future<RecordMetadata> send(ProducerRecord<K, V> record, Callback callback);
 
+    /**
+     * See {@link KafkaProducer#sendAll(List, Callback)}
+     * <p>
+     * The default implementation sends the records one by one with {@link #send(ProducerRecord, Callback)}.
+     */
+    default List<Future<RecordMetadata>> sendAll(List<ProducerRecord<K, V>> records, Callback callback) {
+        List<Future<RecordMetadata>> futures = new ArrayList<>(records.size());
+        for (ProducerRecord<K, V> record : records)
+            futures.add(send(record, callback));
+        return futures;
+    }
+
     /**
      * See {@link KafkaProducer#flush()}
      */
@@ -114,6 +114,14 @@ public class ProducerConfig extends AbstractConfig {
                                                 + "specified time waiting for more records to show up. This setting defaults to 0 (i.e. no delay). Setting <code>" + LINGER_MS_CONFIG + "=5</code>, "
                                                 + "for example, would have the effect of reducing the number of requests sent but would add up to 5ms of latency to records sent in the absence of load.";
 
+    /** <code>enable.adaptive.batching</code> */
+    public static final String ENABLE_ADAPTIVE_BATCHING_CONFIG = "enable.adaptive.batching";
+    private static final String ENABLE_ADAPTIVE_BATCHING_DOC = "When set to 'true', the producer tunes the linger time and batch size of each partition "
+                                                               + "from the rate at which records arrive for it, the latency of produce requests and the estimated compression ratio of "
+                                                               + "the topic. Batches are sent as soon as they hold the data expected to arrive during one produce request, and are not "
+                                                               + "delayed at all when less than one record is expected to arrive in the meantime. <code>" + LINGER_MS_CONFIG + "</code> "
+                                                               + "and <code>" + BATCH_SIZE_CONFIG + "</code> are used as upper bounds.";
+
     /** <code>request.timeout.ms</code> */
     public static final String REQUEST_TIMEOUT_MS_CONFIG = CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG;
     private static final String REQUEST_TIMEOUT_MS_DOC = CommonClientConfigs.REQUEST_TIMEOUT_MS_DOC
@@ -169,6 +177,15 @@ public class ProducerConfig extends AbstractConfig {
                                                     + "not all memory the producer uses is used for buffering. Some additional memory will be used for compression (if "
                                                     + "compression is enabled) as well as for maintaining in-flight requests.";
 
+    /** <code>buffer.memory.type</code> */
+    public static final String BUFFER_MEMORY_TYPE_CONFIG = "buffer.memory.type";
+    private static final String BUFFER_MEMORY_TYPE_DOC = "The kind of memory used for the <code>" + BUFFER_MEMORY_CONFIG + "</code> buffer pool. "
+                                                         + "With <code>heap</code> the producer pools heap buffers of <code>" + BATCH_SIZE_CONFIG + "</code> bytes "
+                                                         + "and allocates any other size on demand. With <code>direct</code> batches are written into off-heap "
+                                                         + "buffers which are pooled in power-of-two size classes starting at <code>" + BATCH_SIZE_CONFIG + "</code>, "
+                                                         + "which keeps large buffer pools out of the garbage collected heap. Note that off-heap memory is bounded by "
+                                                         + "<code>-XX:MaxDirectMemorySize</code>, which must be large enough to hold <code>" + BUFFER_MEMORY_CONFIG + "</code>.";
+
     /** <code>retry.backoff.ms</code> */
     public static final String RETRY_BACKOFF_MS_CONFIG = CommonClientConfigs.RETRY_BACKOFF_MS_CONFIG;
 
@@ -178,6 +195,17 @@ public class ProducerConfig extends AbstractConfig {
                                                        + " values are <code>none</code>, <code>gzip</code>, <code>snappy</code>, <code>lz4</code>, or <code>zstd</code>. "
                                                        + "Compression is of full batches of data, so the efficacy of batching will also impact the compression ratio (more batching means better compression).";
 
+    /** <code>compression.level</code> */
+    public static final String COMPRESSION_LEVEL_CONFIG = "compression.level";
+    private static final String COMPRESSION_LEVEL_DOC = "The compression level of the codec set by <code>" + COMPRESSION_TYPE_CONFIG + "</code>. "
+                                                        + "Higher levels trade CPU time for smaller batches, which is useful when bandwidth is scarce, such as on "
+                                                        + "cross-region links. Valid levels are 1 to 9 for <code>gzip</code>, 1 to 17 for <code>lz4</code> (which "
+                                                        + "then uses its high compression variant) and -131072 to 22 for <code>zstd</code>. <code>snappy</code> has "
+                                                        + "no levels. When not set, the default level of the codec is used.";
+
+    /** <code>compression.zstd.dictionaries</code> */
+    public static final String COMPRESSION_ZSTD_DICTIONARIES_CONFIG = CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_CONFIG;
+
     /** <code>metrics.sample.window.ms</code> */
     public static final String METRICS_SAMPLE_WINDOW_MS_CONFIG = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG;
 
@@ -271,6 +299,12 @@ public class ProducerConfig extends AbstractConfig {
                                         Importance.MEDIUM,
                                         CommonClientConfigs.CLIENT_DNS_LOOKUP_DOC)
                                 .define(BUFFER_MEMORY_CONFIG, Type.LONG, 32 * 1024 * 1024L, atLeast(0L), Importance.HIGH, BUFFER_MEMORY_DOC)
+                                .define(BUFFER_MEMORY_TYPE_CONFIG,
+                                        Type.STRING,
+                                        "heap",
+                                        in("heap", "direct"),
+                                        Importance.LOW,
+                                        BUFFER_MEMORY_TYPE_DOC)
                                 .define(RETRIES_CONFIG, Type.INT, Integer.MAX_VALUE, between(0, Integer.MAX_VALUE), Importance.HIGH, RETRIES_DOC)
                                 .define(ACKS_CONFIG,
                                         Type.STRING,
@@ -279,8 +313,11 @@ public class ProducerConfig extends AbstractConfig {
                                         Importance.HIGH,
                                         ACKS_DOC)
                                 .define(COMPRESSION_TYPE_CONFIG, Type.STRING, "none", Importance.HIGH, COMPRESSION_TYPE_DOC)
+                                .define(COMPRESSION_LEVEL_CONFIG, Type.INT, null, Importance.LOW, COMPRESSION_LEVEL_DOC)
+                                .define(COMPRESSION_ZSTD_DICTIONARIES_CONFIG, Type.LIST, Collections.emptyList(), Importance.LOW, CommonClientConfigs.COMPRESSION_ZSTD_DICTIONARIES_DOC)
                                 .define(BATCH_SIZE_CONFIG, Type.INT, 16384, atLeast(0), Importance.MEDIUM, BATCH_SIZE_DOC)
                                 .define(LINGER_MS_CONFIG, Type.LONG, 0, atLeast(0), Importance.MEDIUM, LINGER_MS_DOC)
+                                .define(ENABLE_ADAPTIVE_BATCHING_CONFIG, Type.BOOLEAN, false, Importance.LOW, ENABLE_ADAPTIVE_BATCHING_DOC)
                                 .define(DELIVERY_TIMEOUT_MS_CONFIG, Type.INT, 120 * 1000, atLeast(0), Importance.MEDIUM, DELIVERY_TIMEOUT_MS_DOC)
                                 .define(CLIENT_ID_CONFIG, Type.STRING, "", Importance.MEDIUM, CommonClientConfigs.CLIENT_ID_DOC)
                                 .define(SEND_BUFFER_CONFIG, Type.INT, 128 * 1024, atLeast(CommonClientConfigs.SEND_BUFFER_LOWER_BOUND), Importance.MEDIUM, CommonClientConfigs.SEND_BUFFER_DOC)
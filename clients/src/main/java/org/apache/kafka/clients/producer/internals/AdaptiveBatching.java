@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.record.CompressionRatioEstimator;
+import org.apache.kafka.common.record.CompressionType;
+
+/**
+ * Tunes the effective linger time and batch size of each partition from the observed workload. The configured
+ * <code>linger.ms</code> and <code>batch.size</code> act as upper bounds.
+ * <p>
+ * For every partition we keep an exponentially weighted estimate of the rate at which records and bytes arrive,
+ * measured each time a batch of the partition is drained. Together with the latency of produce requests and the
+ * estimated compression ratio of the topic this gives:
+ * <ul>
+ * <li>a target batch size, which is the amount of (compressed) data expected to arrive during one produce request
+ *     round trip, so that the next batch is ready by the time the previous request completes;</li>
+ * <li>a linger time, which is the time needed to fill the target batch. If less than one record is expected to arrive
+ *     within the configured linger time there is nothing to gain by waiting, so the batch is sent immediately.</li>
+ * </ul>
+ * Until a partition has been drained at least once, and until the first produce response has been received, the
+ * configured values are used.
+ * <p>
+ * This class is only accessed by the sender thread, so it is not thread safe.
+ */
+public final class AdaptiveBatching {
+
+    // The weight given to a new sample in the exponentially weighted moving averages
+    private static final double SAMPLE_WEIGHT = 0.2;
+
+    private final int maxBatchSize;
+    private final int maxLingerMs;
+    private final CompressionType compression;
+    private final Map<TopicPartition, PartitionState> partitions = new HashMap<>();
+    private final Sensor lingerSensor;
+    private final Sensor batchSizeSensor;
+    private double requestLatencyMs = -1;
+
+    /**
+     * @param maxBatchSize The configured batch size, which bounds the effective batch size
+     * @param maxLingerMs The configured linger time, which bounds the effective linger time
+     * @param compression The compression codec for the records
+     * @param metrics The metrics
+     * @param metricGrpName The metric group name
+     */
+    public AdaptiveBatching(int maxBatchSize, int maxLingerMs, CompressionType compression, Metrics metrics,
+                            String metricGrpName) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMs = maxLingerMs;
+        this.compression = compression;
+
+        this.lingerSensor = metrics.sensor("adaptive-linger-ms");
+        this.lingerSensor.add(metrics.metricName("adaptive-linger-ms-avg", metricGrpName,
+                "The average linger time in ms chosen by adaptive batching."), new Avg());
+        this.lingerSensor.add(metrics.metricName("adaptive-linger-ms-max", metricGrpName,
+                "The maximum linger time in ms chosen by adaptive batching."), new Max());
+        this.batchSizeSensor = metrics.sensor("adaptive-batch-size");
+        this.batchSizeSensor.add(metrics.metricName("adaptive-batch-size-avg", metricGrpName,
+                "The average target batch size in bytes chosen by adaptive batching."), new Avg());
+        this.batchSizeSensor.add(metrics.metricName("adaptive-batch-size-max", metricGrpName,
+                "The maximum target batch size in bytes chosen by adaptive batching."), new Max());
+    }
+
+    /**
+     * The time to wait for more records before a batch of the given partition is ready to be sent.
+     */
+    public int lingerMs(TopicPartition tp) {
+        PartitionState state = partitions.get(tp);
+        return state == null ? maxLingerMs : state.lingerMs;
+    }
+
+    /**
+     * The size in bytes at which a batch of the given partition is ready to be sent.
+     */
+    public int batchSize(TopicPartition tp) {
+        PartitionState state = partitions.get(tp);
+        return state == null ? maxBatchSize : state.batchSize;
+    }
+
+    /**
+     * Record that a batch of the given partition has been drained to be sent and update its targets.
+     *
+     * @param tp The partition of the batch
+     * @param recordCount The number of records in the batch
+     * @param uncompressedBytes The uncompressed size of the records in the batch
+     * @param nowMs The current time in milliseconds
+     */
+    public void onBatchDrained(TopicPartition tp, int recordCount, int uncompressedBytes, long nowMs) {
+        PartitionState state = partitions.get(tp);
+        if (state == null) {
+            // The first drain only gives us a starting point to measure the arrival rate from
+            partitions.put(tp, new PartitionState(nowMs, maxLingerMs, maxBatchSize));
+            return;
+        }
+        long elapsedMs = Math.max(1, nowMs - state.lastDrainMs);
+        state.lastDrainMs = nowMs;
+        if (state.recordsPerMs < 0) {
+            state.recordsPerMs = (double) recordCount / elapsedMs;
+            state.bytesPerMs = (double) uncompressedBytes / elapsedMs;
+        } else {
+            state.recordsPerMs = weighted(state.recordsPerMs, (double) recordCount / elapsedMs);
+            state.bytesPerMs = weighted(state.bytesPerMs, (double) uncompressedBytes / elapsedMs);
+        }
+
+        if (requestLatencyMs >= 0) {
+            double ratio = CompressionRatioEstimator.estimation(tp.topic(), compression);
+            double compressedBytesPerMs = state.bytesPerMs * ratio;
+            long targetBytes = Math.round(compressedBytesPerMs * Math.max(1.0, requestLatencyMs));
+            state.batchSize = (int) Math.max(1, Math.min(targetBytes, maxBatchSize));
+            if (state.recordsPerMs * maxLingerMs < 1.0 || compressedBytesPerMs <= 0)
+                state.lingerMs = 0;
+            else
+                state.lingerMs = (int) Math.min(maxLingerMs, (long) Math.ceil(state.batchSize / compressedBytesPerMs));
+        }
+        lingerSensor.record(state.lingerMs, nowMs);
+        batchSizeSensor.record(state.batchSize, nowMs);
+    }
+
+    /**
+     * Record the latency of a completed produce request.
+     */
+    public void onRequestCompleted(long latencyMs) {
+        requestLatencyMs = requestLatencyMs < 0 ? latencyMs : weighted(requestLatencyMs, latencyMs);
+    }
+
+    private static double weighted(double average, double sample) {
+        return average + SAMPLE_WEIGHT * (sample - average);
+    }
+
+    private static final class PartitionState {
+        private long lastDrainMs;
+        private double recordsPerMs = -1;
+        private double bytesPerMs = -1;
+        private int lingerMs;
+        private int batchSize;
+
+        private PartitionState(long lastDrainMs, int lingerMs, int batchSize) {
+            this.lastDrainMs = lastDrainMs;
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+        }
+    }
+}
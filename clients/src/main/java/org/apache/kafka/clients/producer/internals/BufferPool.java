@@ -115,12 +115,13 @@ public class BufferPool {
 
         try {
             // check if we have a free buffer of the right size pooled
-            if (size == poolableSize && !this.free.isEmpty())
-                return this.free.pollFirst();
+            ByteBuffer pooled = pollFreeBuffer(size);
+            if (pooled != null)
+                return pooled;
 
             // now check if the request is immediately satisfiable with the
             // memory on hand or if we need to block
-            int freeListSize = freeSize() * this.poolableSize;
+            long freeListSize = freeListMemory();
             if (this.nonPooledAvailableMemory + freeListSize >= size) {
                 // we have enough unallocated or pooled memory to immediately
                 // satisfy the request, but need to allocate the buffer
@@ -158,9 +159,8 @@ public class BufferPool {
 
                         // check if we can satisfy this request from the free list,
                         // otherwise allocate memory
-                        if (accumulated == 0 && size == this.poolableSize && !this.free.isEmpty()) {
+                        if (accumulated == 0 && (buffer = pollFreeBuffer(size)) != null) {
                             // just grab a buffer from the free list
-                            buffer = this.free.pollFirst();
                             accumulated = size;
                         } else {
                             // we'll need to allocate memory, but we may only get
@@ -183,7 +183,7 @@ public class BufferPool {
             // signal any additional waiters if there is more memory left
             // over for them
             try {
-                if (!(this.nonPooledAvailableMemory == 0 && this.free.isEmpty()) && !this.waiters.isEmpty())
+                if (!(this.nonPooledAvailableMemory == 0 && freeListMemory() == 0) && !this.waiters.isEmpty())
                     this.waiters.peekFirst().signal();
             } finally {
                 // Another finally... otherwise find bugs complains
@@ -236,8 +236,52 @@ public class BufferPool {
      * buffers (if needed)
      */
     private void freeUp(int size) {
-        while (!this.free.isEmpty() && this.nonPooledAvailableMemory < size)
-            this.nonPooledAvailableMemory += this.free.pollLast().capacity();
+        while (this.nonPooledAvailableMemory < size) {
+            long released = releaseFreeBuffer();
+            if (released == 0)
+                break;
+            this.nonPooledAvailableMemory += released;
+        }
+    }
+
+    /**
+     * Take a pooled buffer that can satisfy an allocation of the given size, or return null if there is none. Always
+     * called with the pool lock held.
+     */
+    protected ByteBuffer pollFreeBuffer(int size) {
+        if (size == this.poolableSize && !this.free.isEmpty())
+            return this.free.pollFirst();
+        return null;
+    }
+
+    /**
+     * Offer a deallocated buffer to the free list. Returns false if the buffer cannot be pooled, in which case its
+     * memory is returned to the non-pooled memory instead. Always called with the pool lock held.
+     */
+    protected boolean addFreeBuffer(ByteBuffer buffer, int size) {
+        if (size == this.poolableSize && size == buffer.capacity()) {
+            buffer.clear();
+            this.free.add(buffer);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop one pooled buffer so that its memory can be handed out as non-pooled memory. Returns the number of bytes
+     * released, or 0 if the free list is empty. Always called with the pool lock held.
+     */
+    protected long releaseFreeBuffer() {
+        if (this.free.isEmpty())
+            return 0;
+        return this.free.pollLast().capacity();
+    }
+
+    /**
+     * The memory held by buffers in the free list. Always called with the pool lock held.
+     */
+    protected long freeListMemory() {
+        return freeSize() * (long) this.poolableSize;
     }
 
     /**
@@ -251,12 +295,8 @@ public class BufferPool {
     public void deallocate(ByteBuffer buffer, int size) {
         lock.lock();
         try {
-            if (size == this.poolableSize && size == buffer.capacity()) {
-                buffer.clear();
-                this.free.add(buffer);
-            } else {
+            if (!addFreeBuffer(buffer, size))
                 this.nonPooledAvailableMemory += size;
-            }
             Condition moreMem = this.waiters.peekFirst();
             if (moreMem != null)
                 moreMem.signal();
@@ -275,7 +315,19 @@ public class BufferPool {
     public long availableMemory() {
         lock.lock();
         try {
-            return this.nonPooledAvailableMemory + freeSize() * (long) this.poolableSize;
+            return this.nonPooledAvailableMemory + freeListMemory();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The memory held by buffers in the free list
+     */
+    public long pooledMemory() {
+        lock.lock();
+        try {
+            return freeListMemory();
         } finally {
             lock.unlock();
         }
@@ -300,7 +300,9 @@ public final class ProducerBatch {
         // for the newly created batch. This will be set when the batch is dequeued for sending (which is consistent
         // with how normal batches are handled).
         MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, magic(), recordsBuilder.compressionType(),
-                TimestampType.CREATE_TIME, 0L);
+                recordsBuilder.compressionLevel(), recordsBuilder.zstdDictionary(), TimestampType.CREATE_TIME, 0L,
+                RecordBatch.NO_TIMESTAMP, RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH,
+                RecordBatch.NO_SEQUENCE, false, false, RecordBatch.NO_PARTITION_LEADER_EPOCH);
         return new ProducerBatch(topicPartition, builder, this.createdMs, true);
     }
 
@@ -376,6 +378,10 @@ public final class ProducerBatch {
         return recordsBuilder.estimatedSizeInBytes();
     }
 
+    public int uncompressedSizeInBytes() {
+        return recordsBuilder.uncompressedBytesWritten();
+    }
+
     public double compressionRatio() {
         return recordsBuilder.compressionRatio();
     }
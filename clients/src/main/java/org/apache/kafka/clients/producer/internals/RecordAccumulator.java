@@ -53,6 +53,7 @@ import org.apache.kafka.common.record.MemoryRecordsBuilder;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
 import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.record.ZstdDictionary;
 import org.apache.kafka.common.utils.CopyOnWriteMap;
 import org.apache.kafka.common.utils.LogContext;
 import org.apache.kafka.common.utils.Time;
@@ -85,6 +86,9 @@ public final class RecordAccumulator {
     private final Map<TopicPartition, Long> muted;
     private int drainIndex;
     private final TransactionManager transactionManager;
+    private final AdaptiveBatching adaptiveBatching;
+    private final Integer compressionLevel;
+    private final Map<String, ZstdDictionary> zstdDictionaries;
     private long nextBatchExpiryTimeMs = Long.MAX_VALUE; // the earliest time (absolute) a batch will expire.
 
     /**
@@ -116,6 +120,87 @@ public final class RecordAccumulator {
                              ApiVersions apiVersions,
                              TransactionManager transactionManager,
                              BufferPool bufferPool) {
+        this(logContext, batchSize, compression, lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName,
+            time, apiVersions, transactionManager, bufferPool, null);
+    }
+
+    /**
+     * Create a new record accumulator which optionally tunes the linger time and batch size of each partition
+     *
+     * @param logContext The log context used for logging
+     * @param batchSize The size to use when allocating {@link MemoryRecords} instances
+     * @param compression The compression codec for the records
+     * @param lingerMs An artificial delay time to add before declaring a records instance that isn't full ready for
+     *        sending. This allows time for more records to arrive. Setting a non-zero lingerMs will trade off some
+     *        latency for potentially better throughput due to more batching (and hence fewer, larger requests).
+     * @param retryBackoffMs An artificial delay time to retry the produce request upon receiving an error. This avoids
+     *        exhausting all retries in a short period of time.
+     * @param metrics The metrics
+     * @param time The time instance to use
+     * @param apiVersions Request API versions for current connected brokers
+     * @param transactionManager The shared transaction state object which tracks producer IDs, epochs, and sequence
+     *                           numbers per partition.
+     * @param bufferPool The buffer pool to allocate batches from
+     * @param adaptiveBatching The per partition linger time and batch size tuning, bounded by <code>lingerMs</code>
+     *                         and <code>batchSize</code>, or null to always use the configured values
+     */
+    public RecordAccumulator(LogContext logContext,
+                             int batchSize,
+                             CompressionType compression,
+                             int lingerMs,
+                             long retryBackoffMs,
+                             int deliveryTimeoutMs,
+                             Metrics metrics,
+                             String metricGrpName,
+                             Time time,
+                             ApiVersions apiVersions,
+                             TransactionManager transactionManager,
+                             BufferPool bufferPool,
+                             AdaptiveBatching adaptiveBatching) {
+        this(logContext, batchSize, compression, lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName,
+            time, apiVersions, transactionManager, bufferPool, adaptiveBatching, null, Collections.emptyMap());
+    }
+
+    /**
+     * Create a new record accumulator which optionally tunes the linger time and batch size of each partition,
+     * compresses at a given level and compresses the batches of some topics with a zstd dictionary
+     *
+     * @param logContext The log context used for logging
+     * @param batchSize The size to use when allocating {@link MemoryRecords} instances
+     * @param compression The compression codec for the records
+     * @param lingerMs An artificial delay time to add before declaring a records instance that isn't full ready for
+     *        sending. This allows time for more records to arrive. Setting a non-zero lingerMs will trade off some
+     *        latency for potentially better throughput due to more batching (and hence fewer, larger requests).
+     * @param retryBackoffMs An artificial delay time to retry the produce request upon receiving an error. This avoids
+     *        exhausting all retries in a short period of time.
+     * @param metrics The metrics
+     * @param time The time instance to use
+     * @param apiVersions Request API versions for current connected brokers
+     * @param transactionManager The shared transaction state object which tracks producer IDs, epochs, and sequence
+     *                           numbers per partition.
+     * @param bufferPool The buffer pool to allocate batches from
+     * @param adaptiveBatching The per partition linger time and batch size tuning, bounded by <code>lingerMs</code>
+     *                         and <code>batchSize</code>, or null to always use the configured values
+     * @param compressionLevel The compression level, valid for <code>compression</code>, or null to use the default
+     *                         level of the codec
+     * @param zstdDictionaries The dictionary to compress the batches of each topic with when <code>compression</code>
+     *                         is {@link CompressionType#ZSTD}
+     */
+    public RecordAccumulator(LogContext logContext,
+                             int batchSize,
+                             CompressionType compression,
+                             int lingerMs,
+                             long retryBackoffMs,
+                             int deliveryTimeoutMs,
+                             Metrics metrics,
+                             String metricGrpName,
+                             Time time,
+                             ApiVersions apiVersions,
+                             TransactionManager transactionManager,
+                             BufferPool bufferPool,
+                             AdaptiveBatching adaptiveBatching,
+                             Integer compressionLevel,
+                             Map<String, ZstdDictionary> zstdDictionaries) {
         this.log = logContext.logger(RecordAccumulator.class);
         this.drainIndex = 0;
         this.closed = false;
@@ -133,6 +218,9 @@ public final class RecordAccumulator {
         this.time = time;
         this.apiVersions = apiVersions;
         this.transactionManager = transactionManager;
+        this.adaptiveBatching = adaptiveBatching;
+        this.compressionLevel = compressionLevel;
+        this.zstdDictionaries = zstdDictionaries;
         registerMetrics(metrics, metricGrpName);
     }
 
@@ -233,7 +321,7 @@ public final class RecordAccumulator {
                     return appendResult;
                 }
 
-                MemoryRecordsBuilder recordsBuilder = recordsBuilder(buffer, maxUsableMagic);
+                MemoryRecordsBuilder recordsBuilder = recordsBuilder(tp, buffer, maxUsableMagic);
                 ProducerBatch batch = new ProducerBatch(tp, recordsBuilder, nowMs);
                 FutureRecordMetadata future = Objects.requireNonNull(batch.tryAppend(timestamp, key, value, headers,
                         callback, nowMs));
@@ -252,12 +340,108 @@ public final class RecordAccumulator {
         }
     }
 
-    private MemoryRecordsBuilder recordsBuilder(ByteBuffer buffer, byte maxUsableMagic) {
+    /**
+     * Add several records for the same partition to the accumulator, in order. Records are appended to the last batch
+     * of the partition for as long as they fit and new batches are created as needed, so the partition's deque is
+     * locked once per batch rather than once per record.
+     * <p>
+     * The append results are added to the given list as the records are appended, so if this method throws, the
+     * records with a result in the list have been appended and the others have not.
+     *
+     * @param tp The topic/partition to which the records are being sent
+     * @param records The serialized records to append
+     * @param maxTimeToBlock The maximum time in milliseconds to block for buffer memory to be available
+     * @param nowMs The current time, in milliseconds
+     * @param results The list to which the append result of each record is added
+     */
+    public void appendAll(TopicPartition tp,
+                          List<SerializedRecord> records,
+                          long maxTimeToBlock,
+                          long nowMs,
+                          List<RecordAppendResult> results) throws InterruptedException {
+        appendsInProgress.incrementAndGet();
+        ByteBuffer buffer = null;
+        try {
+            Deque<ProducerBatch> dq = getOrCreateDeque(tp);
+            int next = 0;
+            while (next < records.size()) {
+                synchronized (dq) {
+                    if (closed)
+                        throw new KafkaException("Producer closed while send in progress");
+                    next = tryAppendAll(records, next, dq, nowMs, results);
+                }
+                if (next == records.size())
+                    break;
+
+                // the next record does not fit in the last batch, allocate a buffer for a new batch
+                SerializedRecord record = records.get(next);
+                byte maxUsableMagic = apiVersions.maxUsableProduceMagic();
+                int size = Math.max(this.batchSize, AbstractRecords.estimateSizeInBytesUpperBound(maxUsableMagic,
+                        compression, record.key, record.value, record.headers));
+                log.trace("Allocating a new {} byte message buffer for topic {} partition {}", size, tp.topic(), tp.partition());
+                buffer = free.allocate(size, maxTimeToBlock);
+
+                // Update the current time in case the buffer allocation blocked above.
+                nowMs = time.milliseconds();
+                synchronized (dq) {
+                    // Need to check if producer is closed again after grabbing the dequeue lock.
+                    if (closed)
+                        throw new KafkaException("Producer closed while send in progress");
+
+                    // somebody else may have created a batch while we were allocating
+                    next = tryAppendAll(records, next, dq, nowMs, results);
+                    if (next == records.size())
+                        break;
+
+                    record = records.get(next);
+                    MemoryRecordsBuilder recordsBuilder = recordsBuilder(tp, buffer, maxUsableMagic);
+                    ProducerBatch batch = new ProducerBatch(tp, recordsBuilder, nowMs);
+                    FutureRecordMetadata future = Objects.requireNonNull(batch.tryAppend(record.timestamp, record.key,
+                            record.value, record.headers, record.callback, nowMs));
+
+                    dq.addLast(batch);
+                    incomplete.add(batch);
+
+                    // Don't deallocate this buffer in the finally block as it's being used in the record batch
+                    buffer = null;
+                    results.add(new RecordAppendResult(future, dq.size() > 1 || batch.isFull(), true, false));
+                    next = tryAppendAll(records, next + 1, dq, nowMs, results);
+                }
+            }
+        } finally {
+            if (buffer != null)
+                free.deallocate(buffer);
+            appendsInProgress.decrementAndGet();
+        }
+    }
+
+    /**
+     * Append records starting at the given index to the last batch of the deque until one does not fit. Returns the
+     * index of the first record that was not appended.
+     */
+    private int tryAppendAll(List<SerializedRecord> records, int from, Deque<ProducerBatch> deque, long nowMs,
+                             List<RecordAppendResult> results) {
+        int next = from;
+        while (next < records.size()) {
+            SerializedRecord record = records.get(next);
+            RecordAppendResult appendResult = tryAppend(record.timestamp, record.key, record.value, record.headers,
+                    record.callback, deque, nowMs);
+            if (appendResult == null)
+                break;
+            results.add(appendResult);
+            next++;
+        }
+        return next;
+    }
+
+    private MemoryRecordsBuilder recordsBuilder(TopicPartition tp, ByteBuffer buffer, byte maxUsableMagic) {
         if (transactionManager != null && maxUsableMagic < RecordBatch.MAGIC_VALUE_V2) {
             throw new UnsupportedVersionException("Attempting to use idempotence with a broker which does not " +
                 "support the required message format (v2). The broker must be version 0.11 or later.");
         }
-        return MemoryRecords.builder(buffer, maxUsableMagic, compression, TimestampType.CREATE_TIME, 0L);
+        return MemoryRecords.builder(buffer, maxUsableMagic, compression, compressionLevel, zstdDictionaries.get(tp.topic()),
+            TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP, RecordBatch.NO_PRODUCER_ID,
+            RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false, RecordBatch.NO_PARTITION_LEADER_EPOCH);
     }
 
     /**
@@ -480,8 +664,8 @@ public final class RecordAccumulator {
                     } else if (!readyNodes.contains(leader) && !isMuted(part, nowMs)) {
                         long waitedTimeMs = batch.waitedTimeMs(nowMs);
                         boolean backingOff = batch.attempts() > 0 && waitedTimeMs < retryBackoffMs;
-                        long timeToWaitMs = backingOff ? retryBackoffMs : lingerMs;
-                        boolean full = deque.size() > 1 || batch.isFull();
+                        long timeToWaitMs = backingOff ? retryBackoffMs : lingerMs(part);
+                        boolean full = deque.size() > 1 || batch.isFull() || reachedTargetSize(part, batch);
                         boolean expired = waitedTimeMs >= timeToWaitMs;
                         boolean sendable = full || expired || exhausted || closed || flushInProgress();
                         if (sendable && !backingOff) {
@@ -500,6 +684,23 @@ public final class RecordAccumulator {
         return new ReadyCheckResult(readyNodes, nextReadyCheckDelayMs, unknownLeaderTopics);
     }
 
+    private int lingerMs(TopicPartition tp) {
+        return adaptiveBatching == null ? lingerMs : adaptiveBatching.lingerMs(tp);
+    }
+
+    private boolean reachedTargetSize(TopicPartition tp, ProducerBatch batch) {
+        return adaptiveBatching != null && batch.estimatedSizeInBytes() >= adaptiveBatching.batchSize(tp);
+    }
+
+    /**
+     * Record the latency of a completed produce request, which is used to tune the batch size when adaptive
+     * batching is enabled
+     */
+    public void onProduceRequestCompleted(long requestLatencyMs) {
+        if (adaptiveBatching != null)
+            adaptiveBatching.onRequestCompleted(requestLatencyMs);
+    }
+
     /**
      * Check whether there are any batches which haven't been drained
      */
@@ -621,6 +822,8 @@ public final class RecordAccumulator {
                     ready.add(batch);
 
                     batch.drained(now);
+                    if (adaptiveBatching != null)
+                        adaptiveBatching.onBatchDrained(tp, batch.recordCount, batch.uncompressedSizeInBytes(), now);
                 }
             }
         } while (start != drainIndex);
@@ -835,6 +1038,25 @@ public final class RecordAccumulator {
         }
     }
 
+    /*
+     * A record whose key and value have been serialized, ready to be appended to a batch
+     */
+    public final static class SerializedRecord {
+        public final long timestamp;
+        public final byte[] key;
+        public final byte[] value;
+        public final Header[] headers;
+        public final Callback callback;
+
+        public SerializedRecord(long timestamp, byte[] key, byte[] value, Header[] headers, Callback callback) {
+            this.timestamp = timestamp;
+            this.key = key;
+            this.value = value;
+            this.headers = headers == null ? Record.EMPTY_HEADERS : headers;
+            this.callback = callback;
+        }
+    }
+
     /*
      * The set of nodes that have at least one complete record batch in the accumulator
      */
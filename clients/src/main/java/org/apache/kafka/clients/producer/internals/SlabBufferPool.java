@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * A {@link BufferPool} that hands out direct (off-heap) buffers and pools them in a fixed set of size classes rather
+ * than a single poolable size. Size class {@code i} holds buffers of {@code poolableSize << i} bytes, up to the largest
+ * class that does not exceed {@code maxPoolableSize}. Allocations are rounded up to the nearest size class and the
+ * returned buffer has its limit set to the requested size, so callers see exactly the amount of space they asked for.
+ * Allocations larger than the largest size class get a dedicated direct buffer which is not pooled.
+ * <p>
+ * Memory accounting is done against the size class, so rounding an allocation up counts against the total memory of
+ * the pool. The amount of memory lost to rounding is reported by the {@code bufferpool-fragmentation-avg} and
+ * {@code bufferpool-fragmentation-max} metrics.
+ */
+public class SlabBufferPool extends BufferPool {
+
+    static final String FRAGMENTATION_SENSOR_NAME = "bufferpool-fragmentation";
+
+    private final int[] sizeClasses;
+    private final List<Deque<ByteBuffer>> free;
+    private final Sensor fragmentation;
+    private final Time time;
+
+    /**
+     * Create a new slab buffer pool
+     *
+     * @param memory The maximum amount of memory that this buffer pool can allocate
+     * @param poolableSize The smallest size class, usually the producer batch size
+     * @param maxPoolableSize The maximum size of a pooled buffer, larger allocations are not pooled
+     * @param metrics instance of Metrics
+     * @param time time instance
+     * @param metricGrpName logical group name for metrics
+     */
+    public SlabBufferPool(long memory, int poolableSize, int maxPoolableSize, Metrics metrics, Time time, String metricGrpName) {
+        super(memory, poolableSize, metrics, time, metricGrpName);
+        this.sizeClasses = sizeClasses(poolableSize, (int) Math.min(maxPoolableSize, memory));
+        this.free = new ArrayList<>(sizeClasses.length);
+        for (int i = 0; i < sizeClasses.length; i++)
+            this.free.add(new ArrayDeque<>());
+        this.time = time;
+
+        this.fragmentation = metrics.sensor(FRAGMENTATION_SENSOR_NAME);
+        this.fragmentation.add(metrics.metricName("bufferpool-fragmentation-avg",
+                                                  metricGrpName,
+                                                  "The average fraction of an allocated buffer that is unused because the allocation was rounded up to its size class."),
+                               new Avg());
+        this.fragmentation.add(metrics.metricName("bufferpool-fragmentation-max",
+                                                  metricGrpName,
+                                                  "The maximum fraction of an allocated buffer that is unused because the allocation was rounded up to its size class."),
+                               new Max());
+
+        MetricName pooledMetricName = metrics.metricName("bufferpool-pooled-bytes",
+                                                         metricGrpName,
+                                                         "The total bytes held by idle off-heap buffers in the size class free lists.");
+        metrics.addMetric(pooledMetricName, (Measurable) (config, now) -> pooledMemory());
+        MetricName utilizationMetricName = metrics.metricName("bufferpool-utilization",
+                                                              metricGrpName,
+                                                              "The fraction of the buffer pool memory that is currently in use by record batches.");
+        metrics.addMetric(utilizationMetricName, (Measurable) (config, now) -> {
+            long total = totalMemory();
+            return total == 0 ? 0.0 : (double) (total - availableMemory()) / total;
+        });
+    }
+
+    private static int[] sizeClasses(int poolableSize, int maxPoolableSize) {
+        List<Integer> sizes = new ArrayList<>();
+        if (poolableSize > 0) {
+            long size = poolableSize;
+            while (size <= maxPoolableSize) {
+                sizes.add((int) size);
+                size <<= 1;
+            }
+        }
+        int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = sizes.get(i);
+        return result;
+    }
+
+    /**
+     * Allocate a buffer of at least the given size. The buffer's capacity is that of the matching size class and its
+     * limit is the requested size. This method blocks if there is not enough memory in the pool.
+     *
+     * @param size The buffer size to allocate in bytes
+     * @param maxTimeToBlockMs The maximum time in milliseconds to block for buffer memory to be available
+     * @return The buffer
+     * @throws InterruptedException If the thread is interrupted while blocked
+     * @throws IllegalArgumentException if size is larger than the total memory controlled by the pool
+     */
+    @Override
+    public ByteBuffer allocate(int size, long maxTimeToBlockMs) throws InterruptedException {
+        int sizeClass = sizeClassIndex(size);
+        int allocationSize = sizeClass < 0 ? size : sizeClasses[sizeClass];
+        ByteBuffer buffer = super.allocate(allocationSize, maxTimeToBlockMs);
+        buffer.limit(size);
+        if (allocationSize > 0)
+            fragmentation.record((double) (allocationSize - size) / allocationSize, time.milliseconds());
+        return buffer;
+    }
+
+    @Override
+    protected ByteBuffer allocateByteBuffer(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    @Override
+    protected ByteBuffer pollFreeBuffer(int size) {
+        int sizeClass = sizeClassIndex(size);
+        if (sizeClass < 0 || sizeClasses[sizeClass] != size)
+            return null;
+        return free.get(sizeClass).pollFirst();
+    }
+
+    @Override
+    protected boolean addFreeBuffer(ByteBuffer buffer, int size) {
+        // only the original off-heap buffer can be pooled, not a heap buffer that replaced it after an expansion
+        if (!buffer.isDirect() || size != buffer.capacity())
+            return false;
+        int sizeClass = sizeClassIndex(size);
+        if (sizeClass < 0 || sizeClasses[sizeClass] != size)
+            return false;
+        buffer.clear();
+        free.get(sizeClass).add(buffer);
+        return true;
+    }
+
+    @Override
+    protected long releaseFreeBuffer() {
+        // release the largest buffers first to satisfy the request with as few releases as possible
+        for (int i = free.size() - 1; i >= 0; i--) {
+            ByteBuffer buffer = free.get(i).pollLast();
+            if (buffer != null)
+                return buffer.capacity();
+        }
+        return 0;
+    }
+
+    @Override
+    protected long freeListMemory() {
+        long memory = 0;
+        for (int i = 0; i < free.size(); i++)
+            memory += free.get(i).size() * (long) sizeClasses[i];
+        return memory;
+    }
+
+    @Override
+    protected int freeSize() {
+        int size = 0;
+        for (Deque<ByteBuffer> buffers : free)
+            size += buffers.size();
+        return size;
+    }
+
+    /**
+     * The index of the smallest size class that can hold the given size, or -1 if the size is larger than every
+     * size class.
+     */
+    private int sizeClassIndex(int size) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (size <= sizeClasses[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The buffer sizes of the size classes of this pool, in increasing order
+     */
+    public int[] sizeClasses() {
+        return sizeClasses.clone();
+    }
+}
@@ -47,6 +47,14 @@ public class TopicConfig {
         "maps offsets to file positions. We preallocate this index file and shrink it only after log " +
         "rolls. You generally should not need to change this setting.";
 
+    public static final String SEGMENT_INDEX_TWO_LEVEL_LOOKUP_ENABLE_CONFIG = "segment.index.two.level.lookup.enable";
+    public static final String SEGMENT_INDEX_TWO_LEVEL_LOOKUP_ENABLE_DOC = "Whether the offset and time indexes of the " +
+        "segments keep the first entry of every page of the index in memory, so that a lookup in an older part of the " +
+        "index, such as when a consumer catches up, reads a single page of the index rather than binary searching " +
+        "over its pages. The entries are kept as the index is written, or as the lookups read them for the indexes " +
+        "loaded from disk, which costs an entry of memory per page read. The indexes of existing segments are used " +
+        "as is, and the setting applies to the segments opened after it is changed.";
+
     public static final String FLUSH_MESSAGES_INTERVAL_CONFIG = "flush.messages";
     public static final String FLUSH_MESSAGES_INTERVAL_DOC = "This setting allows specifying an interval at " +
         "which we will force an fsync of data written to the log. For example if this was set to 1 " +
@@ -153,6 +161,20 @@ public class TopicConfig {
         "accepts 'uncompressed' which is equivalent to no compression; and 'producer' which means retain the " +
         "original compression codec set by the producer.";
 
+    public static final String COMPRESSION_LEVEL_CONFIG = "compression.level";
+    public static final String COMPRESSION_LEVEL_DOC = "The compression level used when the broker compresses the batches " +
+        "of the topic, for instance when <code>compression.type</code> differs from the compression type of the producer. " +
+        "Valid levels are 1 to 9 for 'gzip', 1 to 17 for 'lz4' and -131072 to 22 for 'zstd'; 'snappy' has no levels. When " +
+        "not set, the default level of the codec is used.";
+
+    public static final String COMPRESSION_ZSTD_DICTIONARY_ID_CONFIG = "compression.zstd.dictionary.id";
+    public static final String COMPRESSION_ZSTD_DICTIONARY_ID_DOC = "The id of the zstd dictionary used by the broker when " +
+        "it compresses the batches of the topic with zstd, for instance when the producer used another compression type. " +
+        "The dictionary must be in the broker's <code>compression.zstd.dictionary.dir</code>, otherwise batches are " +
+        "compressed without a dictionary. 0 means no dictionary. Batches compressed by producers are kept as is, whatever " +
+        "dictionary they were compressed with. To roll out a new version of the dictionary, add it to the dictionary " +
+        "directories of the brokers and the dictionaries of the clients, then update this config.";
+
     public static final String PREALLOCATE_CONFIG = "preallocate";
     public static final String PREALLOCATE_DOC = "True if we should preallocate the file on disk when " +
         "creating a new log segment.";
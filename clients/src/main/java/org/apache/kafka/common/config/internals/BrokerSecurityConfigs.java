@@ -36,6 +36,7 @@ public class BrokerSecurityConfigs {
     public static final String SASL_SERVER_CALLBACK_HANDLER_CLASS = "sasl.server.callback.handler.class";
     public static final String SSL_PRINCIPAL_MAPPING_RULES_CONFIG = "ssl.principal.mapping.rules";
     public static final String CONNECTIONS_MAX_REAUTH_MS = "connections.max.reauth.ms";
+    public static final String SSL_FILE_TRANSFER_MODE_CONFIG = "ssl.file.transfer.mode";
 
     public static final String PRINCIPAL_BUILDER_CLASS_DOC = "The fully qualified name of a class that implements the " +
             "KafkaPrincipalBuilder interface, which is used to build the KafkaPrincipal object used during " +
@@ -57,6 +58,13 @@ public class BrokerSecurityConfigs {
            " configuration.";
     public static final String DEFAULT_SSL_PRINCIPAL_MAPPING_RULES = "DEFAULT";
 
+    public static final String SSL_FILE_TRANSFER_MODE_DOC = "How log segment data is read when it is sent to clients and followers" +
+            " over an SSL listener. With <code>copy</code>, each connection reads the segment into a small direct buffer which is" +
+            " then encrypted. With <code>mmap</code>, the data is encrypted directly from memory-mapped regions of the segment, which" +
+            " avoids the read into the intermediate buffer. Sends smaller than 64 KB are copied in both modes. This can be set per" +
+            " listener by prefixing it with the listener prefix (e.g. <code>listener.name.ssl.ssl.file.transfer.mode</code>).";
+    public static final String DEFAULT_SSL_FILE_TRANSFER_MODE = "copy";
+
     public static final String SASL_KERBEROS_PRINCIPAL_TO_LOCAL_RULES_DOC = "A list of rules for mapping from principal " +
             "names to short names (typically operating system usernames). The rules are evaluated in order and the " +
             "first rule that matches a principal name is used to map it to a short name. Any later rules in the list are " +
@@ -46,6 +46,7 @@ public class SslChannelBuilder implements ChannelBuilder, ListenerReconfigurable
     private Mode mode;
     private Map<String, ?> configs;
     private SslPrincipalMapper sslPrincipalMapper;
+    private SslTransportLayer.FileTransferMode fileTransferMode = SslTransportLayer.FileTransferMode.COPY;
     private final Logger log;
 
     /**
@@ -68,6 +69,9 @@ public class SslChannelBuilder implements ChannelBuilder, ListenerReconfigurable
             String sslPrincipalMappingRules = (String) configs.get(BrokerSecurityConfigs.SSL_PRINCIPAL_MAPPING_RULES_CONFIG);
             if (sslPrincipalMappingRules != null)
                 sslPrincipalMapper = SslPrincipalMapper.fromRules(sslPrincipalMappingRules);
+            String sslFileTransferMode = (String) configs.get(BrokerSecurityConfigs.SSL_FILE_TRANSFER_MODE_CONFIG);
+            if (sslFileTransferMode != null)
+                fileTransferMode = SslTransportLayer.FileTransferMode.forName(sslFileTransferMode);
             this.sslFactory = new SslFactory(mode, null, isInterBrokerListener);
             this.sslFactory.configure(this.configs);
         } catch (Exception e) {
@@ -118,7 +122,7 @@ public class SslChannelBuilder implements ChannelBuilder, ListenerReconfigurable
                                                     String host, ChannelMetadataRegistry metadataRegistry) throws IOException {
         SocketChannel socketChannel = (SocketChannel) key.channel();
         return SslTransportLayer.create(id, key, sslFactory.createSslEngine(host, socketChannel.socket().getPort()),
-            metadataRegistry);
+            metadataRegistry, fileTransferMode);
     }
 
     /**
@@ -19,12 +19,14 @@ package org.apache.kafka.common.network;
 import java.io.IOException;
 import java.io.EOFException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.CancelledKeyException;
 
 import java.security.Principal;
+import java.util.Locale;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
@@ -71,6 +73,28 @@ public class SslTransportLayer implements TransportLayer {
         CLOSING
     }
 
+    /**
+     * How file regions are fed to the {@link SSLEngine} by {@link #transferFrom(FileChannel, long, long)}.
+     */
+    public enum FileTransferMode {
+        // Read the file into a per-connection direct buffer which is then encrypted
+        COPY,
+        // Encrypt directly from a memory-mapped region of the file, avoiding the read into an intermediate buffer
+        MMAP;
+
+        public static FileTransferMode forName(String name) {
+            return FileTransferMode.valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // The size of the file regions mapped in `MMAP` mode. Large enough that a region typically covers a whole fetch
+    // response for a partition, so that a send typically maps once.
+    private static final int MAPPED_REGION_SIZE = 1024 * 1024;
+
+    // Mapping and unmapping a region costs a few system calls and page faults per send, which is more than reading
+    // a small send into the `COPY` buffer, so smaller sends are copied even in `MMAP` mode
+    private static final int MIN_MAPPED_TRANSFER_SIZE = 64 * 1024;
+
     private final String channelId;
     private final SSLEngine sslEngine;
     private final SelectionKey key;
@@ -86,17 +110,34 @@ public class SslTransportLayer implements TransportLayer {
     private ByteBuffer netWriteBuffer;
     private ByteBuffer appReadBuffer;
     private ByteBuffer fileChannelBuffer;
+    private final FileTransferMode fileTransferMode;
+    private MappedByteBuffer mappedFileRegion;
+    private FileChannel mappedFileChannel;
+    private long mappedFileRegionPosition;
     private boolean hasBytesBuffered;
 
     public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine,
                                            ChannelMetadataRegistry metadataRegistry) throws IOException {
-        return new SslTransportLayer(channelId, key, sslEngine, metadataRegistry);
+        return create(channelId, key, sslEngine, metadataRegistry, FileTransferMode.COPY);
+    }
+
+    public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine,
+                                           ChannelMetadataRegistry metadataRegistry,
+                                           FileTransferMode fileTransferMode) throws IOException {
+        return new SslTransportLayer(channelId, key, sslEngine, metadataRegistry, fileTransferMode);
     }
 
     // Prefer `create`, only use this in tests
     SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine,
                       ChannelMetadataRegistry metadataRegistry) {
+        this(channelId, key, sslEngine, metadataRegistry, FileTransferMode.COPY);
+    }
+
+    // Prefer `create`, only use this in tests
+    SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine,
+                      ChannelMetadataRegistry metadataRegistry, FileTransferMode fileTransferMode) {
         this.channelId = channelId;
+        this.fileTransferMode = fileTransferMode;
         this.key = key;
         this.socketChannel = (SocketChannel) key.channel();
         this.sslEngine = sslEngine;
@@ -206,6 +247,7 @@ public class SslTransportLayer implements TransportLayer {
                 ByteBufferUnmapper.unmap("fileChannelBuffer", fileChannelBuffer);
                 fileChannelBuffer = null;
             }
+            unmapFileRegion();
         }
     }
 
@@ -952,6 +994,13 @@ public class SslTransportLayer implements TransportLayer {
             return 0;
         int totalBytesToWrite = (int) Math.min(Math.min(count, channelSize - position), Integer.MAX_VALUE);
 
+        // a send that started in the copy buffer must be drained from it, since the caller's position does not
+        // include the bytes still buffered
+        boolean copyBufferDrained = fileChannelBuffer == null || !fileChannelBuffer.hasRemaining();
+        if (fileTransferMode == FileTransferMode.MMAP && copyBufferDrained
+                && (mappedFileRegion != null || totalBytesToWrite >= MIN_MAPPED_TRANSFER_SIZE))
+            return transferFromMappedRegion(fileChannel, channelSize, position, totalBytesToWrite);
+
         if (fileChannelBuffer == null) {
             // Pick a size that allows for reasonably efficient disk reads, keeps the memory overhead per connection
             // manageable and can typically be drained in a single `write` call. The `netWriteBuffer` is typically 16k
@@ -998,4 +1047,75 @@ public class SslTransportLayer implements TransportLayer {
             throw e;
         }
     }
+
+    /**
+     * Encrypts straight from memory-mapped regions of the file. Unlike the `COPY` mode, there is no intermediate
+     * buffer holding data between calls: on a partial write we return the bytes consumed by the `SSLEngine` and
+     * the caller passes the updated position on the next call. The current region is kept mapped across calls so
+     * that a send spanning several calls maps it only once, and it is unmapped once the requested range has been
+     * fully written so that a connection does not keep deleted segments mapped.
+     *
+     * Regions never extend past the current size of the file. If the file is truncated while a region is being
+     * read, the access faults and the JVM raises an `InternalError`, which is converted to an `IOException` so that
+     * only this connection fails.
+     */
+    private long transferFromMappedRegion(FileChannel fileChannel, long channelSize, long position,
+                                          int totalBytesToWrite) throws IOException {
+        int totalBytesWritten = 0;
+        long pos = position;
+        try {
+            while (totalBytesWritten < totalBytesToWrite) {
+                ByteBuffer region = mappedFileRegion(fileChannel, channelSize, pos, totalBytesToWrite - totalBytesWritten);
+                int networkBytesWritten = write(region);
+                totalBytesWritten += networkBytesWritten;
+                pos += networkBytesWritten;
+                if (region.hasRemaining())
+                    break;
+            }
+            return totalBytesWritten;
+        } catch (IOException e) {
+            if (totalBytesWritten > 0)
+                return totalBytesWritten;
+            throw e;
+        } catch (InternalError e) {
+            // the state of the `SSLEngine` is unknown after a fault in the middle of a wrap, so the connection
+            // must be closed even if some bytes were written
+            unmapFileRegion();
+            throw new IOException("Failed to read the mapped region of the file at position " + pos +
+                ", it may have been truncated", e);
+        } finally {
+            if (totalBytesWritten == totalBytesToWrite)
+                unmapFileRegion();
+        }
+    }
+
+    /**
+     * Returns a view of the mapped file region starting at `position` and containing at most `size` bytes,
+     * mapping a new region if the current one does not contain `position` or extends past `channelSize`, e.g.
+     * because the file was truncated since the region was mapped.
+     */
+    private ByteBuffer mappedFileRegion(FileChannel fileChannel, long channelSize, long position, int size) throws IOException {
+        if (mappedFileRegion == null || mappedFileChannel != fileChannel || position < mappedFileRegionPosition
+                || position >= mappedFileRegionPosition + mappedFileRegion.capacity()
+                || mappedFileRegionPosition + mappedFileRegion.capacity() > channelSize) {
+            unmapFileRegion();
+            long regionSize = Math.min(MAPPED_REGION_SIZE, channelSize - position);
+            mappedFileRegion = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+            mappedFileChannel = fileChannel;
+            mappedFileRegionPosition = position;
+        }
+        ByteBuffer region = mappedFileRegion.duplicate();
+        int regionOffset = (int) (position - mappedFileRegionPosition);
+        region.position(regionOffset);
+        region.limit((int) Math.min(region.capacity(), (long) regionOffset + size));
+        return region;
+    }
+
+    private void unmapFileRegion() throws IOException {
+        if (mappedFileRegion != null) {
+            ByteBufferUnmapper.unmap("mappedFileRegion", mappedFileRegion);
+            mappedFileRegion = null;
+            mappedFileChannel = null;
+        }
+    }
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.kafka.common.record;
 
+import org.apache.kafka.common.InvalidRecordException;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.utils.ByteBufferInputStream;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
@@ -28,6 +29,7 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -50,16 +52,34 @@ public enum CompressionType {
     GZIP(1, "gzip", 1.0f) {
         @Override
         public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion) {
+            return wrapForOutput(buffer, messageVersion, null, null);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion, Integer level,
+                                          ZstdDictionary zstdDictionary) {
             try {
                 // Set input buffer (uncompressed) to 16 KB (none by default) and output buffer (compressed) to
                 // 8 KB (0.5 KB by default) to ensure reasonable performance in cases where the caller passes a small
                 // number of bytes to write (potentially a single byte)
-                return new BufferedOutputStream(new GZIPOutputStream(buffer, 8 * 1024), 16 * 1024);
+                GZIPOutputStream gzipOutputStream = level == null ? new GZIPOutputStream(buffer, 8 * 1024) :
+                    new GZIPOutputStream(buffer, 8 * 1024) {
+                        {
+                            // nothing has been deflated yet, so the level applies to the whole stream
+                            def.setLevel(level);
+                        }
+                    };
+                return new BufferedOutputStream(gzipOutputStream, 16 * 1024);
             } catch (Exception e) {
                 throw new KafkaException(e);
             }
         }
 
+        @Override
+        public boolean isValidLevel(int level) {
+            return level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION;
+        }
+
         @Override
         public InputStream wrapForInput(ByteBuffer buffer, byte messageVersion, BufferSupplier decompressionBufferSupplier) {
             try {
@@ -97,13 +117,26 @@ public enum CompressionType {
     LZ4(3, "lz4", 1.0f) {
         @Override
         public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion) {
+            return wrapForOutput(buffer, messageVersion, null, null);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion, Integer level,
+                                          ZstdDictionary zstdDictionary) {
             try {
-                return new KafkaLZ4BlockOutputStream(buffer, messageVersion == RecordBatch.MAGIC_VALUE_V0);
+                if (level == null)
+                    return new KafkaLZ4BlockOutputStream(buffer, messageVersion == RecordBatch.MAGIC_VALUE_V0);
+                return new KafkaLZ4BlockOutputStream(buffer, messageVersion == RecordBatch.MAGIC_VALUE_V0, level);
             } catch (Throwable e) {
                 throw new KafkaException(e);
             }
         }
 
+        @Override
+        public boolean isValidLevel(int level) {
+            return level >= KafkaLZ4BlockOutputStream.MIN_LEVEL && level <= KafkaLZ4BlockOutputStream.MAX_LEVEL;
+        }
+
         @Override
         public InputStream wrapForInput(ByteBuffer inputBuffer, byte messageVersion, BufferSupplier decompressionBufferSupplier) {
             try {
@@ -118,23 +151,55 @@ public enum CompressionType {
     ZSTD(4, "zstd", 1.0f) {
         @Override
         public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion) {
+            return wrapForOutput(buffer, messageVersion, null, null);
+        }
+
+        @Override
+        public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion, Integer level,
+                                          ZstdDictionary zstdDictionary) {
             try {
-                return (OutputStream) ZstdConstructors.OUTPUT.invoke(buffer);
+                OutputStream outputStream = level == null ?
+                    (OutputStream) ZstdConstructors.OUTPUT.invoke(buffer) :
+                    (OutputStream) ZstdConstructors.OUTPUT_WITH_LEVEL.invoke(buffer, (int) level);
+                if (zstdDictionary != null)
+                    ZstdConstructors.OUTPUT_SET_DICT.invoke(outputStream, zstdDictionary.bytes());
+                return outputStream;
             } catch (Throwable e) {
                 throw new KafkaException(e);
             }
         }
 
+        @Override
+        public boolean isValidLevel(int level) {
+            return level >= ZSTD_MIN_LEVEL && level <= ZSTD_MAX_LEVEL;
+        }
+
         @Override
         public InputStream wrapForInput(ByteBuffer buffer, byte messageVersion, BufferSupplier decompressionBufferSupplier) {
+            // the frame header tells which dictionary, if any, the batch was compressed with
+            int dictionaryId = ZstdDictionary.frameDictionaryId(buffer);
+            ZstdDictionary dictionary = null;
+            if (dictionaryId != 0) {
+                dictionary = ZstdDictionary.forId(dictionaryId);
+                if (dictionary == null)
+                    throw new InvalidRecordException("Cannot decompress zstd data compressed with unknown dictionary id " +
+                        Integer.toUnsignedString(dictionaryId));
+            }
             try {
-                return (InputStream) ZstdConstructors.INPUT.invoke(new ByteBufferInputStream(buffer));
+                InputStream inputStream = (InputStream) ZstdConstructors.INPUT.invoke(new ByteBufferInputStream(buffer));
+                if (dictionary != null)
+                    ZstdConstructors.INPUT_SET_DICT.invoke(inputStream, dictionary.bytes());
+                return inputStream;
             } catch (Throwable e) {
                 throw new KafkaException(e);
             }
         }
     };
 
+    // The range of levels of zstd, negative levels trade compression ratio for speed
+    private static final int ZSTD_MIN_LEVEL = -(1 << 17);
+    private static final int ZSTD_MAX_LEVEL = 22;
+
     public final int id;
     public final String name;
     public final float rate;
@@ -155,6 +220,28 @@ public enum CompressionType {
      */
     public abstract OutputStream wrapForOutput(ByteBufferOutputStream bufferStream, byte messageVersion);
 
+    /**
+     * Wrap bufferStream with an OutputStream that will compress data with this CompressionType, at the given level
+     * and with the given dictionary. Compression types without levels ignore the level, and the dictionary is only
+     * used by {@link #ZSTD}.
+     *
+     * @param level The compression level, which must be valid according to {@link #isValidLevel(int)}, or null to use
+     *              the default level of the codec
+     * @param zstdDictionary The dictionary to compress with, or null to compress without a dictionary
+     */
+    public OutputStream wrapForOutput(ByteBufferOutputStream bufferStream, byte messageVersion, Integer level,
+                                      ZstdDictionary zstdDictionary) {
+        return wrapForOutput(bufferStream, messageVersion);
+    }
+
+    /**
+     * Check whether the given compression level is supported by this CompressionType. Compression types without
+     * levels accept any level.
+     */
+    public boolean isValidLevel(int level) {
+        return true;
+    }
+
     /**
      * Wrap buffer with an InputStream that will decompress data with this CompressionType.
      *
@@ -219,6 +306,20 @@ public enum CompressionType {
             MethodType.methodType(void.class, InputStream.class));
         static final MethodHandle OUTPUT = findConstructor("com.github.luben.zstd.ZstdOutputStream",
             MethodType.methodType(void.class, OutputStream.class));
+        static final MethodHandle OUTPUT_WITH_LEVEL = findConstructor("com.github.luben.zstd.ZstdOutputStream",
+            MethodType.methodType(void.class, OutputStream.class, int.class));
+        static final MethodHandle INPUT_SET_DICT = findSetDict("com.github.luben.zstd.ZstdInputStream");
+        static final MethodHandle OUTPUT_SET_DICT = findSetDict("com.github.luben.zstd.ZstdOutputStream");
+
+        private static MethodHandle findSetDict(String className) {
+            try {
+                Class<?> streamClass = Class.forName(className);
+                return MethodHandles.publicLookup().findVirtual(streamClass, "setDict",
+                    MethodType.methodType(streamClass, byte[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     private static MethodHandle findConstructor(String className, MethodType methodType) {
@@ -22,6 +22,7 @@ import org.apache.kafka.common.errors.CorruptRecordException;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 import org.apache.kafka.common.utils.ByteUtils;
+import org.apache.kafka.common.utils.Checksums;
 import org.apache.kafka.common.utils.CloseableIterator;
 import org.apache.kafka.common.utils.Crc32C;
 
@@ -36,6 +37,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.zip.Checksum;
 
 import static org.apache.kafka.common.record.Records.LOG_OVERHEAD;
 
@@ -216,6 +218,19 @@ public class DefaultRecordBatch extends AbstractRecordBatch implements MutableRe
         return CompressionType.forId(attributes() & COMPRESSION_CODEC_MASK);
     }
 
+    /**
+     * The registered dictionary the records of this batch were compressed with, or null if the batch is not zstd
+     * compressed or was compressed without a dictionary.
+     */
+    ZstdDictionary zstdDictionary() {
+        if (compressionType() != CompressionType.ZSTD)
+            return null;
+        ByteBuffer records = buffer.duplicate();
+        records.position(RECORDS_OFFSET);
+        int dictionaryId = ZstdDictionary.frameDictionaryId(records);
+        return dictionaryId == 0 ? null : ZstdDictionary.forId(dictionaryId);
+    }
+
     @Override
     public int sizeInBytes() {
         return LOG_OVERHEAD + buffer.getInt(LENGTH_OFFSET);
@@ -348,6 +363,20 @@ public class DefaultRecordBatch extends AbstractRecordBatch implements MutableRe
             return uncompressedIterator();
     }
 
+    @Override
+    public RecordCursor cursor(BufferSupplier bufferSupplier) {
+        if (count() == 0)
+            return RecordCursor.wrap(CloseableIterator.wrap(Collections.emptyIterator()));
+
+        final ByteBuffer buffer = this.buffer.duplicate();
+        buffer.position(RECORDS_OFFSET);
+        if (!isCompressed())
+            return new DefaultRecordCursor(buffer, null);
+
+        return new DefaultRecordCursor(null, new DataInputStream(compressionType().wrapForInput(buffer, magic(),
+            bufferSupplier)));
+    }
+
     @Override
     public void setLastOffset(long offset) {
         buffer.putLong(BASE_OFFSET_OFFSET, offset - lastOffsetDelta());
@@ -639,8 +668,111 @@ public class DefaultRecordBatch extends AbstractRecordBatch implements MutableRe
         }
     }
 
+    /**
+     * A cursor which reads every record of the batch into the same {@link DefaultRecordView}. Uncompressed records
+     * are read in place, while decompressed records are copied into a single buffer which is reused across records
+     * and grown as needed.
+     */
+    private class DefaultRecordCursor implements RecordCursor {
+        private final DataInputStream inputStream;
+        private final DefaultRecordView record = new DefaultRecordView();
+        private final Long logAppendTime;
+        private final long baseOffset;
+        private final long firstTimestamp;
+        private final int baseSequence;
+        private final int numRecords;
+        private ByteBuffer buffer;
+        private int readRecords = 0;
+
+        DefaultRecordCursor(ByteBuffer buffer, DataInputStream inputStream) {
+            this.buffer = buffer;
+            this.inputStream = inputStream;
+            this.logAppendTime = timestampType() == TimestampType.LOG_APPEND_TIME ? maxTimestamp() : null;
+            this.baseOffset = baseOffset();
+            this.firstTimestamp = firstTimestamp();
+            this.baseSequence = baseSequence();
+            int numRecords = count();
+            if (numRecords < 0)
+                throw new InvalidRecordException("Found invalid record count " + numRecords + " in magic v" +
+                        magic() + " batch");
+            this.numRecords = numRecords;
+        }
+
+        @Override
+        public boolean advance() {
+            if (readRecords >= numRecords)
+                return false;
+
+            readRecords++;
+            try {
+                if (inputStream == null)
+                    readInPlace();
+                else
+                    readFromStream();
+            } catch (BufferUnderflowException | EOFException e) {
+                throw new InvalidRecordException("Incorrect declared batch size, premature EOF reached");
+            } catch (IOException e) {
+                throw new KafkaException("Failed to decompress record stream", e);
+            }
+
+            // Validate that the actual size of the batch is equal to declared size
+            // by checking that after reading declared number of items, there no items left
+            if (readRecords == numRecords && !ensureNoneRemaining())
+                throw new InvalidRecordException("Incorrect declared batch size, records still remaining in file");
+            return true;
+        }
+
+        private void readInPlace() {
+            int sizeOfBodyInBytes = ByteUtils.readVarint(buffer);
+            if (buffer.remaining() < sizeOfBodyInBytes)
+                throw new BufferUnderflowException();
+            record.readFrom(buffer, sizeOfBodyInBytes, baseOffset, firstTimestamp, baseSequence, logAppendTime);
+        }
+
+        private void readFromStream() throws IOException {
+            int sizeOfBodyInBytes = ByteUtils.readVarint(inputStream);
+            if (sizeOfBodyInBytes < 0)
+                throw new InvalidRecordException("Invalid negative record size " + sizeOfBodyInBytes);
+            if (buffer == null || buffer.capacity() < sizeOfBodyInBytes)
+                buffer = ByteBuffer.allocate(Math.max(sizeOfBodyInBytes, buffer == null ? 0 : 2 * buffer.capacity()));
+            buffer.clear();
+            inputStream.readFully(buffer.array(), 0, sizeOfBodyInBytes);
+            buffer.limit(sizeOfBodyInBytes);
+            record.readFrom(buffer, sizeOfBodyInBytes, baseOffset, firstTimestamp, baseSequence, logAppendTime);
+        }
+
+        private boolean ensureNoneRemaining() {
+            if (inputStream == null)
+                return !buffer.hasRemaining();
+            try {
+                return inputStream.read() == -1;
+            } catch (IOException e) {
+                throw new KafkaException("Error checking for remaining bytes after reading batch", e);
+            }
+        }
+
+        @Override
+        public Record current() {
+            return record;
+        }
+
+        @Override
+        public void close() {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    throw new KafkaException("Failed to close record stream", e);
+                }
+            }
+        }
+    }
+
     static class DefaultFileChannelRecordBatch extends FileLogInputStream.FileChannelRecordBatch {
 
+        // the size of the chunks read from the file to validate a batch which has not been loaded
+        private static final int CHECKSUM_CHUNK_SIZE = 32 * 1024;
+
         DefaultFileChannelRecordBatch(long offset,
                                       byte magic,
                                       FileRecords fileRecords,
@@ -709,6 +841,46 @@ public class DefaultRecordBatch extends AbstractRecordBatch implements MutableRe
             return loadBatchHeader().partitionLeaderEpoch();
         }
 
+        /**
+         * Unless the batch has already been loaded, the checksum is computed by reading the file in chunks, so that
+         * validating the batches of a segment (e.g. during recovery) does not load each of them in memory.
+         */
+        @Override
+        public boolean isValid() {
+            if (isFullBatchLoaded())
+                return super.isValid();
+            return sizeInBytes() >= RECORD_BATCH_OVERHEAD && checksum() == computeChecksum();
+        }
+
+        @Override
+        public void ensureValid() {
+            if (isFullBatchLoaded()) {
+                super.ensureValid();
+                return;
+            }
+
+            if (sizeInBytes() < RECORD_BATCH_OVERHEAD)
+                throw new CorruptRecordException("Record batch is corrupt (the size " + sizeInBytes() +
+                        " is smaller than the minimum allowed overhead " + RECORD_BATCH_OVERHEAD + ")");
+
+            long computedChecksum = computeChecksum();
+            if (checksum() != computedChecksum)
+                throw new CorruptRecordException("Record is corrupt (stored crc = " + checksum()
+                        + ", computed crc = " + computedChecksum + ")");
+        }
+
+        private long computeChecksum() {
+            int length = sizeInBytes() - ATTRIBUTES_OFFSET;
+            Checksum crc = Crc32C.create();
+            try {
+                Checksums.update(crc, fileRecords.channel(), position + ATTRIBUTES_OFFSET, length,
+                        ByteBuffer.allocate(Math.min(length, CHECKSUM_CHUNK_SIZE)));
+            } catch (IOException e) {
+                throw new KafkaException("Failed to read record batch at position " + position + " from " + fileRecords, e);
+            }
+            return crc.getValue();
+        }
+
         @Override
         protected int headerSize() {
             return RECORD_BATCH_OVERHEAD;
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.record;
+
+import org.apache.kafka.common.InvalidRecordException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.utils.ByteUtils;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.apache.kafka.common.record.RecordBatch.MAGIC_VALUE_V2;
+
+/**
+ * A mutable view of a record in the {@link DefaultRecord} format, used by {@link RecordCursor} implementations to
+ * read the records of a batch without allocating an object per record. Reading a record only records the positions
+ * of its fields in the underlying buffer:
+ * <ul>
+ * <li>{@link #key()} and {@link #value()} return the same buffer instances for every record, with their position
+ *     and limit set to the bounds of the field;</li>
+ * <li>headers are only decoded when {@link #headers()} is called. Decoded header values are copied, so they remain
+ *     valid after the view has moved to another record.</li>
+ * </ul>
+ */
+final class DefaultRecordView implements Record {
+
+    private ByteBuffer buffer;
+    private ByteBuffer keyBuffer;
+    private ByteBuffer valueBuffer;
+
+    private int sizeInBytes;
+    private long offset;
+    private long timestamp;
+    private int sequence;
+    private int keyPosition;
+    private int keySize;
+    private int valuePosition;
+    private int valueSize;
+    private int headersPosition;
+    private int numHeaders;
+    private Header[] headers;
+
+    /**
+     * Position the view on the record whose body starts at the current position of the buffer. On return, the
+     * position of the buffer is at the end of the record.
+     */
+    void readFrom(ByteBuffer buffer,
+                  int sizeOfBodyInBytes,
+                  long baseOffset,
+                  long baseTimestamp,
+                  int baseSequence,
+                  Long logAppendTime) {
+        if (buffer != this.buffer) {
+            this.buffer = buffer;
+            this.keyBuffer = buffer.duplicate();
+            this.valueBuffer = buffer.duplicate();
+        }
+        try {
+            int recordStart = buffer.position();
+            // there are no used record attributes at the moment
+            buffer.get();
+            long timestampDelta = ByteUtils.readVarlong(buffer);
+            this.timestamp = logAppendTime != null ? logAppendTime : baseTimestamp + timestampDelta;
+
+            int offsetDelta = ByteUtils.readVarint(buffer);
+            this.offset = baseOffset + offsetDelta;
+            this.sequence = baseSequence >= 0 ?
+                    DefaultRecordBatch.incrementSequence(baseSequence, offsetDelta) :
+                    RecordBatch.NO_SEQUENCE;
+
+            this.keySize = ByteUtils.readVarint(buffer);
+            this.keyPosition = buffer.position();
+            if (keySize > 0)
+                buffer.position(keyPosition + keySize);
+
+            this.valueSize = ByteUtils.readVarint(buffer);
+            this.valuePosition = buffer.position();
+            if (valueSize > 0)
+                buffer.position(valuePosition + valueSize);
+
+            this.numHeaders = ByteUtils.readVarint(buffer);
+            if (numHeaders < 0)
+                throw new InvalidRecordException("Found invalid number of record headers " + numHeaders);
+            this.headersPosition = buffer.position();
+            this.headers = numHeaders == 0 ? Record.EMPTY_HEADERS : null;
+            skipHeaders(buffer, numHeaders);
+
+            // validate whether we have read all header bytes in the current record
+            if (buffer.position() - recordStart != sizeOfBodyInBytes)
+                throw new InvalidRecordException("Invalid record size: expected to read " + sizeOfBodyInBytes +
+                        " bytes in record payload, but instead read " + (buffer.position() - recordStart));
+
+            this.sizeInBytes = ByteUtils.sizeOfVarint(sizeOfBodyInBytes) + sizeOfBodyInBytes;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new InvalidRecordException("Found invalid record structure", e);
+        }
+    }
+
+    private static void skipHeaders(ByteBuffer buffer, int numHeaders) {
+        for (int i = 0; i < numHeaders; i++) {
+            int headerKeySize = ByteUtils.readVarint(buffer);
+            if (headerKeySize < 0)
+                throw new InvalidRecordException("Invalid negative header key size " + headerKeySize);
+            buffer.position(buffer.position() + headerKeySize);
+
+            int headerValueSize = ByteUtils.readVarint(buffer);
+            if (headerValueSize > 0)
+                buffer.position(buffer.position() + headerValueSize);
+        }
+    }
+
+    private Header[] readHeaders() {
+        ByteBuffer headerBuffer = buffer.duplicate();
+        headerBuffer.position(headersPosition);
+        Header[] headers = new Header[numHeaders];
+        for (int i = 0; i < numHeaders; i++) {
+            int headerKeySize = ByteUtils.readVarint(headerBuffer);
+            String headerKey = Utils.utf8(headerBuffer, headerKeySize);
+            headerBuffer.position(headerBuffer.position() + headerKeySize);
+
+            byte[] headerValue = null;
+            int headerValueSize = ByteUtils.readVarint(headerBuffer);
+            if (headerValueSize >= 0) {
+                headerValue = Utils.toArray(headerBuffer, headerValueSize);
+                headerBuffer.position(headerBuffer.position() + headerValueSize);
+            }
+
+            headers[i] = new RecordHeader(headerKey, headerValue);
+        }
+        return headers;
+    }
+
+    private static ByteBuffer field(ByteBuffer fieldBuffer, int position, int size) {
+        // the limit is reset first so that the new position is always within it
+        fieldBuffer.limit(fieldBuffer.capacity());
+        fieldBuffer.position(position);
+        fieldBuffer.limit(position + size);
+        return fieldBuffer;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public int sequence() {
+        return sequence;
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public Long checksumOrNull() {
+        return null;
+    }
+
+    @Override
+    public boolean isValid() {
+        // records of this format are validated with the checksum at the batch level
+        return true;
+    }
+
+    @Override
+    public void ensureValid() {}
+
+    @Override
+    public int keySize() {
+        return keySize < 0 ? -1 : keySize;
+    }
+
+    @Override
+    public boolean hasKey() {
+        return keySize >= 0;
+    }
+
+    @Override
+    public ByteBuffer key() {
+        return keySize < 0 ? null : field(keyBuffer, keyPosition, keySize);
+    }
+
+    @Override
+    public int valueSize() {
+        return valueSize < 0 ? -1 : valueSize;
+    }
+
+    @Override
+    public boolean hasValue() {
+        return valueSize >= 0;
+    }
+
+    @Override
+    public ByteBuffer value() {
+        return valueSize < 0 ? null : field(valueBuffer, valuePosition, valueSize);
+    }
+
+    @Override
+    public boolean hasMagic(byte magic) {
+        return magic >= MAGIC_VALUE_V2;
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return false;
+    }
+
+    @Override
+    public boolean hasTimestampType(TimestampType timestampType) {
+        return false;
+    }
+
+    @Override
+    public Header[] headers() {
+        if (headers == null)
+            headers = readHeaders();
+        return headers;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DefaultRecord(offset=%d, timestamp=%d, key=%d bytes, value=%d bytes)",
+                offset,
+                timestamp,
+                Math.max(keySize, 0),
+                Math.max(valueSize, 0));
+    }
+}
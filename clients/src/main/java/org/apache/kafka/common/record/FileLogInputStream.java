@@ -157,6 +157,11 @@ public class FileLogInputStream implements LogInputStream<FileLogInputStream.Fil
             return loadFullBatch().streamingIterator(bufferSupplier);
         }
 
+        @Override
+        public RecordCursor cursor(BufferSupplier bufferSupplier) {
+            return loadFullBatch().cursor(bufferSupplier);
+        }
+
         @Override
         public boolean isValid() {
             return loadFullBatch().isValid();
@@ -197,6 +202,10 @@ public class FileLogInputStream implements LogInputStream<FileLogInputStream.Fil
             return fullBatch;
         }
 
+        protected boolean isFullBatchLoaded() {
+            return fullBatch != null;
+        }
+
         protected RecordBatch loadBatchHeader() {
             if (fullBatch != null)
                 return fullBatch;
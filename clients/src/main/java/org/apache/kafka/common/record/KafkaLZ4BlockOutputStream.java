@@ -46,6 +46,10 @@ public final class KafkaLZ4BlockOutputStream extends OutputStream {
     public static final int BLOCKSIZE_1MB = 6;
     public static final int BLOCKSIZE_4MB = 7;
 
+    // The range of levels of the high compression compressor
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 17;
+
     private final LZ4Compressor compressor;
     private final XXHash32 checksum;
     private final boolean useBrokenFlagDescriptorChecksum;
@@ -71,8 +75,13 @@ public final class KafkaLZ4BlockOutputStream extends OutputStream {
      * @throws IOException
      */
     public KafkaLZ4BlockOutputStream(OutputStream out, int blockSize, boolean blockChecksum, boolean useBrokenFlagDescriptorChecksum) throws IOException {
+        this(out, blockSize, blockChecksum, useBrokenFlagDescriptorChecksum, LZ4Factory.fastestInstance().fastCompressor());
+    }
+
+    private KafkaLZ4BlockOutputStream(OutputStream out, int blockSize, boolean blockChecksum, boolean useBrokenFlagDescriptorChecksum,
+                                      LZ4Compressor compressor) throws IOException {
         this.out = out;
-        compressor = LZ4Factory.fastestInstance().fastCompressor();
+        this.compressor = compressor;
         checksum = XXHashFactory.fastestInstance().hash32();
         this.useBrokenFlagDescriptorChecksum = useBrokenFlagDescriptorChecksum;
         bd = new BD(blockSize);
@@ -125,6 +134,19 @@ public final class KafkaLZ4BlockOutputStream extends OutputStream {
         this(out, BLOCKSIZE_64KB, false, useBrokenHC);
     }
 
+    /**
+     * Create a new {@link OutputStream} that will compress data using the high compression variant of the LZ4
+     * algorithm, which is slower than the default one but compresses better.
+     *
+     * @param out The output stream to compress
+     * @param useBrokenHC When true, writes an incorrect FrameDescriptor checksum compatible with older kafka clients.
+     * @param level The compression level, between {@link #MIN_LEVEL} and {@link #MAX_LEVEL}
+     * @throws IOException
+     */
+    public KafkaLZ4BlockOutputStream(OutputStream out, boolean useBrokenHC, int level) throws IOException {
+        this(out, BLOCKSIZE_64KB, false, useBrokenHC, LZ4Factory.fastestInstance().highCompressor(level));
+    }
+
     /**
      * Check whether KafkaLZ4BlockInputStream is configured to write an
      * incorrect Frame Descriptor checksum, which is useful for
@@ -246,10 +246,15 @@ public class MemoryRecords extends AbstractRecords {
         long baseOffset = magic >= RecordBatch.MAGIC_VALUE_V2 ?
                 originalBatch.baseOffset() : retainedRecords.get(0).offset();
 
+        // keep the dictionary of the original batch so that the rebuilt batch compresses as well as it did
+        ZstdDictionary zstdDictionary = originalBatch instanceof DefaultRecordBatch ?
+                ((DefaultRecordBatch) originalBatch).zstdDictionary() : null;
+
         MemoryRecordsBuilder builder = new MemoryRecordsBuilder(bufferOutputStream, magic,
-                originalBatch.compressionType(), timestampType, baseOffset, logAppendTime, originalBatch.producerId(),
-                originalBatch.producerEpoch(), originalBatch.baseSequence(), originalBatch.isTransactional(),
-                originalBatch.isControlBatch(), originalBatch.partitionLeaderEpoch(), bufferOutputStream.limit());
+                originalBatch.compressionType(), null, zstdDictionary, timestampType, baseOffset, logAppendTime,
+                originalBatch.producerId(), originalBatch.producerEpoch(), originalBatch.baseSequence(),
+                originalBatch.isTransactional(), originalBatch.isControlBatch(), originalBatch.partitionLeaderEpoch(),
+                bufferOutputStream.limit());
 
         for (Record record : retainedRecords)
             builder.append(record);
@@ -502,8 +507,43 @@ public class MemoryRecords extends AbstractRecords {
                                                boolean isTransactional,
                                                boolean isControlBatch,
                                                int partitionLeaderEpoch) {
-        return new MemoryRecordsBuilder(buffer, magic, compressionType, timestampType, baseOffset,
-                logAppendTime, producerId, producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch,
+        return builder(buffer, magic, compressionType, null, null, timestampType, baseOffset, logAppendTime, producerId,
+                producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch);
+    }
+
+    public static MemoryRecordsBuilder builder(ByteBuffer buffer,
+                                               byte magic,
+                                               CompressionType compressionType,
+                                               ZstdDictionary zstdDictionary,
+                                               TimestampType timestampType,
+                                               long baseOffset,
+                                               long logAppendTime,
+                                               long producerId,
+                                               short producerEpoch,
+                                               int baseSequence,
+                                               boolean isTransactional,
+                                               boolean isControlBatch,
+                                               int partitionLeaderEpoch) {
+        return builder(buffer, magic, compressionType, null, zstdDictionary, timestampType, baseOffset, logAppendTime,
+                producerId, producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch);
+    }
+
+    public static MemoryRecordsBuilder builder(ByteBuffer buffer,
+                                               byte magic,
+                                               CompressionType compressionType,
+                                               Integer compressionLevel,
+                                               ZstdDictionary zstdDictionary,
+                                               TimestampType timestampType,
+                                               long baseOffset,
+                                               long logAppendTime,
+                                               long producerId,
+                                               short producerEpoch,
+                                               int baseSequence,
+                                               boolean isTransactional,
+                                               boolean isControlBatch,
+                                               int partitionLeaderEpoch) {
+        return new MemoryRecordsBuilder(buffer, magic, compressionType, compressionLevel, zstdDictionary, timestampType,
+                baseOffset, logAppendTime, producerId, producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch,
                 buffer.remaining());
     }
 
@@ -48,6 +48,8 @@ public class MemoryRecordsBuilder implements AutoCloseable {
 
     private final TimestampType timestampType;
     private final CompressionType compressionType;
+    private final Integer compressionLevel;
+    private final ZstdDictionary zstdDictionary;
     // Used to hold a reference to the underlying ByteBuffer so that we can write the record batch header and access
     // the written bytes. ByteBufferOutputStream allocates a new ByteBuffer if the existing one is not large enough,
     // so it's not safe to hold a direct reference to the underlying ByteBuffer.
@@ -95,6 +97,25 @@ public class MemoryRecordsBuilder implements AutoCloseable {
                                 boolean isControlBatch,
                                 int partitionLeaderEpoch,
                                 int writeLimit) {
+        this(bufferStream, magic, compressionType, null, null, timestampType, baseOffset, logAppendTime, producerId,
+                producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch, writeLimit);
+    }
+
+    public MemoryRecordsBuilder(ByteBufferOutputStream bufferStream,
+                                byte magic,
+                                CompressionType compressionType,
+                                Integer compressionLevel,
+                                ZstdDictionary zstdDictionary,
+                                TimestampType timestampType,
+                                long baseOffset,
+                                long logAppendTime,
+                                long producerId,
+                                short producerEpoch,
+                                int baseSequence,
+                                boolean isTransactional,
+                                boolean isControlBatch,
+                                int partitionLeaderEpoch,
+                                int writeLimit) {
         if (magic > RecordBatch.MAGIC_VALUE_V0 && timestampType == TimestampType.NO_TIMESTAMP_TYPE)
             throw new IllegalArgumentException("TimestampType must be set for magic >= 0");
         if (magic < RecordBatch.MAGIC_VALUE_V2) {
@@ -109,6 +130,8 @@ public class MemoryRecordsBuilder implements AutoCloseable {
         this.magic = magic;
         this.timestampType = timestampType;
         this.compressionType = compressionType;
+        this.compressionLevel = compressionLevel;
+        this.zstdDictionary = zstdDictionary;
         this.baseOffset = baseOffset;
         this.logAppendTime = logAppendTime;
         this.numRecords = 0;
@@ -127,7 +150,8 @@ public class MemoryRecordsBuilder implements AutoCloseable {
 
         bufferStream.position(initialPosition + batchHeaderSizeInBytes);
         this.bufferStream = bufferStream;
-        this.appendStream = new DataOutputStream(compressionType.wrapForOutput(this.bufferStream, magic));
+        this.appendStream = new DataOutputStream(compressionType.wrapForOutput(this.bufferStream, magic,
+                compressionLevel, zstdDictionary));
     }
 
     /**
@@ -163,9 +187,38 @@ public class MemoryRecordsBuilder implements AutoCloseable {
                                 boolean isControlBatch,
                                 int partitionLeaderEpoch,
                                 int writeLimit) {
-        this(new ByteBufferOutputStream(buffer), magic, compressionType, timestampType, baseOffset, logAppendTime,
-                producerId, producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch,
-                writeLimit);
+        this(buffer, magic, compressionType, null, null, timestampType, baseOffset, logAppendTime, producerId,
+                producerEpoch, baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch, writeLimit);
+    }
+
+    /**
+     * Construct a new builder which compresses at the given level and with the given zstd dictionary.
+     *
+     * @param compressionLevel The compression level, which must be valid for the compression type according to
+     *                         {@link CompressionType#isValidLevel(int)}, or null to use the default level of the codec
+     * @param zstdDictionary The dictionary to compress with when the compression type is {@link CompressionType#ZSTD},
+     *                       or null to compress without a dictionary. It is ignored by the other compression types.
+     * @see #MemoryRecordsBuilder(ByteBuffer, byte, CompressionType, TimestampType, long, long, long, short, int,
+     *      boolean, boolean, int, int)
+     */
+    public MemoryRecordsBuilder(ByteBuffer buffer,
+                                byte magic,
+                                CompressionType compressionType,
+                                Integer compressionLevel,
+                                ZstdDictionary zstdDictionary,
+                                TimestampType timestampType,
+                                long baseOffset,
+                                long logAppendTime,
+                                long producerId,
+                                short producerEpoch,
+                                int baseSequence,
+                                boolean isTransactional,
+                                boolean isControlBatch,
+                                int partitionLeaderEpoch,
+                                int writeLimit) {
+        this(new ByteBufferOutputStream(buffer), magic, compressionType, compressionLevel, zstdDictionary, timestampType,
+                baseOffset, logAppendTime, producerId, producerEpoch, baseSequence, isTransactional, isControlBatch,
+                partitionLeaderEpoch, writeLimit);
     }
 
     public ByteBuffer buffer() {
@@ -184,6 +237,20 @@ public class MemoryRecordsBuilder implements AutoCloseable {
         return compressionType;
     }
 
+    /**
+     * Get the compression level, or null if the default level of the compression type is used.
+     */
+    public Integer compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Get the dictionary the records are compressed with, or null if there is none.
+     */
+    public ZstdDictionary zstdDictionary() {
+        return zstdDictionary;
+    }
+
     public boolean isControlBatch() {
         return isControlBatch;
     }
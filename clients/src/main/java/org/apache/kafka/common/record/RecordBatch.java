@@ -230,6 +230,20 @@ public interface RecordBatch extends Iterable<Record> {
      */
     CloseableIterator<Record> streamingIterator(BufferSupplier decompressionBufferSupplier);
 
+    /**
+     * Return a cursor over the records in this batch. Like {@link #streamingIterator(BufferSupplier)}, it delays
+     * decompression until the records are asked for, but message formats which support it reuse a single
+     * {@link Record} instance for all the records of the batch and only decode record headers on demand. This makes
+     * it the cheapest way to read records which do not need to be retained. Callers should ensure that the cursor is
+     * closed.
+     *
+     * @param decompressionBufferSupplier The supplier of ByteBuffer(s) used for decompression if supported
+     * @return The record cursor
+     */
+    default RecordCursor cursor(BufferSupplier decompressionBufferSupplier) {
+        return RecordCursor.wrap(streamingIterator(decompressionBufferSupplier));
+    }
+
     /**
      * Check whether this is a control batch (i.e. whether the control bit is set in the batch attributes).
      * For magic versions prior to 2, this is always false.
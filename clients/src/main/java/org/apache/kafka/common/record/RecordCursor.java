@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.record;
+
+import org.apache.kafka.common.utils.CloseableIterator;
+
+import java.io.Closeable;
+
+/**
+ * A cursor over the records of a {@link RecordBatch}. Unlike the record iterators, a cursor may expose every record
+ * through the same mutable {@link Record} instance which is repositioned by each call to {@link #advance()}. The
+ * record returned by {@link #current()}, and any buffer obtained from it, is only valid until the cursor is advanced
+ * or closed, so it must not be retained by the caller.
+ */
+public interface RecordCursor extends Closeable {
+
+    /**
+     * Move the cursor to the next record of the batch.
+     *
+     * @return true if the cursor is positioned on a record, false if there are no more records
+     */
+    boolean advance();
+
+    /**
+     * Get the record the cursor is positioned on.
+     *
+     * @return The current record, which is only valid until the next call to {@link #advance()} or {@link #close()}
+     */
+    Record current();
+
+    @Override
+    void close();
+
+    static RecordCursor wrap(CloseableIterator<Record> iterator) {
+        return new RecordCursor() {
+            private Record current;
+
+            @Override
+            public boolean advance() {
+                if (!iterator.hasNext())
+                    return false;
+                current = iterator.next();
+                return true;
+            }
+
+            @Override
+            public Record current() {
+                return current;
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+}
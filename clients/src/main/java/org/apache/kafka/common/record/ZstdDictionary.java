@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.record;
+
+import org.apache.kafka.common.KafkaException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A dictionary used to compress batches with {@link CompressionType#ZSTD}. Dictionaries trained from samples of the
+ * records of a topic let zstd find repetitions across records even when batches are small.
+ * <p>
+ * Only dictionaries in the zstd format are supported (as produced by {@link #train(List, int)} or
+ * <code>zstd --train</code>), since they carry an id. The id is written in the header of every frame compressed
+ * with the dictionary, so a batch can be decompressed as long as a dictionary with that id has been registered with
+ * {@link #register(ZstdDictionary)}. Batches compressed without a dictionary carry no id and remain readable
+ * everywhere. A new version of the dictionary of a topic must therefore get a new id, and the previous versions
+ * must stay registered for as long as data compressed with them is read.
+ */
+public final class ZstdDictionary {
+
+    // Magic numbers of zstd dictionaries and frames, stored in little endian
+    private static final int DICTIONARY_MAGIC = 0xEC30A437;
+    private static final int FRAME_MAGIC = 0xFD2FB528;
+
+    private static final ConcurrentMap<Integer, ZstdDictionary> REGISTERED = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final byte[] bytes;
+
+    private ZstdDictionary(int id, byte[] bytes) {
+        this.id = id;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Create a dictionary from its serialized form.
+     *
+     * @throws IllegalArgumentException if the bytes are not a zstd dictionary with a non-zero id
+     */
+    public static ZstdDictionary fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 8 || buffer.getInt(0) != DICTIONARY_MAGIC)
+            throw new IllegalArgumentException("Not a zstd dictionary, raw content dictionaries are not supported");
+        int id = buffer.getInt(4);
+        if (id == 0)
+            throw new IllegalArgumentException("Zstd dictionaries must have a non-zero id");
+        return new ZstdDictionary(id, bytes.clone());
+    }
+
+    /**
+     * Read a dictionary from a file.
+     */
+    public static ZstdDictionary load(File file) {
+        try {
+            return fromBytes(Files.readAllBytes(file.toPath()));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new KafkaException("Failed to load zstd dictionary from " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Train a dictionary of at most <code>maxSizeInBytes</code> from samples of the records to compress, typically
+     * the values of records sampled from a topic. A dictionary of a few KB trained from a few thousand samples is
+     * usually enough for small records.
+     */
+    public static ZstdDictionary train(List<byte[]> samples, int maxSizeInBytes) {
+        byte[] buffer = new byte[maxSizeInBytes];
+        long size;
+        try {
+            size = (long) ZstdTrainer.TRAIN.invoke(samples.toArray(new byte[0][]), buffer);
+            if ((boolean) ZstdTrainer.IS_ERROR.invoke(size))
+                throw new KafkaException("Failed to train zstd dictionary: " + ZstdTrainer.ERROR_NAME.invoke(size));
+        } catch (KafkaException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new KafkaException(e);
+        }
+        return fromBytes(Arrays.copyOf(buffer, (int) size));
+    }
+
+    /**
+     * Register a dictionary so that batches compressed with it can be decompressed. Registering the same
+     * dictionary again has no effect.
+     *
+     * @throws IllegalArgumentException if a different dictionary with the same id is already registered
+     */
+    public static void register(ZstdDictionary dictionary) {
+        ZstdDictionary existing = REGISTERED.putIfAbsent(dictionary.id, dictionary);
+        if (existing != null && !Arrays.equals(existing.bytes, dictionary.bytes))
+            throw new IllegalArgumentException("A different zstd dictionary with id " + dictionary.id +
+                " is already registered");
+    }
+
+    /**
+     * Load and register every dictionary of a directory.
+     *
+     * @return The number of dictionaries registered
+     */
+    public static int registerAll(File directory) {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null)
+            throw new KafkaException("Failed to list zstd dictionaries in " + directory);
+        for (File file : files)
+            register(load(file));
+        return files.length;
+    }
+
+    /**
+     * The registered dictionary with the given id, or null if there is none.
+     */
+    public static ZstdDictionary forId(int id) {
+        return REGISTERED.get(id);
+    }
+
+    /**
+     * The id of the dictionary used to compress the zstd frame starting at the position of the buffer, or 0 if
+     * the frame was compressed without a dictionary. The position of the buffer is not changed.
+     */
+    static int frameDictionaryId(ByteBuffer buffer) {
+        ByteBuffer frame = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = frame.position();
+        if (frame.remaining() < 5 || frame.getInt(position) != FRAME_MAGIC)
+            return 0;
+        // the frame header descriptor gives the size of the dictionary id, which follows the window descriptor
+        // unless the frame is a single segment
+        byte descriptor = frame.get(position + 4);
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        int idPosition = position + 5 + (singleSegment ? 0 : 1);
+        switch (descriptor & 0x03) {
+            case 1:
+                return idPosition < frame.limit() ? frame.get(idPosition) & 0xFF : 0;
+            case 2:
+                return idPosition + 2 <= frame.limit() ? frame.getShort(idPosition) & 0xFFFF : 0;
+            case 3:
+                return idPosition + 4 <= frame.limit() ? frame.getInt(idPosition) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    public int id() {
+        return id;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdDictionary(id=" + Integer.toUnsignedString(id) + ", size=" + bytes.length + ")";
+    }
+
+    // Zstd is only a runtime dependency, see CompressionType
+    private static class ZstdTrainer {
+        static final MethodHandle TRAIN = findStatic("trainFromBuffer",
+            MethodType.methodType(long.class, byte[][].class, byte[].class));
+        static final MethodHandle IS_ERROR = findStatic("isError", MethodType.methodType(boolean.class, long.class));
+        static final MethodHandle ERROR_NAME = findStatic("getErrorName", MethodType.methodType(String.class, long.class));
+
+        private static MethodHandle findStatic(String name, MethodType methodType) {
+            try {
+                return MethodHandles.publicLookup().findStatic(Class.forName("com.github.luben.zstd.Zstd"), name,
+                    methodType);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
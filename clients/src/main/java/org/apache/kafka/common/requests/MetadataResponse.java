@@ -251,6 +251,8 @@ public class MetadataResponse extends AbstractResponse {
         private final boolean isInternal;
         private final List<PartitionMetadata> partitionMetadata;
         private int authorizedOperations;
+        // the partitions of the response data, built once since brokers reuse the metadata of a topic across responses
+        private volatile List<MetadataResponsePartition> responsePartitions;
 
         public TopicMetadata(Errors error,
                              String topic,
@@ -295,6 +297,35 @@ public class MetadataResponse extends AbstractResponse {
             return authorizedOperations;
         }
 
+        /**
+         * Get a copy of this topic metadata with the given authorized operations. Unlike
+         * {@link #authorizedOperations(int)}, this does not modify metadata which may be shared by several responses.
+         */
+        public TopicMetadata withAuthorizedOperations(int authorizedOperations) {
+            TopicMetadata copy = new TopicMetadata(error, topic, isInternal, partitionMetadata, authorizedOperations);
+            copy.responsePartitions = responsePartitions;
+            return copy;
+        }
+
+        private List<MetadataResponsePartition> responsePartitions() {
+            List<MetadataResponsePartition> partitions = responsePartitions;
+            if (partitions == null) {
+                partitions = new ArrayList<>(partitionMetadata.size());
+                for (PartitionMetadata partitionMetadata : partitionMetadata) {
+                    partitions.add(new MetadataResponsePartition()
+                        .setErrorCode(partitionMetadata.error.code())
+                        .setPartitionIndex(partitionMetadata.partition())
+                        .setLeaderId(partitionMetadata.leaderId.orElse(NO_LEADER_ID))
+                        .setLeaderEpoch(partitionMetadata.leaderEpoch.orElse(RecordBatch.NO_PARTITION_LEADER_EPOCH))
+                        .setReplicaNodes(partitionMetadata.replicaIds)
+                        .setIsrNodes(partitionMetadata.inSyncReplicaIds)
+                        .setOfflineReplicas(partitionMetadata.offlineReplicaIds));
+                }
+                responsePartitions = partitions;
+            }
+            return partitions;
+        }
+
         @Override
         public boolean equals(final Object o) {
             if (this == o) return true;
@@ -445,23 +476,14 @@ public class MetadataResponse extends AbstractResponse {
         responseData.setClusterAuthorizedOperations(clusterAuthorizedOperations);
 
         topicMetadataList.forEach(topicMetadata -> {
+            // the partitions are shared with the other responses built from the same topic metadata
             MetadataResponseTopic metadataResponseTopic = new MetadataResponseTopic();
             metadataResponseTopic
                 .setErrorCode(topicMetadata.error.code())
                 .setName(topicMetadata.topic)
                 .setIsInternal(topicMetadata.isInternal)
-                .setTopicAuthorizedOperations(topicMetadata.authorizedOperations);
-
-            for (PartitionMetadata partitionMetadata : topicMetadata.partitionMetadata) {
-                metadataResponseTopic.partitions().add(new MetadataResponsePartition()
-                    .setErrorCode(partitionMetadata.error.code())
-                    .setPartitionIndex(partitionMetadata.partition())
-                    .setLeaderId(partitionMetadata.leaderId.orElse(NO_LEADER_ID))
-                    .setLeaderEpoch(partitionMetadata.leaderEpoch.orElse(RecordBatch.NO_PARTITION_LEADER_EPOCH))
-                    .setReplicaNodes(partitionMetadata.replicaIds)
-                    .setIsrNodes(partitionMetadata.inSyncReplicaIds)
-                    .setOfflineReplicas(partitionMetadata.offlineReplicaIds));
-            }
+                .setTopicAuthorizedOperations(topicMetadata.authorizedOperations)
+                .setPartitions(topicMetadata.responsePartitions());
             responseData.topics().add(metadataResponseTopic);
         });
         return new MetadataResponse(responseData);
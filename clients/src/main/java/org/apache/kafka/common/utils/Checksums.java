@@ -16,7 +16,12 @@
  */
 package org.apache.kafka.common.utils;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.zip.Checksum;
 
 /**
@@ -30,6 +35,24 @@ import java.util.zip.Checksum;
  */
 public final class Checksums {
 
+    // `Checksum.update(ByteBuffer)` was added in Java 9, the JDK implementations process direct buffers without
+    // copying them to the heap
+    private static final MethodHandle BYTE_BUFFER_UPDATE;
+
+    static {
+        MethodHandle byteBufferUpdate = null;
+        if (Java.IS_JAVA9_COMPATIBLE) {
+            try {
+                byteBufferUpdate = MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+            } catch (ReflectiveOperationException e) {
+                // Should never happen
+                throw new RuntimeException(e);
+            }
+        }
+        BYTE_BUFFER_UPDATE = byteBufferUpdate;
+    }
+
     private Checksums() {
     }
 
@@ -40,13 +63,59 @@ public final class Checksums {
     public static void update(Checksum checksum, ByteBuffer buffer, int offset, int length) {
         if (buffer.hasArray()) {
             checksum.update(buffer.array(), buffer.position() + buffer.arrayOffset() + offset, length);
+        } else if (BYTE_BUFFER_UPDATE != null) {
+            ByteBuffer slice = buffer.duplicate();
+            int start = buffer.position() + offset;
+            slice.limit(start + length);
+            slice.position(start);
+            try {
+                BYTE_BUFFER_UPDATE.invoke(checksum, slice);
+            } catch (Throwable throwable) {
+                // Should never happen
+                throw new RuntimeException(throwable);
+            }
         } else {
             int start = buffer.position() + offset;
             for (int i = start; i < start + length; i++)
                 checksum.update(buffer.get(i));
         }
     }
-    
+
+    /**
+     * Update the checksum with the remaining bytes of the given buffers, in order, as if they were a single buffer.
+     * The positions of the buffers are not changed.
+     */
+    public static void update(Checksum checksum, ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers)
+            update(checksum, buffer, buffer.remaining());
+    }
+
+    /**
+     * Update the checksum with a region of a file. The region is read in chunks into the given buffer, so it never
+     * has to fit in memory at once. The content of the buffer is overwritten.
+     *
+     * @param checksum The checksum to update
+     * @param channel The file channel to read from
+     * @param position The file position at which the region starts
+     * @param length The length of the region
+     * @param buffer The buffer to read the chunks into
+     * @throws java.io.EOFException If the end of the file is reached before the end of the region
+     */
+    public static void update(Checksum checksum, FileChannel channel, long position, int length,
+                              ByteBuffer buffer) throws IOException {
+        long end = position + length;
+        long chunkPosition = position;
+        while (chunkPosition < end) {
+            buffer.clear();
+            if (buffer.capacity() > end - chunkPosition)
+                buffer.limit((int) (end - chunkPosition));
+            Utils.readFullyOrFail(channel, buffer, chunkPosition, "checksummed region");
+            buffer.flip();
+            update(checksum, buffer, buffer.remaining());
+            chunkPosition += buffer.remaining();
+        }
+    }
+
     public static void updateInt(Checksum checksum, int input) {
         checksum.update((byte) (input >> 24));
         checksum.update((byte) (input >> 16));
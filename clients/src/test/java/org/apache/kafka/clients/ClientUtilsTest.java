@@ -16,15 +16,25 @@
  */
 package org.apache.kafka.clients;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.record.ZstdDictionary;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.kafka.test.TestUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -110,6 +120,30 @@ public class ClientUtilsTest {
         assertEquals(2, ClientUtils.resolve("kafka.apache.org", ClientDnsLookup.USE_ALL_DNS_IPS).size());
     }
 
+    @Test
+    public void testLoadZstdDictionaries() throws IOException {
+        File file = TestUtils.tempFile();
+        ByteBuffer dictionary = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        dictionary.putInt(0xEC30A437).putInt(2001);
+        Files.write(file.toPath(), dictionary.array());
+
+        Map<String, ZstdDictionary> dictionaries = ClientUtils.loadZstdDictionaries(
+            Arrays.asList("topic-a:" + file.getPath(), " topic-b : " + file.getPath()));
+        assertEquals(Utils.mkSet("topic-a", "topic-b"), dictionaries.keySet());
+        assertEquals(2001, dictionaries.get("topic-a").id());
+        // the dictionaries are registered to decompress fetched batches
+        assertEquals(2001, ZstdDictionary.forId(2001).id());
+    }
+
+    @Test
+    public void testLoadInvalidZstdDictionaries() throws IOException {
+        File file = TestUtils.tempFile();
+        assertThrows(ConfigException.class, () -> ClientUtils.loadZstdDictionaries(Arrays.asList(file.getPath())));
+        assertThrows(ConfigException.class, () -> ClientUtils.loadZstdDictionaries(Arrays.asList("topic:")));
+        // raw content dictionaries are not supported
+        assertThrows(ConfigException.class, () -> ClientUtils.loadZstdDictionaries(Arrays.asList("topic:" + file.getPath())));
+    }
+
     private List<InetSocketAddress> checkWithoutLookup(String... url) {
         return ClientUtils.parseAndValidateAddresses(Arrays.asList(url), ClientDnsLookup.DEFAULT);
     }
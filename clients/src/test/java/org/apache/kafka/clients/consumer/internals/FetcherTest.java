@@ -153,6 +153,7 @@ public class FetcherTest {
     private int fetchSize = 1000;
     private long retryBackoffMs = 100;
     private long requestTimeoutMs = 30000;
+    private int decodeThreads = 0;
     private MockTime time = new MockTime(1);
     private SubscriptionState subscriptions;
     private ConsumerMetadata metadata;
@@ -697,6 +698,95 @@ public class FetcherTest {
         assertEquals(5, records.get(1).offset());
     }
 
+    @Test
+    public void testFetchMaxPollRecordsWithDecodePool() {
+        decodeThreads = 2;
+        buildFetcher(2);
+
+        List<ConsumerRecord<byte[], byte[]>> records;
+        assignFromUser(Utils.mkSet(tp0, tp1));
+        subscriptions.seek(tp0, 1);
+        subscriptions.seek(tp1, 4);
+
+        LinkedHashMap<TopicPartition, FetchResponse.PartitionData<MemoryRecords>> partitions = new LinkedHashMap<>();
+        partitions.put(tp0, new FetchResponse.PartitionData<>(Errors.NONE, 100L,
+                FetchResponse.INVALID_LAST_STABLE_OFFSET, 0L, null, this.records));
+        partitions.put(tp1, new FetchResponse.PartitionData<>(Errors.NONE, 100L,
+                FetchResponse.INVALID_LAST_STABLE_OFFSET, 0L, null, this.nextRecords));
+        client.prepareResponse(new FetchResponse<>(Errors.NONE, partitions, 0, INVALID_SESSION_ID));
+
+        assertEquals(1, fetcher.sendFetches());
+        consumerClient.poll(time.timer(0));
+
+        // the records are returned in the same order and with the same positions as without a decode pool
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> recordsByPartition = fetchedRecords();
+        records = recordsByPartition.get(tp0);
+        assertEquals(2, records.size());
+        assertEquals(3L, subscriptions.position(tp0).offset);
+        assertEquals(1, records.get(0).offset());
+        assertEquals(2, records.get(1).offset());
+
+        recordsByPartition = fetchedRecords();
+        assertEquals(1, recordsByPartition.get(tp0).size());
+        assertEquals(3, recordsByPartition.get(tp0).get(0).offset());
+        assertEquals(4L, subscriptions.position(tp0).offset);
+        records = recordsByPartition.get(tp1);
+        assertEquals(1, records.size());
+        assertEquals(4, records.get(0).offset());
+        assertEquals(5L, subscriptions.position(tp1).offset);
+
+        recordsByPartition = fetchedRecords();
+        records = recordsByPartition.get(tp1);
+        assertEquals(1, records.size());
+        assertEquals(5, records.get(0).offset());
+        assertEquals(6L, subscriptions.position(tp1).offset);
+        assertFalse(fetcher.hasCompletedFetches());
+
+        Map<MetricName, KafkaMetric> allMetrics = metrics.metrics();
+        assertEquals(0.0, (Double) allMetrics.get(metrics.metricInstance(metricsRegistry.decodeQueueSize)).metricValue(), EPSILON);
+        assertEquals(0.0, (Double) allMetrics.get(metrics.metricInstance(metricsRegistry.decodePrefetchedBytes)).metricValue(), EPSILON);
+    }
+
+    @Test
+    public void testFetchedRecordsRaisesOnSerializationErrorsWithDecodePool() {
+        ByteArrayDeserializer deserializer = new ByteArrayDeserializer() {
+            @Override
+            public byte[] deserialize(String topic, byte[] data) {
+                if ("value-2".equals(new String(data, StandardCharsets.UTF_8)))
+                    throw new SerializationException();
+                return data;
+            }
+        };
+
+        decodeThreads = 1;
+        buildFetcher(deserializer, deserializer);
+
+        assignFromUser(singleton(tp0));
+        subscriptions.seek(tp0, 1);
+
+        client.prepareResponse(matchesOffset(tp0, 1), fullFetchResponse(tp0, this.records, Errors.NONE, 100L, 0));
+
+        assertEquals(1, fetcher.sendFetches());
+        consumerClient.poll(time.timer(0));
+
+        // the record decoded before the error is returned first
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> recordsByPartition = fetchedRecords();
+        List<ConsumerRecord<byte[], byte[]>> records = recordsByPartition.get(tp0);
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).offset());
+        assertEquals(2, subscriptions.position(tp0).offset);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetcher.fetchedRecords();
+                fail("fetchedRecords should have raised");
+            } catch (SerializationException e) {
+                // the position should not advance past the record which could not be deserialized
+                assertEquals(2, subscriptions.position(tp0).offset);
+            }
+        }
+    }
+
     /**
      * Test the scenario where a partition with fetched but not consumed records (i.e. max.poll.records is
      * less than the number of fetched records) is unassigned and a different partition is assigned. This is a
@@ -2317,6 +2407,8 @@ public class FetcherTest {
     @Test
     public void testFetcherMetricsTemplates() {
         Map<String, String> clientTags = Collections.singletonMap("client-id", "clientA");
+        // Use a decode pool to create the decode metrics
+        decodeThreads = 1;
         buildFetcher(new MetricConfig().tags(clientTags), OffsetResetStrategy.EARLIEST, new ByteArrayDeserializer(),
                 new ByteArrayDeserializer(), Integer.MAX_VALUE, IsolationLevel.READ_UNCOMMITTED);
 
@@ -4074,6 +4166,8 @@ public class FetcherTest {
                                      SubscriptionState subscriptionState,
                                      LogContext logContext) {
         buildDependencies(metricConfig, metadataExpireMs, subscriptionState, logContext);
+        FetchDecodePool decodePool = decodeThreads == 0 ? null :
+                new FetchDecodePool(decodeThreads, Integer.MAX_VALUE, "", metrics, metricsRegistry, time);
         fetcher = new Fetcher<>(
                 new LogContext(),
                 consumerClient,
@@ -4094,7 +4188,8 @@ public class FetcherTest {
                 retryBackoffMs,
                 requestTimeoutMs,
                 isolationLevel,
-                apiVersions);
+                apiVersions,
+                decodePool);
     }
 
     private void buildDependencies(MetricConfig metricConfig,
@@ -97,6 +97,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -735,6 +736,67 @@ public class KafkaProducerTest {
         producer.close(Duration.ofMillis(0));
     }
 
+    @Test
+    public void testSendAllToSinglePartition() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9999");
+        String topic = "topic";
+        List<ProducerRecord<String, String>> records = Arrays.asList(
+            new ProducerRecord<>(topic, 1, "key1", "value1"),
+            new ProducerRecord<>(topic, 1, "key2", "value2"),
+            new ProducerRecord<>(topic, 1, "key3", "value3"));
+
+        long nowMs = Time.SYSTEM.milliseconds();
+        ProducerMetadata metadata = newMetadata(0, 90000);
+        metadata.add(topic, nowMs);
+        MetadataResponse initialUpdateResponse = TestUtils.metadataUpdateWith(1, singletonMap(topic, 2));
+        metadata.updateWithCurrentRequestVersion(initialUpdateResponse, false, nowMs);
+
+        @SuppressWarnings("unchecked") // it is safe to suppress, since this is a mock class
+                ProducerInterceptors<String, String> interceptors = mock(ProducerInterceptors.class);
+        KafkaProducer<String, String> producer = new KafkaProducer<>(configs, new StringSerializer(),
+                new StringSerializer(), metadata, null, interceptors, Time.SYSTEM);
+
+        when(interceptors.onSend(any())).then(invocation -> invocation.getArgument(0));
+
+        List<Future<RecordMetadata>> futures = producer.sendAll(records, null);
+        assertEquals(records.size(), futures.size());
+        for (ProducerRecord<String, String> record : records)
+            verify(interceptors).onSend(record);
+        verify(interceptors, never()).onSendError(any(), any(), any());
+
+        producer.close(Duration.ofMillis(0));
+    }
+
+    @Test
+    public void testSendAllToDifferentPartitions() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9999");
+        String topic = "topic";
+        List<ProducerRecord<String, String>> records = Arrays.asList(
+            new ProducerRecord<>(topic, 0, "key1", "value1"),
+            new ProducerRecord<>(topic, 1, "key2", "value2"));
+
+        long nowMs = Time.SYSTEM.milliseconds();
+        ProducerMetadata metadata = newMetadata(0, 90000);
+        metadata.add(topic, nowMs);
+        MetadataResponse initialUpdateResponse = TestUtils.metadataUpdateWith(1, singletonMap(topic, 2));
+        metadata.updateWithCurrentRequestVersion(initialUpdateResponse, false, nowMs);
+
+        @SuppressWarnings("unchecked") // it is safe to suppress, since this is a mock class
+                ProducerInterceptors<String, String> interceptors = mock(ProducerInterceptors.class);
+        KafkaProducer<String, String> producer = new KafkaProducer<>(configs, new StringSerializer(),
+                new StringSerializer(), metadata, null, interceptors, Time.SYSTEM);
+
+        when(interceptors.onSend(any())).then(invocation -> invocation.getArgument(0));
+
+        assertThrows(IllegalArgumentException.class, () -> producer.sendAll(records, null));
+        for (ProducerRecord<String, String> record : records)
+            verify(interceptors).onSendError(eq(record), notNull(), notNull());
+
+        producer.close(Duration.ofMillis(0));
+    }
+
     @Test
     public void testPartitionsForWithNullTopic() {
         Properties props = new Properties();
@@ -77,6 +77,25 @@ public class MockProducerTest {
         assertEquals("Clear should erase our history", 0, producer.history().size());
     }
 
+    @Test
+    public void testSendAll() throws Exception {
+        buildMockProducer(true);
+        List<Future<RecordMetadata>> futures = producer.sendAll(asList(record1, record2), null);
+        assertEquals(2, futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            assertTrue("Send should be immediately complete", futures.get(i).isDone());
+            assertEquals(i, futures.get(i).get().offset());
+        }
+        assertEquals("We should have the records in our history", asList(record1, record2), producer.history());
+
+        ProducerRecord<byte[], byte[]> otherTopicRecord = new ProducerRecord<>("other", "value".getBytes());
+        try {
+            producer.sendAll(asList(record1, otherTopicRecord), null);
+            fail("Should have thrown as the records are for different topics");
+        } catch (IllegalArgumentException e) { }
+        assertEquals("No record should have been sent", 2, producer.history().size());
+    }
+
     @Test
     public void testPartitioner() throws Exception {
         PartitionInfo partitionInfo0 = new PartitionInfo(topic, 0, null, null, null);
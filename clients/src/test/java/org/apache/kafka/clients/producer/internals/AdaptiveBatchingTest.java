@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBatchingTest {
+    private final MockTime time = new MockTime();
+    private final Metrics metrics = new Metrics(time);
+    private final String metricGroup = "producer-metrics";
+    private final TopicPartition tp = new TopicPartition("test", 0);
+    private final int maxBatchSize = 16384;
+    private final int maxLingerMs = 100;
+
+    @After
+    public void teardown() {
+        this.metrics.close();
+    }
+
+    @Test
+    public void testConfiguredValuesAreUsedWithoutObservations() {
+        AdaptiveBatching batching = createAdaptiveBatching();
+        assertEquals(maxLingerMs, batching.lingerMs(tp));
+        assertEquals(maxBatchSize, batching.batchSize(tp));
+
+        // Without a produce request latency the arrival rate alone is not enough to pick a batch size
+        drain(batching, 10, 1000, 10, 1000);
+        assertEquals(maxLingerMs, batching.lingerMs(tp));
+        assertEquals(maxBatchSize, batching.batchSize(tp));
+    }
+
+    @Test
+    public void testNoLingerAtLowLoad() {
+        AdaptiveBatching batching = createAdaptiveBatching();
+        batching.onRequestCompleted(10);
+        // One record every second, so waiting up to 100 ms is unlikely to add another record to the batch
+        drain(batching, 10, 1, 100, 1000);
+        assertEquals(0, batching.lingerMs(tp));
+        assertEquals(1, batching.batchSize(tp));
+    }
+
+    @Test
+    public void testBatchSizeFollowsRequestLatency() {
+        AdaptiveBatching batching = createAdaptiveBatching();
+        batching.onRequestCompleted(10);
+        // 1000 bytes arrive every ms, so 10000 bytes arrive during a produce request
+        drain(batching, 10, 100, 10000, 10);
+        assertEquals(10000, batching.batchSize(tp));
+        assertEquals(10, batching.lingerMs(tp));
+    }
+
+    @Test
+    public void testBatchSizeAndLingerAreBounded() {
+        AdaptiveBatching batching = createAdaptiveBatching();
+        batching.onRequestCompleted(50);
+        drain(batching, 10, 1000, 100000, 1);
+        assertEquals(maxBatchSize, batching.batchSize(tp));
+        assertEquals(1, batching.lingerMs(tp));
+
+        AdaptiveBatching slowBatching = createAdaptiveBatching();
+        slowBatching.onRequestCompleted(1000);
+        // 2 bytes per ms take longer than the maximum linger time to fill the target batch
+        drain(slowBatching, 10, 1, 100, 50);
+        assertEquals(maxLingerMs, slowBatching.lingerMs(tp));
+        assertEquals(2000, slowBatching.batchSize(tp));
+    }
+
+    @Test
+    public void testMetrics() {
+        AdaptiveBatching batching = createAdaptiveBatching();
+        batching.onRequestCompleted(10);
+        drain(batching, 10, 100, 10000, 10);
+        assertEquals(10000.0, metricValue("adaptive-batch-size-max"), 0.0);
+        assertEquals(10.0, metricValue("adaptive-linger-ms-max"), 0.0);
+    }
+
+    private AdaptiveBatching createAdaptiveBatching() {
+        return new AdaptiveBatching(maxBatchSize, maxLingerMs, CompressionType.NONE, metrics, metricGroup);
+    }
+
+    private void drain(AdaptiveBatching batching, int times, int recordCount, int bytes, long intervalMs) {
+        batching.onBatchDrained(tp, recordCount, bytes, time.milliseconds());
+        for (int i = 0; i < times; i++) {
+            time.sleep(intervalMs);
+            batching.onBatchDrained(tp, recordCount, bytes, time.milliseconds());
+        }
+    }
+
+    private double metricValue(String name) {
+        return (Double) metrics.metric(metrics.metricName(name, metricGroup)).metricValue();
+    }
+}
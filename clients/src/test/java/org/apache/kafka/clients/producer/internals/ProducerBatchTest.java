@@ -23,17 +23,21 @@ import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.DefaultRecordBatch;
 import org.apache.kafka.common.record.LegacyRecord;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.MemoryRecordsBuilder;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
 import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.record.ZstdDictionary;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import static org.apache.kafka.common.record.RecordBatch.MAGIC_VALUE_V0;
@@ -228,6 +232,81 @@ public class ProducerBatchTest {
         }
     }
 
+    @Test
+    public void testSplitPreservesZstdDictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            samples.add(("{\"user\":\"user-" + i + "\",\"event\":\"page_view\",\"page\":\"/products/" + (i % 100) + "\"}").getBytes());
+        ZstdDictionary dictionary = ZstdDictionary.train(samples, 4096);
+        ZstdDictionary.register(dictionary);
+
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(1024), MAGIC_VALUE_V2,
+                CompressionType.ZSTD, dictionary, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP,
+                RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false,
+                RecordBatch.NO_PARTITION_LEADER_EPOCH);
+        ProducerBatch batch = new ProducerBatch(new TopicPartition("topic", 1), builder, now);
+        for (byte[] value : samples) {
+            if (batch.tryAppend(now, null, value, Record.EMPTY_HEADERS, null, now) == null)
+                break;
+        }
+
+        Deque<ProducerBatch> batches = batch.split(512);
+        assertTrue(batches.size() >= 2);
+
+        for (ProducerBatch splitProducerBatch : batches) {
+            ByteBuffer buffer = splitProducerBatch.records().buffer();
+            // the zstd frame header descriptor follows the frame magic, its lowest bits give the size of the
+            // dictionary id which is zero when the frame was compressed without a dictionary
+            byte descriptor = buffer.get(DefaultRecordBatch.RECORD_BATCH_OVERHEAD + 4);
+            assertTrue("Split batch should be compressed with the dictionary", (descriptor & 0x03) != 0);
+        }
+    }
+
+    @Test
+    public void testSplitPreservesCompressionLevel() {
+        int compressionLevel = 1;
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(1024), MAGIC_VALUE_V2,
+                CompressionType.GZIP, compressionLevel, null, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP,
+                RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false,
+                RecordBatch.NO_PARTITION_LEADER_EPOCH);
+        ProducerBatch batch = new ProducerBatch(new TopicPartition("topic", 1), builder, now);
+        for (int i = 0; i < 1000; i++) {
+            byte[] value = ("{\"user\":\"user-" + i + "\",\"event\":\"page_view\",\"page\":\"/products/" + (i % 100) + "\"}").getBytes();
+            if (batch.tryAppend(now, null, value, Record.EMPTY_HEADERS, null, now) == null)
+                break;
+        }
+
+        Deque<ProducerBatch> batches = batch.split(512);
+        assertTrue(batches.size() >= 2);
+
+        boolean differsFromDefaultLevel = false;
+        for (ProducerBatch splitProducerBatch : batches) {
+            MemoryRecords records = splitProducerBatch.records();
+            // the compressed records follow the batch header, compressing the same records at the same level
+            // must give the same bytes
+            assertEquals(compressedRecords(recompress(records, compressionLevel)), compressedRecords(records));
+            if (!compressedRecords(recompress(records, null)).equals(compressedRecords(records)))
+                differsFromDefaultLevel = true;
+        }
+        assertTrue("Split batches should not be compressed at the default level", differsFromDefaultLevel);
+    }
+
+    private static MemoryRecords recompress(MemoryRecords records, Integer compressionLevel) {
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(1024), MAGIC_VALUE_V2,
+                CompressionType.GZIP, compressionLevel, null, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP,
+                RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false,
+                RecordBatch.NO_PARTITION_LEADER_EPOCH);
+        for (Record record : records.records())
+            builder.append(record.timestamp(), record.key(), record.value(), record.headers());
+        return builder.build();
+    }
+
+    private static ByteBuffer compressedRecords(MemoryRecords records) {
+        ByteBuffer buffer = records.buffer().duplicate();
+        buffer.position(buffer.position() + DefaultRecordBatch.RECORD_BATCH_OVERHEAD);
+        return buffer.slice();
+    }
+
     /**
      * A {@link ProducerBatch} configured using a timestamp preceding its create time is interpreted correctly
      * as not expired by {@link ProducerBatch#hasReachedDeliveryTimeout(long, long)}.
@@ -26,6 +26,7 @@ import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.errors.UnsupportedVersionException;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.protocol.ApiKeys;
@@ -138,6 +139,76 @@ public class RecordAccumulatorTest {
         assertFalse("No more records", iter.hasNext());
     }
 
+    @Test
+    public void testAppendAll() throws Exception {
+        // test case assumes that the records do not fill the batch completely
+        int batchSize = 1025;
+
+        RecordAccumulator accum = createTestRecordAccumulator(
+                batchSize + DefaultRecordBatch.RECORD_BATCH_OVERHEAD, 10L * batchSize, CompressionType.NONE, 10);
+        int appends = expectedNumAppends(batchSize);
+        // enough records to fill the first batch and start a second one
+        List<RecordAccumulator.SerializedRecord> records = new ArrayList<>();
+        for (int i = 0; i < appends + 1; i++)
+            records.add(new RecordAccumulator.SerializedRecord(0L, key, value, Record.EMPTY_HEADERS, null));
+
+        List<RecordAccumulator.RecordAppendResult> results = new ArrayList<>();
+        accum.appendAll(tp1, records, maxBlockTimeMs, time.milliseconds(), results);
+        assertEquals(records.size(), results.size());
+        assertTrue(results.get(0).newBatchCreated);
+        for (int i = 1; i < appends; i++)
+            assertFalse(results.get(i).newBatchCreated);
+        assertTrue(results.get(appends).newBatchCreated);
+        assertTrue(results.get(appends).batchIsFull);
+
+        Deque<ProducerBatch> partitionBatches = accum.batches().get(tp1);
+        assertEquals(2, partitionBatches.size());
+        assertEquals(appends, partitionBatches.peekFirst().recordCount);
+        assertEquals(1, partitionBatches.peekLast().recordCount);
+
+        // appending more records continues the last batch
+        results.clear();
+        accum.appendAll(tp1, records.subList(0, 1), maxBlockTimeMs, time.milliseconds(), results);
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).newBatchCreated);
+        assertEquals(2, partitionBatches.size());
+        assertEquals(2, partitionBatches.peekLast().recordCount);
+
+        List<ProducerBatch> batches = accum.drain(cluster, Collections.singleton(node1), Integer.MAX_VALUE, 0).get(node1.id());
+        assertEquals(1, batches.size());
+        Iterator<Record> iter = batches.get(0).records().records().iterator();
+        for (int i = 0; i < appends; i++) {
+            Record record = iter.next();
+            assertEquals("Keys should match", ByteBuffer.wrap(key), record.key());
+            assertEquals("Values should match", ByteBuffer.wrap(value), record.value());
+        }
+        assertFalse("No more records", iter.hasNext());
+    }
+
+    @Test
+    public void testAppendAllReportsAppendedRecordsOnFailure() throws Exception {
+        int batchSize = 1025;
+        // only enough memory for a single batch
+        RecordAccumulator accum = createTestRecordAccumulator(
+                batchSize + DefaultRecordBatch.RECORD_BATCH_OVERHEAD, batchSize + DefaultRecordBatch.RECORD_BATCH_OVERHEAD,
+                CompressionType.NONE, 10);
+        int appends = expectedNumAppends(batchSize);
+        List<RecordAccumulator.SerializedRecord> records = new ArrayList<>();
+        for (int i = 0; i < appends + 1; i++)
+            records.add(new RecordAccumulator.SerializedRecord(0L, key, value, Record.EMPTY_HEADERS, null));
+
+        List<RecordAccumulator.RecordAppendResult> results = new ArrayList<>();
+        try {
+            accum.appendAll(tp1, records, 0, time.milliseconds(), results);
+            fail("The second batch should not be allocated");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertEquals(appends, results.size());
+        assertEquals(1, accum.batches().get(tp1).size());
+        assertEquals(appends, accum.batches().get(tp1).peekFirst().recordCount);
+    }
+
     @Test
     public void testAppendLargeCompressed() throws Exception {
         testAppendLarge(CompressionType.GZIP);
@@ -230,6 +301,34 @@ public class RecordAccumulatorTest {
         assertFalse("No more records", iter.hasNext());
     }
 
+    @Test
+    public void testAdaptiveLinger() throws Exception {
+        int lingerMs = 100;
+        int batchSize = 1024 + DefaultRecordBatch.RECORD_BATCH_OVERHEAD;
+        String metricGrpName = "producer-metrics";
+        AdaptiveBatching adaptiveBatching = new AdaptiveBatching(batchSize, lingerMs, CompressionType.NONE, metrics, metricGrpName);
+        RecordAccumulator accum = new RecordAccumulator(logContext, batchSize, CompressionType.NONE, lingerMs, 100L, 3200,
+            metrics, metricGrpName, time, new ApiVersions(), null, new BufferPool(10 * 1024, batchSize, metrics, time, metricGrpName),
+            adaptiveBatching);
+
+        // Until the arrival rate has been observed, batches linger for the configured time
+        accum.append(tp1, 0L, key, value, Record.EMPTY_HEADERS, null, maxBlockTimeMs, false, time.milliseconds());
+        assertEquals("No partitions should be ready", 0, accum.ready(cluster, time.milliseconds()).readyNodes.size());
+        time.sleep(lingerMs);
+        assertEquals(1, accum.drain(cluster, Collections.singleton(node1), Integer.MAX_VALUE, time.milliseconds()).get(node1.id()).size());
+        accum.onProduceRequestCompleted(5);
+
+        // A single record arrives every second, which is too slow to wait for
+        time.sleep(1000);
+        accum.append(tp1, 0L, key, value, Record.EMPTY_HEADERS, null, maxBlockTimeMs, false, time.milliseconds());
+        assertEquals(1, accum.drain(cluster, Collections.singleton(node1), Integer.MAX_VALUE, time.milliseconds()).get(node1.id()).size());
+        assertEquals(0, adaptiveBatching.lingerMs(tp1));
+
+        accum.append(tp1, 0L, key, value, Record.EMPTY_HEADERS, null, maxBlockTimeMs, false, time.milliseconds());
+        assertEquals("Our partition's leader should be ready without lingering", Collections.singleton(node1),
+            accum.ready(cluster, time.milliseconds()).readyNodes);
+    }
+
     @Test
     public void testPartialDrain() throws Exception {
         RecordAccumulator accum = createTestRecordAccumulator(
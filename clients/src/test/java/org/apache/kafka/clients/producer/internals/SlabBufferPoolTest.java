@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SlabBufferPoolTest {
+    private final MockTime time = new MockTime();
+    private final Metrics metrics = new Metrics(time);
+    private final long maxBlockTimeMs = 2000;
+    private final String metricGroup = "TestMetrics";
+
+    @After
+    public void teardown() {
+        this.metrics.close();
+    }
+
+    @Test
+    public void testSizeClasses() {
+        SlabBufferPool pool = new SlabBufferPool(64 * 1024, 1024, 5000, metrics, time, metricGroup);
+        assertArrayEquals(new int[] {1024, 2048, 4096}, pool.sizeClasses());
+    }
+
+    @Test
+    public void testSizeClassesAreBoundedByTotalMemory() {
+        SlabBufferPool pool = new SlabBufferPool(3000, 1024, 1024 * 1024, metrics, time, metricGroup);
+        assertArrayEquals(new int[] {1024, 2048}, pool.sizeClasses());
+    }
+
+    @Test
+    public void testAllocationIsRoundedUpToSizeClass() throws Exception {
+        long totalMemory = 64 * 1024;
+        SlabBufferPool pool = new SlabBufferPool(totalMemory, 1024, 8 * 1024, metrics, time, metricGroup);
+        ByteBuffer buffer = pool.allocate(1500, maxBlockTimeMs);
+        assertTrue("Buffer should be off-heap", buffer.isDirect());
+        assertEquals("Buffer capacity should be the size class", 2048, buffer.capacity());
+        assertEquals("Buffer limit should be the requested size", 1500, buffer.limit());
+        assertEquals("Available memory should have shrunk by the size class", totalMemory - 2048, pool.availableMemory());
+
+        pool.deallocate(buffer);
+        assertEquals("All memory should be available", totalMemory, pool.availableMemory());
+        assertEquals("The buffer should be on the free list", 2048, pool.pooledMemory());
+
+        ByteBuffer recycled = pool.allocate(2000, maxBlockTimeMs);
+        assertSame("The pooled buffer of the same size class should be reused", buffer, recycled);
+        assertEquals("Recycled buffer should be cleared.", 0, recycled.position());
+        assertEquals(2000, recycled.limit());
+        assertEquals(0, pool.pooledMemory());
+    }
+
+    @Test
+    public void testAllocationLargerThanSizeClassesIsNotPooled() throws Exception {
+        long totalMemory = 64 * 1024;
+        SlabBufferPool pool = new SlabBufferPool(totalMemory, 1024, 4096, metrics, time, metricGroup);
+        ByteBuffer buffer = pool.allocate(10000, maxBlockTimeMs);
+        assertTrue(buffer.isDirect());
+        assertEquals(10000, buffer.capacity());
+        assertEquals(totalMemory - 10000, pool.availableMemory());
+        pool.deallocate(buffer);
+        assertEquals(totalMemory, pool.availableMemory());
+        assertEquals(0, pool.pooledMemory());
+    }
+
+    @Test
+    public void testExpandedHeapBufferIsNotPooled() throws Exception {
+        long totalMemory = 64 * 1024;
+        SlabBufferPool pool = new SlabBufferPool(totalMemory, 1024, 4096, metrics, time, metricGroup);
+        ByteBuffer buffer = pool.allocate(1024, maxBlockTimeMs);
+        // a batch whose buffer was expanded returns a heap buffer with the initial capacity of the pooled one
+        pool.deallocate(ByteBuffer.allocate(4096), buffer.capacity());
+        assertEquals(totalMemory, pool.availableMemory());
+        assertEquals(0, pool.pooledMemory());
+    }
+
+    @Test
+    public void testPooledBuffersAreReleasedForOtherSizeClasses() throws Exception {
+        SlabBufferPool pool = new SlabBufferPool(4096, 1024, 4096, metrics, time, metricGroup);
+        ByteBuffer first = pool.allocate(1024, maxBlockTimeMs);
+        ByteBuffer second = pool.allocate(2048, maxBlockTimeMs);
+        pool.deallocate(first);
+        pool.deallocate(second);
+        assertEquals(3072, pool.pooledMemory());
+
+        ByteBuffer large = pool.allocate(4096, maxBlockTimeMs);
+        assertEquals(4096, large.capacity());
+        assertEquals(0, pool.pooledMemory());
+        assertEquals(0, pool.availableMemory());
+        assertThrows(TimeoutException.class, () -> pool.allocate(1024, 10));
+        pool.deallocate(large);
+        assertEquals(4096, pool.availableMemory());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        SlabBufferPool pool = new SlabBufferPool(8192, 1024, 8192, metrics, time, metricGroup);
+        ByteBuffer buffer = pool.allocate(1536, maxBlockTimeMs);
+        assertEquals(0.25, metricValue("bufferpool-utilization"), 0.0);
+        assertEquals(0.25, metricValue("bufferpool-fragmentation-avg"), 0.0);
+        assertEquals(0.0, metricValue("bufferpool-pooled-bytes"), 0.0);
+        pool.deallocate(buffer);
+        assertEquals(0.0, metricValue("bufferpool-utilization"), 0.0);
+        assertEquals(2048.0, metricValue("bufferpool-pooled-bytes"), 0.0);
+    }
+
+    private double metricValue(String name) {
+        MetricName metricName = metrics.metricName(name, metricGroup);
+        return (Double) metrics.metric(metricName).metricValue();
+    }
+}
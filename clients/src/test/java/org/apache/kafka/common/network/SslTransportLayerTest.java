@@ -22,6 +22,7 @@ import org.apache.kafka.common.config.internals.BrokerSecurityConfigs;
 import org.apache.kafka.common.config.types.Password;
 import org.apache.kafka.common.memory.MemoryPool;
 import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.network.SslTransportLayer.FileTransferMode;
 import org.apache.kafka.common.security.auth.SecurityProtocol;
 import org.apache.kafka.common.security.TestSecurityConfig;
 import org.apache.kafka.common.security.ssl.SslFactory;
@@ -41,13 +42,21 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -58,6 +67,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -690,6 +700,87 @@ public class SslTransportLayerTest {
         assertEquals(message, new String(Utils.toArray(receiveList.iterator().next().payload())));
     }
 
+    /**
+     * Tests that a file sent in `MMAP` mode is encrypted from mapped regions and received intact, and that each
+     * region of the file is mapped once even though the send takes several `transferFrom` calls.
+     */
+    @Test
+    public void testMappedFileTransfer() throws Exception {
+        FileTransferSend send = sendFile(FileTransferMode.MMAP, 3 * 1024 * 1024, 0, null);
+        // the size prefix makes the file 4 bytes longer than 3 regions of 1 MB
+        assertEquals(4, send.fileChannel.numMaps());
+    }
+
+    /**
+     * Tests that a `transferFrom` call whose count goes past the end of the file only maps and writes the bytes
+     * up to the end of the file.
+     */
+    @Test
+    public void testMappedFileTransferWithCountBeyondEndOfFile() throws Exception {
+        FileTransferSend send = sendFile(FileTransferMode.MMAP, 256 * 1024, 1024 * 1024, null);
+        assertEquals(1, send.fileChannel.numMaps());
+    }
+
+    /**
+     * Tests that sends too small to be worth mapping are copied even in `MMAP` mode.
+     */
+    @Test
+    public void testMappedFileTransferCopiesSmallSends() throws Exception {
+        FileTransferSend send = sendFile(FileTransferMode.MMAP, 16 * 1024, 0, null);
+        assertEquals(0, send.fileChannel.numMaps());
+    }
+
+    /**
+     * Tests that a mapped send resumes from the position passed by the caller after partial writes, including
+     * writes that end in the middle of a region or span two regions, and keeps the current region mapped
+     * across calls.
+     */
+    @Test
+    public void testMappedFileTransferWithPartialWrites() throws Exception {
+        int payloadSize = 2 * 1024 * 1024 + 512 * 1024;
+        int maxWriteSize = 10000;
+        FileTransferSend send = sendFile(FileTransferMode.MMAP, payloadSize, 0, maxWriteSize);
+        assertTrue("Send should have taken a call per partial write", send.numTransfers() > payloadSize / maxWriteSize);
+        assertEquals(3, send.fileChannel.numMaps());
+    }
+
+    /**
+     * Sends a size-delimited file of `payloadSize` random bytes to the echo server using a client transport
+     * layer in `fileTransferMode`, and verifies that the echoed payload matches. Each `transferFrom` call
+     * requests `excessCount` bytes more than are left in the file. If `maxWriteSize` is set, the transport
+     * layer encrypts at most that many bytes per write.
+     */
+    private FileTransferSend sendFile(FileTransferMode fileTransferMode, int payloadSize, long excessCount,
+                                      Integer maxWriteSize) throws Exception {
+        String node = "0";
+        server = createEchoServer(SecurityProtocol.SSL);
+        createSelector(sslClientConfigs, fileTransferMode, maxWriteSize);
+        InetSocketAddress addr = new InetSocketAddress("localhost", server.port());
+        selector.connect(node, addr, 102400, 102400);
+        NetworkTestUtils.waitForChannelReady(selector, node);
+
+        byte[] payload = TestUtils.randomBytes(payloadSize);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payloadSize);
+        buffer.putInt(payloadSize).put(payload).flip();
+        File file = TestUtils.tempFile();
+        try (MapCountingFileChannel fileChannel = new MapCountingFileChannel(FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+            Utils.writeFully(fileChannel, buffer);
+            FileTransferSend send = new FileTransferSend(node, fileChannel, excessCount);
+            selector.send(send);
+            TestUtils.waitForCondition(() -> {
+                selector.poll(100L);
+                return !selector.completedReceives().isEmpty();
+            }, "Timed out waiting for the file to be echoed");
+
+            assertTrue(send.completed());
+            assertEquals(1, selector.completedReceives().size());
+            NetworkReceive receive = selector.completedReceives().iterator().next();
+            assertArrayEquals(payload, Utils.toArray(receive.payload()));
+            return send;
+        }
+    }
+
     /**
      * Tests handling of BUFFER_UNDERFLOW during unwrap when network read buffer is smaller than SSL session packet buffer size.
      */
@@ -1147,6 +1238,17 @@ public class SslTransportLayerTest {
         return selector;
     }
 
+    private Selector createSelector(Map<String, Object> sslClientConfigs, FileTransferMode fileTransferMode,
+                                    Integer maxWriteSize) {
+        TestSslChannelBuilder channelBuilder = new TestSslChannelBuilder(Mode.CLIENT);
+        channelBuilder.fileTransferMode = fileTransferMode;
+        channelBuilder.maxWriteSize = maxWriteSize;
+        this.channelBuilder = channelBuilder;
+        this.channelBuilder.configure(sslClientConfigs);
+        this.selector = new Selector(100 * 5000, new Metrics(), time, "MetricGroup", channelBuilder, new LogContext());
+        return selector;
+    }
+
     private NioEchoServer createEchoServer(ListenerName listenerName, SecurityProtocol securityProtocol) throws Exception {
         return NetworkTestUtils.createEchoServer(listenerName, securityProtocol, new TestSecurityConfig(sslServerConfigs), null, time);
     }
@@ -1179,6 +1281,8 @@ public class SslTransportLayerTest {
         FailureAction readFailureAction = FailureAction.NO_OP;
         FailureAction flushFailureAction = FailureAction.NO_OP;
         int flushDelayCount = 0;
+        FileTransferMode fileTransferMode = FileTransferMode.COPY;
+        Integer maxWriteSize;
 
         public TestSslChannelBuilder(Mode mode) {
             super(mode, null, false, new LogContext());
@@ -1211,6 +1315,7 @@ public class SslTransportLayerTest {
          * is retrieved to handle overflow/underflow, until the actual session buffer size is reached.</li>
          * <li>IOException injection for reads and writes for testing exception handling during handshakes.</li>
          * <li>Delayed writes to test handshake failure notifications to peer</li>
+         * <li>A limit on the bytes encrypted per write to test partial writes of file transfers</li>
          * </ul>
          */
         class TestSslTransportLayer extends SslTransportLayer {
@@ -1223,7 +1328,7 @@ public class SslTransportLayerTest {
             private final AtomicInteger numDelayedFlushesRemaining;
 
             public TestSslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine) throws IOException {
-                super(channelId, key, sslEngine, new DefaultChannelMetadataRegistry());
+                super(channelId, key, sslEngine, new DefaultChannelMetadataRegistry(), fileTransferMode);
                 this.netReadBufSize = new ResizeableBufferSize(netReadBufSizeOverride);
                 this.netWriteBufSize = new ResizeableBufferSize(netWriteBufSizeOverride);
                 this.appBufSize = new ResizeableBufferSize(appBufSizeOverride);
@@ -1270,6 +1375,17 @@ public class SslTransportLayerTest {
                 return super.flush(buf);
             }
 
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (maxWriteSize == null || src.remaining() <= maxWriteSize)
+                    return super.write(src);
+                ByteBuffer limitedSrc = src.duplicate();
+                limitedSrc.limit(src.position() + maxWriteSize);
+                int written = super.write(limitedSrc);
+                src.position(src.position() + written);
+                return written;
+            }
+
             @Override
             protected void startHandshake() throws IOException {
                 assertTrue("SSL handshake initialized too early", socketChannel().isConnected());
@@ -1297,4 +1413,164 @@ public class SslTransportLayerTest {
             }
         }
     }
+
+    /**
+     * Sends the whole content of a file with `TransportLayer.transferFrom`, passing the position following the
+     * bytes written so far on each call, as `FileRecords` does.
+     */
+    private static class FileTransferSend implements Send {
+        private final String destination;
+        private final MapCountingFileChannel fileChannel;
+        private final long excessCount;
+        private final long size;
+        private long written;
+        private int numTransfers;
+        private boolean pending;
+
+        FileTransferSend(String destination, MapCountingFileChannel fileChannel, long excessCount) throws IOException {
+            this.destination = destination;
+            this.fileChannel = fileChannel;
+            this.excessCount = excessCount;
+            this.size = fileChannel.size();
+        }
+
+        @Override
+        public String destination() {
+            return destination;
+        }
+
+        @Override
+        public boolean completed() {
+            return written == size && !pending;
+        }
+
+        @Override
+        public long writeTo(GatheringByteChannel channel) throws IOException {
+            long transferred = 0;
+            if (written < size) {
+                transferred = ((TransportLayer) channel).transferFrom(fileChannel, written, size - written + excessCount);
+                assertTrue("Transferred " + transferred + " bytes past the end of the file",
+                    written + transferred <= size);
+                written += transferred;
+                numTransfers++;
+            }
+            pending = TransportLayers.hasPendingWrites(channel);
+            if (written == size && pending)
+                channel.write(ByteBuffer.allocate(0));
+            return transferred;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        int numTransfers() {
+            return numTransfers;
+        }
+    }
+
+    /**
+     * A file channel that counts the regions mapped from it.
+     */
+    private static class MapCountingFileChannel extends FileChannel {
+        private final FileChannel channel;
+        private int numMaps;
+
+        MapCountingFileChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        int numMaps() {
+            return numMaps;
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            numMaps++;
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
 }
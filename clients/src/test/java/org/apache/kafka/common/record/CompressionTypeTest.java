@@ -19,8 +19,13 @@ package org.apache.kafka.common.record;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -53,4 +58,51 @@ public class CompressionTypeTest {
                 buffer, RecordBatch.MAGIC_VALUE_V1, BufferSupplier.create());
         assertFalse(in.ignoreFlagDescriptorChecksum());
     }
+
+    @Test
+    public void testIsValidLevel() {
+        assertTrue(CompressionType.GZIP.isValidLevel(1));
+        assertTrue(CompressionType.GZIP.isValidLevel(9));
+        assertFalse(CompressionType.GZIP.isValidLevel(0));
+        assertFalse(CompressionType.GZIP.isValidLevel(10));
+        assertTrue(CompressionType.LZ4.isValidLevel(17));
+        assertFalse(CompressionType.LZ4.isValidLevel(18));
+        assertTrue(CompressionType.ZSTD.isValidLevel(-1));
+        assertFalse(CompressionType.ZSTD.isValidLevel(23));
+        // codecs without levels accept and ignore any level
+        assertTrue(CompressionType.NONE.isValidLevel(100));
+        assertTrue(CompressionType.SNAPPY.isValidLevel(100));
+    }
+
+    @Test
+    public void testGzipCompressionLevel() throws Exception {
+        byte[] data = new byte[16384];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i % 100 < 50 ? i % 7 : i % 13);
+
+        int fastestSize = gzipRoundTrip(data, 1);
+        int smallestSize = gzipRoundTrip(data, 9);
+        assertTrue(smallestSize <= fastestSize);
+    }
+
+    private static int gzipRoundTrip(byte[] data, int level) throws Exception {
+        ByteBufferOutputStream bufferStream = new ByteBufferOutputStream(256);
+        try (OutputStream out = CompressionType.GZIP.wrapForOutput(bufferStream, RecordBatch.MAGIC_VALUE_V2, level, null)) {
+            out.write(data);
+        }
+        ByteBuffer buffer = bufferStream.buffer();
+        buffer.flip();
+        int size = buffer.remaining();
+
+        byte[] decompressed = new byte[data.length + 1];
+        int read = 0;
+        try (InputStream in = CompressionType.GZIP.wrapForInput(buffer, RecordBatch.MAGIC_VALUE_V2, BufferSupplier.NO_CACHING)) {
+            int n;
+            while (read < decompressed.length && (n = in.read(decompressed, read, decompressed.length - read)) > 0)
+                read += n;
+        }
+        assertEquals(data.length, read);
+        assertArrayEquals(data, Arrays.copyOf(decompressed, read));
+        return size;
+    }
 }
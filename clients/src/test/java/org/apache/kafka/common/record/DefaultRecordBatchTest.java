@@ -30,8 +30,10 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.apache.kafka.common.record.DefaultRecordBatch.RECORDS_COUNT_OFFSET;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class DefaultRecordBatchTest {
@@ -403,6 +405,90 @@ public class DefaultRecordBatchTest {
         }
     }
 
+    @Test
+    public void testCursorConsistency() {
+        Header[] headers = {new RecordHeader("k1", "v1".getBytes()), new RecordHeader("k2", (byte[]) null)};
+        for (CompressionType compressionType : Arrays.asList(CompressionType.NONE, CompressionType.GZIP)) {
+            MemoryRecords records = MemoryRecords.withRecords(RecordBatch.MAGIC_VALUE_V2, 0L,
+                compressionType, TimestampType.CREATE_TIME,
+                new SimpleRecord(1L, "a".getBytes(), "1".getBytes()),
+                new SimpleRecord(2L, null, "2".getBytes(), headers),
+                new SimpleRecord(3L, "c".getBytes(), null),
+                new SimpleRecord(4L, "abc".getBytes(), new byte[1024]));
+            DefaultRecordBatch batch = new DefaultRecordBatch(records.buffer());
+
+            List<Record> expected = Utils.toList(batch.iterator());
+            try (RecordCursor cursor = batch.cursor(BufferSupplier.create())) {
+                for (Record expectedRecord : expected) {
+                    assertTrue(cursor.advance());
+                    Record record = cursor.current();
+                    assertEquals(expectedRecord.offset(), record.offset());
+                    assertEquals(expectedRecord.timestamp(), record.timestamp());
+                    assertEquals(expectedRecord.sizeInBytes(), record.sizeInBytes());
+                    assertEquals(expectedRecord.keySize(), record.keySize());
+                    assertEquals(expectedRecord.key(), record.key());
+                    assertEquals(expectedRecord.valueSize(), record.valueSize());
+                    assertEquals(expectedRecord.value(), record.value());
+                    assertArrayEquals(expectedRecord.headers(), record.headers());
+                }
+                assertFalse(cursor.advance());
+            }
+        }
+    }
+
+    @Test
+    public void testCursorReusesRecord() {
+        MemoryRecords records = MemoryRecords.withRecords(RecordBatch.MAGIC_VALUE_V2, 0L,
+            CompressionType.GZIP, TimestampType.CREATE_TIME,
+            new SimpleRecord(1L, "a".getBytes(), "1".getBytes()),
+            new SimpleRecord(2L, "b".getBytes(), "2".getBytes()));
+        DefaultRecordBatch batch = new DefaultRecordBatch(records.buffer());
+        try (RecordCursor cursor = batch.cursor(BufferSupplier.NO_CACHING)) {
+            assertTrue(cursor.advance());
+            Record first = cursor.current();
+            ByteBuffer firstValue = first.value();
+            assertTrue(cursor.advance());
+            assertSame(first, cursor.current());
+            assertEquals(1L, first.offset());
+            assertSame(firstValue, cursor.current().value());
+            assertEquals(ByteBuffer.wrap("2".getBytes()), firstValue);
+        }
+    }
+
+    @Test
+    public void testCursorWithLogAppendTime() {
+        MemoryRecords records = MemoryRecords.withRecords(RecordBatch.MAGIC_VALUE_V2, 0L,
+            CompressionType.NONE, TimestampType.CREATE_TIME,
+            new SimpleRecord(1L, "a".getBytes(), "1".getBytes()),
+            new SimpleRecord(2L, "b".getBytes(), "2".getBytes()));
+        DefaultRecordBatch batch = new DefaultRecordBatch(records.buffer());
+        batch.setMaxTimestamp(TimestampType.LOG_APPEND_TIME, 100L);
+        try (RecordCursor cursor = batch.cursor(BufferSupplier.NO_CACHING)) {
+            while (cursor.advance())
+                assertEquals(100L, cursor.current().timestamp());
+        }
+    }
+
+    @Test(expected = InvalidRecordException.class)
+    public void testCursorInvalidRecordCountTooManyNonCompressedV2() {
+        DefaultRecordBatch batch = recordsWithInvalidRecordCount(RecordBatch.MAGIC_VALUE_V2, System.currentTimeMillis(),
+            CompressionType.NONE, 5);
+        try (RecordCursor cursor = batch.cursor(BufferSupplier.NO_CACHING)) {
+            while (cursor.advance())
+                cursor.current();
+        }
+    }
+
+    @Test(expected = InvalidRecordException.class)
+    public void testCursorInvalidRecordCountTooLittleCompressedV2() {
+        DefaultRecordBatch batch = recordsWithInvalidRecordCount(RecordBatch.MAGIC_VALUE_V2, System.currentTimeMillis(),
+            CompressionType.GZIP, 2);
+        try (RecordCursor cursor = batch.cursor(BufferSupplier.NO_CACHING)) {
+            while (cursor.advance())
+                cursor.current();
+        }
+    }
+
     @Test
     public void testIncrementSequence() {
         assertEquals(10, DefaultRecordBatch.incrementSequence(5, 5));
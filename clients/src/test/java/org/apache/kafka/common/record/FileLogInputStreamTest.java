@@ -16,6 +16,7 @@
  */
 package org.apache.kafka.common.record;
 
+import org.apache.kafka.common.errors.CorruptRecordException;
 import org.apache.kafka.common.record.FileLogInputStream.FileChannelRecordBatch;
 import org.apache.kafka.common.utils.Utils;
 import org.apache.kafka.test.TestUtils;
@@ -42,6 +43,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(value = Parameterized.class)
 public class FileLogInputStreamTest {
@@ -216,6 +218,44 @@ public class FileLogInputStreamTest {
         }
     }
 
+    @Test
+    public void testBatchValidation() throws IOException {
+        if (compression == CompressionType.ZSTD && magic < MAGIC_VALUE_V2)
+            return;
+
+        try (FileRecords fileRecords = FileRecords.open(tempFile())) {
+            // large enough for the checksum to be computed over several chunks of the file
+            SimpleRecord[] records = new SimpleRecord[]{
+                new SimpleRecord(100L, "a".getBytes(), TestUtils.randomBytes(30000)),
+                new SimpleRecord(200L, "b".getBytes(), TestUtils.randomBytes(30000)),
+                new SimpleRecord(300L, "c".getBytes(), TestUtils.randomBytes(30000))
+            };
+            fileRecords.append(MemoryRecords.withRecords(magic, 0L, compression, CREATE_TIME, records));
+            fileRecords.flush();
+
+            FileChannelRecordBatch batch = new FileLogInputStream(fileRecords, 0, fileRecords.sizeInBytes()).nextBatch();
+            assertTrue(batch.isValid());
+            batch.ensureValid();
+
+            // corrupt the last byte of the batch
+            int lastPosition = batch.sizeInBytes() - 1;
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            Utils.readFullyOrFail(fileRecords.channel(), lastByte, lastPosition, "last byte");
+            lastByte.put(0, (byte) (lastByte.get(0) + 1));
+            lastByte.rewind();
+            fileRecords.channel().write(lastByte, lastPosition);
+
+            batch = new FileLogInputStream(fileRecords, 0, fileRecords.sizeInBytes()).nextBatch();
+            assertFalse(batch.isValid());
+            try {
+                batch.ensureValid();
+                fail("Corrupted batch should not be valid");
+            } catch (CorruptRecordException e) {
+                // expected
+            }
+        }
+    }
+
     @Test
     public void testNextBatchSelectionWithMaxedParams() throws IOException {
         try (FileRecords fileRecords = FileRecords.open(tempFile())) {
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.record;
+
+import org.apache.kafka.common.InvalidRecordException;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.apache.kafka.test.TestUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class ZstdDictionaryTest {
+
+    @Test
+    public void testFromBytes() {
+        ZstdDictionary dictionary = ZstdDictionary.fromBytes(dictionaryBytes(1001, 64));
+        assertEquals(1001, dictionary.id());
+
+        // raw content dictionaries have no id to store in the batches
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionary.fromBytes(new byte[64]));
+        // id 0 means no dictionary in the frame header
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionary.fromBytes(dictionaryBytes(0, 64)));
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionary.fromBytes(new byte[4]));
+    }
+
+    @Test
+    public void testRegister() {
+        assertNull(ZstdDictionary.forId(1002));
+        ZstdDictionary dictionary = ZstdDictionary.fromBytes(dictionaryBytes(1002, 64));
+        ZstdDictionary.register(dictionary);
+        assertSame(dictionary, ZstdDictionary.forId(1002));
+
+        // registering the same content again is allowed, but ids must identify a single dictionary
+        ZstdDictionary.register(ZstdDictionary.fromBytes(dictionaryBytes(1002, 64)));
+        assertSame(dictionary, ZstdDictionary.forId(1002));
+        assertThrows(IllegalArgumentException.class,
+            () -> ZstdDictionary.register(ZstdDictionary.fromBytes(dictionaryBytes(1002, 128))));
+    }
+
+    @Test
+    public void testRegisterAll() throws Exception {
+        File directory = TestUtils.tempDirectory();
+        Files.write(new File(directory, "dictionary-1003").toPath(), dictionaryBytes(1003, 64));
+        Files.write(new File(directory, "dictionary-1004").toPath(), dictionaryBytes(1004, 64));
+        assertEquals(2, ZstdDictionary.registerAll(directory));
+        assertEquals(1003, ZstdDictionary.forId(1003).id());
+        assertEquals(1004, ZstdDictionary.forId(1004).id());
+    }
+
+    @Test
+    public void testFrameDictionaryId() {
+        // frames without a dictionary id
+        assertEquals(0, ZstdDictionary.frameDictionaryId(frameHeader((byte) 0x00)));
+        assertEquals(0, ZstdDictionary.frameDictionaryId(ByteBuffer.wrap(new byte[16])));
+        assertEquals(0, ZstdDictionary.frameDictionaryId(ByteBuffer.allocate(0)));
+
+        // ids of 1, 2 and 4 bytes, with and without a window descriptor
+        assertEquals(0xAB, ZstdDictionary.frameDictionaryId(frameHeader((byte) 0x21, (byte) 0xAB)));
+        assertEquals(0xABCD, ZstdDictionary.frameDictionaryId(frameHeader((byte) 0x02, (byte) 0x00, (byte) 0xCD, (byte) 0xAB)));
+        assertEquals(0x12345678, ZstdDictionary.frameDictionaryId(
+            frameHeader((byte) 0x23, (byte) 0x78, (byte) 0x56, (byte) 0x34, (byte) 0x12)));
+
+        // the position of the buffer is used and left unchanged
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.position(3);
+        buffer.put(frameHeader((byte) 0x21, (byte) 0x07));
+        buffer.position(3);
+        assertEquals(7, ZstdDictionary.frameDictionaryId(buffer));
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void testCompressWithDictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++)
+            samples.add(jsonRecord(random));
+        ZstdDictionary dictionary = ZstdDictionary.train(samples, 4096);
+        ZstdDictionary.register(dictionary);
+
+        byte[] value = jsonRecord(random);
+        MemoryRecordsBuilder builder = new MemoryRecordsBuilder(new ByteBufferOutputStream(256), RecordBatch.MAGIC_VALUE_V2,
+            CompressionType.ZSTD, null, dictionary, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP,
+            RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false,
+            RecordBatch.NO_PARTITION_LEADER_EPOCH, Integer.MAX_VALUE);
+        builder.append(0L, null, value);
+        MemoryRecords withDictionary = builder.build();
+        MemoryRecords withoutDictionary = MemoryRecords.withRecords(CompressionType.ZSTD, new SimpleRecord(value));
+        assertEquals(dictionary.id(), ZstdDictionary.frameDictionaryId(payload(withDictionary)));
+        assertEquals(0, ZstdDictionary.frameDictionaryId(payload(withoutDictionary)));
+
+        for (MemoryRecords records : new MemoryRecords[] {withDictionary, withoutDictionary}) {
+            Iterator<Record> iterator = records.records().iterator();
+            assertEquals(ByteBuffer.wrap(value), iterator.next().value());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testDecompressWithUnknownDictionary() {
+        assertNull(ZstdDictionary.forId(1005));
+        // a record error rather than an unexpected one, so that the broker rejects the batch as invalid
+        assertThrows(InvalidRecordException.class, () -> CompressionType.ZSTD.wrapForInput(
+            frameHeader((byte) 0x02, (byte) 0x00, (byte) 0xED, (byte) 0x03), RecordBatch.CURRENT_MAGIC_VALUE,
+            BufferSupplier.NO_CACHING));
+    }
+
+    @Test
+    public void testFilterToKeepsDictionary() {
+        ZstdDictionary dictionary = trainDictionary();
+        Random random = new Random(1);
+        MemoryRecordsBuilder builder = new MemoryRecordsBuilder(new ByteBufferOutputStream(256), RecordBatch.MAGIC_VALUE_V2,
+            CompressionType.ZSTD, null, dictionary, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP,
+            RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false,
+            RecordBatch.NO_PARTITION_LEADER_EPOCH, Integer.MAX_VALUE);
+        for (int i = 0; i < 10; i++)
+            builder.append(0L, null, jsonRecord(random));
+        MemoryRecords records = builder.build();
+
+        // dropping a record rebuilds the batch, which must be compressed with the same dictionary
+        ByteBuffer output = ByteBuffer.allocate(4096);
+        MemoryRecords.FilterResult result = records.filterTo(null, new MemoryRecords.RecordFilter() {
+            @Override
+            protected BatchRetention checkBatchRetention(RecordBatch batch) {
+                return BatchRetention.DELETE_EMPTY;
+            }
+
+            @Override
+            protected boolean shouldRetainRecord(RecordBatch recordBatch, Record record) {
+                return record.offset() != 3L;
+            }
+        }, output, Integer.MAX_VALUE, BufferSupplier.NO_CACHING);
+        assertEquals(9, result.messagesRetained());
+
+        output.flip();
+        MemoryRecords filtered = MemoryRecords.readableRecords(output);
+        assertEquals(dictionary.id(), ZstdDictionary.frameDictionaryId(payload(filtered)));
+        assertEquals(9, filtered.batches().iterator().next().countOrNull().intValue());
+    }
+
+    private static ZstdDictionary trainDictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++)
+            samples.add(jsonRecord(random));
+        ZstdDictionary dictionary = ZstdDictionary.train(samples, 4096);
+        ZstdDictionary.register(dictionary);
+        return dictionary;
+    }
+
+    private static byte[] jsonRecord(Random random) {
+        return String.format("{\"user\":\"user-%d\",\"event\":\"page_view\",\"page\":\"/products/%d\",\"duration\":%d}",
+            random.nextInt(1000), random.nextInt(100), random.nextInt(10000)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer payload(MemoryRecords records) {
+        ByteBuffer buffer = records.buffer();
+        buffer.position(DefaultRecordBatch.RECORD_BATCH_OVERHEAD);
+        return buffer;
+    }
+
+    private static byte[] dictionaryBytes(int id, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0xEC30A437);
+        buffer.putInt(id);
+        return buffer.array();
+    }
+
+    private static ByteBuffer frameHeader(byte descriptor, byte... rest) {
+        ByteBuffer buffer = ByteBuffer.allocate(5 + rest.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0xFD2FB528);
+        buffer.put(descriptor);
+        buffer.put(rest);
+        buffer.flip();
+        return buffer;
+    }
+}
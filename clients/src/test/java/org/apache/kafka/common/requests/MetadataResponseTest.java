@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetadataResponseTest {
+
+    @Test
+    public void testPrepareResponsesFromSharedTopicMetadata() {
+        MetadataResponse.PartitionMetadata partitionMetadata = new MetadataResponse.PartitionMetadata(Errors.NONE,
+            new TopicPartition("foo", 0), Optional.of(1), Optional.of(5), Arrays.asList(1, 2), Arrays.asList(1, 2),
+            Collections.emptyList());
+        MetadataResponse.TopicMetadata topicMetadata = new MetadataResponse.TopicMetadata(Errors.NONE, "foo", false,
+            Collections.singletonList(partitionMetadata));
+        MetadataResponse.TopicMetadata withOperations = topicMetadata.withAuthorizedOperations(8);
+        assertEquals(MetadataResponse.AUTHORIZED_OPERATIONS_OMITTED, topicMetadata.authorizedOperations());
+        assertEquals(8, withOperations.authorizedOperations());
+
+        MetadataResponse first = MetadataResponse.prepareResponse(Collections.singletonList(new Node(1, "host", 9092)),
+            "cluster", 1, Collections.singletonList(topicMetadata));
+        MetadataResponse second = MetadataResponse.prepareResponse(0, Collections.singletonList(new Node(1, "host", 9092)),
+            "cluster", 1, Collections.singletonList(withOperations), MetadataResponse.AUTHORIZED_OPERATIONS_OMITTED);
+        // the partitions of the response data are built once, and shared by both responses
+        short version = ApiKeys.METADATA.latestVersion();
+        for (MetadataResponse response : Arrays.asList(first, second)) {
+            MetadataResponse parsed = new MetadataResponse(response.toStruct(version), version);
+            MetadataResponse.TopicMetadata parsedTopic = parsed.topicMetadata().iterator().next();
+            assertEquals(response == first ? MetadataResponse.AUTHORIZED_OPERATIONS_OMITTED : 8,
+                parsedTopic.authorizedOperations());
+            MetadataResponse.PartitionMetadata parsedPartition = parsedTopic.partitionMetadata().get(0);
+            assertEquals(Optional.of(1), parsedPartition.leaderId);
+            assertEquals(Optional.of(5), parsedPartition.leaderEpoch);
+            assertEquals(Arrays.asList(1, 2), parsedPartition.replicaIds);
+        }
+    }
+}
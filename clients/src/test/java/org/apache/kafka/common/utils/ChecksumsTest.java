@@ -17,12 +17,19 @@
 
 package org.apache.kafka.common.utils;
 
+import org.apache.kafka.test.TestUtils;
 import org.junit.Test;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.Checksum;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class ChecksumsTest {
 
@@ -49,6 +56,50 @@ public class ChecksumsTest {
         doTestUpdateByteBufferWithOffsetPosition(bytes, ByteBuffer.allocateDirect(bytes.length), 2);
     }
 
+    @Test
+    public void testUpdateByteBuffers() {
+        byte[] bytes = TestUtils.randomBytes(100);
+        ByteBuffer direct = ByteBuffer.allocateDirect(50);
+        direct.put(bytes, 40, 50);
+        direct.flip();
+        ByteBuffer[] buffers = new ByteBuffer[]{
+            ByteBuffer.wrap(bytes, 0, 40).slice(),
+            direct,
+            ByteBuffer.wrap(bytes, 90, 10)
+        };
+
+        Checksum crc = Crc32C.create();
+        Checksums.update(crc, buffers);
+        assertEquals(Crc32C.compute(bytes, 0, bytes.length), crc.getValue());
+        assertEquals(0, buffers[1].position());
+        assertEquals(90, buffers[2].position());
+    }
+
+    @Test
+    public void testUpdateFileChannel() throws IOException {
+        byte[] bytes = TestUtils.randomBytes(1000);
+        File file = TestUtils.tempFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes));
+
+            // the region is read in several chunks, the last one being partial
+            Checksum crc = Crc32C.create();
+            Checksums.update(crc, channel, 10, 900, ByteBuffer.allocate(128));
+            assertEquals(Crc32C.compute(bytes, 10, 900), crc.getValue());
+
+            crc = Crc32C.create();
+            Checksums.update(crc, channel, 10, 900, ByteBuffer.allocateDirect(2048));
+            assertEquals(Crc32C.compute(bytes, 10, 900), crc.getValue());
+
+            try {
+                Checksums.update(Crc32C.create(), channel, 500, 600, ByteBuffer.allocate(128));
+                fail("Reading past the end of the file should fail");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
     @Test
     public void testUpdateInt() {
         final int value = 1000;
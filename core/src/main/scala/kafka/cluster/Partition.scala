@@ -89,16 +89,25 @@ class ZkPartitionStateStore(topicPartition: TopicPartition,
 class DelayedOperations(topicPartition: TopicPartition,
                         produce: DelayedOperationPurgatory[DelayedProduce],
                         fetch: DelayedOperationPurgatory[DelayedFetch],
-                        deleteRecords: DelayedOperationPurgatory[DelayedDeleteRecords]) {
+                        deleteRecords: DelayedOperationPurgatory[DelayedDeleteRecords],
+                        partitionChanged: TopicPartition => Unit) {
+
+  def this(topicPartition: TopicPartition,
+           produce: DelayedOperationPurgatory[DelayedProduce],
+           fetch: DelayedOperationPurgatory[DelayedFetch],
+           deleteRecords: DelayedOperationPurgatory[DelayedDeleteRecords]) =
+    this(topicPartition, produce, fetch, deleteRecords, _ => ())
 
   def checkAndCompleteAll(): Unit = {
     val requestKey = TopicPartitionOperationKey(topicPartition)
+    partitionChanged(topicPartition)
     fetch.checkAndComplete(requestKey)
     produce.checkAndComplete(requestKey)
     deleteRecords.checkAndComplete(requestKey)
   }
 
   def checkAndCompleteFetch(): Unit = {
+    partitionChanged(topicPartition)
     fetch.checkAndComplete(TopicPartitionOperationKey(topicPartition))
   }
 
@@ -130,7 +139,8 @@ object Partition extends KafkaMetricsGroup {
       topicPartition,
       replicaManager.delayedProducePurgatory,
       replicaManager.delayedFetchPurgatory,
-      replicaManager.delayedDeleteRecordsPurgatory)
+      replicaManager.delayedDeleteRecordsPurgatory,
+      replicaManager.partitionChanged)
 
     new Partition(topicPartition,
       replicaLagTimeMaxMs = replicaManager.config.replicaLagTimeMaxMs,
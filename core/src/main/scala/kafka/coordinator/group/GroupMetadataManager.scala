@@ -21,7 +21,7 @@ import java.io.PrintStream
 import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
 import java.util.Optional
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{CancellationException, ScheduledFuture, TimeUnit}
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.locks.ReentrantLock
 
@@ -38,7 +38,7 @@ import org.apache.kafka.clients.consumer.ConsumerRecord
 import org.apache.kafka.clients.consumer.internals.ConsumerProtocol
 import org.apache.kafka.common.internals.Topic
 import org.apache.kafka.common.metrics.Metrics
-import org.apache.kafka.common.metrics.stats.{Avg, Max, Meter}
+import org.apache.kafka.common.metrics.stats.{Avg, Max, Meter, Value}
 import org.apache.kafka.common.protocol.Errors
 import org.apache.kafka.common.protocol.types.Type._
 import org.apache.kafka.common.protocol.types._
@@ -83,6 +83,12 @@ class GroupMetadataManager(brokerId: Int,
   /* single-thread scheduler to handle offset/group metadata cache loading and unloading */
   private val scheduler = new KafkaScheduler(threads = 1, threadNamePrefix = "group-metadata-manager-")
 
+  /* scheduler to read the partitions of the offsets topic concurrently, which are handed over by the scheduler thread */
+  private val loadScheduler = new KafkaScheduler(threads = config.loadThreads, threadNamePrefix = "group-metadata-loader-")
+
+  /* the loads of the partitions handed over to the load scheduler, which are only accessed by the scheduler thread */
+  private val partitionLoads = mutable.Map[Int, ScheduledFuture[_]]()
+
   /* The groups with open transactional offsets commits per producer. We need this because when the commit or abort
    * marker comes in for a transaction, it is for a particular partition on the offsets topic and a particular producerId.
    * We use this structure to quickly find the groups which need to be updated by the commit/abort marker. */
@@ -172,6 +178,7 @@ class GroupMetadataManager(brokerId: Int,
 
   def startup(enableMetadataExpiration: Boolean): Unit = {
     scheduler.startup()
+    loadScheduler.startup()
     if (enableMetadataExpiration) {
       scheduler.schedule(name = "delete-expired-group-metadata",
         fun = () => cleanupGroupMetadata,
@@ -521,20 +528,42 @@ class GroupMetadataManager(brokerId: Int,
     val topicPartition = new TopicPartition(Topic.GROUP_METADATA_TOPIC_NAME, offsetsPartition)
     if (addLoadingPartition(offsetsPartition)) {
       info(s"Scheduling loading of offsets and group metadata from $topicPartition")
-      scheduler.schedule(topicPartition.toString, () => loadGroupsAndOffsets(topicPartition, onGroupLoaded))
+      // the partition is loaded concurrently with the other partitions, once the tasks which were scheduled before on
+      // the scheduler thread, such as the unloading of the partition, are done
+      scheduler.schedule(topicPartition.toString, () => {
+        awaitPartitionLoad(offsetsPartition)
+        partitionLoads.put(offsetsPartition,
+          loadScheduler.schedule(topicPartition.toString, () => loadGroupsAndOffsets(topicPartition, onGroupLoaded)))
+      })
     } else {
       info(s"Already loading offsets and group metadata from $topicPartition")
     }
   }
 
+  /**
+   * Wait for the load of the given partition of the offsets topic, if it was handed over to the load scheduler. This is
+   * called on the scheduler thread before the groups of the partition are updated, so that the tasks of the scheduler
+   * thread run after the loads which were scheduled before them.
+   */
+  private def awaitPartitionLoad(offsetsPartition: Int): Unit = {
+    partitionLoads.remove(offsetsPartition).foreach { load =>
+      try load.get()
+      catch {
+        case _: CancellationException => // the load scheduler was shut down
+      }
+    }
+  }
+
   private[group] def loadGroupsAndOffsets(topicPartition: TopicPartition, onGroupLoaded: GroupMetadata => Unit): Unit = {
     try {
       val startMs = time.milliseconds()
-      doLoadGroupsAndOffsets(topicPartition, onGroupLoaded)
+      val bytesLoaded = doLoadGroupsAndOffsets(topicPartition, onGroupLoaded)
       val endMs = time.milliseconds()
       val timeLapse = endMs - startMs
       partitionLoadSensor.record(timeLapse, endMs, false)
-      info(s"Finished loading offsets and group metadata from $topicPartition in $timeLapse milliseconds.")
+      recordPartitionLoad(topicPartition.partition, timeLapse, bytesLoaded, endMs)
+      info(s"Finished loading offsets and group metadata from $topicPartition in $timeLapse milliseconds " +
+        s"($bytesLoaded bytes).")
     } catch {
       case t: Throwable => error(s"Error loading offsets from $topicPartition", t)
     } finally {
@@ -545,19 +574,43 @@ class GroupMetadataManager(brokerId: Int,
     }
   }
 
-  private def doLoadGroupsAndOffsets(topicPartition: TopicPartition, onGroupLoaded: GroupMetadata => Unit): Unit = {
+  /**
+   * Read the given partition of the offsets topic and load its groups into the cache. The records are decoded into the
+   * offsets of their groups as they are read, so that the offsets are only materialized once.
+   *
+   * @return The number of bytes read from the log of the partition
+   */
+  private def doLoadGroupsAndOffsets(topicPartition: TopicPartition, onGroupLoaded: GroupMetadata => Unit): Long = {
     def logEndOffset: Long = replicaManager.getLogEndOffset(topicPartition).getOrElse(-1L)
 
     replicaManager.getLog(topicPartition) match {
       case None =>
         warn(s"Attempted to load offsets and group metadata from $topicPartition, but found no log")
+        0L
 
       case Some(log) =>
-        val loadedOffsets = mutable.Map[GroupTopicPartition, CommitRecordMetadataAndOffset]()
-        val pendingOffsets = mutable.Map[Long, mutable.Map[GroupTopicPartition, CommitRecordMetadataAndOffset]]()
+        // the offsets of the groups, and the pending transactional offsets of the groups per producer
+        val loadedOffsets = mutable.Map[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]()
+        val pendingOffsets = mutable.Map[Long, mutable.Map[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]]()
         val loadedGroups = mutable.Map[String, GroupMetadata]()
         val removedGroups = mutable.Set[String]()
 
+        def putOffset(offsets: mutable.Map[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]],
+                      groupTopicPartition: GroupTopicPartition, offset: CommitRecordMetadataAndOffset): Unit = {
+          offsets.getOrElseUpdate(groupTopicPartition.group, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]())
+            .put(groupTopicPartition.topicPartition, offset)
+        }
+
+        def removeOffset(offsets: mutable.Map[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]],
+                         groupTopicPartition: GroupTopicPartition): Unit = {
+          offsets.get(groupTopicPartition.group).foreach { groupOffsets =>
+            groupOffsets.remove(groupTopicPartition.topicPartition)
+            // the groups without offsets are not loaded unless they have metadata
+            if (groupOffsets.isEmpty)
+              offsets.remove(groupTopicPartition.group)
+          }
+        }
+
         // buffer may not be needed if records are read from memory
         var buffer = ByteBuffer.allocate(0)
 
@@ -567,6 +620,8 @@ class GroupMetadataManager(brokerId: Int,
         // loop breaks if no records have been read, since the end of the log has been reached
         var readAtLeastOneRecord = true
 
+        var bytesLoaded = 0L
+
         while (currOffset < logEndOffset && readAtLeastOneRecord && !shuttingDown.get()) {
           val fetchDataInfo = log.read(currOffset,
             maxLength = config.loadBufferSize,
@@ -574,6 +629,7 @@ class GroupMetadataManager(brokerId: Int,
             minOneMessage = true)
 
           readAtLeastOneRecord = fetchDataInfo.records.sizeInBytes > 0
+          bytesLoaded += fetchDataInfo.records.sizeInBytes
 
           val memRecords = fetchDataInfo.records match {
             case records: MemoryRecords => records
@@ -604,11 +660,13 @@ class GroupMetadataManager(brokerId: Int,
                 val record = recordIterator.next()
                 val controlRecord = ControlRecordType.parse(record.key)
                 if (controlRecord == ControlRecordType.COMMIT) {
-                  pendingOffsets.getOrElse(batch.producerId, mutable.Map[GroupTopicPartition, CommitRecordMetadataAndOffset]())
-                    .foreach {
-                      case (groupTopicPartition, commitRecordMetadataAndOffset) =>
-                        if (!loadedOffsets.contains(groupTopicPartition) || loadedOffsets(groupTopicPartition).olderThan(commitRecordMetadataAndOffset))
-                          loadedOffsets.put(groupTopicPartition, commitRecordMetadataAndOffset)
+                  pendingOffsets.getOrElse(batch.producerId, Map.empty[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
+                    .foreach { case (groupId, groupPendingOffsets) =>
+                      val groupOffsets = loadedOffsets.getOrElseUpdate(groupId, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]())
+                      groupPendingOffsets.foreach { case (committedPartition, commitRecordMetadataAndOffset) =>
+                        if (groupOffsets.get(committedPartition).forall(_.olderThan(commitRecordMetadataAndOffset)))
+                          groupOffsets.put(committedPartition, commitRecordMetadataAndOffset)
+                      }
                     }
                 }
                 pendingOffsets.remove(batch.producerId)
@@ -622,22 +680,20 @@ class GroupMetadataManager(brokerId: Int,
                 GroupMetadataManager.readMessageKey(record.key) match {
 
                   case offsetKey: OffsetKey =>
-                    if (isTxnOffsetCommit && !pendingOffsets.contains(batch.producerId))
-                      pendingOffsets.put(batch.producerId, mutable.Map[GroupTopicPartition, CommitRecordMetadataAndOffset]())
+                    val offsets =
+                      if (isTxnOffsetCommit)
+                        pendingOffsets.getOrElseUpdate(batch.producerId,
+                          mutable.Map[String, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]())
+                      else
+                        loadedOffsets
 
                     // load offset
                     val groupTopicPartition = offsetKey.key
-                    if (!record.hasValue) {
-                      if (isTxnOffsetCommit)
-                        pendingOffsets(batch.producerId).remove(groupTopicPartition)
-                      else
-                        loadedOffsets.remove(groupTopicPartition)
-                    } else {
+                    if (!record.hasValue)
+                      removeOffset(offsets, groupTopicPartition)
+                    else {
                       val offsetAndMetadata = GroupMetadataManager.readOffsetMessageValue(record.value)
-                      if (isTxnOffsetCommit)
-                        pendingOffsets(batch.producerId).put(groupTopicPartition, CommitRecordMetadataAndOffset(batchBaseOffset, offsetAndMetadata))
-                      else
-                        loadedOffsets.put(groupTopicPartition, CommitRecordMetadataAndOffset(batchBaseOffset, offsetAndMetadata))
+                      putOffset(offsets, groupTopicPartition, CommitRecordMetadataAndOffset(batchBaseOffset, offsetAndMetadata))
                     }
 
                   case groupMetadataKey: GroupMetadataKey =>
@@ -661,30 +717,19 @@ class GroupMetadataManager(brokerId: Int,
           }
         }
 
-        val (groupOffsets, emptyGroupOffsets) = loadedOffsets
-          .groupBy(_._1.group)
-          .mapValues(_.map { case (groupTopicPartition, offset) => (groupTopicPartition.topicPartition, offset) })
-          .partition { case (group, _) => loadedGroups.contains(group) }
-
+        // the pending offsets are only rearranged by group, rather than copied
         val pendingOffsetsByGroup = mutable.Map[String, mutable.Map[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]]()
         pendingOffsets.foreach { case (producerId, producerOffsets) =>
-          producerOffsets.keySet.map(_.group).foreach(addProducerGroup(producerId, _))
-          producerOffsets
-            .groupBy(_._1.group)
-            .mapValues(_.map { case (groupTopicPartition, offset) => (groupTopicPartition.topicPartition, offset)})
-            .foreach { case (group, offsets) =>
-              val groupPendingOffsets = pendingOffsetsByGroup.getOrElseUpdate(group, mutable.Map.empty[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
-              val groupProducerOffsets = groupPendingOffsets.getOrElseUpdate(producerId, mutable.Map.empty[TopicPartition, CommitRecordMetadataAndOffset])
-              groupProducerOffsets ++= offsets
-            }
+          producerOffsets.foreach { case (groupId, groupPendingOffsets) =>
+            addProducerGroup(producerId, groupId)
+            pendingOffsetsByGroup.getOrElseUpdate(groupId, mutable.Map[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]())
+              .put(producerId, groupPendingOffsets)
+          }
         }
 
-        val (pendingGroupOffsets, pendingEmptyGroupOffsets) = pendingOffsetsByGroup
-          .partition { case (group, _) => loadedGroups.contains(group)}
-
         loadedGroups.values.foreach { group =>
-          val offsets = groupOffsets.getOrElse(group.groupId, Map.empty[TopicPartition, CommitRecordMetadataAndOffset])
-          val pendingOffsets = pendingGroupOffsets.getOrElse(group.groupId, Map.empty[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
+          val offsets = loadedOffsets.getOrElse(group.groupId, Map.empty[TopicPartition, CommitRecordMetadataAndOffset])
+          val pendingOffsets = pendingOffsetsByGroup.getOrElse(group.groupId, Map.empty[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
           debug(s"Loaded group metadata $group with offsets $offsets and pending offsets $pendingOffsets")
           loadGroup(group, offsets, pendingOffsets)
           onGroupLoaded(group)
@@ -692,10 +737,10 @@ class GroupMetadataManager(brokerId: Int,
 
         // load groups which store offsets in kafka, but which have no active members and thus no group
         // metadata stored in the log
-        (emptyGroupOffsets.keySet ++ pendingEmptyGroupOffsets.keySet).foreach { groupId =>
+        (loadedOffsets.keySet ++ pendingOffsetsByGroup.keySet).filterNot(loadedGroups.contains).foreach { groupId =>
           val group = new GroupMetadata(groupId, Empty, time)
-          val offsets = emptyGroupOffsets.getOrElse(groupId, Map.empty[TopicPartition, CommitRecordMetadataAndOffset])
-          val pendingOffsets = pendingEmptyGroupOffsets.getOrElse(groupId, Map.empty[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
+          val offsets = loadedOffsets.getOrElse(groupId, Map.empty[TopicPartition, CommitRecordMetadataAndOffset])
+          val pendingOffsets = pendingOffsetsByGroup.getOrElse(groupId, Map.empty[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]])
           debug(s"Loaded group metadata $group with offsets $offsets and pending offsets $pendingOffsets")
           loadGroup(group, offsets, pendingOffsets)
           onGroupLoaded(group)
@@ -705,13 +750,37 @@ class GroupMetadataManager(brokerId: Int,
           // if the cache already contains a group which should be removed, raise an error. Note that it
           // is possible (however unlikely) for a consumer group to be removed, and then to be used only for
           // offset storage (i.e. by "simple" consumers)
-          if (groupMetadataCache.contains(groupId) && !emptyGroupOffsets.contains(groupId))
+          if (groupMetadataCache.contains(groupId) && !loadedOffsets.contains(groupId))
             throw new IllegalStateException(s"Unexpected unload of active group $groupId while " +
               s"loading partition $topicPartition")
         }
+
+        bytesLoaded
     }
   }
 
+  /**
+   * Record the time it took to load the given partition of the offsets topic and the number of bytes read from it, in
+   * the metrics of the partition.
+   */
+  private def recordPartitionLoad(offsetsPartition: Int, timeMs: Long, bytes: Long, nowMs: Long): Unit = {
+    val tags = Map("partition" -> offsetsPartition.toString).asJava
+    val timeSensor = metrics.sensor(partitionLoadTimeSensorName(offsetsPartition))
+    timeSensor.add(metrics.metricName("partition-load-time-ms",
+      "group-coordinator-metrics",
+      "The time it took to load the partition the last time it was loaded", tags), new Value())
+    timeSensor.record(timeMs, nowMs, false)
+    val bytesSensor = metrics.sensor(partitionLoadBytesSensorName(offsetsPartition))
+    bytesSensor.add(metrics.metricName("partition-load-bytes",
+      "group-coordinator-metrics",
+      "The number of bytes read from the partition the last time it was loaded", tags), new Value())
+    bytesSensor.record(bytes, nowMs, false)
+  }
+
+  private def partitionLoadTimeSensorName(offsetsPartition: Int): String = s"PartitionLoadTime-$offsetsPartition"
+
+  private def partitionLoadBytesSensorName(offsetsPartition: Int): String = s"PartitionLoadBytes-$offsetsPartition"
+
   private def loadGroup(group: GroupMetadata, offsets: Map[TopicPartition, CommitRecordMetadataAndOffset],
                         pendingTransactionalOffsets: Map[Long, mutable.Map[TopicPartition, CommitRecordMetadataAndOffset]]): Unit = {
     // offsets are initialized prior to loading the group into the cache to ensure that clients see a consistent
@@ -741,6 +810,8 @@ class GroupMetadataManager(brokerId: Int,
       var numOffsetsRemoved = 0
       var numGroupsRemoved = 0
 
+      awaitPartitionLoad(offsetsPartition)
+
       inLock(partitionLock) {
         // we need to guard the group removal in cache in the loading partition lock
         // to prevent coordinator's check-and-get-group race condition
@@ -757,6 +828,10 @@ class GroupMetadataManager(brokerId: Int,
         }
       }
 
+      // the load metrics of the partition are only kept while it is owned
+      metrics.removeSensor(partitionLoadTimeSensorName(offsetsPartition))
+      metrics.removeSensor(partitionLoadBytesSensorName(offsetsPartition))
+
       info(s"Finished unloading $topicPartition. Removed $numOffsetsRemoved cached offsets " +
         s"and $numGroupsRemoved cached groups.")
     }
@@ -857,8 +932,10 @@ class GroupMetadataManager(brokerId: Int,
    * the scheduler thread to avoid deadlocks.
    */
   def scheduleHandleTxnCompletion(producerId: Long, completedPartitions: Set[Int], isCommit: Boolean): Unit = {
-    scheduler.schedule(s"handleTxnCompletion-$producerId", () =>
-      handleTxnCompletion(producerId, completedPartitions, isCommit))
+    scheduler.schedule(s"handleTxnCompletion-$producerId", () => {
+      completedPartitions.foreach(awaitPartitionLoad)
+      handleTxnCompletion(producerId, completedPartitions, isCommit)
+    })
   }
 
   private[group] def handleTxnCompletion(producerId: Long, completedPartitions: Set[Int], isCommit: Boolean): Unit = {
@@ -912,6 +989,9 @@ class GroupMetadataManager(brokerId: Int,
     shuttingDown.set(true)
     if (scheduler.isStarted)
       scheduler.shutdown()
+    // the loads stop reading the partitions once shutting down
+    if (loadScheduler.isStarted)
+      loadScheduler.shutdown()
 
     // TODO: clear the caches
   }
@@ -21,6 +21,7 @@ import java.io.{Closeable, File, RandomAccessFile}
 import java.nio.channels.FileChannel
 import java.nio.file.Files
 import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.util
 import java.util.concurrent.locks.{Lock, ReentrantLock}
 
 import kafka.common.IndexOffsetOverflowException
@@ -35,9 +36,10 @@ import org.apache.kafka.common.utils.{ByteBufferUnmapper, OperatingSystem, Utils
  * @param file The index file
  * @param baseOffset the base offset of the segment that this index is corresponding to.
  * @param maxIndexSize The maximum index size in bytes.
+ * @param twoLevelLookup Whether the lookups outside of the warm section search a sparse level of the index first
  */
 abstract class AbstractIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSize: Int = -1,
-                             val writable: Boolean) extends Closeable {
+                             val writable: Boolean, val twoLevelLookup: Boolean = false) extends Closeable {
   import AbstractIndex._
 
   // Length of the index file
@@ -101,9 +103,24 @@ abstract class AbstractIndex(@volatile var file: File, val baseOffset: Long, val
    In there future, we may use a backend thread to periodically touch the entire warm section. So that, we can
    1) support larger warm section
    2) make sure the warm section of low QPS topic-partitions are really warm.
+
+   The lookups outside of the warm section, typically from consumers catching up on older segments, still binary search
+   the rest of the index and touch a page at each step, most of which are not in the page cache. With `twoLevelLookup`,
+   such a lookup first binary searches a sparse level kept in memory, which holds the first entry starting in every page
+   of the index, and then only searches the entries starting in the page found. It touches a single page of the index,
+   or two when the last entry of the page spans the next one. The sparse level is filled as the index is appended to,
+   so it is complete when the segment is rolled. For the indexes loaded from disk, it is filled lazily with the first
+   entries of the pages visited by the lookups: the first lookups touch as many pages as the plain binary search, and
+   the following ones find the pages they visit in memory. So no lookup reads the whole index, the indexes of existing
+   segments are used as is, and the format of the index files is unchanged. It costs an entry of memory per page read.
  */
   protected def _warmEntries: Int = 8192 / entrySize
 
+  // the sparse level of the two-level lookup: the first entry starting in each page of the index, or null if it has not
+  // been read yet. Lookups set the entries they read without the lock, which is safe as the entries are immutable.
+  @volatile
+  private var sparseLevel: Array[IndexEntry] = EmptySparseLevel
+
   protected val lock = new ReentrantLock
 
   @volatile
@@ -394,6 +411,38 @@ abstract class AbstractIndex(@volatile var file: File, val baseOffset: Long, val
       return binarySearch(firstHotEntry, _entries - 1)
     }
 
+    if (twoLevelLookup) {
+      // the level is read before the entries, so that the entries read from the pages it has room for are still in
+      // the index, or the level was replaced by a truncation and the entries set in it are not used
+      val currentLevel = sparseLevel
+      val pages = Math.min(pageCount(_entries), pageCount(firstHotEntry + 1))
+      val level = if (currentLevel.length >= pages) currentLevel else extendedSparseLevel(currentLevel, pages)
+      def compareFirstEntryOfPage(page: Int): Int = {
+        var entry = level(page)
+        if (entry == null) {
+          entry = parseEntry(idx, firstSlotOfPage(page))
+          level(page) = entry
+        }
+        compareIndexEntry(entry, target, searchEntity)
+      }
+
+      // check if the target offset is smaller than the least offset, which is the first entry of the first page
+      if (compareFirstEntryOfPage(0) > 0)
+        return (-1, 0)
+      // binary search for the last page whose first entry is not larger than the target, the pages starting in the
+      // warm section are not searched as the target is before it
+      var lo = 0
+      var hi = pages - 1
+      while (lo < hi) {
+        val mid = (lo + hi + 1) >>> 1
+        if (compareFirstEntryOfPage(mid) > 0)
+          hi = mid - 1
+        else
+          lo = mid
+      }
+      return binarySearch(firstSlotOfPage(lo), Math.min(firstSlotOfPage(lo + 1) - 1, firstHotEntry))
+    }
+
     // check if the target offset is smaller than the least offset
     if(compareIndexEntry(parseEntry(idx, 0), target, searchEntity) > 0)
       return (-1, 0)
@@ -401,6 +450,55 @@ abstract class AbstractIndex(@volatile var file: File, val baseOffset: Long, val
     binarySearch(0, firstHotEntry)
   }
 
+  /**
+   * The given sparse level extended with room for at least the given number of pages. Extending it does not read the
+   * index: the entries of the new pages are read by the lookups. If the level was replaced since it was read, the
+   * extended level is only used by the caller, as the pages may no longer be in the index.
+   */
+  private def extendedSparseLevel(level: Array[IndexEntry], pages: Int): Array[IndexEntry] = {
+    inLock(lock) {
+      val extended = util.Arrays.copyOf(level, Math.max(pages, 2 * level.length))
+      if (sparseLevel eq level)
+        sparseLevel = extended
+      extended
+    }
+  }
+
+  /**
+   * Add the last entry of the index to the sparse level if it is the first entry starting in its page. This must be
+   * called under the lock after every append, so that the lookups of the index do not read its pages to fill the level.
+   */
+  protected def appendToSparseLevel(): Unit = {
+    if (twoLevelLookup) {
+      val page = pageCount(_entries) - 1
+      val slot = _entries - 1
+      if (firstSlotOfPage(page) == slot) {
+        val level = if (sparseLevel.length > page) sparseLevel else extendedSparseLevel(sparseLevel, page + 1)
+        level(page) = parseEntry(mmap, slot)
+      }
+    }
+  }
+
+  /**
+   * Remove the pages which do not start before the given number of entries from the sparse level. This must be called
+   * under the lock whenever the index is truncated. The level is always replaced, so that the lookups which still use
+   * the previous level do not set entries that are no longer in the index.
+   */
+  protected def truncateSparseLevel(entries: Int): Unit = {
+    if (twoLevelLookup)
+      sparseLevel = util.Arrays.copyOf(sparseLevel, Math.min(pageCount(entries), sparseLevel.length))
+  }
+
+  /**
+   * The slot of the first entry starting in the given page of the index.
+   */
+  private def firstSlotOfPage(page: Int): Int = ((page.toLong * PageSize + entrySize - 1) / entrySize).toInt
+
+  /**
+   * The number of pages in which the given number of entries start.
+   */
+  private def pageCount(entries: Int): Int = if (entries == 0) 0 else ((entries - 1).toLong * entrySize / PageSize).toInt + 1
+
   private def compareIndexEntry(indexEntry: IndexEntry, target: Long, searchEntity: IndexSearchEntity): Int = {
     searchEntity match {
       case IndexSearchType.KEY => java.lang.Long.compare(indexEntry.indexKey, target)
@@ -426,6 +524,11 @@ abstract class AbstractIndex(@volatile var file: File, val baseOffset: Long, val
 
 object AbstractIndex extends Logging {
   override val loggerName: String = classOf[AbstractIndex].getName
+
+  // the smallest page size of the processors, as for the warm section
+  private val PageSize = 4096
+
+  private val EmptySparseLevel = Array.empty[IndexEntry]
 }
 
 object IndexSearchType extends Enumeration {
@@ -28,6 +28,14 @@ package kafka.log
  * @param backOffMs The amount of time to wait before rechecking if no logs are eligible for cleaning
  * @param enableCleaner Allows completely disabling the log cleaner
  * @param hashAlgorithm The hash algorithm to use in key comparison.
+ * @param offsetMapType The type of the offset map used for log deduplication, see [[OffsetMap]]
+ * @param offsetMapOffHeap Whether the offset map is stored off-heap, if supported by its type
+ * @param threadsPerLog The number of threads used by each cleaner thread to clean a log
+ * @param incrementalEnable Whether the logs are cleaned incrementally, see [[CleanerKeyIndex]]
+ * @param incrementalMinDeadRatio The ratio of superseded records above which the segments cleaned before are cleaned again
+ * @param ioAdaptiveEnable Whether the I/O of the cleaner threads adapts to the load of the broker, see [[CleanerIoBudget]]
+ * @param minIoBytesPerSecond The read and write I/O that all cleaner threads are allowed to do when the broker is loaded,
+ *                            if their I/O adapts to the load of the broker
  */
 case class CleanerConfig(numThreads: Int = 1,
                          dedupeBufferSize: Long = 4*1024*1024L,
@@ -37,5 +45,12 @@ case class CleanerConfig(numThreads: Int = 1,
                          maxIoBytesPerSecond: Double = Double.MaxValue,
                          backOffMs: Long = 15 * 1000,
                          enableCleaner: Boolean = true,
-                         hashAlgorithm: String = "MD5") {
+                         hashAlgorithm: String = "MD5",
+                         offsetMapType: String = OffsetMap.SkimpyOffsetMapType,
+                         offsetMapOffHeap: Boolean = false,
+                         threadsPerLog: Int = 1,
+                         incrementalEnable: Boolean = false,
+                         incrementalMinDeadRatio: Double = 0.5,
+                         ioAdaptiveEnable: Boolean = false,
+                         minIoBytesPerSecond: Double = 1024 * 1024) {
 }
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import kafka.server.BrokerTopicStats
+import kafka.utils.{Logging, threadsafe}
+import org.apache.kafka.common.utils.Time
+
+/**
+ * The load of the broker, which the I/O budget of the log cleaner adapts to.
+ *
+ * @param requestHandlerIdleRatio The recent average fraction of time the request handler threads are idle
+ * @param recentFlushTimeMs The recent median time to flush a log to disk
+ * @param meanFlushTimeMs The mean time to flush a log to disk since the broker started
+ * @param bytesPerSec The recent rate of bytes produced to and fetched from the broker
+ */
+case class BrokerLoad(requestHandlerIdleRatio: Double,
+                      recentFlushTimeMs: Double,
+                      meanFlushTimeMs: Double,
+                      bytesPerSec: Double)
+
+object BrokerLoad {
+  /* the load of a broker which does nothing */
+  val Idle = BrokerLoad(requestHandlerIdleRatio = 1.0, recentFlushTimeMs = 0.0, meanFlushTimeMs = 0.0, bytesPerSec = 0.0)
+
+  /**
+   * Sample the load of the broker from its metrics.
+   *
+   * @param brokerTopicStats The metrics of the bytes produced and fetched
+   * @param requestHandlerIdleRatio The recent average fraction of time the request handler threads are idle
+   */
+  def sampler(brokerTopicStats: BrokerTopicStats, requestHandlerIdleRatio: () => Double): () => BrokerLoad = () => {
+    val flushTime = LogFlushStats.logFlushTime
+    val stats = brokerTopicStats.allTopicsStats
+    BrokerLoad(requestHandlerIdleRatio = requestHandlerIdleRatio(),
+      recentFlushTimeMs = flushTime.getSnapshot.getMedian,
+      meanFlushTimeMs = flushTime.mean,
+      bytesPerSec = stats.bytesInRate.oneMinuteRate + stats.bytesOutRate.oneMinuteRate)
+  }
+}
+
+/**
+ * The I/O budget of the cleaner threads, which adapts to the load of the broker so that the logs are cleaned quickly
+ * while the broker is idle, and do not compete with produce and fetch requests for the disks while it is loaded.
+ *
+ * Every update of the budget samples the load of the broker, and sets the budget between the given minimum and
+ * maximum according to the pressure of the load, from 0 for an idle broker to 1 for a saturated one. The pressure is
+ * the highest of:
+ *
+ * 1. the busyness of the request handler threads, from 0 when they are idle `HighIdleRatio` of the time to 1 when
+ *    they are idle `LowIdleRatio` of the time,
+ * 2. the slowness of the disks, from 0 when the logs are flushed as fast as usual to 1 when they are flushed
+ *    `SlowFlushRatio` times slower than usual,
+ * 3. the traffic of the broker, from 0 when the bytes produced and fetched are half of their peak to
+ *    `MaxTrafficPressure` at their peak. The peak decays over `PeakDecayMs`, so that it follows the daily peak of the
+ *    broker. The traffic alone does not saturate the broker, which may be steadily loaded.
+ *
+ * The budget backs off at once as the pressure increases, and speeds up by `IncreaseFraction` of the difference with
+ * its target on every update as the pressure decreases, so that it does not oscillate with short lulls of the load.
+ *
+ * @param sampleLoad Sample the current load of the broker
+ * @param time The time used to decay the peak traffic of the broker
+ */
+@threadsafe
+class CleanerIoBudget(sampleLoad: () => BrokerLoad, time: Time) extends Logging {
+  import CleanerIoBudget._
+
+  private var budget = Double.MaxValue
+  private var peakBytesPerSec = 0.0
+  private var lastUpdateMs = -1L
+
+  /**
+   * The current budget, in bytes per second
+   */
+  def bytesPerSec: Double = synchronized { budget }
+
+  /**
+   * Update the budget from the current load of the broker.
+   *
+   * @param minBytesPerSec The budget of a saturated broker
+   * @param maxBytesPerSec The budget of an idle broker
+   * @return The updated budget
+   */
+  def update(minBytesPerSec: Double, maxBytesPerSec: Double): Double = synchronized {
+    val load = sampleLoad()
+    val nowMs = time.milliseconds
+    if (lastUpdateMs >= 0)
+      peakBytesPerSec *= math.exp(-math.max(nowMs - lastUpdateMs, 0L).toDouble / PeakDecayMs)
+    peakBytesPerSec = math.max(peakBytesPerSec, load.bytesPerSec)
+    lastUpdateMs = nowMs
+
+    val loadPressure = pressure(load, peakBytesPerSec)
+    val target = maxBytesPerSec - (maxBytesPerSec - minBytesPerSec) * loadPressure
+    val updated = if (target <= budget) target else budget + (target - budget) * IncreaseFraction
+    budget = math.min(math.max(updated, minBytesPerSec), maxBytesPerSec)
+    debug(s"Updated the cleaner I/O budget to $budget bytes/s with a pressure of $loadPressure from $load")
+    budget
+  }
+}
+
+object CleanerIoBudget {
+  val UpdateIntervalMs = 10 * 1000L
+
+  private[log] val HighIdleRatio = 0.7
+  private[log] val LowIdleRatio = 0.2
+  private[log] val SlowFlushRatio = 3.0
+  private[log] val LowTrafficRatio = 0.5
+  private[log] val MaxTrafficPressure = 0.5
+  private[log] val PeakDecayMs = 24 * 60 * 60 * 1000L
+  private[log] val IncreaseFraction = 0.25
+
+  /**
+   * The pressure of the given load of the broker, between 0 for an idle broker and 1 for a saturated one.
+   */
+  private[log] def pressure(load: BrokerLoad, peakBytesPerSec: Double): Double = {
+    val handlerPressure = scale(HighIdleRatio - load.requestHandlerIdleRatio, HighIdleRatio - LowIdleRatio)
+    val flushPressure =
+      if (load.meanFlushTimeMs > 0) scale(load.recentFlushTimeMs / load.meanFlushTimeMs - 1, SlowFlushRatio - 1)
+      else 0.0
+    val trafficPressure =
+      if (peakBytesPerSec > 0) MaxTrafficPressure * scale(load.bytesPerSec / peakBytesPerSec - LowTrafficRatio, 1 - LowTrafficRatio)
+      else 0.0
+    math.max(handlerPressure, math.max(flushPressure, trafficPressure))
+  }
+
+  private def scale(value: Double, range: Double): Double = math.min(math.max(value / range, 0.0), 1.0)
+}
@@ -0,0 +1,432 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.{BufferedWriter, File, FileOutputStream, IOException, OutputStreamWriter, RandomAccessFile}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, NoSuchFileException}
+import java.util.regex.Pattern
+
+import kafka.utils.{Logging, nonthreadsafe}
+import org.apache.kafka.common.utils.{ByteBufferUnmapper, Utils}
+
+import scala.collection.JavaConverters._
+import scala.collection.{Iterable, Map, mutable}
+
+/**
+ * The statistics of a segment of a log covered by a [[CleanerKeyIndex]].
+ *
+ * @param baseOffset The base offset of the segment
+ * @param size The size of the segment, which tells whether the segment was replaced since
+ * @param records The number of records with a key of the segment
+ * @param deadRecords The number of records of the segment which were superseded by later records with the same key,
+ *                    or which are tombstones
+ * @param tombstones The number of tombstones of the segment
+ * @param hasTransactions Whether the segment has transactional or control batches
+ */
+class CleanedSegmentStats(val baseOffset: Long,
+                          val size: Int,
+                          var records: Int = 0,
+                          var deadRecords: Int = 0,
+                          var tombstones: Int = 0,
+                          var hasTransactions: Boolean = false) {
+
+  def matches(segment: LogSegment): Boolean = segment.baseOffset == baseOffset && segment.size == size
+
+  /**
+   * The number of keys of the index whose latest record is in the segment. A tombstone is counted as a dead record
+   * and, once superseded, as a dead record again, so that it only counts here while it is the latest record of its key.
+   */
+  def liveKeys: Int = records - deadRecords + tombstones
+
+  override def toString: String = s"CleanedSegmentStats(baseOffset=$baseOffset, size=$size, records=$records, " +
+    s"deadRecords=$deadRecords, tombstones=$tombstones, hasTransactions=$hasTransactions)"
+}
+
+/**
+ * An index of the keys of a compacted log, which is kept alongside the segments of the log by the log cleaner when it
+ * cleans the log incrementally, see `Cleaner.cleanIncrementally`.
+ *
+ * The index maps 96 bits of the hash of every key of the log, see `CompactOffsetMap.hash`, to the latest offset of the
+ * key up to `endOffset`. It is an open addressing hash table with linear probing, which is memory-mapped from its file
+ * and grown as keys are put into it. Since it has the latest offset of every key, the index may be used as the offset
+ * map to clean any segment of the log. Along with the keys, the index persists the statistics of the segments it covers
+ * in a second file.
+ *
+ * The end offset of the index is reset while the index is updated, so that an index which was not completely updated,
+ * such as when the cleaning of the log was aborted, is not valid and must be rebuilt.
+ *
+ * The index may be read by several threads concurrently with `get`, as long as no keys are put into it meanwhile.
+ *
+ * @param dir The directory of the log
+ */
+@nonthreadsafe
+class CleanerKeyIndex(val dir: File) extends OffsetMap with Logging {
+  import CleanerKeyIndex._
+
+  val file = new File(dir, FileName)
+  private val segmentStatsFile = new File(dir, SegmentStatsFileName)
+
+  private var buffer: MappedByteBuffer = _
+  private var numSlots = 0
+  private var entries = 0
+  private var lastOffset = -1L
+  private var _endOffset = -1L
+  private var _segmentStats: Map[Long, CleanedSegmentStats] = Map.empty
+
+  open()
+
+  private def open(): Unit = {
+    if (file.length >= HeaderSize) {
+      buffer = map(file)
+      numSlots = buffer.getInt(SlotsOffset)
+      if (buffer.getInt(VersionOffset) == CurrentVersion && file.length == fileSize(numSlots)) {
+        entries = buffer.getInt(EntriesOffset)
+        _endOffset = buffer.getLong(EndOffsetOffset)
+        lastOffset = _endOffset - 1
+        if (_endOffset >= 0) {
+          readSegmentStats() match {
+            case Some(segmentStats) => _segmentStats = segmentStats
+            case None => _endOffset = -1L
+          }
+        }
+      } else {
+        warn(s"Recreating the invalid cleaner key index $file")
+        close()
+        recreate()
+      }
+    } else
+      recreate()
+  }
+
+  /**
+   * The offset up to which the index covers the log, or -1 if the index is not valid.
+   */
+  def endOffset: Long = _endOffset
+
+  /**
+   * The statistics of the segments covered by the index, by base offset, when the index is valid.
+   */
+  def segmentStats: Map[Long, CleanedSegmentStats] = _segmentStats
+
+  override def slots: Int = numSlots
+
+  /**
+   * The number of keys of the index
+   */
+  override def size: Int = entries
+
+  /**
+   * Whether the index has as many keys as it can have.
+   */
+  def isFull: Boolean = entries >= MaxEntries
+
+  override def put(key: ByteBuffer, offset: Long): Unit = {
+    putKey(key, offset)
+  }
+
+  /**
+   * Associate the given offset to the given key, which must not have a later offset in the index.
+   *
+   * @return The offset the key had in the index, or -1 if the key was not in the index
+   */
+  def putKey(key: ByteBuffer, offset: Long): Long = {
+    val keyHash = keyHashes.get
+    CompactOffsetMap.hash(key, keyHash)
+    putHash(keyHash(0), (keyHash(1) >>> 32).toInt, offset)
+  }
+
+  /**
+   * Associate the given offset to the key with the given hash, which must not have a later offset in the index.
+   *
+   * @param hash1 The first half of the hash of the key
+   * @param hashTail The upper 32 bits of the second half of the hash of the key
+   * @param offset The offset
+   * @return The offset the key had in the index, or -1 if the key was not in the index
+   */
+  def putHash(hash1: Long, hashTail: Int, offset: Long): Long = {
+    if (entries >= numSlots * MaxLoadFactor)
+      grow()
+    var pos = positionOf(hash1, numSlots)
+    while (!isEmpty(buffer, pos)) {
+      if (hashMatches(pos, hash1, hashTail)) {
+        val previousOffset = storedOffset(buffer, pos)
+        buffer.putLong(pos + OffsetOffset, offset + 1)
+        lastOffset = offset
+        return previousOffset
+      }
+      pos = nextPosition(pos, numSlots)
+    }
+    if (isFull)
+      throw new IllegalStateException(s"Attempt to add a new entry to the full cleaner key index $file.")
+    putEntry(buffer, pos, hash1, hashTail, offset)
+    lastOffset = offset
+    entries += 1
+    -1L
+  }
+
+  override def get(key: ByteBuffer): Long = {
+    val keyHash = keyHashes.get
+    CompactOffsetMap.hash(key, keyHash)
+    val hash1 = keyHash(0)
+    val hashTail = (keyHash(1) >>> 32).toInt
+    // the index always has empty slots, since it is grown before it is half full
+    var pos = positionOf(hash1, numSlots)
+    while (!isEmpty(buffer, pos)) {
+      if (hashMatches(pos, hash1, hashTail))
+        return storedOffset(buffer, pos)
+      pos = nextPosition(pos, numSlots)
+    }
+    -1L
+  }
+
+  /**
+   * Remove all the keys of the index, which is not valid until it is committed.
+   */
+  override def clear(): Unit = {
+    close()
+    recreate()
+  }
+
+  override def latestOffset: Long = lastOffset
+
+  override def updateLatestOffset(offset: Long): Unit = {
+    lastOffset = offset
+  }
+
+  /**
+   * Invalidate the index until it is committed, before the keys of the log are put into it.
+   */
+  def beginUpdate(): Unit = {
+    _endOffset = -1L
+    buffer.putLong(EndOffsetOffset, -1L)
+    buffer.force()
+  }
+
+  /**
+   * Persist the keys of the index along with the given statistics of the segments, and make the index valid up to the
+   * latest offset put into it.
+   */
+  def commit(segmentStats: Iterable[CleanedSegmentStats]): Unit = {
+    writeSegmentStats(segmentStats)
+    buffer.putInt(EntriesOffset, entries)
+    buffer.force()
+    // the index is only valid once its keys are persisted
+    buffer.putLong(EndOffsetOffset, lastOffset + 1)
+    buffer.force()
+    _endOffset = lastOffset + 1
+    _segmentStats = segmentStats.iterator.map(stats => stats.baseOffset -> stats).toMap
+  }
+
+  /**
+   * Unmap the file of the index, which must not be used afterwards.
+   */
+  override def close(): Unit = {
+    if (buffer != null) {
+      ByteBufferUnmapper.unmap(file.getAbsolutePath, buffer)
+      buffer = null
+    }
+  }
+
+  private def recreate(): Unit = {
+    buffer = create(file, InitialSlots)
+    numSlots = InitialSlots
+    entries = 0
+    lastOffset = -1L
+    _endOffset = -1L
+    _segmentStats = Map.empty
+  }
+
+  /**
+   * Double the number of slots of the index, by putting its keys into a new file which replaces the current one.
+   */
+  private def grow(): Unit = {
+    val newSlots = math.min(2L * numSlots, MaxSlots).toInt
+    if (newSlots > numSlots) {
+      debug(s"Growing the cleaner key index $file from $numSlots to $newSlots slots")
+      val tempFile = new File(dir, FileName + TempFileSuffix)
+      val newBuffer = create(tempFile, newSlots)
+      var pos = HeaderSize
+      while (pos < fileSize(numSlots)) {
+        if (!isEmpty(buffer, pos)) {
+          val hash1 = buffer.getLong(pos)
+          var newPos = positionOf(hash1, newSlots)
+          while (!isEmpty(newBuffer, newPos))
+            newPos = nextPosition(newPos, newSlots)
+          putEntry(newBuffer, newPos, hash1, buffer.getInt(pos + HashTailOffset), storedOffset(buffer, pos))
+        }
+        pos += BytesPerEntry
+      }
+      newBuffer.force()
+      close()
+      Utils.atomicMoveWithFallback(tempFile.toPath, file.toPath)
+      buffer = newBuffer
+      numSlots = newSlots
+    }
+  }
+
+  private def hashMatches(position: Int, hash1: Long, hashTail: Int): Boolean =
+    buffer.getLong(position) == hash1 && buffer.getInt(position + HashTailOffset) == hashTail
+
+  private def writeSegmentStats(segmentStats: Iterable[CleanedSegmentStats]): Unit = {
+    // write to a temp file and then swap with the existing file, as for checkpoint files
+    val tempFile = new File(dir, SegmentStatsFileName + TempFileSuffix)
+    val fileOutputStream = new FileOutputStream(tempFile)
+    val writer = new BufferedWriter(new OutputStreamWriter(fileOutputStream, StandardCharsets.UTF_8))
+    try {
+      writer.write(CurrentVersion.toString)
+      writer.newLine()
+      writer.write(segmentStats.size.toString)
+      writer.newLine()
+      segmentStats.foreach { stats =>
+        writer.write(s"${stats.baseOffset} ${stats.size} ${stats.records} ${stats.deadRecords} ${stats.tombstones} ${stats.hasTransactions}")
+        writer.newLine()
+      }
+      writer.flush()
+      fileOutputStream.getFD.sync()
+    } finally {
+      writer.close()
+    }
+    Utils.atomicMoveWithFallback(tempFile.toPath, segmentStatsFile.toPath)
+  }
+
+  /**
+   * Read the statistics of the segments, or None if they are missing or malformed.
+   */
+  private def readSegmentStats(): Option[Map[Long, CleanedSegmentStats]] = {
+    try {
+      val lines = Files.readAllLines(segmentStatsFile.toPath, StandardCharsets.UTF_8).asScala
+      if (lines.size < 2 || lines.head.toInt != CurrentVersion || lines(1).toInt != lines.size - 2) {
+        warn(s"Ignoring the malformed segment statistics of the cleaner key index $segmentStatsFile")
+        None
+      } else {
+        val segmentStats = mutable.Map[Long, CleanedSegmentStats]()
+        lines.drop(2).foreach { line =>
+          WhiteSpacesPattern.split(line) match {
+            case Array(baseOffset, size, records, deadRecords, tombstones, hasTransactions) =>
+              segmentStats += baseOffset.toLong -> new CleanedSegmentStats(baseOffset.toLong, size.toInt, records.toInt,
+                deadRecords.toInt, tombstones.toInt, hasTransactions.toBoolean)
+            case _ => throw new IOException(s"Malformed line in $segmentStatsFile: '$line'")
+          }
+        }
+        Some(segmentStats)
+      }
+    } catch {
+      case _: NoSuchFileException => None
+      case e @ (_: NumberFormatException | _: IllegalArgumentException | _: IOException) =>
+        warn(s"Ignoring the malformed segment statistics of the cleaner key index $segmentStatsFile", e)
+        None
+    }
+  }
+
+  override def toString: String = s"CleanerKeyIndex(file=$file, slots=$numSlots, entries=$entries, endOffset=${_endOffset})"
+}
+
+object CleanerKeyIndex {
+  val FileName = "cleaner-key-index"
+  val SegmentStatsFileName = "cleaner-segment-stats"
+  private val TempFileSuffix = ".tmp"
+  private val CurrentVersion = 0
+  private val WhiteSpacesPattern = Pattern.compile("\\s+")
+
+  /* the header: the version, the number of slots, the number of entries and the end offset */
+  private val VersionOffset = 0
+  private val SlotsOffset = 4
+  private val EntriesOffset = 8
+  private val EndOffsetOffset = 12
+  private val HeaderSize = 20
+
+  /**
+   * The number of bytes of space each entry uses: 12 bytes of the hash and the offset plus one, so that an empty slot
+   * is one whose stored offset is zero
+   */
+  val BytesPerEntry = 20
+  private val HashTailOffset = 8
+  private val OffsetOffset = 12
+
+  private val InitialSlots = 64 * 1024
+  private val MaxLoadFactor = 0.5
+  private val MaxSlots = (Int.MaxValue - HeaderSize) / BytesPerEntry
+
+  /**
+   * The maximum number of keys of an index
+   */
+  val MaxEntries: Int = (MaxSlots * MaxLoadFactor).toInt
+
+  /**
+   * The ratio of the keys of an index whose records were removed from the log, such as expired tombstones or the keys
+   * of deleted segments, above which the index is rebuilt to prune them
+   */
+  val MaxStaleKeysRatio = 0.5
+
+  /* the hash of the last key of every thread, to avoid allocating it for every key */
+  private val keyHashes = new ThreadLocal[Array[Long]] {
+    override def initialValue(): Array[Long] = new Array[Long](2)
+  }
+
+  /**
+   * Delete the files of the index of the log in the given directory, if any.
+   */
+  def deleteIfExists(dir: File): Unit = {
+    Files.deleteIfExists(new File(dir, FileName).toPath)
+    Files.deleteIfExists(new File(dir, SegmentStatsFileName).toPath)
+  }
+
+  private def fileSize(slots: Int): Long = HeaderSize + slots.toLong * BytesPerEntry
+
+  private def map(file: File): MappedByteBuffer = {
+    val raf = new RandomAccessFile(file, "rw")
+    try raf.getChannel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length)
+    finally raf.close()
+  }
+
+  /**
+   * Create an empty, invalid index with the given number of slots in the given file, which is replaced if it exists.
+   */
+  private def create(file: File, slots: Int): MappedByteBuffer = {
+    Files.deleteIfExists(file.toPath)
+    val raf = new RandomAccessFile(file, "rw")
+    try raf.setLength(fileSize(slots))
+    finally raf.close()
+    val buffer = map(file)
+    buffer.putInt(VersionOffset, CurrentVersion)
+    buffer.putInt(SlotsOffset, slots)
+    buffer.putInt(EntriesOffset, 0)
+    buffer.putLong(EndOffsetOffset, -1L)
+    buffer
+  }
+
+  private def positionOf(hash1: Long, slots: Int): Int = HeaderSize + Utils.toPositive(hash1.toInt) % slots * BytesPerEntry
+
+  private def nextPosition(position: Int, slots: Int): Int = {
+    val next = position + BytesPerEntry
+    if (next == fileSize(slots)) HeaderSize else next
+  }
+
+  private def isEmpty(buffer: ByteBuffer, position: Int): Boolean = buffer.getLong(position + OffsetOffset) == 0L
+
+  private def storedOffset(buffer: ByteBuffer, position: Int): Long = buffer.getLong(position + OffsetOffset) - 1
+
+  private def putEntry(buffer: ByteBuffer, position: Int, hash1: Long, hashTail: Int, offset: Long): Unit = {
+    buffer.putLong(position, hash1)
+    buffer.putInt(position + HashTailOffset, hashTail)
+    buffer.putLong(position + OffsetOffset, offset + 1)
+  }
+}
@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.locks.ReentrantLock
+
+import kafka.utils.CoreUtils.inLock
+import kafka.utils.threadsafe
+import org.apache.kafka.common.record.FileRecords
+import org.apache.kafka.common.utils.Utils
+
+/**
+ * A wrapper over the `FileRecords` of a log segment that provides a mechanism to defer opening the file of the segment
+ * until it is accessed for the first time via the `get` method, similar to `LazyIndex`.
+ *
+ * When the file is opened through [[OpenLogSegments]], it may also be released again when the segment was not used
+ * recently, and is reopened on the next access. The file of a segment which is written to must not be released,
+ * since the size of the records would be lost: it is pinned by `pin` until `unpin`.
+ *
+ * Methods of this class are thread safe.
+ *
+ * @param initialFile The file of the segment
+ * @param initialRecords The records of the file if it is already open
+ * @param openSegments The open segments the file is registered to when it is opened, if any
+ */
+@threadsafe
+class LazyFileRecords private (initialFile: File,
+                               initialRecords: Option[FileRecords],
+                               openSegments: Option[OpenLogSegments]) {
+
+  private val lock = new ReentrantLock()
+
+  @volatile private var _file = initialFile
+  @volatile private var records: FileRecords = initialRecords.orNull
+  // the size of the file while it is not open
+  @volatile private var unopenedSize = if (initialRecords.isEmpty) initialFile.length.toInt else 0
+  @volatile private var pinned = false
+  @volatile private var closed = false
+  // set on every access, and cleared by `OpenLogSegments` to find the segments which were not used recently
+  @volatile private[log] var referenced = true
+
+  def file: File = _file
+
+  def file_=(f: File): Unit = inLock(lock) {
+    if (records != null)
+      records.setFile(f)
+    _file = f
+  }
+
+  def isOpen: Boolean = records != null
+
+  def isPinned: Boolean = pinned
+
+  def sizeInBytes: Int = {
+    val current = records
+    if (current != null) current.sizeInBytes else unopenedSize
+  }
+
+  def get: FileRecords = {
+    val current = records
+    if (current != null) {
+      if (!referenced)
+        referenced = true
+      current
+    } else {
+      var newlyOpened = false
+      val opened = inLock(lock) {
+        if (records == null) {
+          if (closed)
+            throw new IllegalStateException(s"The file $file of the log segment is closed")
+          records = openSegments match {
+            case Some(segments) => segments.timeOpen(FileRecords.open(_file, true, true, 0, false))
+            case None => FileRecords.open(_file, true, true, 0, false)
+          }
+          referenced = true
+          newlyOpened = true
+        }
+        records
+      }
+      // registered outside of the lock since it may release the files of other segments
+      if (newlyOpened)
+        openSegments.foreach(_.opened(this))
+      opened
+    }
+  }
+
+  /**
+   * Keep the file open until `unpin` is called, while the segment is written to. This must be called before getting
+   * the records to write to, so that they are not released concurrently.
+   */
+  def pin(): Unit = {
+    if (!pinned) {
+      inLock(lock) {
+        pinned = true
+      }
+      // outside of the lock, since `OpenLogSegments` takes the lock of the segments it releases
+      openSegments.foreach(_.pinned(this))
+    }
+  }
+
+  def unpin(): Unit = {
+    if (pinned) {
+      pinned = false
+      openSegments.foreach(_.unpinned(this))
+    }
+  }
+
+  /**
+   * Release the open file of the segment unless it is pinned.
+   *
+   * @return The records of the file, which must be closed by the caller, or None if it was not released
+   */
+  private[log] def release(): Option[FileRecords] = inLock(lock) {
+    if (pinned || closed || records == null) {
+      None
+    } else {
+      val released = records
+      unopenedSize = released.sizeInBytes
+      records = null
+      Some(released)
+    }
+  }
+
+  def renameTo(f: File): Unit = inLock(lock) {
+    try {
+      if (records != null)
+        records.renameTo(f)
+      else
+        Utils.atomicMoveWithFallback(_file.toPath, f.toPath)
+    } finally {
+      _file = f
+    }
+  }
+
+  def close(): Unit = closeWith(_.close())
+
+  def closeHandlers(): Unit = closeWith(_.closeHandlers())
+
+  def deleteIfExists(): Boolean = {
+    var deleted = false
+    closeWith(records => deleted = records.deleteIfExists())
+    deleted || Files.deleteIfExists(_file.toPath)
+  }
+
+  private def closeWith(close: FileRecords => Unit): Unit = {
+    try {
+      inLock(lock) {
+        closed = true
+        pinned = false
+        // the closed records are kept, so that the segment can still be inspected once closed as when it is not lazy
+        if (records != null)
+          close(records)
+      }
+    } finally {
+      openSegments.foreach(_.closed(this))
+    }
+  }
+
+}
+
+object LazyFileRecords {
+
+  /**
+   * Defer opening the given existing file until it is accessed.
+   */
+  def forFile(file: File, openSegments: OpenLogSegments): LazyFileRecords =
+    new LazyFileRecords(file, None, Some(openSegments))
+
+  /**
+   * Wrap the given open records. If open segments are given, the records are registered and pinned, so that
+   * new segments, which may be preallocated, are not released before `unpin` is called.
+   */
+  def opened(records: FileRecords, openSegments: Option[OpenLogSegments] = None): LazyFileRecords = {
+    val lazyRecords = new LazyFileRecords(records.file, Some(records), openSegments)
+    openSegments.foreach { segments =>
+      lazyRecords.pinned = true
+      segments.opened(lazyRecords)
+    }
+    lazyRecords
+  }
+
+}
@@ -68,11 +68,13 @@ class LazyIndex[T <: AbstractIndex] private (@volatile private var indexWrapper:
 
 object LazyIndex {
 
-  def forOffset(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true): LazyIndex[OffsetIndex] =
-    new LazyIndex(new IndexFile(file), file => new OffsetIndex(file, baseOffset, maxIndexSize, writable))
+  def forOffset(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+                twoLevelLookup: Boolean = false): LazyIndex[OffsetIndex] =
+    new LazyIndex(new IndexFile(file), file => new OffsetIndex(file, baseOffset, maxIndexSize, writable, twoLevelLookup))
 
-  def forTime(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true): LazyIndex[TimeIndex] =
-    new LazyIndex(new IndexFile(file), file => new TimeIndex(file, baseOffset, maxIndexSize, writable))
+  def forTime(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+              twoLevelLookup: Boolean = false): LazyIndex[TimeIndex] =
+    new LazyIndex(new IndexFile(file), file => new TimeIndex(file, baseOffset, maxIndexSize, writable, twoLevelLookup))
 
   private sealed trait IndexWrapper {
     def file: File
@@ -24,7 +24,7 @@ import java.text.NumberFormat
 import java.util.Map.{Entry => JEntry}
 import java.util.Optional
 import java.util.concurrent.atomic._
-import java.util.concurrent.{ConcurrentNavigableMap, ConcurrentSkipListMap, TimeUnit}
+import java.util.concurrent.{Callable, ConcurrentNavigableMap, ConcurrentSkipListMap, ExecutionException, Future, TimeUnit}
 import java.util.regex.Pattern
 
 import kafka.api.{ApiVersion, KAFKA_0_10_0_IV0}
@@ -47,6 +47,7 @@ import org.apache.kafka.common.{InvalidRecordException, KafkaException, TopicPar
 import scala.collection.JavaConverters._
 import scala.collection.mutable.{ArrayBuffer, ListBuffer}
 import scala.collection.{Seq, Set, mutable}
+import scala.util.Try
 
 object LogAppendInfo {
   val UnknownLogAppendInfo = LogAppendInfo(None, -1, RecordBatch.NO_TIMESTAMP, -1L, RecordBatch.NO_TIMESTAMP, -1L,
@@ -220,7 +221,9 @@ class Log(@volatile var dir: File,
           val producerIdExpirationCheckIntervalMs: Int,
           val topicPartition: TopicPartition,
           val producerStateManager: ProducerStateManager,
-          logDirFailureChannel: LogDirFailureChannel) extends Logging with KafkaMetricsGroup {
+          logDirFailureChannel: LogDirFailureChannel,
+          recoveryContext: LogRecoveryContext = new LogRecoveryContext(),
+          private[log] val openSegments: Option[OpenLogSegments] = None) extends Logging with KafkaMetricsGroup {
 
   import kafka.log.Log._
 
@@ -251,6 +254,13 @@ class Log(@volatile var dir: File,
       warn(s"Record format version has been downgraded from $oldRecordVersion to $newRecordVersion.")
     if (newRecordVersion.value != oldRecordVersion.value)
       initializeLeaderEpochCache()
+    // the log is not cleaned anymore, so its cleaner key index would be stale if it is compacted again
+    if (oldConfig.compact && !newConfig.compact) {
+      try CleanerKeyIndex.deleteIfExists(dir)
+      catch {
+        case e: IOException => warn(s"Failed to delete the cleaner key index of log $name", e)
+      }
+    }
   }
 
   private def checkIfMemoryMappedBufferClosed(): Unit = {
@@ -597,18 +607,27 @@ class Log(@volatile var dir: File,
           baseOffset = baseOffset,
           config,
           time = time,
-          fileAlreadyExists = true)
-
-        try segment.sanityCheck(timeIndexFileNewlyCreated)
-        catch {
-          case _: NoSuchFileException =>
-            error(s"Could not find offset index file corresponding to log file ${segment.log.file.getAbsolutePath}, " +
-              "recovering segment and rebuilding index files...")
-            recoverSegment(segment)
-          case e: CorruptIndexException =>
-            warn(s"Found a corrupted index file corresponding to log file ${segment.log.file.getAbsolutePath} due " +
-              s"to ${e.getMessage}}, recovering segment and rebuilding index files...")
-            recoverSegment(segment)
+          fileAlreadyExists = true,
+          openSegments = openSegments)
+
+        val needsRecovery =
+          try {
+            segment.sanityCheck(timeIndexFileNewlyCreated)
+            false
+          } catch {
+            case _: NoSuchFileException =>
+              error(s"Could not find offset index file corresponding to log file ${segment.lazyLog.file.getAbsolutePath}, " +
+                "recovering segment and rebuilding index files...")
+              true
+            case e: CorruptIndexException =>
+              warn(s"Found a corrupted index file corresponding to log file ${segment.lazyLog.file.getAbsolutePath} due " +
+                s"to ${e.getMessage}}, recovering segment and rebuilding index files...")
+              true
+          }
+        if (needsRecovery) {
+          recoveryContext.segmentsToRecover(1)
+          try recoverSegment(segment)
+          finally recoveryContext.segmentRecovered(segment.size)
         }
         addSegment(segment)
       }
@@ -623,14 +642,25 @@ class Log(@volatile var dir: File,
    * @throws LogSegmentOffsetOverflowException if the segment contains messages that cause index offset overflow
    */
   private def recoverSegment(segment: LogSegment,
-                             leaderEpochCache: Option[LeaderEpochFileCache] = None): Int = lock synchronized {
+                             leaderEpochCache: Option[LeaderEpochFileCache] = None): Int =
+    withSegmentProducerState(segment)(segment.recover(_, leaderEpochCache))
+
+  /**
+   * Recover the producer state and the leader epochs of the given segment, whose batches and indexes have been
+   * recovered by `LogSegment.recoverIndexes`.
+   */
+  private def recoverSegmentProducerState(segment: LogSegment,
+                                          leaderEpochCache: Option[LeaderEpochFileCache]): Unit =
+    withSegmentProducerState(segment)(segment.recoverProducerState(_, leaderEpochCache))
+
+  private def withSegmentProducerState[T](segment: LogSegment)(recover: ProducerStateManager => T): T = lock synchronized {
     val producerStateManager = new ProducerStateManager(topicPartition, dir, maxProducerIdExpirationMs)
     rebuildProducerState(segment.baseOffset, reloadFromCleanShutdown = false, producerStateManager)
-    val bytesTruncated = segment.recover(producerStateManager, leaderEpochCache)
+    val result = recover(producerStateManager)
     // once we have recovered the segment's data, take a snapshot to ensure that we won't
     // need to reload the same segment again while recovering another segment.
     producerStateManager.takeSnapshot()
-    bytesTruncated
+    result
   }
 
   /**
@@ -651,7 +681,9 @@ class Log(@volatile var dir: File,
         baseOffset = baseOffset,
         config,
         time = time,
-        fileSuffix = SwapFileSuffix)
+        fileAlreadyExists = true,
+        fileSuffix = SwapFileSuffix,
+        openSegments = openSegments)
       info(s"Found log file ${swapFile.getPath} from interrupted swap operation, repairing.")
       recoverSegment(swapSegment)
 
@@ -715,7 +747,8 @@ class Log(@volatile var dir: File,
             time = time,
             fileAlreadyExists = false,
             initFileSize = this.initFileSize,
-            preallocate = false))
+            preallocate = false,
+            openSegments = openSegments))
        }
       0
     }
@@ -757,28 +790,52 @@ class Log(@volatile var dir: File,
     // if we have the clean shutdown marker, skip recovery
     if (!hasCleanShutdownFile) {
       // okay we need to actually recover this log
-      val unflushed = logSegments(this.recoveryPoint, Long.MaxValue).toIterator
+      val unflushedSegments = logSegments(this.recoveryPoint, Long.MaxValue).toBuffer
+      // with segment recovery threads, the batches and the indexes of the unflushed segments are recovered
+      // concurrently, while the producer state and the leader epochs are still recovered in order below
+      val recoveries = recoverSegmentIndexesAsync(unflushedSegments)
+      val unflushed = unflushedSegments.iterator
       var truncated = false
+      var recovered = 0
+      recoveryContext.segmentsToRecover(unflushedSegments.size)
 
-      while (unflushed.hasNext && !truncated) {
-        val segment = unflushed.next
-        info(s"Recovering unflushed segment ${segment.baseOffset}")
-        val truncatedBytes =
-          try {
-            recoverSegment(segment, leaderEpochCache)
-          } catch {
-            case _: InvalidOffsetException =>
-              val startOffset = segment.baseOffset
-              warn("Found invalid offset during recovery. Deleting the corrupt segment and " +
-                s"creating an empty one with starting offset $startOffset")
-              segment.truncateTo(startOffset)
+      try {
+        while (unflushed.hasNext && !truncated) {
+          val segment = unflushed.next
+          info(s"Recovering unflushed segment ${segment.baseOffset}")
+          val truncatedBytes =
+            try {
+              recoveries.get(segment) match {
+                case Some(indexRecovery) =>
+                  val bytesTruncated = awaitRecovery(indexRecovery)
+                  recoverSegmentProducerState(segment, leaderEpochCache)
+                  bytesTruncated
+                case None =>
+                  recoverSegment(segment, leaderEpochCache)
+              }
+            } catch {
+              case _: InvalidOffsetException =>
+                val startOffset = segment.baseOffset
+                warn("Found invalid offset during recovery. Deleting the corrupt segment and " +
+                  s"creating an empty one with starting offset $startOffset")
+                segment.truncateTo(startOffset)
+            }
+          recovered += 1
+          recoveryContext.segmentRecovered(segment.size)
+          if (truncatedBytes > 0) {
+            // we had an invalid message, delete all remaining log
+            warn(s"Corruption found in segment ${segment.baseOffset}, truncating to offset ${segment.readNextOffset}")
+            val remaining = unflushed.toList
+            // the remaining segments may still be read by the recovery threads
+            remaining.flatMap(recoveries.get).foreach(indexRecovery => Try(awaitRecovery(indexRecovery)))
+            removeAndDeleteSegments(remaining, asyncDelete = true)
+            truncated = true
           }
-        if (truncatedBytes > 0) {
-          // we had an invalid message, delete all remaining log
-          warn(s"Corruption found in segment ${segment.baseOffset}, truncating to offset ${segment.readNextOffset}")
-          removeAndDeleteSegments(unflushed.toList, asyncDelete = true)
-          truncated = true
         }
+      } finally {
+        // wait for the recovery threads before the segments are closed if the recovery failed
+        recoveries.values.foreach(indexRecovery => Try(awaitRecovery(indexRecovery)))
+        recoveryContext.segmentsSkipped(unflushedSegments.size - recovered)
       }
     }
 
@@ -799,13 +856,37 @@ class Log(@volatile var dir: File,
         time = time,
         fileAlreadyExists = false,
         initFileSize = this.initFileSize,
-        preallocate = config.preallocate))
+        preallocate = config.preallocate,
+        openSegments = openSegments))
     }
 
     recoveryPoint = activeSegment.readNextOffset
     recoveryPoint
   }
 
+  /**
+   * Submit the recovery of the batches and the indexes of the given segments to the segment recovery threads.
+   *
+   * @return The recovery of every segment, or an empty map if there are no segment recovery threads
+   */
+  private def recoverSegmentIndexesAsync(unflushed: Seq[LogSegment]): Map[LogSegment, Future[Int]] = {
+    recoveryContext.segmentExecutor match {
+      case Some(executor) if unflushed.size > 1 =>
+        unflushed.map { segment =>
+          val recovery: Callable[Int] = () => segment.recoverIndexes()
+          segment -> executor.submit(recovery)
+        }.toMap
+      case _ => Map.empty
+    }
+  }
+
+  private def awaitRecovery(recovery: Future[Int]): Int = {
+    try recovery.get
+    catch {
+      case e: ExecutionException => throw e.getCause
+    }
+  }
+
   // Rebuild producer state until lastOffset. This method may be called from the recovery code path, and thus must be
   // free of all side-effects, i.e. it must not update any log-specific state.
   private def rebuildProducerState(lastOffset: Long,
@@ -1068,7 +1149,9 @@ class Log(@volatile var dir: File,
               leaderEpoch,
               origin,
               interBrokerProtocolVersion,
-              brokerTopicStats)
+              brokerTopicStats,
+              config.compressionLevel,
+              config.zstdDictionary)
           } catch {
             case e: IOException =>
               throw new KafkaException(s"Error validating messages while appending to log $name", e)
@@ -1912,7 +1995,8 @@ class Log(@volatile var dir: File,
           time = time,
           fileAlreadyExists = false,
           initFileSize = initFileSize,
-          preallocate = config.preallocate)
+          preallocate = config.preallocate,
+          openSegments = openSegments)
         addSegment(segment)
 
         // We need to update the segment base offset and append position data of the metadata when log rolls.
@@ -2089,7 +2173,8 @@ class Log(@volatile var dir: File,
           time = time,
           fileAlreadyExists = false,
           initFileSize = initFileSize,
-          preallocate = config.preallocate))
+          preallocate = config.preallocate,
+          openSegments = openSegments))
         updateLogEndOffset(newOffset)
         leaderEpochCache.foreach(_.clearAndFlush())
 
@@ -2453,11 +2538,14 @@ object Log {
             time: Time = Time.SYSTEM,
             maxProducerIdExpirationMs: Int,
             producerIdExpirationCheckIntervalMs: Int,
-            logDirFailureChannel: LogDirFailureChannel): Log = {
+            logDirFailureChannel: LogDirFailureChannel,
+            recoveryContext: LogRecoveryContext = new LogRecoveryContext(),
+            openSegments: Option[OpenLogSegments] = None): Log = {
     val topicPartition = Log.parseTopicPartitionName(dir)
     val producerStateManager = new ProducerStateManager(topicPartition, dir, maxProducerIdExpirationMs)
     new Log(dir, config, logStartOffset, recoveryPoint, scheduler, brokerTopicStats, time, maxProducerIdExpirationMs,
-      producerIdExpirationCheckIntervalMs, topicPartition, producerStateManager, logDirFailureChannel)
+      producerIdExpirationCheckIntervalMs, topicPartition, producerStateManager, logDirFailureChannel, recoveryContext,
+      openSegments)
   }
 
   /**
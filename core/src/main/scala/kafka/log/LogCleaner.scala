@@ -18,9 +18,12 @@
 package kafka.log
 
 import java.io.{File, IOException}
+import java.lang.management.ManagementFactory
 import java.nio._
+import java.util
 import java.util.Date
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, ExecutionException, ExecutorService, Executors, Future, ThreadFactory, TimeUnit}
 
 import kafka.common._
 import kafka.metrics.KafkaMetricsGroup
@@ -32,7 +35,7 @@ import org.apache.kafka.common.errors.{CorruptRecordException, KafkaStorageExcep
 import org.apache.kafka.common.record.MemoryRecords.RecordFilter
 import org.apache.kafka.common.record.MemoryRecords.RecordFilter.BatchRetention
 import org.apache.kafka.common.record._
-import org.apache.kafka.common.utils.Time
+import org.apache.kafka.common.utils.{KafkaThread, Time}
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable.ListBuffer
@@ -62,6 +65,9 @@ import scala.util.control.ControlThrowable
  *
  * Cleaned segments are swapped into the log as they become available.
  *
+ * When logs are cleaned incrementally, the cleaner keeps a kafka.log.CleanerKeyIndex of the latest offset of every key alongside the segments
+ * of each log, so that the segments of the clean section are only recopied once enough of their messages were superseded.
+ *
  * One nuance that the cleaner must handle is log truncation. If a log is truncated while it is being cleaned the cleaning of that log is aborted.
  *
  * Messages with null payload are treated as deletes for the purpose of log compaction. This means that they receive special treatment by the cleaner.
@@ -87,12 +93,14 @@ import scala.util.control.ControlThrowable
  * @param initialConfig Initial configuration parameters for the cleaner. Actual config may be dynamically updated.
  * @param logDirs The directories where offset checkpoints reside
  * @param logs The pool of logs
+ * @param brokerLoad Sample the load of the broker, which the I/O of the cleaner threads adapts to if enabled
  * @param time A way to control the passage of time
  */
 class LogCleaner(initialConfig: CleanerConfig,
                  val logDirs: Seq[File],
                  val logs: Pool[TopicPartition, Log],
                  val logDirFailureChannel: LogDirFailureChannel,
+                 brokerLoad: () => BrokerLoad = () => BrokerLoad.Idle,
                  time: Time = Time.SYSTEM) extends Logging with KafkaMetricsGroup with BrokerReconfigurable
 {
 
@@ -110,6 +118,9 @@ class LogCleaner(initialConfig: CleanerConfig,
                                         "bytes",
                                         time = time)
 
+  /* the budget of the I/O of all the cleaner threads, which adapts to the load of the broker if enabled */
+  private val ioBudget = new CleanerIoBudget(brokerLoad, time)
+
   private[log] val cleaners = mutable.ArrayBuffer[CleanerThread]()
 
   /* a metric to track the maximum utilization of any thread's buffer in the last cleaning */
@@ -126,6 +137,9 @@ class LogCleaner(initialConfig: CleanerConfig,
   /* a metric to track the maximum cleaning time for the last cleaning from each thread */
   newGauge("max-clean-time-secs", () => cleaners.iterator.map(_.lastStats.elapsedSecs).max.toInt)
 
+  /* a metric to track the maximum CPU time of the threads cleaning a log for the last cleaning from each thread */
+  newGauge("max-clean-cpu-time-secs", () => cleaners.iterator.map(_.lastStats.cpuSecs).max.toInt)
+
   // a metric to track delay between the time when a log is required to be compacted
   // as determined by max compaction lag and the time of last cleaner run.
   newGauge("max-compaction-delay-secs",
@@ -133,6 +147,12 @@ class LogCleaner(initialConfig: CleanerConfig,
 
   newGauge("DeadThreadCount", () => deadThreadCount)
 
+  /* a metric to track the I/O rate all the cleaner threads are throttled to */
+  newGauge("cleaner-io-budget-bytes-per-sec", () => throttler.currentDesiredRatePerSec)
+
+  /* metrics to track the wall and CPU time of the last cleaning of each partition, see `PartitionCleanTimeMetrics` */
+  private val partitionCleanTimeMetrics = new Pool[TopicPartition, PartitionCleanTimeMetrics]()
+
   private[log] def deadThreadCount: Int = cleaners.count(_.isThreadFailed)
 
   /**
@@ -140,6 +160,8 @@ class LogCleaner(initialConfig: CleanerConfig,
    */
   def startup(): Unit = {
     info("Starting the log cleaner")
+    deleteUnusedKeyIndexes()
+    updateIoBudget()
     (0 until config.numThreads).foreach { i =>
       val cleaner = new CleanerThread(i)
       cleaners += cleaner
@@ -147,6 +169,22 @@ class LogCleaner(initialConfig: CleanerConfig,
     }
   }
 
+  /**
+   * Delete the cleaner key indexes of the logs which are not cleaned incrementally, since they are not updated anymore
+   * and would be stale if incremental cleaning is enabled again.
+   */
+  private def deleteUnusedKeyIndexes(): Unit = {
+    val incrementalEnable = config.incrementalEnable
+    logs.values.foreach { log =>
+      if (!incrementalEnable || !log.config.compact) {
+        try CleanerKeyIndex.deleteIfExists(log.dir)
+        catch {
+          case e: IOException => warn(s"Failed to delete the cleaner key index of log ${log.name}", e)
+        }
+      }
+    }
+  }
+
   /**
    * Stop the background cleaning
    */
@@ -156,6 +194,20 @@ class LogCleaner(initialConfig: CleanerConfig,
     cleaners.clear()
   }
 
+  /**
+   * Update the I/O rate the cleaner threads are throttled to, from the current load of the broker if the I/O of the
+   * cleaner threads adapts to it. This is called periodically, see `CleanerIoBudget.UpdateIntervalMs`.
+   */
+  def updateIoBudget(): Unit = {
+    val currentConfig = config
+    val bytesPerSec =
+      if (currentConfig.ioAdaptiveEnable)
+        ioBudget.update(currentConfig.minIoBytesPerSecond, currentConfig.maxIoBytesPerSecond)
+      else
+        currentConfig.maxIoBytesPerSecond
+    throttler.updateDesiredRatePerSec(bytesPerSec)
+  }
+
   override def reconfigurableConfigs: Set[String] = {
     LogCleaner.ReconfigurableConfigs
   }
@@ -189,6 +241,50 @@ class LogCleaner(initialConfig: CleanerConfig,
    */
   def abortCleaning(topicPartition: TopicPartition): Unit = {
     cleanerManager.abortCleaning(topicPartition)
+    removePartitionCleanTimeMetrics(topicPartition)
+  }
+
+  /**
+   * Record the wall and CPU time of the last cleaning of a partition, and remove the metrics of the partitions which
+   * are not compacted anymore.
+   */
+  private def recordPartitionCleanTimes(topicPartition: TopicPartition, stats: CleanerStats): Unit = {
+    val metrics = partitionCleanTimeMetrics.getAndMaybePut(topicPartition, new PartitionCleanTimeMetrics(topicPartition))
+    metrics.update(stats)
+    partitionCleanTimeMetrics.keys.foreach { tp =>
+      if (!Option(logs.get(tp)).exists(_.config.compact))
+        removePartitionCleanTimeMetrics(tp)
+    }
+  }
+
+  private def removePartitionCleanTimeMetrics(topicPartition: TopicPartition): Unit = {
+    val metrics = partitionCleanTimeMetrics.remove(topicPartition)
+    if (metrics != null)
+      metrics.remove()
+  }
+
+  /**
+   * The wall and CPU time of the last cleaning of a partition. The CPU time includes the time of the workers when a log
+   * is cleaned with several threads, so that comparing it to the wall time shows how much the cleaning was parallel
+   * and how much it waited for I/O.
+   */
+  private class PartitionCleanTimeMetrics(topicPartition: TopicPartition) {
+    private val tags = Map("topic" -> topicPartition.topic, "partition" -> topicPartition.partition.toString)
+    @volatile private var elapsedMs = 0L
+    @volatile private var cpuTimeMs = 0L
+
+    newGauge(LogCleaner.LastCleanTimeMsMetricName, () => elapsedMs, tags)
+    newGauge(LogCleaner.LastCleanCpuTimeMsMetricName, () => cpuTimeMs, tags)
+
+    def update(stats: CleanerStats): Unit = {
+      elapsedMs = stats.endTime - stats.startTime
+      cpuTimeMs = TimeUnit.NANOSECONDS.toMillis(stats.cpuTimeNs)
+    }
+
+    def remove(): Unit = {
+      removeMetric(LogCleaner.LastCleanTimeMsMetricName, tags)
+      removeMetric(LogCleaner.LastCleanCpuTimeMsMetricName, tags)
+    }
   }
 
   /**
@@ -277,18 +373,29 @@ class LogCleaner(initialConfig: CleanerConfig,
       warn("Cannot use more than 2G of cleaner buffer space per cleaner thread, ignoring excess buffer space...")
 
     val cleaner = new Cleaner(id = threadId,
-                              offsetMap = new SkimpyOffsetMap(memory = math.min(config.dedupeBufferSize / config.numThreads, Int.MaxValue).toInt,
-                                                              hashAlgorithm = config.hashAlgorithm),
+                              offsetMap = OffsetMap(config.offsetMapType,
+                                                    memory = math.min(config.dedupeBufferSize / config.numThreads, Int.MaxValue).toInt,
+                                                    hashAlgorithm = config.hashAlgorithm,
+                                                    offHeap = config.offsetMapOffHeap),
                               ioBufferSize = config.ioBufferSize / config.numThreads / 2,
                               maxIoBufferSize = config.maxMessageSize,
                               dupBufferLoadFactor = config.dedupeBufferLoadFactor,
                               throttler = throttler,
                               time = time,
-                              checkDone = checkDone)
+                              checkDone = checkDone,
+                              parallelism = config.threadsPerLog,
+                              incrementalMinDeadRatio = if (config.incrementalEnable) Some(config.incrementalMinDeadRatio) else None)
 
     @volatile var lastStats: CleanerStats = new CleanerStats()
     @volatile var lastPreCleanStats: PreCleanStats = new PreCleanStats()
 
+    override def shutdown(): Unit = {
+      super.shutdown()
+      // the thread is done using the offset map once it is shut down
+      CoreUtils.swallow(cleaner.shutdownWorkers(), this)
+      CoreUtils.swallow(cleaner.offsetMap.close(), this)
+    }
+
     private def checkDone(topicPartition: TopicPartition): Unit = {
       if (!isRunning)
         throw new ThreadShutdownException
@@ -360,6 +467,7 @@ class LogCleaner(initialConfig: CleanerConfig,
       try {
         val (nextDirtyOffset, cleanerStats) = cleaner.clean(cleanable)
         recordStats(cleaner.id, cleanable.log.name, cleanable.firstDirtyOffset, endOffset, cleanerStats)
+        recordPartitionCleanTimes(cleanable.topicPartition, cleanerStats)
         endOffset = nextDirtyOffset
       } catch {
         case _: LogCleaningAbortedException => // task can be aborted, let it go.
@@ -392,6 +500,7 @@ class LogCleaner(initialConfig: CleanerConfig,
         "\tCleaned %,.1f MB in %.1f seconds (%,.1f Mb/sec, %.1f%% of total time)%n".format(mb(stats.bytesRead),
                                                                                            stats.elapsedSecs - stats.elapsedIndexSecs,
                                                                                            mb(stats.bytesRead)/(stats.elapsedSecs - stats.elapsedIndexSecs), 100 * (stats.elapsedSecs - stats.elapsedIndexSecs).toDouble/stats.elapsedSecs) +
+        "\tUsed %.1f seconds of CPU time (%.1f times the total time)%n".format(stats.cpuSecs, stats.cpuSecs/stats.elapsedSecs) +
         "\tStart size: %,.1f MB (%,d messages)%n".format(mb(stats.bytesRead), stats.messagesRead) +
         "\tEnd size: %,.1f MB (%,d messages)%n".format(mb(stats.bytesWritten), stats.messagesWritten) +
         "\t%.1f%% size reduction (%.1f%% fewer messages)%n".format(100.0 * (1.0 - stats.bytesWritten.toDouble/stats.bytesRead),
@@ -416,9 +525,19 @@ object LogCleaner {
     KafkaConfig.LogCleanerIoBufferSizeProp,
     KafkaConfig.MessageMaxBytesProp,
     KafkaConfig.LogCleanerIoMaxBytesPerSecondProp,
-    KafkaConfig.LogCleanerBackoffMsProp
+    KafkaConfig.LogCleanerBackoffMsProp,
+    KafkaConfig.LogCleanerOffsetMapTypeProp,
+    KafkaConfig.LogCleanerOffsetMapOffHeapEnableProp,
+    KafkaConfig.LogCleanerThreadsPerLogProp,
+    KafkaConfig.LogCleanerIncrementalEnableProp,
+    KafkaConfig.LogCleanerIncrementalMinDeadRatioProp,
+    KafkaConfig.LogCleanerIoAdaptiveEnableProp,
+    KafkaConfig.LogCleanerIoMinBytesPerSecondProp
   )
 
+  val LastCleanTimeMsMetricName = "last-clean-time-ms"
+  val LastCleanCpuTimeMsMetricName = "last-clean-cpu-time-ms"
+
   def cleanerConfig(config: KafkaConfig): CleanerConfig = {
     CleanerConfig(numThreads = config.logCleanerThreads,
       dedupeBufferSize = config.logCleanerDedupeBufferSize,
@@ -427,14 +546,22 @@ object LogCleaner {
       maxMessageSize = config.messageMaxBytes,
       maxIoBytesPerSecond = config.logCleanerIoMaxBytesPerSecond,
       backOffMs = config.logCleanerBackoffMs,
-      enableCleaner = config.logCleanerEnable)
+      enableCleaner = config.logCleanerEnable,
+      offsetMapType = config.logCleanerOffsetMapType,
+      offsetMapOffHeap = config.logCleanerOffsetMapOffHeapEnable,
+      threadsPerLog = config.logCleanerThreadsPerLog,
+      incrementalEnable = config.logCleanerIncrementalEnable,
+      incrementalMinDeadRatio = config.logCleanerIncrementalMinDeadRatio,
+      ioAdaptiveEnable = config.logCleanerIoAdaptiveEnable,
+      minIoBytesPerSecond = config.logCleanerIoMinBytesPerSecond)
 
   }
 
   def createNewCleanedSegment(log: Log, baseOffset: Long): LogSegment = {
     LogSegment.deleteIfExists(log.dir, baseOffset, fileSuffix = Log.CleanedFileSuffix)
     LogSegment.open(log.dir, baseOffset, log.config, Time.SYSTEM, fileAlreadyExists = false,
-      fileSuffix = Log.CleanedFileSuffix, initFileSize = log.initFileSize, preallocate = log.config.preallocate)
+      fileSuffix = Log.CleanedFileSuffix, initFileSize = log.initFileSize, preallocate = log.config.preallocate,
+      openSegments = log.openSegments)
   }
 
 }
@@ -449,6 +576,9 @@ object LogCleaner {
  * @param throttler The throttler instance to use for limiting I/O rate.
  * @param time The time instance
  * @param checkDone Check if the cleaning for a partition is finished or aborted.
+ * @param parallelism The number of threads cleaning a log with a [[CompactOffsetMap]], each of which uses its own I/O buffers.
+ * @param incrementalMinDeadRatio The ratio of superseded records above which the segments cleaned before are cleaned
+ *                                again, if the logs are cleaned incrementally with a [[CompactOffsetMap]]
  */
 private[log] class Cleaner(val id: Int,
                            val offsetMap: OffsetMap,
@@ -457,7 +587,10 @@ private[log] class Cleaner(val id: Int,
                            dupBufferLoadFactor: Double,
                            throttler: Throttler,
                            time: Time,
-                           checkDone: TopicPartition => Unit) extends Logging {
+                           checkDone: TopicPartition => Unit,
+                           parallelism: Int = 1,
+                           incrementalMinDeadRatio: Option[Double] = None) extends Logging {
+  import Cleaner._
 
   protected override def loggerName = classOf[LogCleaner].getName
 
@@ -473,6 +606,23 @@ private[log] class Cleaner(val id: Int,
 
   require(offsetMap.slots * dupBufferLoadFactor > 1, "offset map is too small to fit in even a single message, so log cleaning will never make progress. You can increase log.cleaner.dedupe.buffer.size or decrease log.cleaner.threads")
 
+  /* the threads cleaning a log along with this cleaner, when there are several, see `runConcurrently` */
+  private lazy val workerPool: ExecutorService = {
+    val threadCounter = new AtomicInteger
+    Executors.newFixedThreadPool(parallelism, new ThreadFactory {
+      override def newThread(runnable: Runnable): Thread =
+        KafkaThread.daemon(s"kafka-log-cleaner-thread-$id-worker-${threadCounter.getAndIncrement()}", runnable)
+    })
+  }
+
+  /* the cleaners of the worker threads, with their own buffers */
+  private val workers = new ThreadLocal[Cleaner] {
+    override def initialValue(): Cleaner = new Cleaner(id, offsetMap, ioBufferSize, maxIoBufferSize, dupBufferLoadFactor,
+      throttler, time, checkDone)
+  }
+
+  @volatile private var workersStarted = false
+
   /**
    * Clean the given log
    *
@@ -497,6 +647,7 @@ private[log] class Cleaner(val id: Int,
 
     val log = cleanable.log
     val stats = new CleanerStats()
+    val startCpuTimeNs = currentThreadCpuTimeNs
 
     // build the offset map
     info("Building offset map for %s...".format(cleanable.log.name))
@@ -511,21 +662,246 @@ private[log] class Cleaner(val id: Int,
 
     // group the segments and clean the groups
     info("Cleaning log %s (cleaning prior to %s, discarding tombstones prior to %s)...".format(log.name, new Date(cleanableHorizonMs), new Date(deleteHorizonMs)))
-    val transactionMetadata = new CleanedTransactionMetadata
-
     val groupedSegments = groupSegmentsBySize(log.logSegments(0, endOffset), log.config.segmentSize,
       log.config.maxIndexSize, cleanable.firstUncleanableOffset)
-    for (group <- groupedSegments)
-      cleanSegments(log, group, offsetMap, deleteHorizonMs, stats, transactionMetadata)
+    (offsetMap, incrementalMinDeadRatio) match {
+      case (compactMap: CompactOffsetMap, Some(minDeadRatio)) =>
+        cleanIncrementally(log, cleanable.firstDirtyOffset, groupedSegments, compactMap, minDeadRatio, deleteHorizonMs, stats)
+      case _ =>
+        deleteKeyIndex(log)
+        cleanSegmentGroups(log, groupedSegments, offsetMap, deleteHorizonMs, stats)
+    }
 
     // record buffer utilization
     stats.bufferUtilization = offsetMap.utilization
 
+    stats.addCpuTime(currentThreadCpuTimeNs - startCpuTimeNs)
     stats.allDone()
 
     (endOffset, stats)
   }
 
+  /**
+   * Clean the given groups of segments in order
+   *
+   * @param log The log being cleaned
+   * @param groups The groups of segments being cleaned, see `groupSegmentsBySize`
+   * @param map The offset map to use for cleaning segments
+   * @param deleteHorizonMs The time to retain delete tombstones
+   * @param stats Collector for cleaning statistics
+   */
+  private def cleanSegmentGroups(log: Log,
+                                 groups: List[Seq[LogSegment]],
+                                 map: OffsetMap,
+                                 deleteHorizonMs: Long,
+                                 stats: CleanerStats): Unit = {
+    // the groups are cleaned concurrently only with the offset maps which can be read by several threads
+    val concurrentReads = map.isInstanceOf[CompactOffsetMap] || map.isInstanceOf[CleanerKeyIndex]
+    if (parallelism > 1 && groups.size > 1 && concurrentReads)
+      cleanSegmentGroupsConcurrently(log, groups, map, deleteHorizonMs, stats)
+    else {
+      val transactionMetadata = new CleanedTransactionMetadata
+      for (group <- groups)
+        cleanSegments(log, group, map, deleteHorizonMs, stats, transactionMetadata)
+    }
+  }
+
+  /**
+   * Clean the given groups of segments incrementally, with the [[CleanerKeyIndex]] of the log. The keys of the offset
+   * map are put into the index, and the groups of segments which were cleaned before are only cleaned again once at
+   * least `minDeadRatio` of their records were superseded. The other groups are cleaned with the index rather than the
+   * offset map, since the index has the latest offset of every key of the log. The groups which have transactional
+   * batches are always cleaned, since the state of the transactions is carried from one group to the next.
+   *
+   * Once a segment cleaned before has tombstones older than `deleteHorizonMs`, no group is skipped, so that the expired
+   * tombstones are removed along with the records they superseded in the groups which would otherwise be skipped.
+   * Removing the tombstones without these records would make their keys reappear.
+   *
+   * When the index does not cover the log up to the first dirty offset, such as the first time the log is cleaned
+   * incrementally, all the groups are cleaned with the offset map and the index is rebuilt from the cleaned segments.
+   * The index is also rebuilt once more than `CleanerKeyIndex.MaxStaleKeysRatio` of its keys no longer have a record in
+   * the log, which prunes these keys.
+   *
+   * @param log The log being cleaned
+   * @param firstDirtyOffset The first offset of the dirty section of the log
+   * @param groups The groups of segments being cleaned, see `groupSegmentsBySize`
+   * @param map The offset map of the dirty section of the log
+   * @param minDeadRatio The ratio of superseded records above which the segments cleaned before are cleaned again
+   * @param deleteHorizonMs The time to retain delete tombstones
+   * @param stats Collector for cleaning statistics
+   */
+  private def cleanIncrementally(log: Log,
+                                 firstDirtyOffset: Long,
+                                 groups: List[Seq[LogSegment]],
+                                 map: CompactOffsetMap,
+                                 minDeadRatio: Double,
+                                 deleteHorizonMs: Long,
+                                 stats: CleanerStats): Unit = {
+    val endOffset = map.latestOffset + 1
+    val keyIndex = new CleanerKeyIndex(log.dir)
+    try {
+      val rebuildReason =
+        if (keyIndex.endOffset != firstDirtyOffset)
+          Some(s"does not cover the log up to $firstDirtyOffset")
+        else if (keyIndex.size.toLong + map.size > CleanerKeyIndex.MaxEntries)
+          Some(s"cannot have the ${map.size} keys of the dirty section of the log in addition to its ${keyIndex.size} keys")
+        else {
+          // the keys whose records were removed from the log, such as expired tombstones or the keys of deleted
+          // segments, are only pruned from the index when it is rebuilt
+          val liveKeys = log.logSegments(0, firstDirtyOffset).iterator.flatMap { segment =>
+            keyIndex.segmentStats.get(segment.baseOffset).filter(_.matches(segment))
+          }.map(_.liveKeys.toLong).sum
+          val staleKeys = keyIndex.size - liveKeys
+          if (staleKeys > CleanerKeyIndex.MaxStaleKeysRatio * keyIndex.size)
+            Some(s"has $staleKeys stale keys out of ${keyIndex.size} keys")
+          else
+            None
+        }
+      val rebuild = rebuildReason.isDefined
+      // the statistics of the segments which are not cleaned again, by base offset
+      var keptSegmentStats = Map.empty[Long, CleanedSegmentStats]
+      if (rebuild) {
+        info(s"Rebuilding the cleaner key index of log ${log.name}, which ${rebuildReason.get}")
+        keyIndex.clear()
+        cleanSegmentGroups(log, groups, map, deleteHorizonMs, stats)
+      } else {
+        keyIndex.beginUpdate()
+        // the statistics of the segments which start before the dirty section, if they were cleaned before
+        val segmentStats = new util.TreeMap[java.lang.Long, Option[CleanedSegmentStats]]
+        val segments = log.logSegments(0, firstDirtyOffset + 1).toSeq
+        val nextBaseOffsets = segments.drop(1).map(_.baseOffset) :+ Long.MaxValue
+        for ((segment, nextBaseOffset) <- segments.zip(nextBaseOffsets) if segment.baseOffset < firstDirtyOffset) {
+          // a segment which is partially dirty is cleaned again
+          val stats = keyIndex.segmentStats.get(segment.baseOffset).filter(_.matches(segment) && nextBaseOffset <= firstDirtyOffset)
+          segmentStats.put(segment.baseOffset, stats)
+        }
+        map.foreachEntry { (hash1, hashTail, offset) =>
+          val previousOffset = keyIndex.putHash(hash1, hashTail, offset)
+          if (previousOffset >= 0 && previousOffset < firstDirtyOffset)
+            Option(segmentStats.floorEntry(previousOffset)).flatMap(_.getValue).foreach(_.deadRecords += 1)
+        }
+        keyIndex.updateLatestOffset(endOffset - 1)
+
+        // a full pass is made once tombstones expired, see above
+        val hasExpiredTombstones = segments.exists { segment =>
+          segment.lastModified <= deleteHorizonMs &&
+            Option(segmentStats.get(segment.baseOffset)).flatten.exists(_.tombstones > 0)
+        }
+        if (hasExpiredTombstones)
+          info(s"Cleaning all the segments of log ${log.name} to remove the tombstones older than ${new Date(deleteHorizonMs)}")
+
+        def skippable(group: Seq[LogSegment]): Boolean = {
+          val groupStats = group.map(segment => Option(segmentStats.get(segment.baseOffset)).flatten)
+          !hasExpiredTombstones && groupStats.forall(_.exists(!_.hasTransactions)) &&
+            groupStats.flatten.map(_.deadRecords.toLong).sum < minDeadRatio * math.max(groupStats.flatten.map(_.records.toLong).sum, 1L)
+        }
+        val (skippedGroups, cleanedGroups) = groups.partition(skippable)
+        keptSegmentStats = skippedGroups.flatten.map(segment => segment.baseOffset -> segmentStats.get(segment.baseOffset).get).toMap
+        if (skippedGroups.nonEmpty)
+          info(s"Skipping ${skippedGroups.map(_.size).sum} segments of log ${log.name} with less than $minDeadRatio " +
+            "of superseded records")
+        cleanSegmentGroups(log, cleanedGroups, keyIndex, deleteHorizonMs, stats)
+      }
+
+      // the statistics of the segments which were cleaned are read from the segments
+      val segmentStats = new util.TreeMap[java.lang.Long, CleanedSegmentStats]
+      var full = false
+      for (segment <- log.logSegments(0, endOffset) if !full) {
+        keptSegmentStats.get(segment.baseOffset) match {
+          case Some(cleanedSegmentStats) if cleanedSegmentStats.matches(segment) =>
+            segmentStats.put(segment.baseOffset, cleanedSegmentStats)
+          case _ =>
+            val cleanedSegmentStats = new CleanedSegmentStats(segment.baseOffset, segment.size)
+            segmentStats.put(segment.baseOffset, cleanedSegmentStats)
+            full = !indexSegment(log, segment, endOffset, keyIndex, rebuild, segmentStats)
+        }
+      }
+      if (full) {
+        warn(s"Deleting the cleaner key index of log ${log.name}, which has too many keys to be cleaned incrementally")
+        keyIndex.close()
+        deleteKeyIndex(log)
+      } else if (!log.config.compact) {
+        // the cleanup policy of the log was changed while it was cleaned, see `Log.updateConfig`
+        keyIndex.close()
+        deleteKeyIndex(log)
+      } else {
+        keyIndex.updateLatestOffset(endOffset - 1)
+        keyIndex.commit(segmentStats.values.asScala)
+      }
+    } finally {
+      keyIndex.close()
+    }
+  }
+
+  // the index only speeds up the cleaning, so failing to delete it must not fail the cleaning of the log
+  private def deleteKeyIndex(log: Log): Unit = {
+    try CleanerKeyIndex.deleteIfExists(log.dir)
+    catch {
+      case e: IOException => warn(s"Failed to delete the cleaner key index of log ${log.name}", e)
+    }
+  }
+
+  /**
+   * Read the records of the given segment up to the end offset of a cleaning to compute the statistics of the segment
+   * for the [[CleanerKeyIndex]] of the log. When the index is rebuilt, the keys of the records are also put into the
+   * index, and the records they supersede are counted in the statistics of their segments.
+   *
+   * @param log The log being cleaned
+   * @param segment The segment to read
+   * @param endOffset The end offset of the cleaning
+   * @param keyIndex The index of the keys of the log
+   * @param rebuild Whether the index is rebuilt, in which case the segments must be read in order
+   * @param segmentStats The statistics of the segments read so far, including the given segment, by base offset
+   *
+   * @return false if the index is full, in which case the segment was not read completely
+   */
+  private def indexSegment(log: Log,
+                           segment: LogSegment,
+                           endOffset: Long,
+                           keyIndex: CleanerKeyIndex,
+                           rebuild: Boolean,
+                           segmentStats: util.TreeMap[java.lang.Long, CleanedSegmentStats]): Boolean = {
+    val stats = segmentStats.get(segment.baseOffset)
+    var position = 0
+    while (position < segment.log.sizeInBytes) {
+      checkDone(log.topicPartition)
+      readBuffer.clear()
+      segment.log.readInto(readBuffer, position)
+      val records = MemoryRecords.readableRecords(readBuffer)
+      throttler.maybeThrottle(records.sizeInBytes)
+
+      val startPosition = position
+      for (batch <- records.batches.asScala) {
+        if (batch.isTransactional)
+          stats.hasTransactions = true
+        if (!batch.isControlBatch && batch.baseOffset < endOffset) {
+          for (record <- batch.asScala if record.hasKey && record.offset < endOffset) {
+            stats.records += 1
+            if (!record.hasValue) {
+              stats.deadRecords += 1
+              stats.tombstones += 1
+            }
+            if (rebuild) {
+              if (keyIndex.isFull)
+                return false
+              val previousOffset = keyIndex.putKey(record.key, record.offset)
+              if (previousOffset >= 0)
+                segmentStats.floorEntry(previousOffset).getValue.deadRecords += 1
+            } else if (keyIndex.get(record.key) > record.offset)
+              stats.deadRecords += 1
+          }
+        }
+      }
+      position += records.validBytes
+
+      // if we didn't read even one complete message, our read buffer may be too small
+      if (position == startPosition)
+        growBuffersOrFail(segment.log, position, log.config.maxMessageSize, records)
+    }
+    restoreBuffers()
+    true
+  }
+
   /**
    * Clean a group of segments into a single replacement segment
    *
@@ -543,11 +919,75 @@ private[log] class Cleaner(val id: Int,
                                  deleteHorizonMs: Long,
                                  stats: CleanerStats,
                                  transactionMetadata: CleanedTransactionMetadata): Unit = {
+    val cleaned = cleanSegmentsInto(log, segments, map, deleteHorizonMs, stats, transactionMetadata)
+    replaceCleanedSegments(log, cleaned, segments)
+  }
+
+  /**
+   * Clean the groups of segments of a log concurrently on the worker threads, and swap in the cleaned segments in order.
+   *
+   * The transactions which are ongoing at the start of a group are only known once the previous groups are cleaned,
+   * so every group is cleaned as if there were none, which is the case unless transactions span several groups. When
+   * transactions are still ongoing at the end of a group, the groups which follow it are cleaned again sequentially,
+   * with the transaction state of the group.
+   *
+   * @param log The log being cleaned
+   * @param groups The groups of segments being cleaned, see `groupSegmentsBySize`
+   * @param map The offset map to use for cleaning segments
+   * @param deleteHorizonMs The time to retain delete tombstones
+   * @param stats Collector for cleaning statistics
+   */
+  private def cleanSegmentGroupsConcurrently(log: Log,
+                                             groups: List[Seq[LogSegment]],
+                                             map: OffsetMap,
+                                             deleteHorizonMs: Long,
+                                             stats: CleanerStats): Unit = {
+    var replacedGroups = 0
+    var ongoingTransactions: Option[CleanedTransactionMetadata] = None
+
+    runConcurrently(groups.iterator, stats) { (worker, group: Seq[LogSegment]) =>
+      val groupStats = new CleanerStats(time)
+      val transactionMetadata = new CleanedTransactionMetadata
+      val cleaned = worker.cleanSegmentsInto(log, group, map, deleteHorizonMs, groupStats, transactionMetadata)
+      CleanedSegments(group, cleaned, groupStats, transactionMetadata)
+    } (handle = { cleanedGroup =>
+      replaceCleanedSegments(log, cleanedGroup.cleaned, cleanedGroup.segments)
+      stats.add(cleanedGroup.stats)
+      replacedGroups += 1
+      if (cleanedGroup.transactionMetadata.hasOngoingTransactions)
+        ongoingTransactions = Some(cleanedGroup.transactionMetadata)
+      ongoingTransactions.isEmpty
+    }, discard = { cleanedGroup =>
+      CoreUtils.swallow(cleanedGroup.cleaned.deleteIfExists(), this)
+    })
+
+    ongoingTransactions.foreach { transactionMetadata =>
+      val remainingGroups = groups.drop(replacedGroups)
+      if (remainingGroups.nonEmpty) {
+        info(s"Cleaning the last ${remainingGroups.size} groups of segments of log ${log.name} sequentially, since " +
+          "transactions span several groups")
+        for (group <- remainingGroups)
+          cleanSegments(log, group, map, deleteHorizonMs, stats, transactionMetadata)
+      }
+    }
+  }
+
+  /**
+   * Clean a group of segments into a single replacement segment, which is not swapped in yet
+   *
+   * @return The replacement segment
+   */
+  private def cleanSegmentsInto(log: Log,
+                                segments: Seq[LogSegment],
+                                map: OffsetMap,
+                                deleteHorizonMs: Long,
+                                stats: CleanerStats,
+                                transactionMetadata: CleanedTransactionMetadata): LogSegment = {
     // create a new segment with a suffix appended to the name of the log and indexes
     val cleaned = LogCleaner.createNewCleanedSegment(log, segments.head.baseOffset)
     transactionMetadata.cleanedIndex = Some(cleaned.txnIndex)
 
-    try {
+    deleteIfCleaningAborted(cleaned) {
       // clean segments into the new destination segment
       val iter = segments.iterator
       var currentSegmentOpt: Option[LogSegment] = Some(iter.next())
@@ -588,17 +1028,86 @@ private[log] class Cleaner(val id: Int,
       // update the modification date to retain the last modified date of the original files
       val modified = segments.last.lastModified
       cleaned.lastModified = modified
+      cleaned
+    }
+  }
 
+  private def replaceCleanedSegments(log: Log, cleaned: LogSegment, segments: Seq[LogSegment]): Unit = {
+    deleteIfCleaningAborted(cleaned) {
       // swap in new segment
       info(s"Swapping in cleaned segment $cleaned for segment(s) $segments in log $log")
       log.replaceSegments(List(cleaned), segments)
+    }
+  }
+
+  private def deleteIfCleaningAborted[T](cleaned: LogSegment)(fun: => T): T = {
+    try {
+      fun
     } catch {
       case e: LogCleaningAbortedException =>
         try cleaned.deleteIfExists()
         catch {
           case deleteException: Exception =>
             e.addSuppressed(deleteException)
-        } finally throw e
+        }
+        throw e
+    }
+  }
+
+  /**
+   * Run the given tasks on the worker threads, at most `parallelism` at a time, and handle their results in order on
+   * the calling thread until `handle` returns false. The results of the tasks which completed but were not handled,
+   * because `handle` returned false or threw, are given to `discard`.
+   *
+   * The tasks are run with the cleaner of their worker thread, so that they use its buffers.
+   */
+  private def runConcurrently[T, R](tasks: Iterator[T], stats: CleanerStats)
+                                   (run: (Cleaner, T) => R)
+                                   (handle: R => Boolean, discard: R => Unit): Unit = {
+    workersStarted = true
+    val inFlight = mutable.Queue[Future[(R, Long)]]()
+
+    def await(future: Future[(R, Long)]): R = {
+      val (result, cpuTimeNs) = try future.get() catch {
+        case e: ExecutionException => throw e.getCause
+      }
+      stats.addCpuTime(cpuTimeNs)
+      result
+    }
+
+    try {
+      var handling = true
+      while (handling && (inFlight.nonEmpty || tasks.hasNext)) {
+        while (inFlight.size < parallelism && tasks.hasNext) {
+          val task = tasks.next()
+          inFlight += workerPool.submit(new Callable[(R, Long)] {
+            override def call(): (R, Long) = {
+              val startCpuTimeNs = currentThreadCpuTimeNs
+              val result = run(workers.get, task)
+              (result, currentThreadCpuTimeNs - startCpuTimeNs)
+            }
+          })
+        }
+        handling = handle(await(inFlight.dequeue()))
+      }
+    } finally {
+      // the tasks which are still running may use the segments of the log, so they are waited for
+      while (inFlight.nonEmpty) {
+        try discard(await(inFlight.dequeue()))
+        catch {
+          case e: Throwable => debug("Discarded the failed result of a concurrent task", e)
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop the worker threads, if any.
+   */
+  def shutdownWorkers(): Unit = {
+    if (workersStarted) {
+      workerPool.shutdown()
+      workerPool.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
     }
   }
 
@@ -881,16 +1390,170 @@ private[log] class Cleaner(val id: Int,
 
     // Add all the cleanable dirty segments. We must take at least map.slots * load_factor,
     // but we may be able to fit more (if there is lots of duplication in the dirty section of the log)
-    var full = false
-    for ( (segment, nextSegmentStartOffset) <- dirty.zip(nextSegmentStartOffsets) if !full) {
-      checkDone(log.topicPartition)
+    map match {
+      case compactMap: CompactOffsetMap if parallelism > 1 =>
+        buildOffsetMapConcurrently(log, dirty.zip(nextSegmentStartOffsets), start, compactMap, transactionMetadata, stats)
+      case _ =>
+        var full = false
+        for ( (segment, nextSegmentStartOffset) <- dirty.zip(nextSegmentStartOffsets) if !full) {
+          checkDone(log.topicPartition)
+
+          full = buildOffsetMapForSegment(log.topicPartition, segment, map, start, nextSegmentStartOffset, log.config.maxMessageSize,
+            transactionMetadata, stats)
+          if (full)
+            debug("Offset map is full, %d segments fully mapped, segment with base offset %d is partially mapped".format(dirty.indexOf(segment), segment.baseOffset))
+        }
+    }
+    info("Offset map for log %s complete.".format(log.name))
+  }
+
+  /**
+   * Add the messages in the given segments to the offset map like `buildOffsetMapForSegment`, reading the segments and
+   * hashing their keys on the worker threads. The segments are split into ranges starting at entries of their offset
+   * index, whose hashed keys are added to the map in order, so that the map is the same as if it was built by a
+   * single thread.
+   *
+   * @param log The log to use
+   * @param segments The segments to index, along with the start offset of the segment following each of them
+   * @param startOffset The offset at which dirty messages begin
+   * @param map The map in which to store the mappings
+   * @param transactionMetadata The transactional state of the indexed segments
+   * @param stats Collector for cleaning statistics
+   */
+  private def buildOffsetMapConcurrently(log: Log,
+                                         segments: Seq[(LogSegment, Long)],
+                                         startOffset: Long,
+                                         map: CompactOffsetMap,
+                                         transactionMetadata: CleanedTransactionMetadata,
+                                         stats: CleanerStats): Unit = {
+    val maxDesiredMapSize = (map.slots * this.dupBufferLoadFactor).toInt
+    val ranges = segments.iterator.flatMap { case (segment, nextSegmentStartOffset) =>
+      val bounds = splitSegment(segment, segment.offsetIndex.lookup(startOffset).position, log.config.indexInterval)
+      bounds.zipWithIndex.map { case ((from, until), i) =>
+        SegmentRange(segment, from, until, if (i == bounds.size - 1) Some(nextSegmentStartOffset) else None)
+      }
+    }
 
-      full = buildOffsetMapForSegment(log.topicPartition, segment, map, start, nextSegmentStartOffset, log.config.maxMessageSize,
-        transactionMetadata, stats)
+    runConcurrently(ranges, stats) { (worker, range: SegmentRange) =>
+      worker.hashKeys(log.topicPartition, range, startOffset, log.config.maxMessageSize)
+    } (handle = { hashedKeys =>
+      val full = putHashedKeys(hashedKeys, map, startOffset, maxDesiredMapSize, transactionMetadata, stats)
       if (full)
-        debug("Offset map is full, %d segments fully mapped, segment with base offset %d is partially mapped".format(dirty.indexOf(segment), segment.baseOffset))
+        debug(s"Offset map is full, segment with base offset ${hashedKeys.range.segment.baseOffset} is partially mapped")
+      else {
+        // In the case of offsets gap, fast forward to latest expected offset in this segment.
+        hashedKeys.range.nextSegmentStartOffset.foreach(offset => map.updateLatestOffset(offset - 1L))
+      }
+      !full
+    }, discard = _ => ())
+  }
+
+  /**
+   * Split the given segment from the given position into ranges of about `OffsetMapRangeBytes`, which start at the
+   * positions of entries of its offset index, that is at the positions of batches.
+   *
+   * @return The start and end positions of the ranges, of which there is at least one
+   */
+  private def splitSegment(segment: LogSegment, startPosition: Int, indexIntervalBytes: Int): Seq[(Int, Int)] = {
+    val index = segment.offsetIndex
+    val stride = math.max(1, OffsetMapRangeBytes / math.max(1, indexIntervalBytes))
+    val positions = mutable.ArrayBuffer(startPosition)
+    var entry = stride
+    while (entry < index.entries) {
+      val position = index.entry(entry).position
+      if (position > positions.last)
+        positions += position
+      entry += stride
     }
-    info("Offset map for log %s complete.".format(log.name))
+    positions += math.max(segment.size, positions.last)
+    positions.zip(positions.tail)
+  }
+
+  /**
+   * Read the given range of a segment and hash the keys of its messages, along with the batches they belong to, to
+   * be added to the offset map by `putHashedKeys`.
+   *
+   * @param topicPartition The topic and partition of the segment
+   * @param range The range of the segment to read
+   * @param startOffset The offset at which dirty messages begin
+   * @param maxLogMessageSize The maximum message size of the corresponding topic
+   *
+   * @return The hashed keys of the range
+   */
+  private def hashKeys(topicPartition: TopicPartition,
+                       range: SegmentRange,
+                       startOffset: Long,
+                       maxLogMessageSize: Int): HashedKeys = {
+    val hashedKeys = new HashedKeys(range)
+    var position = range.from
+    while (position < range.until) {
+      checkDone(topicPartition)
+      readBuffer.clear()
+      // the batch at the end of the range is read along with the next range
+      readBuffer.limit(math.min(readBuffer.capacity, range.until - position))
+      try {
+        range.segment.log.readInto(readBuffer, position)
+      } catch {
+        case e: Exception =>
+          throw new KafkaException(s"Failed to read from segment ${range.segment} of partition $topicPartition " +
+            "while loading offset map", e)
+      }
+      val records = MemoryRecords.readableRecords(readBuffer)
+      throttler.maybeThrottle(records.sizeInBytes)
+
+      val startPosition = position
+      for (batch <- records.batches.asScala)
+        hashedKeys.add(batch, startOffset)
+      val bytesRead = records.validBytes
+      position += bytesRead
+      hashedKeys.bytesRead += bytesRead
+
+      // if we didn't read even one complete message, our read buffer may be too small
+      if (position == startPosition)
+        growBuffersOrFail(range.segment.log, position, maxLogMessageSize, records)
+    }
+    restoreBuffers()
+    hashedKeys
+  }
+
+  /**
+   * Add the keys hashed by `hashKeys` to the offset map, as `buildOffsetMapForSegment` adds the keys of the messages it
+   * reads.
+   *
+   * @return If the map was filled whilst adding the keys
+   */
+  private def putHashedKeys(hashedKeys: HashedKeys,
+                            map: CompactOffsetMap,
+                            startOffset: Long,
+                            maxDesiredMapSize: Int,
+                            transactionMetadata: CleanedTransactionMetadata,
+                            stats: CleanerStats): Boolean = {
+    var key = 0
+    for (batch <- hashedKeys.batches) {
+      if (batch.isControl) {
+        transactionMetadata.onControlBatchRead(batch.lastOffset, batch.producerId, batch.controlRecordType)
+        stats.indexMessagesRead(1)
+      } else {
+        val isAborted = transactionMetadata.onBatchRead(batch.lastOffset, batch.producerId, batch.isTransactional)
+        if (!isAborted) {
+          while (key < batch.keysUntil) {
+            val offset = hashedKeys.offset(key)
+            if (map.size < maxDesiredMapSize && map.canPut(offset))
+              map.putHash(hashedKeys.hash1(key), hashedKeys.hash2(key), offset)
+            else
+              return true
+            key += 1
+          }
+        }
+        stats.indexMessagesRead(batch.records)
+      }
+      key = batch.keysUntil
+
+      if (batch.lastOffset >= startOffset)
+        map.updateLatestOffset(batch.lastOffset)
+    }
+    stats.indexBytesRead(hashedKeys.bytesRead)
+    false
   }
 
   /**
@@ -939,7 +1602,7 @@ private[log] class Cleaner(val id: Int,
           } else {
             for (record <- batch.asScala) {
               if (record.hasKey && record.offset >= startOffset) {
-                if (map.size < maxDesiredMapSize)
+                if (map.size < maxDesiredMapSize && map.canPut(record.offset))
                   map.put(record.key, record.offset)
                 else
                   return true
@@ -969,6 +1632,90 @@ private[log] class Cleaner(val id: Int,
   }
 }
 
+private[log] object Cleaner {
+  /* the size of the ranges of the segments read by the worker threads to build the offset map */
+  private val OffsetMapRangeBytes = 8 * 1024 * 1024
+
+  private def currentThreadCpuTimeNs: Long = {
+    val threads = ManagementFactory.getThreadMXBean
+    if (threads.isCurrentThreadCpuTimeSupported) math.max(threads.getCurrentThreadCpuTime, 0L) else 0L
+  }
+}
+
+/**
+ * A range of a log segment read by a worker thread of the cleaner.
+ *
+ * @param nextSegmentStartOffset The start offset of the next segment, if this is the last range of the segment
+ */
+private case class SegmentRange(segment: LogSegment, from: Int, until: Int, nextSegmentStartOffset: Option[Long])
+
+/**
+ * A batch of a range of a log segment read by `Cleaner.hashKeys`.
+ *
+ * @param controlRecordType The type of the control record, if this is a non-empty control batch
+ * @param records The number of records of the batch
+ * @param keysUntil The number of keys hashed in the range up to the end of this batch
+ */
+private case class HashedBatch(lastOffset: Long,
+                               producerId: Long,
+                               isTransactional: Boolean,
+                               isControl: Boolean,
+                               controlRecordType: Option[ControlRecordType],
+                               records: Int,
+                               keysUntil: Int)
+
+/**
+ * The hashed keys of the messages of a range of a log segment, with their offsets and the batches they belong to.
+ */
+private class HashedKeys(val range: SegmentRange) {
+  val batches = mutable.ArrayBuffer[HashedBatch]()
+  var bytesRead = 0
+
+  private val keyHash = new Array[Long](2)
+  private var hashes = new Array[Long](2 * 1024)
+  private var offsets = new Array[Long](1024)
+  private var keys = 0
+
+  def add(batch: RecordBatch, startOffset: Long): Unit = {
+    if (batch.isControlBatch) {
+      batches += HashedBatch(batch.lastOffset, batch.producerId, batch.isTransactional, isControl = true,
+        CleanedTransactionMetadata.controlRecordType(batch), records = 1, keysUntil = keys)
+    } else {
+      var records = 0
+      for (record <- batch.asScala) {
+        if (record.hasKey && record.offset >= startOffset) {
+          if (keys == offsets.length) {
+            hashes = java.util.Arrays.copyOf(hashes, 2 * hashes.length)
+            offsets = java.util.Arrays.copyOf(offsets, 2 * offsets.length)
+          }
+          CompactOffsetMap.hash(record.key, keyHash)
+          hashes(2 * keys) = keyHash(0)
+          hashes(2 * keys + 1) = keyHash(1)
+          offsets(keys) = record.offset
+          keys += 1
+        }
+        records += 1
+      }
+      batches += HashedBatch(batch.lastOffset, batch.producerId, batch.isTransactional, isControl = false,
+        controlRecordType = None, records = records, keysUntil = keys)
+    }
+  }
+
+  def hash1(key: Int): Long = hashes(2 * key)
+
+  def hash2(key: Int): Long = hashes(2 * key + 1)
+
+  def offset(key: Int): Long = offsets(key)
+}
+
+/**
+ * A group of segments cleaned by a worker thread of the cleaner into a segment which is not swapped in yet.
+ */
+private case class CleanedSegments(segments: Seq[LogSegment],
+                                   cleaned: LogSegment,
+                                   stats: CleanerStats,
+                                   transactionMetadata: CleanedTransactionMetadata)
+
 /**
   * A simple struct for collecting pre-clean stats
   */
@@ -1003,6 +1750,7 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
   var invalidMessagesRead = 0L
   var messagesWritten = 0L
   var bufferUtilization = 0.0d
+  var cpuTimeNs = 0L
 
   def readMessages(messagesRead: Int, bytesRead: Int): Unit = {
     this.messagesRead += messagesRead
@@ -1030,6 +1778,21 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
     mapCompleteTime = time.milliseconds
   }
 
+  def addCpuTime(cpuTimeNs: Long): Unit = {
+    this.cpuTimeNs += cpuTimeNs
+  }
+
+  /**
+   * Add the statistics of the cleaning of some segments by another thread.
+   */
+  def add(other: CleanerStats): Unit = {
+    bytesRead += other.bytesRead
+    bytesWritten += other.bytesWritten
+    messagesRead += other.messagesRead
+    invalidMessagesRead += other.invalidMessagesRead
+    messagesWritten += other.messagesWritten
+  }
+
   def allDone(): Unit = {
     endTime = time.milliseconds
   }
@@ -1038,6 +1801,8 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
 
   def elapsedIndexSecs = (mapCompleteTime - startTime)/1000.0
 
+  def cpuSecs = cpuTimeNs / 1000000000.0
+
 }
 
 /**
@@ -1081,35 +1846,37 @@ private[log] class CleanedTransactionMetadata {
    * Update the cleaned transaction state with a control batch that has just been traversed by the cleaner.
    * Return true if the control batch can be discarded.
    */
-  def onControlBatchRead(controlBatch: RecordBatch): Boolean = {
-    consumeAbortedTxnsUpTo(controlBatch.lastOffset)
+  def onControlBatchRead(controlBatch: RecordBatch): Boolean =
+    onControlBatchRead(controlBatch.lastOffset, controlBatch.producerId, CleanedTransactionMetadata.controlRecordType(controlBatch))
 
-    val controlRecordIterator = controlBatch.iterator
-    if (controlRecordIterator.hasNext) {
-      val controlRecord = controlRecordIterator.next()
-      val controlType = ControlRecordType.parse(controlRecord.key)
-      val producerId = controlBatch.producerId
-      controlType match {
-        case ControlRecordType.ABORT =>
-          ongoingAbortedTxns.remove(producerId) match {
-            // Retain the marker until all batches from the transaction have been removed.
-            // We may retain a record from an aborted transaction if it is the last entry
-            // written by a given producerId.
-            case Some(abortedTxnMetadata) if abortedTxnMetadata.lastObservedBatchOffset.isDefined =>
-              cleanedIndex.foreach(_.append(abortedTxnMetadata.abortedTxn))
-              false
-            case _ => true
-          }
+  /**
+   * Update the cleaned transaction state with a control batch given by its last offset, producer id and the type of its
+   * control record, which is None if the batch is empty. Return true if the control batch can be discarded.
+   */
+  def onControlBatchRead(lastOffset: Long, producerId: Long, controlRecordType: Option[ControlRecordType]): Boolean = {
+    consumeAbortedTxnsUpTo(lastOffset)
+
+    controlRecordType match {
+      case Some(ControlRecordType.ABORT) =>
+        ongoingAbortedTxns.remove(producerId) match {
+          // Retain the marker until all batches from the transaction have been removed.
+          // We may retain a record from an aborted transaction if it is the last entry
+          // written by a given producerId.
+          case Some(abortedTxnMetadata) if abortedTxnMetadata.lastObservedBatchOffset.isDefined =>
+            cleanedIndex.foreach(_.append(abortedTxnMetadata.abortedTxn))
+            false
+          case _ => true
+        }
 
-        case ControlRecordType.COMMIT =>
-          // This marker is eligible for deletion if we didn't traverse any batches from the transaction
-          !ongoingCommittedTxns.remove(producerId)
+      case Some(ControlRecordType.COMMIT) =>
+        // This marker is eligible for deletion if we didn't traverse any batches from the transaction
+        !ongoingCommittedTxns.remove(producerId)
 
-        case _ => false
-      }
-    } else {
-      // An empty control batch was already cleaned, so it's safe to discard
-      true
+      case Some(_) => false
+
+      case None =>
+        // An empty control batch was already cleaned, so it's safe to discard
+        true
     }
   }
 
@@ -1124,15 +1891,22 @@ private[log] class CleanedTransactionMetadata {
    * Update the transactional state for the incoming non-control batch. If the batch is part of
    * an aborted transaction, return true to indicate that it is safe to discard.
    */
-  def onBatchRead(batch: RecordBatch): Boolean = {
-    consumeAbortedTxnsUpTo(batch.lastOffset)
-    if (batch.isTransactional) {
-      ongoingAbortedTxns.get(batch.producerId) match {
+  def onBatchRead(batch: RecordBatch): Boolean =
+    onBatchRead(batch.lastOffset, batch.producerId, batch.isTransactional)
+
+  /**
+   * Update the transactional state for a non-control batch given by its last offset, producer id and whether it is
+   * transactional. Return true if the batch is part of an aborted transaction.
+   */
+  def onBatchRead(lastOffset: Long, producerId: Long, isTransactional: Boolean): Boolean = {
+    consumeAbortedTxnsUpTo(lastOffset)
+    if (isTransactional) {
+      ongoingAbortedTxns.get(producerId) match {
         case Some(abortedTransactionMetadata) =>
-          abortedTransactionMetadata.lastObservedBatchOffset = Some(batch.lastOffset)
+          abortedTransactionMetadata.lastObservedBatchOffset = Some(lastOffset)
           true
         case None =>
-          ongoingCommittedTxns += batch.producerId
+          ongoingCommittedTxns += producerId
           false
       }
     } else {
@@ -1140,6 +1914,26 @@ private[log] class CleanedTransactionMetadata {
     }
   }
 
+  /**
+   * Whether some transactions were read but not completed yet, so that the state can not be started afresh.
+   */
+  def hasOngoingTransactions: Boolean = ongoingCommittedTxns.nonEmpty || ongoingAbortedTxns.nonEmpty
+
+}
+
+private[log] object CleanedTransactionMetadata {
+
+  /**
+   * The type of the control record of the given control batch, or None if the batch is empty.
+   */
+  def controlRecordType(controlBatch: RecordBatch): Option[ControlRecordType] = {
+    val controlRecordIterator = controlBatch.iterator
+    if (controlRecordIterator.hasNext)
+      Some(ControlRecordType.parse(controlRecordIterator.next().key))
+    else
+      None
+  }
+
 }
 
 private class AbortedTransactionMetadata(val abortedTxn: AbortedTxn) {
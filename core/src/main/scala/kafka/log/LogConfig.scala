@@ -26,7 +26,7 @@ import kafka.server.{KafkaConfig, ThrottledReplicaListValidator}
 import kafka.utils.Implicits._
 import org.apache.kafka.common.errors.InvalidConfigurationException
 import org.apache.kafka.common.config.{AbstractConfig, ConfigDef, TopicConfig}
-import org.apache.kafka.common.record.{LegacyRecord, TimestampType}
+import org.apache.kafka.common.record.{LegacyRecord, TimestampType, ZstdDictionary}
 import org.apache.kafka.common.utils.Utils
 
 import scala.collection.{Map, mutable}
@@ -43,6 +43,7 @@ object Defaults {
   val MaxMessageSize = kafka.server.Defaults.MessageMaxBytes
   val MaxIndexSize = kafka.server.Defaults.LogIndexSizeMaxBytes
   val IndexInterval = kafka.server.Defaults.LogIndexIntervalBytes
+  val IndexTwoLevelLookupEnable = kafka.server.Defaults.LogIndexTwoLevelLookupEnable
   val FileDeleteDelayMs = kafka.server.Defaults.LogDeleteDelayMs
   val DeleteRetentionMs = kafka.server.Defaults.LogCleanerDeleteRetentionMs
   val MinCompactionLagMs = kafka.server.Defaults.LogCleanerMinCompactionLagMs
@@ -57,6 +58,8 @@ object Defaults {
   val UncleanLeaderElectionEnable = kafka.server.Defaults.UncleanLeaderElectionEnable
   val MinInSyncReplicas = kafka.server.Defaults.MinInSyncReplicas
   val CompressionType = kafka.server.Defaults.CompressionType
+  val CompressionLevel: Integer = null
+  val ZstdDictionaryId = 0
   val PreAllocateEnable = kafka.server.Defaults.LogPreAllocateEnable
   val MessageFormatVersion = kafka.server.Defaults.LogMessageFormatVersion
   val MessageTimestampType = kafka.server.Defaults.LogMessageTimestampType
@@ -77,6 +80,7 @@ case class LogConfig(props: java.util.Map[_, _], overriddenConfigs: Set[String]
   val segmentMs = getLong(LogConfig.SegmentMsProp)
   val segmentJitterMs = getLong(LogConfig.SegmentJitterMsProp)
   val maxIndexSize = getInt(LogConfig.SegmentIndexBytesProp)
+  val indexTwoLevelLookupEnable = getBoolean(LogConfig.SegmentIndexTwoLevelLookupEnableProp)
   val flushInterval = getLong(LogConfig.FlushMessagesProp)
   val flushMs = getLong(LogConfig.FlushMsProp)
   val retentionSize = getLong(LogConfig.RetentionBytesProp)
@@ -93,6 +97,8 @@ case class LogConfig(props: java.util.Map[_, _], overriddenConfigs: Set[String]
   val uncleanLeaderElectionEnable = getBoolean(LogConfig.UncleanLeaderElectionEnableProp)
   val minInSyncReplicas = getInt(LogConfig.MinInSyncReplicasProp)
   val compressionType = getString(LogConfig.CompressionTypeProp).toLowerCase(Locale.ROOT)
+  val compressionLevel: Option[Int] = Option(getInt(LogConfig.CompressionLevelProp)).map(_.intValue)
+  val zstdDictionaryId = getInt(LogConfig.ZstdDictionaryIdProp)
   val preallocate = getBoolean(LogConfig.PreAllocateEnableProp)
   val messageFormatVersion = ApiVersion(getString(LogConfig.MessageFormatVersionProp))
   val messageTimestampType = TimestampType.forName(getString(LogConfig.MessageTimestampTypeProp))
@@ -101,6 +107,13 @@ case class LogConfig(props: java.util.Map[_, _], overriddenConfigs: Set[String]
   val FollowerReplicationThrottledReplicas = getList(LogConfig.FollowerReplicationThrottledReplicasProp)
   val messageDownConversionEnable = getBoolean(LogConfig.MessageDownConversionEnableProp)
 
+  /**
+   * The dictionary to compress with when the broker compresses the batches of the topic with zstd, if it is set and
+   * registered with this broker.
+   */
+  def zstdDictionary: Option[ZstdDictionary] =
+    if (zstdDictionaryId == 0) None else Option(ZstdDictionary.forId(zstdDictionaryId))
+
   def randomSegmentJitter: Long =
     if (segmentJitterMs == 0) 0 else Utils.abs(scala.util.Random.nextInt()) % math.min(segmentJitterMs, segmentMs)
 
@@ -120,6 +133,7 @@ object LogConfig {
   val SegmentMsProp = TopicConfig.SEGMENT_MS_CONFIG
   val SegmentJitterMsProp = TopicConfig.SEGMENT_JITTER_MS_CONFIG
   val SegmentIndexBytesProp = TopicConfig.SEGMENT_INDEX_BYTES_CONFIG
+  val SegmentIndexTwoLevelLookupEnableProp = TopicConfig.SEGMENT_INDEX_TWO_LEVEL_LOOKUP_ENABLE_CONFIG
   val FlushMessagesProp = TopicConfig.FLUSH_MESSAGES_INTERVAL_CONFIG
   val FlushMsProp = TopicConfig.FLUSH_MS_CONFIG
   val RetentionBytesProp = TopicConfig.RETENTION_BYTES_CONFIG
@@ -137,6 +151,8 @@ object LogConfig {
   val UncleanLeaderElectionEnableProp = TopicConfig.UNCLEAN_LEADER_ELECTION_ENABLE_CONFIG
   val MinInSyncReplicasProp = TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG
   val CompressionTypeProp = TopicConfig.COMPRESSION_TYPE_CONFIG
+  val CompressionLevelProp = TopicConfig.COMPRESSION_LEVEL_CONFIG
+  val ZstdDictionaryIdProp = TopicConfig.COMPRESSION_ZSTD_DICTIONARY_ID_CONFIG
   val PreAllocateEnableProp = TopicConfig.PREALLOCATE_CONFIG
   val MessageFormatVersionProp = TopicConfig.MESSAGE_FORMAT_VERSION_CONFIG
   val MessageTimestampTypeProp = TopicConfig.MESSAGE_TIMESTAMP_TYPE_CONFIG
@@ -151,6 +167,7 @@ object LogConfig {
   val SegmentMsDoc = TopicConfig.SEGMENT_MS_DOC
   val SegmentJitterMsDoc = TopicConfig.SEGMENT_JITTER_MS_DOC
   val MaxIndexSizeDoc = TopicConfig.SEGMENT_INDEX_BYTES_DOC
+  val IndexTwoLevelLookupEnableDoc = TopicConfig.SEGMENT_INDEX_TWO_LEVEL_LOOKUP_ENABLE_DOC
   val FlushIntervalDoc = TopicConfig.FLUSH_MESSAGES_INTERVAL_DOC
   val FlushMsDoc = TopicConfig.FLUSH_MS_DOC
   val RetentionSizeDoc = TopicConfig.RETENTION_BYTES_DOC
@@ -166,6 +183,8 @@ object LogConfig {
   val UncleanLeaderElectionEnableDoc = TopicConfig.UNCLEAN_LEADER_ELECTION_ENABLE_DOC
   val MinInSyncReplicasDoc = TopicConfig.MIN_IN_SYNC_REPLICAS_DOC
   val CompressionTypeDoc = TopicConfig.COMPRESSION_TYPE_DOC
+  val CompressionLevelDoc = TopicConfig.COMPRESSION_LEVEL_DOC
+  val ZstdDictionaryIdDoc = TopicConfig.COMPRESSION_ZSTD_DICTIONARY_ID_DOC
   val PreAllocateEnableDoc = TopicConfig.PREALLOCATE_DOC
   val MessageFormatVersionDoc = TopicConfig.MESSAGE_FORMAT_VERSION_DOC
   val MessageTimestampTypeDoc = TopicConfig.MESSAGE_TIMESTAMP_TYPE_DOC
@@ -219,7 +238,7 @@ object LogConfig {
 
     override def getConfigValue(key: ConfigKey, headerName: String): String = {
       headerName match {
-        case ServerDefaultHeaderName => serverDefaultConfigNames.getOrElse(key.name, null)
+        case ServerDefaultHeaderName => serverDefaultConfigNames.getOrElse(key.name, "")
         case _ => super.getConfigValue(key, headerName)
       }
     }
@@ -236,7 +255,7 @@ object LogConfig {
     import org.apache.kafka.common.config.ConfigDef.Type._
     import org.apache.kafka.common.config.ConfigDef.ValidString._
 
-    new LogConfigDef()
+    val logConfigDef = new LogConfigDef()
       .define(SegmentBytesProp, INT, Defaults.SegmentSize, atLeast(LegacyRecord.RECORD_OVERHEAD_V0), MEDIUM,
         SegmentSizeDoc, KafkaConfig.LogSegmentBytesProp)
       .define(SegmentMsProp, LONG, Defaults.SegmentMs, atLeast(1), MEDIUM, SegmentMsDoc,
@@ -245,6 +264,8 @@ object LogConfig {
         KafkaConfig.LogRollTimeJitterMillisProp)
       .define(SegmentIndexBytesProp, INT, Defaults.MaxIndexSize, atLeast(0), MEDIUM, MaxIndexSizeDoc,
         KafkaConfig.LogIndexSizeMaxBytesProp)
+      .define(SegmentIndexTwoLevelLookupEnableProp, BOOLEAN, Defaults.IndexTwoLevelLookupEnable, LOW,
+        IndexTwoLevelLookupEnableDoc, KafkaConfig.LogIndexTwoLevelLookupEnableProp)
       .define(FlushMessagesProp, LONG, Defaults.FlushInterval, atLeast(0), MEDIUM, FlushIntervalDoc,
         KafkaConfig.LogFlushIntervalMessagesProp)
       .define(FlushMsProp, LONG, Defaults.FlushMs, atLeast(0), MEDIUM, FlushMsDoc,
@@ -277,6 +298,8 @@ object LogConfig {
         KafkaConfig.MinInSyncReplicasProp)
       .define(CompressionTypeProp, STRING, Defaults.CompressionType, in(BrokerCompressionCodec.brokerCompressionOptions:_*),
         MEDIUM, CompressionTypeDoc, KafkaConfig.CompressionTypeProp)
+      .define(CompressionLevelProp, INT, Defaults.CompressionLevel, MEDIUM, CompressionLevelDoc,
+        KafkaConfig.CompressionLevelProp)
       .define(PreAllocateEnableProp, BOOLEAN, Defaults.PreAllocateEnable, MEDIUM, PreAllocateEnableDoc,
         KafkaConfig.LogPreAllocateProp)
       .define(MessageFormatVersionProp, STRING, Defaults.MessageFormatVersion, ApiVersionValidator, MEDIUM, MessageFormatVersionDoc,
@@ -291,6 +314,10 @@ object LogConfig {
         FollowerReplicationThrottledReplicasDoc, FollowerReplicationThrottledReplicasProp)
       .define(MessageDownConversionEnableProp, BOOLEAN, Defaults.MessageDownConversionEnable, LOW,
         MessageDownConversionEnableDoc, KafkaConfig.LogMessageDownConversionEnableProp)
+
+    // dictionaries are specific to the data of a topic, so there is no broker default
+    logConfigDef.define(ZstdDictionaryIdProp, INT, Defaults.ZstdDictionaryId, atLeast(0), LOW, ZstdDictionaryIdDoc)
+    logConfigDef
   }
 
   def apply(): LogConfig = LogConfig(new Properties())
@@ -329,6 +356,12 @@ object LogConfig {
       throw new InvalidConfigurationException(s"conflict topic config setting $MinCompactionLagMsProp " +
         s"($minCompactionLag) > $MaxCompactionLagMsProp ($maxCompactionLag)")
     }
+    val compressionType = props.get(CompressionTypeProp).asInstanceOf[String]
+    val compressionLevel = props.get(CompressionLevelProp).asInstanceOf[Integer]
+    if (compressionLevel != null && !BrokerCompressionCodec.isValidLevel(compressionType, compressionLevel)) {
+      throw new InvalidConfigurationException(s"$CompressionLevelProp $compressionLevel is not valid for " +
+        s"$CompressionTypeProp $compressionType")
+    }
   }
 
   /**
@@ -349,6 +382,7 @@ object LogConfig {
     SegmentMsProp -> KafkaConfig.LogRollTimeMillisProp,
     SegmentJitterMsProp -> KafkaConfig.LogRollTimeJitterMillisProp,
     SegmentIndexBytesProp -> KafkaConfig.LogIndexSizeMaxBytesProp,
+    SegmentIndexTwoLevelLookupEnableProp -> KafkaConfig.LogIndexTwoLevelLookupEnableProp,
     FlushMessagesProp -> KafkaConfig.LogFlushIntervalMessagesProp,
     FlushMsProp -> KafkaConfig.LogFlushIntervalMsProp,
     RetentionBytesProp -> KafkaConfig.LogRetentionBytesProp,
@@ -364,6 +398,7 @@ object LogConfig {
     UncleanLeaderElectionEnableProp -> KafkaConfig.UncleanLeaderElectionEnableProp,
     MinInSyncReplicasProp -> KafkaConfig.MinInSyncReplicasProp,
     CompressionTypeProp -> KafkaConfig.CompressionTypeProp,
+    CompressionLevelProp -> KafkaConfig.CompressionLevelProp,
     PreAllocateEnableProp -> KafkaConfig.LogPreAllocateProp,
     MessageFormatVersionProp -> KafkaConfig.LogMessageFormatVersionProp,
     MessageTimestampTypeProp -> KafkaConfig.LogMessageTimestampTypeProp,
@@ -52,6 +52,8 @@ class LogManager(logDirs: Seq[File],
                  val initialDefaultConfig: LogConfig,
                  val cleanerConfig: CleanerConfig,
                  recoveryThreadsPerDataDir: Int,
+                 segmentRecoveryThreadsPerDataDir: Int,
+                 maxLazyOpenSegments: Int,
                  val flushCheckMs: Long,
                  val flushRecoveryOffsetCheckpointMs: Long,
                  val flushStartOffsetCheckpointMs: Long,
@@ -61,6 +63,7 @@ class LogManager(logDirs: Seq[File],
                  val brokerState: BrokerState,
                  brokerTopicStats: BrokerTopicStats,
                  logDirFailureChannel: LogDirFailureChannel,
+                 requestHandlerIdleRatio: () => Double,
                  time: Time) extends Logging with KafkaMetricsGroup {
 
   import LogManager._
@@ -109,6 +112,13 @@ class LogManager(logDirs: Seq[File],
 
   private val preferredLogDirs = new ConcurrentHashMap[TopicPartition, String]()
 
+  // the segments of the logs are opened lazily when the number of open segments is bounded
+  private val openSegments =
+    if (maxLazyOpenSegments > 0)
+      Some(new OpenLogSegments(maxLazyOpenSegments, scheduler, initialDefaultConfig.fileDeleteDelayMs))
+    else
+      None
+
   private def offlineLogDirs: Iterable[File] = {
     val logDirsSet = mutable.Set[File]() ++= logDirs
     _liveLogDirs.asScala.foreach(logDirsSet -=)
@@ -119,7 +129,8 @@ class LogManager(logDirs: Seq[File],
 
   private[kafka] val cleaner: LogCleaner =
     if (cleanerConfig.enableCleaner)
-      new LogCleaner(cleanerConfig, liveLogDirs, currentLogs, logDirFailureChannel, time = time)
+      new LogCleaner(cleanerConfig, liveLogDirs, currentLogs, logDirFailureChannel,
+        brokerLoad = BrokerLoad.sampler(brokerTopicStats, requestHandlerIdleRatio), time = time)
     else
       null
 
@@ -252,7 +263,10 @@ class LogManager(logDirs: Seq[File],
   // Only for testing
   private[log] def hasLogsToBeDeleted: Boolean = !logsToBeDeleted.isEmpty
 
-  private def loadLog(logDir: File, recoveryPoints: Map[TopicPartition, Long], logStartOffsets: Map[TopicPartition, Long]): Unit = {
+  private def loadLog(logDir: File,
+                      recoveryPoints: Map[TopicPartition, Long],
+                      logStartOffsets: Map[TopicPartition, Long],
+                      recoveryContext: LogRecoveryContext): Unit = {
     debug(s"Loading log '${logDir.getName}'")
     val topicPartition = Log.parseTopicPartitionName(logDir)
     val config = topicConfigs.getOrElse(topicPartition.topic, currentDefaultConfig)
@@ -269,7 +283,9 @@ class LogManager(logDirs: Seq[File],
       scheduler = scheduler,
       time = time,
       brokerTopicStats = brokerTopicStats,
-      logDirFailureChannel = logDirFailureChannel)
+      logDirFailureChannel = logDirFailureChannel,
+      recoveryContext = recoveryContext,
+      openSegments = openSegments)
 
     if (logDir.getName.endsWith(Log.DeleteDirSuffix)) {
       addLogToBeDeleted(log)
@@ -301,11 +317,23 @@ class LogManager(logDirs: Seq[File],
     val threadPools = ArrayBuffer.empty[ExecutorService]
     val offlineDirs = mutable.Set.empty[(String, IOException)]
     val jobs = mutable.Map.empty[File, Seq[Future[_]]]
+    val recoveryMetricTags = ArrayBuffer.empty[Map[String, String]]
 
     for (dir <- liveLogDirs) {
       try {
         val pool = Executors.newFixedThreadPool(numRecoveryThreadsPerDataDir)
         threadPools.append(pool)
+        val segmentPool =
+          if (segmentRecoveryThreadsPerDataDir > 1) {
+            val segmentPool = Executors.newFixedThreadPool(segmentRecoveryThreadsPerDataDir)
+            threadPools.append(segmentPool)
+            Some(segmentPool)
+          } else None
+        val tags = Map("logDirectory" -> dir.getAbsolutePath)
+        recoveryMetricTags.append(tags)
+        val bytesScannedRate = newMeter("RecoveryBytesScannedPerSec", "bytes", TimeUnit.SECONDS, tags)
+        val recoveryContext = new LogRecoveryContext(segmentPool, bytes => bytesScannedRate.mark(bytes))
+        newGauge("RemainingSegmentsToRecover", () => recoveryContext.segmentsRemaining, tags)
 
         val cleanShutdownFile = new File(dir, Log.CleanShutdownFile)
 
@@ -339,7 +367,7 @@ class LogManager(logDirs: Seq[File],
         } yield {
           val runnable: Runnable = () => {
             try {
-              loadLog(logDir, recoveryPoints, logStartOffsets)
+              loadLog(logDir, recoveryPoints, logStartOffsets, recoveryContext)
             } catch {
               case e: IOException =>
                 offlineDirs.add((dir.getAbsolutePath, e))
@@ -377,6 +405,10 @@ class LogManager(logDirs: Seq[File],
         throw e.getCause
     } finally {
       threadPools.foreach(_.shutdown())
+      recoveryMetricTags.foreach { tags =>
+        removeMetric("RecoveryBytesScannedPerSec", tags)
+        removeMetric("RemainingSegmentsToRecover", tags)
+      }
     }
 
     info(s"Logs loading complete in ${time.milliseconds - startMs} ms.")
@@ -415,8 +447,15 @@ class LogManager(logDirs: Seq[File],
                          delay = InitialTaskDelayMs,
                          unit = TimeUnit.MILLISECONDS)
     }
-    if (cleanerConfig.enableCleaner)
+    if (cleanerConfig.enableCleaner) {
       cleaner.startup()
+      if (scheduler != null)
+        scheduler.schedule("kafka-log-cleaner-io-budget",
+                           cleaner.updateIoBudget _,
+                           delay = CleanerIoBudget.UpdateIntervalMs,
+                           period = CleanerIoBudget.UpdateIntervalMs,
+                           TimeUnit.MILLISECONDS)
+    }
   }
 
   /**
@@ -429,6 +468,7 @@ class LogManager(logDirs: Seq[File],
     for (dir <- logDirs) {
       removeMetric("LogDirectoryOffline", Map("logDirectory" -> dir.getAbsolutePath))
     }
+    openSegments.foreach(_.removeMetrics())
 
     val threadPools = ArrayBuffer.empty[ExecutorService]
     val jobs = mutable.Map.empty[File, Seq[Future[_]]]
@@ -757,7 +797,8 @@ class LogManager(logDirs: Seq[File],
           scheduler = scheduler,
           time = time,
           brokerTopicStats = brokerTopicStats,
-          logDirFailureChannel = logDirFailureChannel)
+          logDirFailureChannel = logDirFailureChannel,
+          openSegments = openSegments)
 
         if (isFuture)
           futureLogs.put(topicPartition, log)
@@ -1051,7 +1092,8 @@ object LogManager {
             kafkaScheduler: KafkaScheduler,
             time: Time,
             brokerTopicStats: BrokerTopicStats,
-            logDirFailureChannel: LogDirFailureChannel): LogManager = {
+            logDirFailureChannel: LogDirFailureChannel,
+            requestHandlerIdleRatio: () => Double): LogManager = {
     val defaultProps = KafkaServer.copyKafkaConfigToLog(config)
 
     LogConfig.validateValues(defaultProps)
@@ -1072,6 +1114,8 @@ object LogManager {
       initialDefaultConfig = defaultLogConfig,
       cleanerConfig = cleanerConfig,
       recoveryThreadsPerDataDir = config.numRecoveryThreadsPerDataDir,
+      segmentRecoveryThreadsPerDataDir = config.numSegmentRecoveryThreadsPerDataDir,
+      maxLazyOpenSegments = config.logSegmentLazyOpenMaxSegments,
       flushCheckMs = config.logFlushSchedulerIntervalMs,
       flushRecoveryOffsetCheckpointMs = config.logFlushOffsetCheckpointIntervalMs,
       flushStartOffsetCheckpointMs = config.logFlushStartOffsetCheckpointIntervalMs,
@@ -1081,6 +1125,7 @@ object LogManager {
       brokerState = brokerState,
       brokerTopicStats = brokerTopicStats,
       logDirFailureChannel = logDirFailureChannel,
+      requestHandlerIdleRatio = requestHandlerIdleRatio,
       time = time)
   }
 }
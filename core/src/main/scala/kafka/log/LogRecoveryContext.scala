@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The threads recovering the segments of the logs of a data directory at startup, and the progress of the recovery.
+ *
+ * @param segmentExecutor The threads validating the batches and rebuilding the indexes of the unflushed segments of a
+ *                        log concurrently, if any. Without them, every log recovers its segments one after the other.
+ * @param bytesScanned Called with the size of every segment once it is recovered
+ */
+class LogRecoveryContext(val segmentExecutor: Option[ExecutorService] = None,
+                         bytesScanned: Long => Unit = _ => ()) {
+  private val remainingSegments = new AtomicInteger
+
+  /**
+   * The number of segments which are known to need recovery and are not recovered yet.
+   */
+  def segmentsRemaining: Int = remainingSegments.get
+
+  private[log] def segmentsToRecover(count: Int): Unit = remainingSegments.addAndGet(count)
+
+  private[log] def segmentRecovered(bytes: Long): Unit = {
+    remainingSegments.decrementAndGet()
+    bytesScanned(bytes)
+  }
+
+  /**
+   * Called for the segments which were counted by `segmentsToRecover` but are deleted or left unrecovered.
+   */
+  private[log] def segmentsSkipped(count: Int): Unit = remainingSegments.addAndGet(-count)
+}
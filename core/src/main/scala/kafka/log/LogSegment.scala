@@ -43,7 +43,7 @@ import scala.math._
  *
  * A segment with a base offset of [base_offset] would be stored in two files, a [base_offset].index and a [base_offset].log file.
  *
- * @param log The file records containing log entries
+ * @param lazyLog The file records containing log entries
  * @param lazyOffsetIndex The offset index
  * @param lazyTimeIndex The timestamp index
  * @param txnIndex The transaction index
@@ -53,7 +53,7 @@ import scala.math._
  * @param time The time instance
  */
 @nonthreadsafe
-class LogSegment private[log] (val log: FileRecords,
+class LogSegment private[log] (val lazyLog: LazyFileRecords,
                                val lazyOffsetIndex: LazyIndex[OffsetIndex],
                                val lazyTimeIndex: LazyIndex[TimeIndex],
                                val txnIndex: TransactionIndex,
@@ -62,6 +62,19 @@ class LogSegment private[log] (val log: FileRecords,
                                val rollJitterMs: Long,
                                val time: Time) extends Logging {
 
+  private[log] def this(log: FileRecords,
+                        lazyOffsetIndex: LazyIndex[OffsetIndex],
+                        lazyTimeIndex: LazyIndex[TimeIndex],
+                        txnIndex: TransactionIndex,
+                        baseOffset: Long,
+                        indexIntervalBytes: Int,
+                        rollJitterMs: Long,
+                        time: Time) =
+    this(LazyFileRecords.opened(log), lazyOffsetIndex, lazyTimeIndex, txnIndex, baseOffset, indexIntervalBytes,
+      rollJitterMs, time)
+
+  def log: FileRecords = lazyLog.get
+
   def offsetIndex: OffsetIndex = lazyOffsetIndex.get
 
   def timeIndex: TimeIndex = lazyTimeIndex.get
@@ -118,7 +131,7 @@ class LogSegment private[log] (val log: FileRecords,
   }
 
   /* Return the size in bytes of this log segment */
-  def size: Int = log.sizeInBytes()
+  def size: Int = lazyLog.sizeInBytes
 
   /**
    * checks that the argument offset can be represented as an integer offset relative to the baseOffset.
@@ -146,6 +159,7 @@ class LogSegment private[log] (val log: FileRecords,
              shallowOffsetOfMaxTimestamp: Long,
              records: MemoryRecords): Unit = {
     if (records.sizeInBytes > 0) {
+      lazyLog.pin()
       trace(s"Inserting ${records.sizeInBytes} bytes at end offset $largestOffset at position ${log.sizeInBytes} " +
             s"with largest timestamp $largestTimestamp at shallow offset $shallowOffsetOfMaxTimestamp")
       val physicalPosition = log.sizeInBytes()
@@ -333,10 +347,52 @@ class LogSegment private[log] (val log: FileRecords,
    * @throws LogSegmentOffsetOverflowException if the log segment contains an offset that causes the index offset to overflow
    */
   @nonthreadsafe
-  def recover(producerStateManager: ProducerStateManager, leaderEpochCache: Option[LeaderEpochFileCache] = None): Int = {
+  def recover(producerStateManager: ProducerStateManager, leaderEpochCache: Option[LeaderEpochFileCache] = None): Int =
+    recoverBatches(Some(producerStateManager), leaderEpochCache)
+
+  /**
+   * Run the first part of recovery on the given segment: validate the batches, rebuild the offset and time indexes
+   * and lop off any invalid bytes from the end of the log and indexes. Unlike `recover`, this does not depend on
+   * the state of the previous segments, so that the segments of a log can be recovered concurrently.
+   * `recoverProducerState` must be called next on the segments in order.
+   *
+   * @return The number of bytes truncated from the log
+   * @throws LogSegmentOffsetOverflowException if the log segment contains an offset that causes the index offset to overflow
+   */
+  @nonthreadsafe
+  def recoverIndexes(): Int = recoverBatches(None, None)
+
+  /**
+   * Run the second part of recovery on the given segment after `recoverIndexes`: rebuild the transaction index and
+   * update the producer state and the leader epochs from the (valid) batches of the segment.
+   *
+   * @param producerStateManager Producer state corresponding to the segment's base offset
+   * @param leaderEpochCache Optionally a cache for updating the leader epoch during recovery
+   */
+  @nonthreadsafe
+  def recoverProducerState(producerStateManager: ProducerStateManager,
+                           leaderEpochCache: Option[LeaderEpochFileCache] = None): Unit = {
+    txnIndex.reset()
+    for (batch <- log.batches.asScala if batch.magic >= RecordBatch.MAGIC_VALUE_V2)
+      updateEpochAndProducerState(producerStateManager, leaderEpochCache, batch)
+  }
+
+  private def updateEpochAndProducerState(producerStateManager: ProducerStateManager,
+                                          leaderEpochCache: Option[LeaderEpochFileCache],
+                                          batch: RecordBatch): Unit = {
+    leaderEpochCache.foreach { cache =>
+      if (batch.partitionLeaderEpoch > 0 && cache.latestEpoch.forall(batch.partitionLeaderEpoch > _))
+        cache.assign(batch.partitionLeaderEpoch, batch.baseOffset)
+    }
+    updateProducerState(producerStateManager, batch)
+  }
+
+  private def recoverBatches(producerStateManager: Option[ProducerStateManager],
+                             leaderEpochCache: Option[LeaderEpochFileCache]): Int = {
     offsetIndex.reset()
     timeIndex.reset()
-    txnIndex.reset()
+    if (producerStateManager.isDefined)
+      txnIndex.reset()
     var validBytes = 0
     var lastIndexEntry = 0
     maxTimestampSoFar = RecordBatch.NO_TIMESTAMP
@@ -359,13 +415,8 @@ class LogSegment private[log] (val log: FileRecords,
         }
         validBytes += batch.sizeInBytes()
 
-        if (batch.magic >= RecordBatch.MAGIC_VALUE_V2) {
-          leaderEpochCache.foreach { cache =>
-            if (batch.partitionLeaderEpoch > 0 && cache.latestEpoch.forall(batch.partitionLeaderEpoch > _))
-              cache.assign(batch.partitionLeaderEpoch, batch.baseOffset)
-          }
-          updateProducerState(producerStateManager, batch)
-        }
+        if (batch.magic >= RecordBatch.MAGIC_VALUE_V2)
+          producerStateManager.foreach(updateEpochAndProducerState(_, leaderEpochCache, batch))
       }
     } catch {
       case e@ (_: CorruptRecordException | _: InvalidRecordException) =>
@@ -425,6 +476,18 @@ class LogSegment private[log] (val log: FileRecords,
    */
   @nonthreadsafe
   def truncateTo(offset: Long): Int = {
+    // the file is only kept open while it is truncated, unless the segment is written to, such as the active segment
+    val wasPinned = lazyLog.isPinned
+    lazyLog.pin()
+    try {
+      truncateLogAndIndexesTo(offset)
+    } finally {
+      if (!wasPinned)
+        lazyLog.unpin()
+    }
+  }
+
+  private def truncateLogAndIndexesTo(offset: Long): Int = {
     // Do offset translation before truncating the index to avoid needless scanning
     // in case we truncate the full index
     val mapping = translateOffset(offset)
@@ -481,7 +544,7 @@ class LogSegment private[log] (val log: FileRecords,
    * directory is renamed.
    */
   def updateDir(dir: File): Unit = {
-    log.setFile(new File(dir, log.file.getName))
+    lazyLog.file = new File(dir, lazyLog.file.getName)
     lazyOffsetIndex.file = new File(dir, lazyOffsetIndex.file.getName)
     lazyTimeIndex.file = new File(dir, lazyTimeIndex.file.getName)
     txnIndex.file = new File(dir, txnIndex.file.getName)
@@ -492,7 +555,7 @@ class LogSegment private[log] (val log: FileRecords,
    * IOException from this method should be handled by the caller
    */
   def changeFileSuffixes(oldSuffix: String, newSuffix: String): Unit = {
-    log.renameTo(new File(CoreUtils.replaceSuffix(log.file.getPath, oldSuffix, newSuffix)))
+    lazyLog.renameTo(new File(CoreUtils.replaceSuffix(lazyLog.file.getPath, oldSuffix, newSuffix)))
     offsetIndex.renameTo(new File(CoreUtils.replaceSuffix(lazyOffsetIndex.file.getPath, oldSuffix, newSuffix)))
     timeIndex.renameTo(new File(CoreUtils.replaceSuffix(lazyTimeIndex.file.getPath, oldSuffix, newSuffix)))
     txnIndex.renameTo(new File(CoreUtils.replaceSuffix(txnIndex.file.getPath, oldSuffix, newSuffix)))
@@ -508,6 +571,7 @@ class LogSegment private[log] (val log: FileRecords,
     offsetIndex.trimToValidSize()
     timeIndex.trimToValidSize()
     log.trim()
+    lazyLog.unpin()
   }
 
   /**
@@ -588,7 +652,7 @@ class LogSegment private[log] (val log: FileRecords,
     CoreUtils.swallow(timeIndex.maybeAppend(maxTimestampSoFar, offsetOfMaxTimestampSoFar, skipFullCheck = true), this)
     CoreUtils.swallow(offsetIndex.close(), this)
     CoreUtils.swallow(timeIndex.close(), this)
-    CoreUtils.swallow(log.close(), this)
+    CoreUtils.swallow(lazyLog.close(), this)
     CoreUtils.swallow(txnIndex.close(), this)
   }
 
@@ -598,7 +662,7 @@ class LogSegment private[log] (val log: FileRecords,
   def closeHandlers(): Unit = {
     CoreUtils.swallow(offsetIndex.closeHandler(), this)
     CoreUtils.swallow(timeIndex.closeHandler(), this)
-    CoreUtils.swallow(log.closeHandlers(), this)
+    CoreUtils.swallow(lazyLog.closeHandlers(), this)
     CoreUtils.swallow(txnIndex.close(), this)
   }
 
@@ -619,7 +683,7 @@ class LogSegment private[log] (val log: FileRecords,
     }
 
     CoreUtils.tryAll(Seq(
-      () => delete(log.deleteIfExists _, "log", log.file, logIfMissing = true),
+      () => delete(lazyLog.deleteIfExists _, "log", lazyLog.file, logIfMissing = true),
       () => delete(offsetIndex.deleteIfExists _, "offset index", lazyOffsetIndex.file, logIfMissing = true),
       () => delete(timeIndex.deleteIfExists _, "time index", lazyTimeIndex.file, logIfMissing = true),
       () => delete(txnIndex.deleteIfExists _, "transaction index", txnIndex.file, logIfMissing = false)
@@ -629,7 +693,7 @@ class LogSegment private[log] (val log: FileRecords,
   /**
    * The last modified time of this log segment as a unix time stamp
    */
-  def lastModified = log.file.lastModified
+  def lastModified = lazyLog.file.lastModified
 
   /**
    * The largest timestamp this segment contains.
@@ -641,7 +705,7 @@ class LogSegment private[log] (val log: FileRecords,
    */
   def lastModified_=(ms: Long) = {
     val fileTime = FileTime.fromMillis(ms)
-    Files.setLastModifiedTime(log.file.toPath, fileTime)
+    Files.setLastModifiedTime(lazyLog.file.toPath, fileTime)
     Files.setLastModifiedTime(lazyOffsetIndex.file.toPath, fileTime)
     Files.setLastModifiedTime(lazyTimeIndex.file.toPath, fileTime)
   }
@@ -650,13 +714,26 @@ class LogSegment private[log] (val log: FileRecords,
 
 object LogSegment {
 
+  /**
+   * Open a log segment. With open segments, the file of an existing segment is only opened when it is accessed, and
+   * the file of a new segment is pinned until the segment becomes inactive.
+   */
   def open(dir: File, baseOffset: Long, config: LogConfig, time: Time, fileAlreadyExists: Boolean = false,
-           initFileSize: Int = 0, preallocate: Boolean = false, fileSuffix: String = ""): LogSegment = {
+           initFileSize: Int = 0, preallocate: Boolean = false, fileSuffix: String = "",
+           openSegments: Option[OpenLogSegments] = None): LogSegment = {
     val maxIndexSize = config.maxIndexSize
+    val twoLevelLookup = config.indexTwoLevelLookupEnable
+    val file = Log.logFile(dir, baseOffset, fileSuffix)
+    val lazyLog = openSegments match {
+      case Some(segments) if fileAlreadyExists => LazyFileRecords.forFile(file, segments)
+      case _ => LazyFileRecords.opened(FileRecords.open(file, fileAlreadyExists, initFileSize, preallocate), openSegments)
+    }
     new LogSegment(
-      FileRecords.open(Log.logFile(dir, baseOffset, fileSuffix), fileAlreadyExists, initFileSize, preallocate),
-      LazyIndex.forOffset(Log.offsetIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize),
-      LazyIndex.forTime(Log.timeIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize),
+      lazyLog,
+      LazyIndex.forOffset(Log.offsetIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize,
+        twoLevelLookup = twoLevelLookup),
+      LazyIndex.forTime(Log.timeIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize,
+        twoLevelLookup = twoLevelLookup),
       new TransactionIndex(baseOffset, Log.transactionIndexFile(dir, baseOffset, fileSuffix)),
       baseOffset,
       indexIntervalBytes = config.indexInterval,
@@ -673,5 +750,6 @@ object LogSegment {
 }
 
 object LogFlushStats extends KafkaMetricsGroup {
-  val logFlushTimer = new KafkaTimer(newTimer("LogFlushRateAndTimeMs", TimeUnit.MILLISECONDS, TimeUnit.SECONDS))
+  val logFlushTime = newTimer("LogFlushRateAndTimeMs", TimeUnit.MILLISECONDS, TimeUnit.SECONDS)
+  val logFlushTimer = new KafkaTimer(logFlushTime)
 }
@@ -24,7 +24,7 @@ import kafka.message.{CompressionCodec, NoCompressionCodec, ZStdCompressionCodec
 import kafka.server.BrokerTopicStats
 import kafka.utils.Logging
 import org.apache.kafka.common.errors.{CorruptRecordException, InvalidTimestampException, UnsupportedCompressionTypeException, UnsupportedForMessageFormatException}
-import org.apache.kafka.common.record.{AbstractRecords, BufferSupplier, CompressionType, MemoryRecords, Record, RecordBatch, RecordConversionStats, TimestampType}
+import org.apache.kafka.common.record.{AbstractRecords, BufferSupplier, CompressionType, MemoryRecords, Record, RecordBatch, RecordConversionStats, TimestampType, ZstdDictionary}
 import org.apache.kafka.common.InvalidRecordException
 import org.apache.kafka.common.TopicPartition
 import org.apache.kafka.common.protocol.Errors
@@ -76,6 +76,9 @@ private[log] object LogValidator extends Logging {
    *
    * Returns a ValidationAndOffsetAssignResult containing the validated message set, maximum timestamp, the offset
    * of the shallow message with the max timestamp and a boolean indicating whether the message sizes may have changed.
+   *
+   * When the records are recompressed, they are compressed at `compressionLevel` if it is defined and valid for the
+   * target codec, and with `zstdDictionary` if it is defined and the target codec is zstd.
    */
   private[log] def validateMessagesAndAssignOffsets(records: MemoryRecords,
                                                     topicPartition: TopicPartition,
@@ -91,7 +94,9 @@ private[log] object LogValidator extends Logging {
                                                     partitionLeaderEpoch: Int,
                                                     origin: AppendOrigin,
                                                     interBrokerProtocolVersion: ApiVersion,
-                                                    brokerTopicStats: BrokerTopicStats): ValidationAndOffsetAssignResult = {
+                                                    brokerTopicStats: BrokerTopicStats,
+                                                    compressionLevel: Option[Int] = None,
+                                                    zstdDictionary: Option[ZstdDictionary] = None): ValidationAndOffsetAssignResult = {
     if (sourceCodec == NoCompressionCodec && targetCodec == NoCompressionCodec) {
       // check the magic value
       if (!records.hasMatchingMagic(magic))
@@ -103,7 +108,8 @@ private[log] object LogValidator extends Logging {
           partitionLeaderEpoch, origin, magic, brokerTopicStats)
     } else {
       validateMessagesAndAssignOffsetsCompressed(records, topicPartition, offsetCounter, time, now, sourceCodec, targetCodec, compactedTopic,
-        magic, timestampType, timestampDiffMaxMs, partitionLeaderEpoch, origin, interBrokerProtocolVersion, brokerTopicStats)
+        magic, timestampType, timestampDiffMaxMs, partitionLeaderEpoch, origin, interBrokerProtocolVersion, brokerTopicStats,
+        compressionLevel, zstdDictionary)
     }
   }
 
@@ -353,7 +359,9 @@ private[log] object LogValidator extends Logging {
                                                  partitionLeaderEpoch: Int,
                                                  origin: AppendOrigin,
                                                  interBrokerProtocolVersion: ApiVersion,
-                                                 brokerTopicStats: BrokerTopicStats): ValidationAndOffsetAssignResult = {
+                                                 brokerTopicStats: BrokerTopicStats,
+                                                 compressionLevel: Option[Int] = None,
+                                                 zstdDictionary: Option[ZstdDictionary] = None): ValidationAndOffsetAssignResult = {
 
     if (targetCodec == ZStdCompressionCodec && interBrokerProtocolVersion < KAFKA_2_1_IV0)
       throw new UnsupportedCompressionTypeException("Produce requests to inter.broker.protocol.version < 2.1 broker " +
@@ -414,7 +422,7 @@ private[log] object LogValidator extends Logging {
 
       try {
         val recordErrors = new ArrayBuffer[ApiRecordError](0)
-        for ((record, batchIndex) <- batch.asScala.view.zipWithIndex) {
+        for ((record, batchIndex) <- recordsIterator.asScala.zipWithIndex) {
           val expectedOffset = expectedInnerOffset.getAndIncrement()
           val recordError = validateRecordCompression(batchIndex, record).orElse {
             validateRecord(batch, topicPartition, record, batchIndex, now,
@@ -448,12 +456,21 @@ private[log] object LogValidator extends Logging {
         val first = records.batches.asScala.head
         (first.producerId, first.producerEpoch, first.baseSequence, first.isTransactional)
       }
-      buildRecordsAndAssignOffsets(toMagic, offsetCounter, time, timestampType, CompressionType.forId(targetCodec.codec),
-        now, validatedRecords, producerId, producerEpoch, sequence, isTransactional, partitionLeaderEpoch,
-        uncompressedSizeInBytes)
+      // compressing uncompressed records or converting the format of records compressed with the target codec is not
+      // a recompression
+      if (sourceCodec != NoCompressionCodec && sourceCodec != targetCodec) {
+        brokerTopicStats.topicStats(topicPartition.topic).produceRecompressionsRate.mark(validatedRecords.size)
+        brokerTopicStats.allTopicsStats.produceRecompressionsRate.mark(validatedRecords.size)
+      }
+      // the level may not apply to the codec of the producer if the topic retains it
+      val compressionType = CompressionType.forId(targetCodec.codec)
+      buildRecordsAndAssignOffsets(toMagic, offsetCounter, time, timestampType, compressionType,
+        compressionLevel.filter(compressionType.isValidLevel), zstdDictionary, now, validatedRecords, producerId,
+        producerEpoch, sequence, isTransactional, partitionLeaderEpoch, uncompressedSizeInBytes)
     } else {
-      // we can update the batch only and write the compressed payload as is;
-      // again we assume only one record batch within the compressed set
+      // we can update the batch only and write the compressed payload as is, this includes overwriting the
+      // timestamps with LogAppendTime since only the batch header stores it from v2 on (and the wrapper record
+      // for v1); again we assume only one record batch within the compressed set
       val batch = records.batches.iterator.next()
       val lastOffset = offsetCounter.addAndGet(validatedRecords.size) - 1
 
@@ -482,6 +499,8 @@ private[log] object LogValidator extends Logging {
                                            time: Time,
                                            timestampType: TimestampType,
                                            compressionType: CompressionType,
+                                           compressionLevel: Option[Int],
+                                           zstdDictionary: Option[ZstdDictionary],
                                            logAppendTime: Long,
                                            validatedRecords: Seq[Record],
                                            producerId: Long,
@@ -494,8 +513,9 @@ private[log] object LogValidator extends Logging {
     val estimatedSize = AbstractRecords.estimateSizeInBytes(magic, offsetCounter.value, compressionType,
       validatedRecords.asJava)
     val buffer = ByteBuffer.allocate(estimatedSize)
-    val builder = MemoryRecords.builder(buffer, magic, compressionType, timestampType, offsetCounter.value,
-      logAppendTime, producerId, producerEpoch, baseSequence, isTransactional, partitionLeaderEpoch)
+    val builder = MemoryRecords.builder(buffer, magic, compressionType, compressionLevel.map(Int.box).orNull,
+      zstdDictionary.orNull, timestampType, offsetCounter.value, logAppendTime, producerId, producerEpoch, baseSequence,
+      isTransactional, false, partitionLeaderEpoch)
 
     validatedRecords.foreach { record =>
       builder.appendWithOffset(offsetCounter.getAndIncrement(), record)
@@ -50,8 +50,9 @@ import org.apache.kafka.common.errors.InvalidOffsetException
  * storage format.
  */
 // Avoid shadowing mutable `file` in AbstractIndex
-class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true)
-    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable) {
+class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+                  twoLevelLookup: Boolean = false)
+    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable, twoLevelLookup) {
   import OffsetIndex._
 
   override def entrySize = 8
@@ -147,6 +148,7 @@ class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writabl
         mmap.putInt(position)
         _entries += 1
         _lastOffset = offset
+        appendToSparseLevel()
         require(_entries * entrySize == mmap.position(), entries + " entries but file position in index is " + mmap.position() + ".")
       } else {
         throw new InvalidOffsetException(s"Attempt to append an offset ($offset) to position $entries no larger than" +
@@ -185,6 +187,7 @@ class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writabl
     inLock(lock) {
       _entries = entries
       mmap.position(_entries * entrySize)
+      truncateSparseLevel(entries)
       _lastOffset = lastEntry.offset
       debug(s"Truncated index ${file.getAbsolutePath} to $entries entries;" +
         s" position is now ${mmap.position()} and last offset is now ${_lastOffset}")
@@ -21,7 +21,7 @@ import java.util.Arrays
 import java.security.MessageDigest
 import java.nio.ByteBuffer
 import kafka.utils._
-import org.apache.kafka.common.utils.Utils
+import org.apache.kafka.common.utils.{ByteBufferUnmapper, Utils}
 
 trait OffsetMap {
   def slots: Int
@@ -32,6 +32,29 @@ trait OffsetMap {
   def size: Int
   def utilization: Double = size.toDouble / slots
   def latestOffset: Long
+  /**
+   * Whether the given offset can be put into the map, which may otherwise be considered full.
+   */
+  def canPut(offset: Long): Boolean = true
+  /**
+   * Release the memory of the map, which must not be used afterwards.
+   */
+  def close(): Unit = {}
+}
+
+object OffsetMap {
+  /** The type of [[SkimpyOffsetMap]] */
+  val SkimpyOffsetMapType = "skimpy"
+  /** The type of [[CompactOffsetMap]] */
+  val CompactOffsetMapType = "compact"
+
+  val OffsetMapTypes = Seq(SkimpyOffsetMapType, CompactOffsetMapType)
+
+  def apply(mapType: String, memory: Int, hashAlgorithm: String, offHeap: Boolean): OffsetMap = mapType match {
+    case SkimpyOffsetMapType => new SkimpyOffsetMap(memory, hashAlgorithm)
+    case CompactOffsetMapType => new CompactOffsetMap(memory, offHeap)
+    case _ => throw new IllegalArgumentException(s"Unknown offset map type $mapType, valid types are ${OffsetMapTypes.mkString(",")}")
+  }
 }
 
 /**
@@ -199,3 +222,249 @@ class SkimpyOffsetMap(val memory: Int, val hashAlgorithm: String = "MD5") extend
   }
   
 }
+
+/**
+ * A denser and faster alternative to [[SkimpyOffsetMap]]. The keys are hashed with the 128-bit MurmurHash3, which is
+ * not a cryptographic hash but is much cheaper to compute than MD5, and 96 bits of the hash are kept as a proxy for the
+ * key. The offsets are stored relative to the first offset put into the map, so that every entry uses 16 bytes rather
+ * than 24 and more keys are deduplicated in every cleaning pass. Collisions are resolved by linear probing from the
+ * remaining 32 bits of the hash. This hash table does not support deletes.
+ *
+ * An offset more than `Int.MaxValue - 1` after the first offset put into the map can not be put into it, see `canPut`.
+ *
+ * The keys may also be hashed by other threads with `CompactOffsetMap.hash`, and put into the map with `putHash`. The
+ * map may be read by several threads concurrently with `get`, as long as no entries are put into it meanwhile.
+ *
+ * @param memory The amount of memory this map can use
+ * @param offHeap Whether the entries are stored off-heap, in a direct buffer, rather than in the heap
+ */
+@nonthreadsafe
+class CompactOffsetMap(val memory: Int, val offHeap: Boolean = false) extends OffsetMap {
+  import CompactOffsetMap._
+
+  private val bytes = if (offHeap) ByteBuffer.allocateDirect(memory) else ByteBuffer.allocate(memory)
+
+  /* number of entries put into the map */
+  private var entries = 0
+
+  /* the offset the offsets of the entries are relative to, or -1 if no offset was put into the map */
+  private var baseOffset = -1L
+
+  /* the latest offset written into the map */
+  private var lastOffset = -1L
+
+  /**
+   * The maximum number of entries this map can contain
+   */
+  val slots: Int = memory / BytesPerEntry
+
+  /**
+   * Associate this offset to the given key.
+   * @param key The key
+   * @param offset The offset, for which `canPut` must be true
+   */
+  override def put(key: ByteBuffer, offset: Long): Unit = {
+    val keyHash = keyHashes.get
+    hash(key, keyHash)
+    putHash(keyHash(0), keyHash(1), offset)
+  }
+
+  /**
+   * Associate this offset to the key with the given hash.
+   * @param hash1 The first half of the hash of the key, see `CompactOffsetMap.hash`
+   * @param hash2 The second half of the hash of the key
+   * @param offset The offset, for which `canPut` must be true
+   */
+  def putHash(hash1: Long, hash2: Long, offset: Long): Unit = {
+    require(entries < slots, "Attempt to add a new entry to a full offset map.")
+    require(canPut(offset), s"Attempt to add offset $offset which is out of the range of the offset map starting at $baseOffset.")
+    if (baseOffset < 0)
+      baseOffset = offset
+    // the relative offsets are stored plus one, so that an empty slot is one whose stored offset is zero
+    val storedOffset = (offset - baseOffset + 1).toInt
+    var pos = positionOf(hash2)
+    while (!isEmpty(pos)) {
+      if (hashMatches(pos, hash1, hash2)) {
+        // we found an existing entry, overwrite it and return (size does not change)
+        bytes.putInt(pos + OffsetOffset, storedOffset)
+        lastOffset = offset
+        return
+      }
+      pos = nextPosition(pos)
+    }
+    // found an empty slot, update it--size grows by 1
+    bytes.putLong(pos, hash1)
+    bytes.putInt(pos + HashTailOffset, (hash2 >>> 32).toInt)
+    bytes.putInt(pos + OffsetOffset, storedOffset)
+    lastOffset = offset
+    entries += 1
+  }
+
+  override def canPut(offset: Long): Boolean =
+    baseOffset < 0 || (offset >= baseOffset && offset - baseOffset < Int.MaxValue)
+
+  private def isEmpty(position: Int): Boolean = bytes.getInt(position + OffsetOffset) == 0
+
+  private def hashMatches(position: Int, hash1: Long, hash2: Long): Boolean =
+    bytes.getLong(position) == hash1 && bytes.getInt(position + HashTailOffset) == (hash2 >>> 32).toInt
+
+  /**
+   * Get the offset associated with this key.
+   * @param key The key
+   * @return The offset associated with this key or -1 if the key is not found
+   */
+  override def get(key: ByteBuffer): Long = {
+    if (entries == 0)
+      return -1L
+    val keyHash = keyHashes.get
+    hash(key, keyHash)
+    // search for the hash of this key by probing until we find the hash we are looking for or we find an empty slot,
+    // which there may not be when the map is full
+    var pos = positionOf(keyHash(1))
+    var attempt = 0
+    while (attempt < slots) {
+      if (isEmpty(pos))
+        return -1L
+      if (hashMatches(pos, keyHash(0), keyHash(1)))
+        return baseOffset + bytes.getInt(pos + OffsetOffset) - 1
+      pos = nextPosition(pos)
+      attempt += 1
+    }
+    -1L
+  }
+
+  /**
+   * Remove all the entries of the map, by emptying all the slots.
+   */
+  override def clear(): Unit = {
+    this.entries = 0
+    this.baseOffset = -1L
+    this.lastOffset = -1L
+    var pos = 0
+    while (pos < slots * BytesPerEntry) {
+      bytes.putInt(pos + OffsetOffset, 0)
+      pos += BytesPerEntry
+    }
+  }
+
+  /**
+   * The number of entries put into the map (note that not all may remain)
+   */
+  override def size: Int = entries
+
+  /**
+   * The latest offset put into the map
+   */
+  override def latestOffset: Long = lastOffset
+
+  override def updateLatestOffset(offset: Long): Unit = {
+    lastOffset = offset
+  }
+
+  /**
+   * Apply the given function to the first half of the hash, the upper 32 bits of the second half of the hash and the
+   * offset of every entry of the map.
+   */
+  def foreachEntry(f: (Long, Int, Long) => Unit): Unit = {
+    var pos = 0
+    while (pos < slots * BytesPerEntry) {
+      if (!isEmpty(pos))
+        f(bytes.getLong(pos), bytes.getInt(pos + HashTailOffset), baseOffset + bytes.getInt(pos + OffsetOffset) - 1)
+      pos += BytesPerEntry
+    }
+  }
+
+  override def close(): Unit = {
+    if (offHeap)
+      ByteBufferUnmapper.unmap("offset map", bytes)
+  }
+
+  private def positionOf(hash: Long): Int = Utils.toPositive(hash.toInt) % slots * BytesPerEntry
+
+  private def nextPosition(position: Int): Int = {
+    val next = position + BytesPerEntry
+    if (next == slots * BytesPerEntry) 0 else next
+  }
+
+}
+
+object CompactOffsetMap {
+  /**
+   * The number of bytes of space each entry uses: 12 bytes of the hash and the 4 byte relative offset
+   */
+  val BytesPerEntry = 16
+  private val HashTailOffset = 8
+  private val OffsetOffset = 12
+
+  /* the hash of the last key of every thread, to avoid allocating it for every key */
+  private val keyHashes = new ThreadLocal[Array[Long]] {
+    override def initialValue(): Array[Long] = new Array[Long](2)
+  }
+
+  private val C1 = 0x87c37b91114253d5L
+  private val C2 = 0x4cf5ad432745937fL
+
+  /**
+   * Compute the 128-bit MurmurHash3 (x64 variant) of the remaining bytes of the key into the first two elements of
+   * `into`, without changing the position of the key. This may be called concurrently.
+   */
+  def hash(key: ByteBuffer, into: Array[Long]): Unit = {
+    val start = key.position()
+    val length = key.remaining()
+    val blocksEnd = start + (length & ~15)
+    var h1 = 0L
+    var h2 = 0L
+    var i = start
+    while (i < blocksEnd) {
+      h1 ^= mixK1(java.lang.Long.reverseBytes(key.getLong(i)))
+      h1 = java.lang.Long.rotateLeft(h1, 27) + h2
+      h1 = h1 * 5 + 0x52dce729
+      h2 ^= mixK2(java.lang.Long.reverseBytes(key.getLong(i + 8)))
+      h2 = java.lang.Long.rotateLeft(h2, 31) + h1
+      h2 = h2 * 5 + 0x38495ab5
+      i += 16
+    }
+    // the remaining bytes are read in little-endian order
+    val tailLength = length & 15
+    var k1 = 0L
+    var k2 = 0L
+    var j = tailLength - 1
+    while (j >= 8) {
+      k2 = (k2 << 8) | (key.get(blocksEnd + j) & 0xff)
+      j -= 1
+    }
+    while (j >= 0) {
+      k1 = (k1 << 8) | (key.get(blocksEnd + j) & 0xff)
+      j -= 1
+    }
+    if (tailLength > 8)
+      h2 ^= mixK2(k2)
+    if (tailLength > 0)
+      h1 ^= mixK1(k1)
+
+    h1 ^= length
+    h2 ^= length
+    h1 += h2
+    h2 += h1
+    h1 = fmix64(h1)
+    h2 = fmix64(h2)
+    h1 += h2
+    h2 += h1
+    into(0) = h1
+    into(1) = h2
+  }
+
+  private def mixK1(k: Long): Long = java.lang.Long.rotateLeft(k * C1, 31) * C2
+
+  private def mixK2(k: Long): Long = java.lang.Long.rotateLeft(k * C2, 33) * C1
+
+  private def fmix64(h: Long): Long = {
+    var k = h
+    k ^= k >>> 33
+    k *= 0xff51afd7ed558ccdL
+    k ^= k >>> 33
+    k *= 0xc4ceb9fe1a85ec53L
+    k ^= k >>> 33
+    k
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.util
+import java.util.concurrent.TimeUnit
+
+import kafka.metrics.{KafkaMetricsGroup, KafkaTimer}
+import kafka.utils.{CoreUtils, Logging, Scheduler, threadsafe}
+import org.apache.kafka.common.record.FileRecords
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * The log segments whose files were opened through a [[LazyFileRecords]], bounded by `maxOpenSegments`.
+ *
+ * When there are more open segments, the files of the segments which were not used recently are released, using the
+ * clock (second chance) approximation of LRU so that accessing a segment does not need to take a lock. The segments
+ * which are pinned, such as the active segments, are never released, so that there may be more open segments than
+ * `maxOpenSegments`. They are kept out of the clock while they are pinned, so that they are not scanned when looking
+ * for a segment to release. A released file is only closed after `closeDelayMs`, so that the reads which are in progress,
+ * including the sends of file records to the network, can complete.
+ *
+ * @param maxOpenSegments The maximum number of open segments
+ * @param scheduler The scheduler used to close the released files
+ * @param closeDelayMs The time to wait before closing a released file
+ */
+@threadsafe
+class OpenLogSegments(val maxOpenSegments: Int, scheduler: Scheduler, closeDelayMs: Long)
+  extends Logging with KafkaMetricsGroup {
+
+  import OpenLogSegments._
+
+  // the segments which can be released, in the order they were opened, unpinned or given a second chance
+  private val openSegments = new util.LinkedHashSet[LazyFileRecords]()
+  private val pinnedSegments = new util.HashSet[LazyFileRecords]()
+  private val lazyOpenTimer = new KafkaTimer(newTimer(LazyOpenTimeMetricName, TimeUnit.MILLISECONDS, TimeUnit.SECONDS))
+
+  newGauge(OpenSegmentsMetricName, () => size)
+
+  def size: Int = openSegments synchronized {
+    openSegments.size + pinnedSegments.size
+  }
+
+  private[log] def timeOpen(open: => FileRecords): FileRecords = lazyOpenTimer.time(open)
+
+  private[log] def opened(records: LazyFileRecords): Unit = {
+    val released = openSegments synchronized {
+      if (records.isPinned)
+        pinnedSegments.add(records)
+      else
+        openSegments.add(records)
+      releaseNotRecentlyUsed()
+    }
+    scheduleClose(released)
+  }
+
+  private[log] def pinned(records: LazyFileRecords): Unit = openSegments synchronized {
+    if (openSegments.remove(records))
+      pinnedSegments.add(records)
+  }
+
+  private[log] def unpinned(records: LazyFileRecords): Unit = {
+    val released = openSegments synchronized {
+      if (pinnedSegments.remove(records)) {
+        openSegments.add(records)
+        releaseNotRecentlyUsed()
+      } else {
+        Seq.empty
+      }
+    }
+    scheduleClose(released)
+  }
+
+  private[log] def closed(records: LazyFileRecords): Unit = openSegments synchronized {
+    openSegments.remove(records)
+    pinnedSegments.remove(records)
+  }
+
+  private def scheduleClose(released: Seq[FileRecords]): Unit = {
+    released.foreach { fileRecords =>
+      debug(s"Closing ${fileRecords.file} in $closeDelayMs ms as there are more than $maxOpenSegments open segments")
+      scheduler.schedule("close-log-segment", () => CoreUtils.swallow(fileRecords.closeHandlers(), this),
+        delay = closeDelayMs)
+    }
+  }
+
+  private def releaseNotRecentlyUsed(): Seq[FileRecords] = {
+    val released = ArrayBuffer[FileRecords]()
+    // every segment gets a second chance at most, if none of the segments can be released
+    var candidates = 2 * openSegments.size
+    while (size > maxOpenSegments && candidates > 0 && !openSegments.isEmpty) {
+      val iterator = openSegments.iterator
+      val candidate = iterator.next()
+      iterator.remove()
+      candidates -= 1
+      if (candidate.referenced) {
+        candidate.referenced = false
+        openSegments.add(candidate)
+      } else {
+        candidate.release() match {
+          case Some(fileRecords) => released += fileRecords
+          case None =>
+            // pinned concurrently, before `pinned` could move it out of the clock
+            if (candidate.isPinned)
+              pinnedSegments.add(candidate)
+        }
+      }
+    }
+    released
+  }
+
+  def removeMetrics(): Unit = {
+    removeMetric(OpenSegmentsMetricName)
+    removeMetric(LazyOpenTimeMetricName)
+  }
+}
+
+object OpenLogSegments {
+  val OpenSegmentsMetricName = "OpenSegmentCount"
+  val LazyOpenTimeMetricName = "LazyOpenTimeMs"
+}
@@ -20,6 +20,7 @@ package kafka.message
 import java.util.Locale
 
 import kafka.common.UnknownCodecException
+import org.apache.kafka.common.record.CompressionType
 
 object CompressionCodec {
   def getCompressionCodec(codec: Int): CompressionCodec = {
@@ -58,6 +59,15 @@ object BrokerCompressionCodec {
     }
   }
 
+  /**
+   * Whether the compression level is valid for the given broker compression type. Any level is accepted with the
+   * `producer` compression type, it is only used when valid for the compression type of the producer.
+   */
+  def isValidLevel(compressionType: String, compressionLevel: Int): Boolean = {
+    ProducerCompressionCodec.name.equals(compressionType.toLowerCase(Locale.ROOT)) ||
+      CompressionType.forId(getCompressionCodec(compressionType).codec).isValidLevel(compressionLevel)
+  }
+
   def getTargetCompressionCodec(compressionType: String, producerCompression: CompressionCodec): CompressionCodec = {
     if (ProducerCompressionCodec.name.equals(compressionType))
       producerCompression
@@ -40,6 +40,8 @@ object RequestChannel extends Logging {
   private val requestLogger = Logger("kafka.request.logger")
 
   val RequestQueueSizeMetric = "RequestQueueSize"
+  val RequestQueueTimeMsMetric = "RequestQueueTimeMs"
+  val RequestQueueMetricTag = "queue"
   val ResponseQueueSizeMetric = "ResponseQueueSize"
   val ProcessorMetricTag = "processor"
 
@@ -273,15 +275,25 @@ object RequestChannel extends Logging {
   }
 }
 
-class RequestChannel(val queueSize: Int, val metricNamePrefix : String) extends KafkaMetricsGroup {
+class RequestChannel(val queueSize: Int,
+                     val metricNamePrefix : String,
+                     queueWeights: Map[RequestClass, Int] = Map.empty) extends KafkaMetricsGroup {
   import RequestChannel._
   val metrics = new RequestChannel.Metrics
-  private val requestQueue = new ArrayBlockingQueue[BaseRequest](queueSize)
+  private val requestQueue = new RequestQueue(queueSize, queueWeights)
   private val processors = new ConcurrentHashMap[Int, Processor]()
   val requestQueueSizeMetricName = metricNamePrefix.concat(RequestQueueSizeMetric)
+  val requestQueueTimeMetricName = metricNamePrefix.concat(RequestQueueTimeMsMetric)
   val responseQueueSizeMetricName = metricNamePrefix.concat(ResponseQueueSizeMetric)
 
-  newGauge(requestQueueSizeMetricName, () => requestQueue.size)
+  newGauge(requestQueueSizeMetricName, () => requestQueue.totalSize)
+
+  // time requests spend in the request queue, per request class
+  private val requestQueueTimeHists = RequestClass.values.map { requestClass =>
+    val tags = Map(RequestQueueMetricTag -> requestClass.name)
+    newGauge(requestQueueSizeMetricName, () => requestQueue.size(requestClass), tags)
+    requestClass -> newHistogram(requestQueueTimeMetricName, biased = true, tags)
+  }.toMap
 
   newGauge(responseQueueSizeMetricName, () => {
     processors.values.asScala.foldLeft(0) {(total, processor) =>
@@ -307,6 +319,14 @@ class RequestChannel(val queueSize: Int, val metricNamePrefix : String) extends
     requestQueue.put(request)
   }
 
+  /**
+   * Update the capacity of the request queue and the weights of the request classes. Requests are dequeued in the
+   * order they were queued if there are no weights.
+   */
+  def reconfigureRequestQueue(queueSize: Int, queueWeights: Map[RequestClass, Int]): Unit = {
+    requestQueue.reconfigure(queueSize, queueWeights)
+  }
+
   /** Send a response back to the socket server to be sent over the network */
   def sendResponse(response: RequestChannel.Response): Unit = {
     if (isTraceEnabled) {
@@ -336,11 +356,21 @@ class RequestChannel(val queueSize: Int, val metricNamePrefix : String) extends
 
   /** Get the next request or block until specified time has elapsed */
   def receiveRequest(timeout: Long): RequestChannel.BaseRequest =
-    requestQueue.poll(timeout, TimeUnit.MILLISECONDS)
+    recordQueueTime(requestQueue.poll(timeout))
 
   /** Get the next request or block until there is one */
   def receiveRequest(): RequestChannel.BaseRequest =
-    requestQueue.take()
+    recordQueueTime(requestQueue.take())
+
+  private def recordQueueTime(request: RequestChannel.BaseRequest): RequestChannel.BaseRequest = {
+    request match {
+      case request: RequestChannel.Request =>
+        val queueTimeNanos = math.max(Time.SYSTEM.nanoseconds - request.startTimeNanos, 0L)
+        requestQueueTimeHists(RequestClass(request)).update(TimeUnit.NANOSECONDS.toMillis(queueTimeNanos))
+      case _ =>
+    }
+    request
+  }
 
   def updateErrorMetrics(apiKey: ApiKeys, errors: collection.Map[Errors, Integer]): Unit = {
     errors.foreach { case (error, count) =>
@@ -355,9 +385,14 @@ class RequestChannel(val queueSize: Int, val metricNamePrefix : String) extends
   def shutdown(): Unit = {
     clear()
     metrics.close()
+    RequestClass.values.foreach { requestClass =>
+      val tags = Map(RequestQueueMetricTag -> requestClass.name)
+      removeMetric(requestQueueSizeMetricName, tags)
+      removeMetric(requestQueueTimeMetricName, tags)
+    }
   }
 
-  def sendShutdownRequest(): Unit = requestQueue.put(ShutdownRequest)
+  def sendShutdownRequest(): Unit = requestQueue.putShutdown()
 
 }
 
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import java.util
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+
+import kafka.network.RequestChannel.{BaseRequest, ShutdownRequest}
+import kafka.utils.CoreUtils.inLock
+import org.apache.kafka.common.config.ConfigException
+import org.apache.kafka.common.protocol.ApiKeys
+import org.apache.kafka.common.requests.{FetchRequest, OffsetsForLeaderEpochRequest}
+
+import scala.collection.mutable
+
+/**
+ * The classes of requests which are queued separately by [[RequestQueue]].
+ */
+sealed abstract class RequestClass(val name: String) {
+  override def toString: String = name
+}
+
+object RequestClass {
+  /** Requests from other brokers and the controller to replicate partitions and update their state */
+  case object Replication extends RequestClass("replication")
+  /** Requests appending to partitions */
+  case object Produce extends RequestClass("produce")
+  /** Requests from consumers reading partitions */
+  case object ConsumerFetch extends RequestClass("consumer.fetch")
+  /** Requests handled by the group and transaction coordinators */
+  case object Coordinator extends RequestClass("coordinator")
+  /** Metadata and administrative requests */
+  case object Admin extends RequestClass("admin")
+
+  val values: Seq[RequestClass] = Seq(Replication, Produce, ConsumerFetch, Coordinator, Admin)
+
+  def apply(request: RequestChannel.Request): RequestClass = request.header.apiKey match {
+    case ApiKeys.FETCH =>
+      if (request.body[FetchRequest].isFromFollower) Replication else ConsumerFetch
+    case ApiKeys.OFFSET_FOR_LEADER_EPOCH =>
+      if (request.body[OffsetsForLeaderEpochRequest].replicaId >= 0) Replication else ConsumerFetch
+    case ApiKeys.LEADER_AND_ISR | ApiKeys.STOP_REPLICA | ApiKeys.UPDATE_METADATA | ApiKeys.CONTROLLED_SHUTDOWN =>
+      Replication
+    case ApiKeys.PRODUCE | ApiKeys.WRITE_TXN_MARKERS =>
+      Produce
+    case ApiKeys.LIST_OFFSETS =>
+      ConsumerFetch
+    case ApiKeys.FIND_COORDINATOR | ApiKeys.JOIN_GROUP | ApiKeys.SYNC_GROUP | ApiKeys.HEARTBEAT | ApiKeys.LEAVE_GROUP |
+         ApiKeys.OFFSET_COMMIT | ApiKeys.OFFSET_FETCH | ApiKeys.OFFSET_DELETE | ApiKeys.INIT_PRODUCER_ID |
+         ApiKeys.ADD_PARTITIONS_TO_TXN | ApiKeys.ADD_OFFSETS_TO_TXN | ApiKeys.END_TXN | ApiKeys.TXN_OFFSET_COMMIT =>
+      Coordinator
+    case _ =>
+      Admin
+  }
+
+  /**
+   * Parse the weights of `queued.request.weights`. Classes without a weight get a weight of 1 if any weight is set.
+   *
+   * @return The weight of every class, or an empty map if no weight is set
+   */
+  def parseWeights(weights: collection.Map[String, String]): Map[RequestClass, Int] = {
+    if (weights.isEmpty)
+      Map.empty
+    else {
+      val parsed = weights.map { case (name, weight) =>
+        val requestClass = values.find(_.name == name).getOrElse(throw new ConfigException(
+          s"Unknown request class $name, valid classes are ${values.mkString(",")}"))
+        val parsedWeight = try weight.toInt catch {
+          case _: NumberFormatException => throw new ConfigException(s"Invalid weight $weight for request class $name")
+        }
+        if (parsedWeight <= 0)
+          throw new ConfigException(s"Invalid weight $weight for request class $name, weights must be positive")
+        requestClass -> parsedWeight
+      }
+      values.map(requestClass => requestClass -> parsed.getOrElse(requestClass, 1)).toMap
+    }
+  }
+}
+
+/**
+ * The queue of requests waiting for a request handler thread. Requests are queued separately per [[RequestClass]],
+ * and the capacity of the queue bounds the total number of queued requests.
+ *
+ * Without weights, requests are dequeued in the order they were queued. With weights, classes with queued requests
+ * are served in proportion to their weights (using smooth weighted round-robin), so that a backlog of requests of
+ * one class only delays the requests of the other classes by the share of the handler threads it is given. Since a
+ * connection has at most one request in the queue, this does not reorder the requests of a connection.
+ *
+ * Shutdown requests are dequeued before any other request.
+ */
+class RequestQueue(initialCapacity: Int, initialWeights: Map[RequestClass, Int] = Map.empty) {
+  private class QueuedRequest(val request: RequestChannel.Request, val sequence: Long)
+
+  private val lock = new ReentrantLock()
+  private val notEmpty = lock.newCondition()
+  private val notFull = lock.newCondition()
+  private val queues = RequestClass.values.map(_ -> new util.ArrayDeque[QueuedRequest]()).toMap
+  // the current weights of smooth weighted round-robin
+  private val currentWeights = mutable.Map[RequestClass, Int]()
+
+  private var capacity = initialCapacity
+  private var weights = initialWeights
+  private var queuedRequests = 0
+  private var nextSequence = 0L
+  private var pendingShutdowns = 0
+
+  /**
+   * Queue a request, blocking until there is room for it.
+   */
+  def put(request: RequestChannel.Request): Unit = {
+    val queue = queues(RequestClass(request))
+    inLock(lock) {
+      while (queuedRequests >= capacity)
+        notFull.await()
+      queue.addLast(new QueuedRequest(request, nextSequence))
+      nextSequence += 1
+      queuedRequests += 1
+      notEmpty.signal()
+    }
+  }
+
+  /**
+   * Queue a shutdown request, which does not count towards the capacity.
+   */
+  def putShutdown(): Unit = inLock(lock) {
+    pendingShutdowns += 1
+    notEmpty.signal()
+  }
+
+  /**
+   * Dequeue the next request, waiting for at most the given time if there is none.
+   *
+   * @return The next request, or null if the timeout elapsed
+   */
+  def poll(timeoutMs: Long): BaseRequest = inLock(lock) {
+    var remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+    while (isEmpty && remainingNanos > 0)
+      remainingNanos = notEmpty.awaitNanos(remainingNanos)
+    if (isEmpty) null else dequeue()
+  }
+
+  /**
+   * Dequeue the next request, waiting until there is one.
+   */
+  def take(): BaseRequest = inLock(lock) {
+    while (isEmpty)
+      notEmpty.await()
+    dequeue()
+  }
+
+  private def isEmpty: Boolean = queuedRequests == 0 && pendingShutdowns == 0
+
+  private def dequeue(): BaseRequest = {
+    if (pendingShutdowns > 0) {
+      pendingShutdowns -= 1
+      ShutdownRequest
+    } else {
+      val queue = if (weights.isEmpty) oldestQueue() else nextWeightedQueue()
+      queuedRequests -= 1
+      notFull.signal()
+      queue.pollFirst().request
+    }
+  }
+
+  private def oldestQueue(): util.ArrayDeque[QueuedRequest] = {
+    var oldest: util.ArrayDeque[QueuedRequest] = null
+    queues.values.foreach { queue =>
+      if (!queue.isEmpty && (oldest == null || queue.peekFirst().sequence < oldest.peekFirst().sequence))
+        oldest = queue
+    }
+    oldest
+  }
+
+  private def nextWeightedQueue(): util.ArrayDeque[QueuedRequest] = {
+    var selected: RequestClass = null
+    var selectedWeight = Int.MinValue
+    var totalWeight = 0
+    queues.foreach { case (requestClass, queue) =>
+      if (queue.isEmpty) {
+        // classes without queued requests do not accumulate credit
+        currentWeights.remove(requestClass)
+      } else {
+        val weight = weights(requestClass)
+        val currentWeight = currentWeights.getOrElse(requestClass, 0) + weight
+        currentWeights(requestClass) = currentWeight
+        totalWeight += weight
+        if (currentWeight > selectedWeight) {
+          selected = requestClass
+          selectedWeight = currentWeight
+        }
+      }
+    }
+    currentWeights(selected) = selectedWeight - totalWeight
+    queues(selected)
+  }
+
+  /**
+   * Update the capacity and the weights of the queue. Requests which are already queued are kept even if they
+   * exceed the new capacity.
+   */
+  def reconfigure(newCapacity: Int, newWeights: Map[RequestClass, Int]): Unit = inLock(lock) {
+    capacity = newCapacity
+    weights = newWeights
+    currentWeights.clear()
+    notFull.signalAll()
+  }
+
+  def size(requestClass: RequestClass): Int = inLock(lock) {
+    queues(requestClass).size
+  }
+
+  def totalSize: Int = inLock(lock) {
+    queuedRequests
+  }
+
+  def clear(): Unit = inLock(lock) {
+    queues.values.foreach(_.clear())
+    currentWeights.clear()
+    queuedRequests = 0
+    notFull.signalAll()
+  }
+}
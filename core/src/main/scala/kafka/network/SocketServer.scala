@@ -80,6 +80,7 @@ class SocketServer(val config: KafkaConfig,
   extends Logging with KafkaMetricsGroup with BrokerReconfigurable {
 
   private val maxQueuedRequests = config.queuedMaxRequests
+  private val queuedRequestWeights = config.queuedRequestWeights
 
   private val logContext = new LogContext(s"[SocketServer brokerId=${config.brokerId}] ")
   this.logIdent = logContext.logPrefix
@@ -92,7 +93,7 @@ class SocketServer(val config: KafkaConfig,
   // data-plane
   private val dataPlaneProcessors = new ConcurrentHashMap[Int, Processor]()
   private[network] val dataPlaneAcceptors = new ConcurrentHashMap[EndPoint, Acceptor]()
-  val dataPlaneRequestChannel = new RequestChannel(maxQueuedRequests, DataPlaneMetricPrefix)
+  val dataPlaneRequestChannel = new RequestChannel(maxQueuedRequests, DataPlaneMetricPrefix, queuedRequestWeights)
   // control-plane
   private var controlPlaneProcessorOpt : Option[Processor] = None
   private[network] var controlPlaneAcceptorOpt : Option[Acceptor] = None
@@ -350,6 +351,13 @@ class SocketServer(val config: KafkaConfig,
       info(s"Updating broker-wide maxConnections: $maxConnections")
       connectionQuotas.updateBrokerMaxConnections(maxConnections)
     }
+    val queuedMaxRequests = newConfig.queuedMaxRequests
+    val queuedRequestWeights = newConfig.queuedRequestWeights
+    if (queuedMaxRequests != oldConfig.queuedMaxRequests || queuedRequestWeights != oldConfig.queuedRequestWeights) {
+      info(s"Updating data-plane request queue: queuedMaxRequests $queuedMaxRequests, " +
+        s"queuedRequestWeights ${queuedRequestWeights.map { case (k, v) => s"$k:$v" }.mkString(",")}")
+      dataPlaneRequestChannel.reconfigureRequestQueue(queuedMaxRequests, queuedRequestWeights)
+    }
   }
 
   private def waitForAuthorizerFuture(acceptor: Acceptor,
@@ -400,7 +408,9 @@ object SocketServer {
   val ReconfigurableConfigs = Set(
     KafkaConfig.MaxConnectionsPerIpProp,
     KafkaConfig.MaxConnectionsPerIpOverridesProp,
-    KafkaConfig.MaxConnectionsProp)
+    KafkaConfig.MaxConnectionsProp,
+    KafkaConfig.QueuedMaxRequestsProp,
+    KafkaConfig.QueuedRequestWeightsProp)
 
   val ListenerReconfigurableConfigs = Set(KafkaConfig.MaxConnectionsProp)
 }
@@ -22,11 +22,11 @@ import java.util.concurrent.atomic._
 import java.util.concurrent.locks.{Lock, ReentrantLock}
 
 import kafka.metrics.KafkaMetricsGroup
-import kafka.utils.CoreUtils.inLock
 import kafka.utils._
 import kafka.utils.timer._
 
 import scala.collection._
+import scala.collection.JavaConverters._
 import scala.collection.mutable.ListBuffer
 
 /**
@@ -136,6 +136,15 @@ abstract class DelayedOperation(override val delayMs: Long,
     done
   }
 
+  /**
+   * Check if the lock of the operation may be held by the current thread, in which case no other thread can complete
+   * the operation until it is released. This can only be ruled out for a `ReentrantLock`.
+   */
+  private[server] def lockMayBeHeldByCurrentThread: Boolean = lock match {
+    case reentrantLock: ReentrantLock => reentrantLock.isHeldByCurrentThread
+    case _ => true
+  }
+
   /*
    * run() method defines a task that is executed on timeout
    */
@@ -147,15 +156,21 @@ abstract class DelayedOperation(override val delayMs: Long,
 
 object DelayedOperationPurgatory {
 
-  private val Shards = 512 // Shard the watcher list to reduce lock contention
+  val DefaultShards = 512 // Shard the watcher list to reduce contention
+
+  // The maximum number of passes over the operations of a key made by a single completion attempt, so that a thread
+  // is not kept completing operations for other threads indefinitely when a key is continuously triggered
+  private[server] val MaxCompletionPasses = 4
 
   def apply[T <: DelayedOperation](purgatoryName: String,
                                    brokerId: Int = 0,
                                    purgeInterval: Int = 1000,
                                    reaperEnabled: Boolean = true,
-                                   timerEnabled: Boolean = true): DelayedOperationPurgatory[T] = {
-    val timer = new SystemTimer(purgatoryName)
-    new DelayedOperationPurgatory[T](purgatoryName, timer, brokerId, purgeInterval, reaperEnabled, timerEnabled)
+                                   timerEnabled: Boolean = true,
+                                   shards: Int = DefaultShards,
+                                   timerType: String = Timer.SystemTimerType): DelayedOperationPurgatory[T] = {
+    val timer = Timer(timerType, purgatoryName)
+    new DelayedOperationPurgatory[T](purgatoryName, timer, brokerId, purgeInterval, reaperEnabled, timerEnabled, shards)
   }
 
 }
@@ -168,24 +183,27 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
                                                              brokerId: Int = 0,
                                                              purgeInterval: Int = 1000,
                                                              reaperEnabled: Boolean = true,
-                                                             timerEnabled: Boolean = true)
+                                                             timerEnabled: Boolean = true,
+                                                             shards: Int = DelayedOperationPurgatory.DefaultShards)
         extends Logging with KafkaMetricsGroup {
-  /* a list of operation watching keys */
+  /*
+   * A list of operation watching keys. The watchers of a key are only added and removed through atomic updates of
+   * the map, so that an operation is never added to watchers which have been removed, without locking the list.
+   */
   private class WatcherList {
-    val watchersByKey = new Pool[Any, Watchers](Some((key: Any) => new Watchers(key)))
-
-    val watchersLock = new ReentrantLock()
+    val watchersByKey = new ConcurrentHashMap[Any, Watchers]()
 
     /*
      * Return all the current watcher lists,
      * note that the returned watchers may be removed from the list by other threads
      */
-    def allWatchers = {
-      watchersByKey.values
+    def allWatchers: Iterable[Watchers] = {
+      watchersByKey.values.asScala
     }
   }
 
-  private val watcherLists = Array.fill[WatcherList](DelayedOperationPurgatory.Shards)(new WatcherList)
+  require(shards > 0, s"The number of shards of purgatory $purgatoryName must be positive")
+  private val watcherLists = Array.fill[WatcherList](shards)(new WatcherList)
   private def watcherList(key: Any): WatcherList = {
     watcherLists(Math.abs(key.hashCode() % watcherLists.length))
   }
@@ -193,6 +211,9 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
   // the number of estimated total operations in the purgatory
   private[this] val estimatedTotalOperations = new AtomicInteger(0)
 
+  // the watchers whose remaining completion attempts were left to the reaper after `MaxCompletionPasses` passes
+  private[this] val deferredCompletions = ConcurrentHashMap.newKeySet[Watchers]()
+
   /* background thread expiring operations that have timed out */
   private val expirationReaper = new ExpiredOperationReaper()
 
@@ -269,11 +290,14 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
    * Check if some delayed operations can be completed with the given watch key,
    * and if yes complete them.
    *
-   * @return the number of completed operations during this process
+   * Completion attempts for the same key are batched, see [[Watchers.tryCompleteWatched]], so the operations may be
+   * completed by another thread after this method returns, and this thread may complete operations for attempts
+   * requested by other threads.
+   *
+   * @return the number of operations completed by the calling thread
    */
   def checkAndComplete(key: Any): Int = {
-    val wl = watcherList(key)
-    val watchers = inLock(wl.watchersLock) { wl.watchersByKey.get(key) }
+    val watchers = watcherList(key).watchersByKey.get(key)
     val numCompleted = if (watchers == null)
       0
     else
@@ -300,42 +324,33 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
     * Cancel watching on any delayed operations for the given key. Note the operation will not be completed
     */
   def cancelForKey(key: Any): List[T] = {
-    val wl = watcherList(key)
-    inLock(wl.watchersLock) {
-      val watchers = wl.watchersByKey.remove(key)
-      if (watchers != null)
-        watchers.cancel()
-      else
-        Nil
-    }
+    // operations can no longer be added to the watchers once they have been removed
+    val watchers = watcherList(key).watchersByKey.remove(key)
+    if (watchers != null)
+      watchers.cancel()
+    else
+      Nil
   }
 
   /*
-   * Return the watch list of the given key, note that we need to
-   * grab the removeWatchersLock to avoid the operation being added to a removed watcher list
+   * Add the operation to the watch list of the given key. The operation is added while the entry of the key is
+   * updated to avoid the operation being added to a removed watcher list
    */
   private def watchForOperation(key: Any, operation: T): Unit = {
-    val wl = watcherList(key)
-    inLock(wl.watchersLock) {
-      val watcher = wl.watchersByKey.getAndMaybePut(key)
-      watcher.watch(operation)
-    }
+    watcherList(key).watchersByKey.compute(key, (_, existing) => {
+      val watchers = if (existing == null) new Watchers(key) else existing
+      watchers.watch(operation)
+      watchers
+    })
   }
 
   /*
    * Remove the key from watcher lists if its list is empty
    */
   private def removeKeyIfEmpty(key: Any, watchers: Watchers): Unit = {
-    val wl = watcherList(key)
-    inLock(wl.watchersLock) {
-      // if the current key is no longer correlated to the watchers to remove, skip
-      if (wl.watchersByKey.get(key) != watchers)
-        return
-
-      if (watchers != null && watchers.isEmpty) {
-        wl.watchersByKey.remove(key)
-      }
-    }
+    // if the current key is no longer correlated to the watchers to remove, skip
+    watcherList(key).watchersByKey.computeIfPresent(key, (_, existing) =>
+      if ((existing eq watchers) && watchers.isEmpty) null else existing)
   }
 
   /**
@@ -354,6 +369,8 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
    */
   private class Watchers(val key: Any) {
     private[this] val operations = new ConcurrentLinkedQueue[T]()
+    // the number of completion attempts requested since the current pass over the operations started
+    private[this] val pendingCompletions = new AtomicInteger(0)
 
     // count the current number of watched operations. This is O(n), so use isEmpty() if possible
     def countWatched: Int = operations.size
@@ -365,8 +382,67 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
       operations.add(t)
     }
 
-    // traverse the list and try to complete some watched elements
+    /*
+     * Traverse the list and try to complete some watched elements.
+     *
+     * Completion attempts for the same key are batched: if another thread is already traversing the list, this
+     * thread leaves it to that thread to make one more pass once the current one is done, which covers this attempt
+     * since the pass starts after it was requested. This avoids having many threads contending on the locks of the
+     * same operations after a burst of appends to a partition, for example. The other thread cannot complete the
+     * operations whose lock is held by this thread, such as the operations of a group whose lock is held by the group
+     * coordinator, so this thread still tries to complete these operations itself.
+     *
+     * A thread makes at most `MaxCompletionPasses` passes. If attempts are still requested after that, they are left
+     * to the expiration reaper, which makes the next pass when it next advances the clock.
+     *
+     * @return the number of operations completed by this thread
+     */
     def tryCompleteWatched(): Int = {
+      if (pendingCompletions.getAndIncrement() != 0)
+        return tryCompleteLockedByCurrentThread()
+
+      var completed = 0
+      var requested = 1
+      var passes = 0
+      var done = false
+      try {
+        while (requested > 0 && passes < DelayedOperationPurgatory.MaxCompletionPasses) {
+          completed += tryCompleteWatchedOnce()
+          passes += 1
+          requested = pendingCompletions.addAndGet(-requested)
+        }
+        done = true
+      } finally {
+        // let the next attempt make a pass if this one failed
+        if (!done)
+          pendingCompletions.set(0)
+      }
+
+      if (requested > 0) {
+        // the next attempt makes a pass, and the reaper makes one in case no other attempt is requested
+        pendingCompletions.set(0)
+        deferredCompletions.add(this)
+      }
+      completed
+    }
+
+    // try to complete the watched elements whose lock may be held by the current thread
+    private def tryCompleteLockedByCurrentThread(): Int = {
+      var completed = 0
+
+      val iter = operations.iterator()
+      while (iter.hasNext) {
+        val curr = iter.next()
+        if (!curr.isCompleted && curr.lockMayBeHeldByCurrentThread && curr.maybeTryComplete()) {
+          iter.remove()
+          completed += 1
+        }
+      }
+
+      completed
+    }
+
+    private def tryCompleteWatchedOnce(): Int = {
       var completed = 0
 
       val iter = operations.iterator()
@@ -422,6 +498,17 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
   def advanceClock(timeoutMs: Long): Unit = {
     timeoutTimer.advanceClock(timeoutMs)
 
+    // make the completion passes left by threads which reached `MaxCompletionPasses`
+    if (!deferredCompletions.isEmpty) {
+      val iter = deferredCompletions.iterator()
+      while (iter.hasNext) {
+        val watchers = iter.next()
+        iter.remove()
+        val completed = watchers.tryCompleteWatched()
+        debug(s"Request key ${watchers.key} unblocked $completed $purgatoryName operations deferred to the reaper")
+      }
+    }
+
     // Trigger a purge if the number of completed but still being watched operations is larger than
     // the purge threshold. That number is computed by the difference btw the estimated total number of
     // operations and the number of pending delayed operations.
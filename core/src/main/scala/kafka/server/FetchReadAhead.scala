@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.server
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentHashMap, LinkedBlockingQueue, RejectedExecutionException, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+
+import kafka.metrics.KafkaMetricsGroup
+import kafka.utils.{Logging, threadsafe}
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.record.FileRecords
+import org.apache.kafka.common.utils.{KafkaThread, Time}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Reads ahead the segments of the partitions which are fetched sequentially far behind the end of their log, such as by
+ * lagging consumers or replicas, so that the next fetches are sent from the page cache.
+ *
+ * The records of a fetch are sent from their segment by the network threads after the fetch is handled, and the network
+ * threads block while the pages of the records are read from disk. When a fetch of a partition continues where a
+ * previous fetch of the same partition ended, the next `readAheadBytes` of the segment are read by the read-ahead
+ * threads, and read again once half of them were fetched. Up to `MaxStreamsPerPartition` sequential readers of a
+ * partition, such as the consumers of different groups, are tracked, and the readers which are idle for
+ * `StreamIdleMs` are forgotten by `expireIdleStreams`.
+ *
+ * The sequential fetches which were read ahead are counted as hits when the read-ahead of their records completed
+ * before they were handled, and as misses otherwise.
+ *
+ * @param readAheadBytes The number of bytes read ahead of a sequential fetch
+ * @param numThreads The number of threads reading ahead
+ * @param time The time used to track the idle readers
+ */
+@threadsafe
+class FetchReadAhead(readAheadBytes: Int, numThreads: Int, time: Time) extends Logging with KafkaMetricsGroup {
+  import FetchReadAhead._
+
+  private val threadCounter = new AtomicInteger
+  // the read-aheads are skipped rather than queued without bound when the disks can not keep up with them
+  private val executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+    new LinkedBlockingQueue[Runnable](MaxQueuedReadAheadsPerThread * numThreads),
+    new ThreadFactory {
+      override def newThread(r: Runnable): Thread =
+        new KafkaThread(s"fetch-read-ahead-${threadCounter.getAndIncrement()}", r, true)
+    })
+  private val readBuffers = new ThreadLocal[ByteBuffer] {
+    override def initialValue(): ByteBuffer = ByteBuffer.allocateDirect(ReadBufferSize)
+  }
+  private val partitions = new ConcurrentHashMap[TopicPartition, PartitionStreams]()
+
+  private val hitRate = newMeter(HitsMetricName, "fetches", TimeUnit.SECONDS)
+  private val missRate = newMeter(MissesMetricName, "fetches", TimeUnit.SECONDS)
+  private val skipRate = newMeter(SkippedMetricName, "fetches", TimeUnit.SECONDS)
+  private val bytesRate = newMeter(BytesMetricName, "bytes", TimeUnit.SECONDS)
+
+  newGauge(HitRatioMetricName, () => {
+    val hits = hitRate.oneMinuteRate
+    val total = hits + missRate.oneMinuteRate
+    if (total == 0) 0.0 else hits / total
+  })
+
+  /**
+   * Read ahead of the given fetched data if it continues a previous fetch of the partition.
+   *
+   * @param topicPartition The fetched partition
+   * @param fetchedData The data read from the log of the partition
+   * @param logEndOffset The end offset of the log, which is not read ahead of
+   */
+  def maybeReadAhead(topicPartition: TopicPartition, fetchedData: FetchDataInfo, logEndOffset: LogOffsetMetadata): Unit = {
+    fetchedData.records match {
+      case records: FileRecords if records.sizeInBytes > 0 && !logEndOffset.messageOffsetOnly =>
+        val fetchOffset = fetchedData.fetchOffsetMetadata
+        val start = fetchOffset.relativePositionInSegment
+        val end = start + records.sizeInBytes
+        // the end of the log is in the page cache already, as it was just written
+        if (!fetchOffset.onSameSegment(logEndOffset) || logEndOffset.relativePositionInSegment - end >= readAheadBytes) {
+          val streams = partitions.computeIfAbsent(topicPartition, _ => new PartitionStreams)
+          streams.fetched(fetchOffset.segmentBaseOffset, start, end, time.milliseconds).foreach { case (stream, from, until) =>
+            submit(streams, stream, records.channel, from, until)
+          }
+        }
+      case _ =>
+    }
+  }
+
+  private def submit(streams: PartitionStreams, stream: ReadAheadStream, channel: FileChannel, from: Int,
+                     until: Int): Unit = {
+    try {
+      executor.execute(() => {
+        val read = readAhead(channel, from, until)
+        streams synchronized {
+          // the streams only count the ranges which were read ahead contiguously
+          if (from <= stream.readUntil)
+            stream.readUntil = math.max(stream.readUntil, from + read)
+        }
+        bytesRate.mark(read)
+      })
+    } catch {
+      case _: RejectedExecutionException =>
+        skipRate.mark()
+        streams synchronized { stream.requestedUntil = stream.readUntil }
+    }
+  }
+
+  /**
+   * Read the given range of the segment, so that its pages are loaded into the page cache.
+   *
+   * @return The number of bytes read, which is smaller than the range at the end of the segment
+   */
+  private def readAhead(channel: FileChannel, from: Int, until: Int): Int = {
+    val buffer = readBuffers.get
+    var position = from
+    try {
+      var endOfFile = false
+      while (position < until && !endOfFile) {
+        buffer.clear()
+        buffer.limit(math.min(buffer.capacity, until - position))
+        val read = channel.read(buffer, position)
+        if (read < 0)
+          endOfFile = true
+        else
+          position += read
+      }
+    } catch {
+      // the segment may be closed or deleted after it was fetched
+      case e: IOException => debug(s"Stopped reading ahead at position $position after ${position - from} bytes", e)
+    }
+    position - from
+  }
+
+  /**
+   * Forget the sequential readers which did not fetch for `StreamIdleMs`, along with the partitions which have none.
+   */
+  def expireIdleStreams(): Unit = {
+    val expiredBeforeMs = time.milliseconds - StreamIdleMs
+    partitions.forEach { (topicPartition, streams) =>
+      val empty = streams synchronized {
+        streams.removeIdle(expiredBeforeMs)
+        streams.isEmpty
+      }
+      if (empty)
+        partitions.remove(topicPartition, streams)
+    }
+  }
+
+  def shutdown(): Unit = {
+    // the read-ahead threads are not interrupted, since interrupting a read closes the channel of the segment
+    executor.shutdown()
+    executor.getQueue.clear()
+    executor.awaitTermination(ShutdownTimeoutMs, TimeUnit.MILLISECONDS)
+    removeMetric(HitsMetricName)
+    removeMetric(MissesMetricName)
+    removeMetric(SkippedMetricName)
+    removeMetric(BytesMetricName)
+    removeMetric(HitRatioMetricName)
+  }
+
+  /**
+   * The sequential readers of a partition, which are accessed under the lock of the instance.
+   */
+  private class PartitionStreams {
+    private val streams = new ArrayBuffer[ReadAheadStream](MaxStreamsPerPartition)
+
+    def isEmpty: Boolean = streams.isEmpty
+
+    def removeIdle(expiredBeforeMs: Long): Unit = {
+      val idle = streams.filter(_.lastFetchMs < expiredBeforeMs)
+      streams --= idle
+    }
+
+    /**
+     * Update the readers of the partition with the given fetched range of a segment.
+     *
+     * @return The reader to read ahead for and the range of the segment to read, if any
+     */
+    def fetched(segmentBaseOffset: Long, start: Int, end: Int, nowMs: Long): Option[(ReadAheadStream, Int, Int)] = synchronized {
+      // a fetch may start before the end of the previous one, when its last batch was incomplete
+      streams.find(stream => stream.segmentBaseOffset == segmentBaseOffset &&
+        start >= stream.lastStart && start <= stream.lastEnd) match {
+        case Some(stream) =>
+          if (stream.requestedUntil > stream.lastEnd) {
+            if (stream.readUntil >= end)
+              hitRate.mark()
+            else
+              missRate.mark()
+          }
+          stream.lastStart = start
+          stream.lastEnd = end
+          stream.lastFetchMs = nowMs
+          // the fetched records are in the page cache once they are sent
+          stream.readUntil = math.max(stream.readUntil, end)
+          if (stream.requestedUntil - end < readAheadBytes / 2) {
+            val from = math.max(stream.readUntil, stream.requestedUntil)
+            stream.requestedUntil = end + readAheadBytes
+            Some((stream, from, stream.requestedUntil))
+          } else
+            None
+
+        case None =>
+          if (streams.size >= MaxStreamsPerPartition)
+            streams -= streams.minBy(_.lastFetchMs)
+          streams += new ReadAheadStream(segmentBaseOffset, start, end, nowMs)
+          None
+      }
+    }
+  }
+
+}
+
+object FetchReadAhead {
+  val HitsMetricName = "ReadAheadHitsPerSec"
+  val MissesMetricName = "ReadAheadMissesPerSec"
+  val SkippedMetricName = "ReadAheadSkippedPerSec"
+  val BytesMetricName = "ReadAheadBytesPerSec"
+  val HitRatioMetricName = "ReadAheadHitRatio"
+
+  val MaxStreamsPerPartition = 4
+  val StreamIdleMs = 60 * 1000L
+  private val MaxQueuedReadAheadsPerThread = 64
+  private val ReadBufferSize = 64 * 1024
+  private val ShutdownTimeoutMs = 10 * 1000L
+
+  /**
+   * A sequential reader of a segment, and the range of the segment read ahead for it.
+   */
+  private[server] class ReadAheadStream(val segmentBaseOffset: Long, var lastStart: Int, var lastEnd: Int,
+                                        var lastFetchMs: Long) {
+    // the end of the range of the segment which is in the page cache
+    var readUntil: Int = lastEnd
+    // the end of the range read ahead, including the reads which did not complete yet
+    var requestedUntil: Int = lastEnd
+  }
+}
@@ -19,7 +19,7 @@ package kafka.server
 
 import java.util
 import java.util.Optional
-import java.util.concurrent.{ThreadLocalRandom, TimeUnit}
+import java.util.concurrent.{ConcurrentHashMap, ThreadLocalRandom, TimeUnit}
 
 import kafka.metrics.KafkaMetricsGroup
 import kafka.utils.Logging
@@ -28,6 +28,7 @@ import org.apache.kafka.common.protocol.Errors
 import org.apache.kafka.common.record.Records
 import org.apache.kafka.common.requests.FetchMetadata.{FINAL_EPOCH, INITIAL_EPOCH, INVALID_SESSION_ID}
 import org.apache.kafka.common.requests.{FetchRequest, FetchResponse, FetchMetadata => JFetchMetadata}
+import org.apache.kafka.common.security.auth.KafkaPrincipal
 import org.apache.kafka.common.utils.{ImplicitLinkedHashCollection, Time, Utils}
 
 import scala.math.Ordered.orderingToOrdered
@@ -44,6 +45,12 @@ object FetchSession {
   val NUM_INCREMENTAL_FETCH_PARTITIONS_CACHED = "NumIncrementalFetchPartitionsCached"
   val INCREMENTAL_FETCH_SESSIONS_EVICTIONS_PER_SEC = "IncrementalFetchSessionEvictionsPerSec"
   val EVICTIONS = "evictions"
+  val INCREMENTAL_FETCH_SESSIONS_CREATIONS_PER_SEC = "IncrementalFetchSessionCreationsPerSec"
+  val CREATIONS = "creations"
+  val FULL_FETCH_REQUESTS_PER_SEC = "FullFetchRequestsPerSec"
+  val INCREMENTAL_FETCH_REQUESTS_PER_SEC = "IncrementalFetchRequestsPerSec"
+  val REQUESTS = "requests"
+  val INCREMENTAL_FETCH_REQUEST_RATIO = "IncrementalFetchRequestRatio"
 
   def partitionsToLogString(partitions: util.Collection[TopicPartition], traceEnabled: Boolean): String = {
     if (traceEnabled) {
@@ -196,17 +203,28 @@ class CachedPartition(val topic: String,
   * @param lastUsedMs   The last used time in milliseconds.  This should only be updated by
   *                     FetchSessionCache#touch.
   * @param epoch        The fetch session sequence number.
+  * @param principal    The principal which created this session.
+  *
+  * If the cache tracks the changes to the partitions of privileged sessions, changedPartitions
+  * holds the partitions which changed since the session last read them. It is updated without
+  * the session lock by the threads appending to the partitions.
   */
 class FetchSession(val id: Int,
                    val privileged: Boolean,
                    val partitionMap: FetchSession.CACHE_MAP,
                    val creationMs: Long,
                    var lastUsedMs: Long,
-                   var epoch: Int) {
+                   var epoch: Int,
+                   val principal: KafkaPrincipal = KafkaPrincipal.ANONYMOUS) {
   // This is used by the FetchSessionCache to store the last known size of this session.
   // If this is -1, the Session is not in the cache.
   var cachedSize = -1
 
+  private[server] val changedPartitions: util.Set[TopicPartition] = ConcurrentHashMap.newKeySet[TopicPartition]()
+
+  // The last time all the partitions of the session were read, if the cache tracks their changes.
+  private var lastFullReadMs = creationMs
+
   def size: Int = synchronized {
     partitionMap.size
   }
@@ -229,6 +247,42 @@ class FetchSession(val id: Int,
     Option(partitionMap.find(new CachedPartition(topicPartition))).map(_.fetchOffset)
   }
 
+  /**
+    * Get the partitions which the next request of the session must read if the cache tracks their changes:
+    * the partitions which changed since they were last read and the partitions listed in the request.
+    *
+    * @param now                The current time in milliseconds.
+    * @param fullReadIntervalMs The maximum time between two reads of all the partitions of the session.
+    * @param requested          The partitions listed in the request.
+    * @return                   The partitions to read, or None if all the partitions must be read.
+    */
+  def partitionsToRead(now: Long,
+                       fullReadIntervalMs: Long,
+                       requested: Iterable[TopicPartition]): Option[Seq[(TopicPartition, FetchRequest.PartitionData)]] =
+  synchronized {
+    if (now - lastFullReadMs >= fullReadIntervalMs) {
+      lastFullReadMs = now
+      changedPartitions.clear()
+      None
+    } else {
+      val toRead = new mutable.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+      def read(topicPart: TopicPartition): Unit = {
+        val cachedPart = partitionMap.find(new CachedPartition(topicPart))
+        if (cachedPart != null)
+          toRead.put(topicPart, cachedPart.reqData)
+      }
+      requested.foreach(read)
+      val changedIter = changedPartitions.iterator
+      while (changedIter.hasNext) {
+        val topicPart = changedIter.next()
+        changedIter.remove()
+        if (!toRead.contains(topicPart))
+          read(topicPart)
+      }
+      Some(toRead.toBuffer)
+    }
+  }
+
   type TL = util.ArrayList[TopicPartition]
 
   // Update the cached partition data based on the request.
@@ -280,6 +334,20 @@ trait FetchContext extends Logging {
     */
   def foreachPartition(fun: (TopicPartition, FetchRequest.PartitionData) => Unit): Unit
 
+  /**
+    * Get the partitions which changed since the previous request of the session, along with the partitions
+    * listed in the request. Reading these is enough unless the request has to wait for more data.
+    *
+    * @return The partitions to read, or None if all the partitions of foreachPartition must be read.
+    */
+  def changedPartitions: Option[Seq[(TopicPartition, FetchRequest.PartitionData)]] = None
+
+  /**
+    * Mark partitions as changed, so that the next request of the session reads them again even if they
+    * do not change in the meantime.
+    */
+  def markChanged(partitions: Iterable[TopicPartition]): Unit = {}
+
   /**
     * Get the response size to be used for quota computation. Since we are returning an empty response in case of
     * throttling, we are not supposed to update the context until we know that we are not going to throttle.
@@ -353,12 +421,14 @@ class SessionlessFetchContext(val fetchData: util.Map[TopicPartition, FetchReque
   * @param reqMetadata        The request metadata.
   * @param fetchData          The partition data from the fetch request.
   * @param isFromFollower     True if this fetch request came from a follower.
+  * @param principal          The principal of the fetch request.
   */
 class FullFetchContext(private val time: Time,
                        private val cache: FetchSessionCache,
                        private val reqMetadata: JFetchMetadata,
                        private val fetchData: util.Map[TopicPartition, FetchRequest.PartitionData],
-                       private val isFromFollower: Boolean) extends FetchContext {
+                       private val isFromFollower: Boolean,
+                       private val principal: KafkaPrincipal = KafkaPrincipal.ANONYMOUS) extends FetchContext {
   override def getFetchOffset(part: TopicPartition): Option[Long] =
     Option(fetchData.get(part)).map(_.fetchOffset)
 
@@ -382,7 +452,7 @@ class FullFetchContext(private val time: Time,
       cachedPartitions
     }
     val responseSessionId = cache.maybeCreateSession(time.milliseconds(), isFromFollower,
-        updates.size, () => createNewSession)
+        updates.size, () => createNewSession, principal)
     debug(s"Full fetch context with session id $responseSessionId returning " +
       s"${partitionsToLogString(updates.keySet)}")
     new FetchResponse(Errors.NONE, updates, 0, responseSessionId)
@@ -392,13 +462,18 @@ class FullFetchContext(private val time: Time,
 /**
   * The fetch context for an incremental fetch request.
   *
-  * @param time         The clock to use.
-  * @param reqMetadata  The request metadata.
-  * @param session      The incremental fetch request session.
+  * @param time               The clock to use.
+  * @param reqMetadata        The request metadata.
+  * @param session            The incremental fetch request session.
+  * @param tracksChanges      True if the cache tracks the changes to the partitions of the session.
+  * @param changedPartitions  The partitions to read if reading all of them is not needed.
   */
 class IncrementalFetchContext(private val time: Time,
                               private val reqMetadata: JFetchMetadata,
-                              private val session: FetchSession) extends FetchContext {
+                              private val session: FetchSession,
+                              private val tracksChanges: Boolean = false,
+                              override val changedPartitions: Option[Seq[(TopicPartition, FetchRequest.PartitionData)]] = None)
+    extends FetchContext {
 
   override def getFetchOffset(tp: TopicPartition): Option[Long] = session.getFetchOffset(tp)
 
@@ -411,6 +486,11 @@ class IncrementalFetchContext(private val time: Time,
     }
   }
 
+  override def markChanged(partitions: Iterable[TopicPartition]): Unit = {
+    if (tracksChanges)
+      partitions.foreach(session.changedPartitions.add)
+  }
+
   // Iterator that goes over the given partition map and selects partitions that need to be included in the response.
   // If updateFetchContextAndRemoveUnselected is set to true, the fetch context will be updated for the selected
   // partitions and also remove unselected ones as they are encountered.
@@ -521,11 +601,19 @@ case class EvictableKey(privileged: Boolean, size: Int, id: Int) extends Compara
   * FetchSessionCache lock.  In order to avoid deadlock, the FetchSessionCache lock
   * must never be acquired while an individual FetchSession lock is already held.
   *
-  * @param maxEntries The maximum number of entries that can be in the cache.
-  * @param evictionMs The minimum time that an entry must be unused in order to be evictable.
+  * @param maxEntries                The maximum number of entries that can be in the cache.
+  * @param evictionMs                The minimum time that an entry must be unused in order to be evictable.
+  * @param maxPartitions             The maximum total number of partitions cached by the entries.
+  * @param maxSessionsPerPrincipal   The maximum number of unprivileged entries created by a single principal.
+  * @param fullReadIntervalMs        If positive, the changes to the partitions of privileged entries are tracked
+  *                                  so that their requests only read the changed partitions, and this is the
+  *                                  maximum time between two reads of all the partitions of an entry.
   */
 class FetchSessionCache(private val maxEntries: Int,
-                        private val evictionMs: Long) extends Logging with KafkaMetricsGroup {
+                        private val evictionMs: Long,
+                        private val maxPartitions: Long = Long.MaxValue,
+                        private val maxSessionsPerPrincipal: Int = Int.MaxValue,
+                        val fullReadIntervalMs: Long = 0) extends Logging with KafkaMetricsGroup {
   private var numPartitions: Long = 0
 
   // A map of session ID to FetchSession.
@@ -541,6 +629,13 @@ class FetchSessionCache(private val maxEntries: Int,
   // A map containing sessions which can be evicted by privileged sessions.
   private val evictableByPrivileged = new util.TreeMap[EvictableKey, FetchSession]
 
+  // Maps the principals of unprivileged sessions to the last used times of their sessions.
+  private val lastUsedByPrincipal = new mutable.HashMap[KafkaPrincipal, util.TreeMap[LastUsedKey, FetchSession]]
+
+  // Maps partitions to the sessions tracking their changes. It is only updated with the cache lock held, but
+  // it is read without it by partitionChanged.
+  private val sessionsByPartition = new ConcurrentHashMap[TopicPartition, immutable.Set[FetchSession]]
+
   // Set up metrics.
   removeMetric(FetchSession.NUM_INCREMENTAL_FETCH_SESSISONS)
   newGauge(FetchSession.NUM_INCREMENTAL_FETCH_SESSISONS, () => FetchSessionCache.this.size)
@@ -549,6 +644,21 @@ class FetchSessionCache(private val maxEntries: Int,
   removeMetric(FetchSession.INCREMENTAL_FETCH_SESSIONS_EVICTIONS_PER_SEC)
   private[server] val evictionsMeter = newMeter(FetchSession.INCREMENTAL_FETCH_SESSIONS_EVICTIONS_PER_SEC,
     FetchSession.EVICTIONS, TimeUnit.SECONDS, Map.empty)
+  removeMetric(FetchSession.INCREMENTAL_FETCH_SESSIONS_CREATIONS_PER_SEC)
+  private[server] val creationsMeter = newMeter(FetchSession.INCREMENTAL_FETCH_SESSIONS_CREATIONS_PER_SEC,
+    FetchSession.CREATIONS, TimeUnit.SECONDS, Map.empty)
+  removeMetric(FetchSession.FULL_FETCH_REQUESTS_PER_SEC)
+  private[server] val fullFetchRequestsMeter = newMeter(FetchSession.FULL_FETCH_REQUESTS_PER_SEC,
+    FetchSession.REQUESTS, TimeUnit.SECONDS, Map.empty)
+  removeMetric(FetchSession.INCREMENTAL_FETCH_REQUESTS_PER_SEC)
+  private[server] val incrementalFetchRequestsMeter = newMeter(FetchSession.INCREMENTAL_FETCH_REQUESTS_PER_SEC,
+    FetchSession.REQUESTS, TimeUnit.SECONDS, Map.empty)
+  removeMetric(FetchSession.INCREMENTAL_FETCH_REQUEST_RATIO)
+  newGauge(FetchSession.INCREMENTAL_FETCH_REQUEST_RATIO, () => {
+    val incrementalRate = incrementalFetchRequestsMeter.oneMinuteRate
+    val totalRate = incrementalRate + fullFetchRequestsMeter.oneMinuteRate
+    if (totalRate == 0) 0.0 else incrementalRate / totalRate
+  })
 
   /**
     * Get a session by session ID.
@@ -587,6 +697,58 @@ class FetchSessionCache(private val maxEntries: Int,
     id
   }
 
+  /**
+    * True if the changes to the partitions of the session are tracked.
+    */
+  def tracksChanges(session: FetchSession): Boolean = fullReadIntervalMs > 0 && session.privileged
+
+  /**
+    * Start tracking the changes to some partitions of a session.
+    */
+  def trackPartitions(session: FetchSession, partitions: Iterable[TopicPartition]): Unit = synchronized {
+    if (tracksChanges(session)) {
+      partitions.foreach { topicPart =>
+        val tracking = sessionsByPartition.get(topicPart)
+        sessionsByPartition.put(topicPart, if (tracking == null) immutable.Set(session) else tracking + session)
+      }
+    }
+  }
+
+  /**
+    * Stop tracking the changes to some partitions of a session.
+    */
+  def untrackPartitions(session: FetchSession, partitions: Iterable[TopicPartition]): Unit = synchronized {
+    if (tracksChanges(session)) {
+      partitions.foreach { topicPart =>
+        val tracking = sessionsByPartition.get(topicPart)
+        if (tracking != null) {
+          val remaining = tracking - session
+          if (remaining.isEmpty)
+            sessionsByPartition.remove(topicPart)
+          else
+            sessionsByPartition.put(topicPart, remaining)
+        }
+      }
+    }
+  }
+
+  /**
+    * Record that a partition was appended to, that its high watermark changed or that its leadership, replica
+    * or log directory state changed. This does not take the cache lock, since it is called by every append.
+    */
+  def partitionChanged(topicPart: TopicPartition): Unit = {
+    val tracking = sessionsByPartition.get(topicPart)
+    if (tracking != null)
+      tracking.foreach(_.changedPartitions.add(topicPart))
+  }
+
+  /**
+    * Get the number of unprivileged entries created by a principal.
+    */
+  def sessionsOf(principal: KafkaPrincipal): Int = synchronized {
+    lastUsedByPrincipal.get(principal).map(_.size).getOrElse(0)
+  }
+
   /**
     * Try to create a new session.
     *
@@ -594,22 +756,26 @@ class FetchSessionCache(private val maxEntries: Int,
     * @param privileged         True if the new entry we are trying to create is privileged.
     * @param size               The number of cached partitions in the new entry we are trying to create.
     * @param createPartitions   A callback function which creates the map of cached partitions.
+    * @param principal          The principal creating the new entry.
     * @return                   If we created a session, the ID; INVALID_SESSION_ID otherwise.
     */
   def maybeCreateSession(now: Long,
                          privileged: Boolean,
                          size: Int,
-                         createPartitions: () => FetchSession.CACHE_MAP): Int =
+                         createPartitions: () => FetchSession.CACHE_MAP,
+                         principal: KafkaPrincipal = KafkaPrincipal.ANONYMOUS): Int =
   synchronized {
     // If there is room, create a new session entry.
-    if ((sessions.size < maxEntries) ||
-        tryEvict(privileged, EvictableKey(privileged, size, 0), now)) {
+    if (hasRoom(privileged, size, principal) ||
+        tryEvict(privileged, EvictableKey(privileged, size, 0), now, principal)) {
       val partitionMap = createPartitions()
       val session = new FetchSession(newSessionId(), privileged, partitionMap,
-          now, now, JFetchMetadata.nextEpoch(INITIAL_EPOCH))
+          now, now, JFetchMetadata.nextEpoch(INITIAL_EPOCH), principal)
       debug(s"Created fetch session ${session.toString}")
       sessions.put(session.id, session)
       touch(session, now)
+      trackPartitions(session, partitionNames(session))
+      creationsMeter.mark()
       session.id
     } else {
       debug(s"No fetch session created for privileged=$privileged, size=$size.")
@@ -618,47 +784,115 @@ class FetchSessionCache(private val maxEntries: Int,
   }
 
   /**
-    * Try to evict an entry from the session cache.
+    * True if a session which was just updated still fits in the partitions of the cache. A session which did
+    * not grow always fits, since the partitions it had were already accounted for.
+    *
+    * @param session  The session, whose lock must be held.
+    */
+  def hasRoomForUpdate(session: FetchSession): Boolean = synchronized {
+    val size = session.size
+    size <= session.cachedSize || numPartitions - session.cachedSize + size <= maxPartitions
+  }
+
+  private def hasRoom(privileged: Boolean, size: Int, principal: KafkaPrincipal): Boolean = {
+    sessions.size < maxEntries && numPartitions + size <= maxPartitions &&
+      (privileged || sessionsOf(principal) < maxSessionsPerPrincipal)
+  }
+
+  /**
+    * Try to evict entries from the session cache to make room for a new entry. Either enough entries
+    * are evicted for the new entry to fit in the number of entries and partitions of the cache, or none is.
     *
     * A proposed new element A may evict an existing element B if:
     * 1. A is privileged and B is not, or
     * 2. B is considered "stale" because it has been inactive for a long time, or
     * 3. A contains more partitions than B, and B is not recently created.
     *
+    * Stale entries are evicted first, then the least valuable entries. Since the value of an entry
+    * is its number of partitions, a large entry may evict several smaller ones to fit in the partitions
+    * of the cache. If A is unprivileged and its principal already has the maximum number of entries,
+    * the least recently used entry of the principal must be stale for A to be created, so that the
+    * clients of a principal do not evict the entries of other principals.
+    *
     * @param privileged True if the new entry we would like to add is privileged.
     * @param key        The EvictableKey for the new entry we would like to add.
     * @param now        The current time in milliseconds.
-    * @return           True if an entry was evicted; false otherwise.
+    * @param principal  The principal creating the new entry.
+    * @return           True if entries were evicted to make room for the new entry; false otherwise.
     */
-  def tryEvict(privileged: Boolean, key: EvictableKey, now: Long): Boolean = synchronized {
-    // Try to evict an entry which is stale.
-    val lastUsedEntry = lastUsed.firstEntry
-    if (lastUsedEntry == null) {
-      trace("There are no cache entries to evict.")
+  def tryEvict(privileged: Boolean, key: EvictableKey, now: Long,
+               principal: KafkaPrincipal = KafkaPrincipal.ANONYMOUS): Boolean = synchronized {
+    val evicted = new mutable.LinkedHashSet[FetchSession]
+    var evictedPartitions = 0L
+    var evictedOfPrincipal = 0
+    def evict(session: FetchSession): Unit = {
+      evicted += session
+      evictedPartitions += session.cachedSize
+      if (!session.privileged && session.principal == principal)
+        evictedOfPrincipal += 1
+    }
+    def fits: Boolean = {
+      sessions.size - evicted.size < maxEntries && numPartitions - evictedPartitions + key.size <= maxPartitions &&
+        (privileged || sessionsOf(principal) - evictedOfPrincipal < maxSessionsPerPrincipal)
+    }
+
+    // If the principal has the maximum number of entries, only its least recently used entry can make room
+    // for the new entry, provided that it is stale.
+    val principalLimitReached = !privileged && sessionsOf(principal) >= maxSessionsPerPrincipal
+    val principalEntry = if (principalLimitReached) lastUsedByPrincipal.get(principal).map(_.firstEntry).orNull else null
+
+    if (key.size > maxPartitions) {
+      trace(s"Can't make room for ${key.toString}, which exceeds the maximum number of cached partitions.")
+      false
+    } else if (principalLimitReached && (principalEntry == null || now - principalEntry.getKey.lastUsedMs <= evictionMs)) {
+      trace(s"Principal $principal already has $maxSessionsPerPrincipal sessions, none of which is stale.")
       false
-    } else if (now - lastUsedEntry.getKey.lastUsedMs > evictionMs) {
-      val session = lastUsedEntry.getValue
-      trace(s"Evicting stale FetchSession ${session.id}.")
-      remove(session)
-      evictionsMeter.mark()
-      true
     } else {
-      // If there are no stale entries, check the first evictable entry.
-      // If it is less valuable than our proposed entry, evict it.
-      val map = if (privileged) evictableByPrivileged else evictableByAll
-      val evictableEntry = map.firstEntry
-      if (evictableEntry == null) {
-        trace("No evictable entries found.")
-        false
-      } else if (key.compareTo(evictableEntry.getKey) < 0) {
-        trace(s"Can't evict ${evictableEntry.getKey} with ${key.toString}")
-        false
+      if (principalEntry != null) {
+        trace(s"Evicting stale FetchSession ${principalEntry.getValue.id} of principal $principal.")
+        evict(principalEntry.getValue)
+      }
+      val staleEntries = lastUsed.entrySet.iterator
+      val evictableEntries = (if (privileged) evictableByPrivileged else evictableByAll).entrySet.iterator
+      var found = true
+      while (found && !fits) {
+        var candidate: FetchSession = null
+        // Try to evict an entry which is stale.
+        while (candidate == null && staleEntries.hasNext) {
+          val entry = staleEntries.next()
+          if (now - entry.getKey.lastUsedMs <= evictionMs) {
+            while (staleEntries.hasNext) staleEntries.next()
+          } else if (!evicted.contains(entry.getValue)) {
+            trace(s"Evicting stale FetchSession ${entry.getValue.id}.")
+            candidate = entry.getValue
+          }
+        }
+        // If there are no stale entries, check the next evictable entry.
+        // If it is less valuable than our proposed entry, evict it.
+        while (candidate == null && evictableEntries.hasNext) {
+          val entry = evictableEntries.next()
+          if (key.compareTo(entry.getKey) < 0) {
+            trace(s"Can't evict ${entry.getKey} with ${key.toString}")
+            while (evictableEntries.hasNext) evictableEntries.next()
+          } else if (!evicted.contains(entry.getValue)) {
+            trace(s"Evicting ${entry.getKey} with ${key.toString}.")
+            candidate = entry.getValue
+          }
+        }
+        if (candidate == null)
+          found = false
+        else
+          evict(candidate)
+      }
+      if (found) {
+        evicted.foreach { session =>
+          remove(session)
+          evictionsMeter.mark()
+        }
       } else {
-        trace(s"Evicting ${evictableEntry.getKey} with ${key.toString}.")
-        remove(evictableEntry.getValue)
-        evictionsMeter.mark()
-        true
+        trace(s"Not enough evictable entries found for ${key.toString}.")
       }
+      found
     }
   }
 
@@ -679,6 +913,13 @@ class FetchSessionCache(private val maxEntries: Int,
   def remove(session: FetchSession): Option[FetchSession] = synchronized {
     val evictableKey = session.synchronized {
       lastUsed.remove(session.lastUsedKey)
+      if (!session.privileged) {
+        lastUsedByPrincipal.get(session.principal).foreach { principalLastUsed =>
+          principalLastUsed.remove(session.lastUsedKey)
+          if (principalLastUsed.isEmpty)
+            lastUsedByPrincipal.remove(session.principal)
+        }
+      }
       session.evictableKey
     }
     evictableByAll.remove(evictableKey)
@@ -686,10 +927,15 @@ class FetchSessionCache(private val maxEntries: Int,
     val removeResult = sessions.remove(session.id)
     if (removeResult.isDefined) {
       numPartitions = numPartitions - session.cachedSize
+      untrackPartitions(session, partitionNames(session))
     }
     removeResult
   }
 
+  private def partitionNames(session: FetchSession): Seq[TopicPartition] = session.synchronized {
+    session.partitionMap.iterator.asScala.map(part => new TopicPartition(part.topic, part.partition)).toBuffer
+  }
+
   /**
     * Update a session's position in the lastUsed and evictable trees.
     *
@@ -698,10 +944,14 @@ class FetchSessionCache(private val maxEntries: Int,
     */
   def touch(session: FetchSession, now: Long): Unit = synchronized {
     session.synchronized {
-      // Update the lastUsed map.
+      // Update the lastUsed maps.
+      val principalLastUsed = if (session.privileged) None
+        else Some(lastUsedByPrincipal.getOrElseUpdate(session.principal, new util.TreeMap[LastUsedKey, FetchSession]))
       lastUsed.remove(session.lastUsedKey)
+      principalLastUsed.foreach(_.remove(session.lastUsedKey))
       session.lastUsedMs = now
       lastUsed.put(session.lastUsedKey, session)
+      principalLastUsed.foreach(_.put(session.lastUsedKey, session))
 
       val oldSize = session.cachedSize
       if (oldSize != -1) {
@@ -728,8 +978,10 @@ class FetchManager(private val time: Time,
   def newContext(reqMetadata: JFetchMetadata,
                  fetchData: FetchSession.REQ_MAP,
                  toForget: util.List[TopicPartition],
-                 isFollower: Boolean): FetchContext = {
+                 isFollower: Boolean,
+                 principal: KafkaPrincipal = KafkaPrincipal.ANONYMOUS): FetchContext = {
     val context = if (reqMetadata.isFull) {
+      cache.fullFetchRequestsMeter.mark()
       var removedFetchSessionStr = ""
       if (reqMetadata.sessionId != INVALID_SESSION_ID) {
         // Any session specified in a FULL fetch request will be closed.
@@ -743,7 +995,7 @@ class FetchManager(private val time: Time,
         suffix = " Will not try to create a new session."
         new SessionlessFetchContext(fetchData)
       } else {
-        new FullFetchContext(time, cache, reqMetadata, fetchData, isFollower)
+        new FullFetchContext(time, cache, reqMetadata, fetchData, isFollower, principal)
       }
       debug(s"Created a new full FetchContext with ${partitionsToLogString(fetchData.keySet)}."+
         s"${removedFetchSessionStr}${suffix}")
@@ -762,12 +1014,20 @@ class FetchManager(private val time: Time,
               new SessionErrorContext(Errors.INVALID_FETCH_SESSION_EPOCH, reqMetadata)
             } else {
               val (added, updated, removed) = session.update(fetchData, toForget, reqMetadata)
+              cache.trackPartitions(session, added.asScala)
+              cache.untrackPartitions(session, removed.asScala)
               if (session.isEmpty) {
                 debug(s"Created a new sessionless FetchContext and closing session id ${session.id}, " +
                   s"epoch ${session.epoch}: after removing ${partitionsToLogString(removed)}, " +
                   s"there are no more partitions left.")
                 cache.remove(session)
                 new SessionlessFetchContext(fetchData)
+              } else if (!cache.hasRoomForUpdate(session)) {
+                // The client starts over with a full fetch request, which may evict other sessions to fit.
+                debug(s"Session error for ${reqMetadata.sessionId}: after adding ${partitionsToLogString(added)}, " +
+                  s"the session does not fit in the maximum number of cached partitions.")
+                cache.remove(session)
+                new SessionErrorContext(Errors.FETCH_SESSION_ID_NOT_FOUND, reqMetadata)
               } else {
                 cache.touch(session, time.milliseconds())
                 session.epoch = JFetchMetadata.nextEpoch(session.epoch)
@@ -775,7 +1035,14 @@ class FetchManager(private val time: Time,
                   s"epoch ${session.epoch}: added ${partitionsToLogString(added)}, " +
                   s"updated ${partitionsToLogString(updated)}, " +
                   s"removed ${partitionsToLogString(removed)}")
-                new IncrementalFetchContext(time, reqMetadata, session)
+                cache.incrementalFetchRequestsMeter.mark()
+                if (cache.tracksChanges(session)) {
+                  val changedPartitions = session.partitionsToRead(time.milliseconds(), cache.fullReadIntervalMs,
+                    added.asScala ++ updated.asScala)
+                  new IncrementalFetchContext(time, reqMetadata, session, true, changedPartitions)
+                } else {
+                  new IncrementalFetchContext(time, reqMetadata, session)
+                }
               }
             }
           }
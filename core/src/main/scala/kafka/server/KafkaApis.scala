@@ -598,7 +598,8 @@ class KafkaApis(val requestChannel: RequestChannel,
       fetchRequest.metadata,
       fetchRequest.fetchData,
       fetchRequest.toForget,
-      fetchRequest.isFromFollower)
+      fetchRequest.isFromFollower,
+      request.context.principal)
 
     val clientMetadata: Option[ClientMetadata] = if (versionId >= 11) {
       // Fetch API version 11 added preferred replica logic
@@ -619,14 +620,41 @@ class KafkaApis(val requestChannel: RequestChannel,
 
     val erroneous = mutable.ArrayBuffer[(TopicPartition, FetchResponse.PartitionData[Records])]()
     val interesting = mutable.ArrayBuffer[(TopicPartition, FetchRequest.PartitionData)]()
+    // If only the changed partitions of the session are read, the other partitions are only checked and read if the
+    // changed ones do not have enough data to answer the request without waiting
+    var readChangedOnly = false
+    var remainingInteresting: () => Seq[(TopicPartition, FetchRequest.PartitionData)] = () => Seq.empty
     if (fetchRequest.isFromFollower) {
       // The follower must have ClusterAction on ClusterResource in order to fetch partition data.
       if (authorize(request, CLUSTER_ACTION, CLUSTER, CLUSTER_NAME)) {
-        fetchContext.foreachPartition { (topicPartition, data) =>
+        def checkPartition(topicPartition: TopicPartition,
+                           data: FetchRequest.PartitionData,
+                           readable: mutable.ArrayBuffer[(TopicPartition, FetchRequest.PartitionData)]): Unit = {
           if (!metadataCache.contains(topicPartition))
             erroneous += topicPartition -> errorResponse(Errors.UNKNOWN_TOPIC_OR_PARTITION)
           else
-            interesting += (topicPartition -> data)
+            readable += (topicPartition -> data)
+        }
+        fetchContext.changedPartitions match {
+          case Some(changedPartitions) =>
+            readChangedOnly = true
+            val changed = new util.HashSet[TopicPartition]
+            changedPartitions.foreach { case (topicPartition, data) =>
+              changed.add(topicPartition)
+              checkPartition(topicPartition, data, interesting)
+            }
+            remainingInteresting = () => {
+              val remaining = mutable.ArrayBuffer[(TopicPartition, FetchRequest.PartitionData)]()
+              fetchContext.foreachPartition { (topicPartition, data) =>
+                if (!changed.contains(topicPartition))
+                  checkPartition(topicPartition, data, remaining)
+              }
+              remaining
+            }
+          case None =>
+            fetchContext.foreachPartition { (topicPartition, data) =>
+              checkPartition(topicPartition, data, interesting)
+            }
         }
       } else {
         fetchContext.foreachPartition { (part, _) =>
@@ -757,6 +785,11 @@ class KafkaApis(val requestChannel: RequestChannel,
       }
 
       if (fetchRequest.isFromFollower) {
+        // Partitions which failed or whose records were withheld are read again by the next request of the
+        // session even if they do not change in the meantime.
+        fetchContext.markChanged(responsePartitionData.collect {
+          case (tp, data) if data.error != Errors.NONE || data.recordsWithheld => tp
+        } ++ erroneous.map(_._1))
         // We've already evaluated against the quota and are good to go. Just need to record it now.
         unconvertedFetchResponse = fetchContext.updateAndGenerateResponseData(partitions)
         val responseSize = sizeOfThrottledPartitions(versionId, unconvertedFetchResponse, quotas.leader)
@@ -802,7 +835,7 @@ class KafkaApis(val requestChannel: RequestChannel,
 
     val fetchMaxBytes = Math.min(fetchRequest.maxBytes, config.fetchMaxBytes)
     val fetchMinBytes = Math.min(fetchRequest.minBytes, fetchMaxBytes)
-    if (interesting.isEmpty)
+    if (interesting.isEmpty && !readChangedOnly)
       processResponseCallback(Seq.empty)
     else {
       // call the replica manager to fetch messages from the local replica
@@ -816,7 +849,8 @@ class KafkaApis(val requestChannel: RequestChannel,
         replicationQuota(fetchRequest),
         processResponseCallback,
         fetchRequest.isolationLevel,
-        clientMetadata)
+        clientMetadata,
+        remainingInteresting)
     }
   }
 
@@ -1127,7 +1161,7 @@ class KafkaApis(val requestChannel: RequestChannel,
     // In versions 5 and below, we returned LEADER_NOT_AVAILABLE if a matching listener was not found on the leader.
     // From version 6 onwards, we return LISTENER_NOT_FOUND to enable diagnosis of configuration errors.
     val errorUnavailableListeners = requestVersion >= 6
-    val topicMetadata =
+    var topicMetadata =
       if (authorizedTopics.isEmpty)
         Seq.empty[MetadataResponse.TopicMetadata]
       else
@@ -1144,10 +1178,10 @@ class KafkaApis(val requestChannel: RequestChannel,
           clusterAuthorizedOperations = 0
       }
 
-      // get topic authorized operations
+      // get topic authorized operations, copying the topic metadata which is shared with other requests
       if (metadataRequest.data.includeTopicAuthorizedOperations) {
-        topicMetadata.foreach { topicData =>
-          topicData.authorizedOperations(authorizedOperations(request, new Resource(ResourceType.TOPIC, topicData.topic)))
+        topicMetadata = topicMetadata.map { topicData =>
+          topicData.withAuthorizedOperations(authorizedOperations(request, new Resource(ResourceType.TOPIC, topicData.topic)))
         }
       }
     }
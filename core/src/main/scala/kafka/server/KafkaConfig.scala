@@ -24,10 +24,13 @@ import kafka.api.{ApiVersion, ApiVersionValidator, KAFKA_0_10_0_IV1, KAFKA_2_1_I
 import kafka.cluster.EndPoint
 import kafka.coordinator.group.OffsetConfig
 import kafka.coordinator.transaction.{TransactionLog, TransactionStateManager}
+import kafka.log.OffsetMap
 import kafka.message.{BrokerCompressionCodec, CompressionCodec, ZStdCompressionCodec}
+import kafka.network.RequestClass
 import kafka.security.authorizer.AuthorizerUtils
 import kafka.utils.CoreUtils
 import kafka.utils.Implicits._
+import kafka.utils.timer.Timer
 import org.apache.kafka.clients.CommonClientConfigs
 import org.apache.kafka.common.Reconfigurable
 import org.apache.kafka.common.config.SecurityConfig
@@ -36,7 +39,7 @@ import org.apache.kafka.common.config.internals.BrokerSecurityConfigs
 import org.apache.kafka.common.config.types.Password
 import org.apache.kafka.common.config.{AbstractConfig, ConfigDef, ConfigException, SaslConfigs, SslClientAuth, SslConfigs, TopicConfig}
 import org.apache.kafka.common.metrics.Sensor
-import org.apache.kafka.common.network.ListenerName
+import org.apache.kafka.common.network.{ListenerName, SslTransportLayer}
 import org.apache.kafka.common.record.{LegacyRecord, Records, TimestampType}
 import org.apache.kafka.common.security.auth.SecurityProtocol
 import org.apache.kafka.common.utils.Utils
@@ -67,6 +70,7 @@ object Defaults {
   val NumIoThreads = 8
   val BackgroundThreads = 10
   val QueuedMaxRequests = 500
+  val QueuedRequestWeights = ""
   val QueuedMaxRequestBytes = -1
 
   /************* Authorizer Configuration ***********/
@@ -114,8 +118,16 @@ object Defaults {
   val LogCleanerDeleteRetentionMs = 24 * 60 * 60 * 1000L
   val LogCleanerMinCompactionLagMs = 0L
   val LogCleanerMaxCompactionLagMs = Long.MaxValue
+  val LogCleanerOffsetMapType = OffsetMap.SkimpyOffsetMapType
+  val LogCleanerOffsetMapOffHeapEnable = false
+  val LogCleanerThreadsPerLog = 1
+  val LogCleanerIncrementalEnable = false
+  val LogCleanerIncrementalMinDeadRatio = 0.5
+  val LogCleanerIoAdaptiveEnable = false
+  val LogCleanerIoMinBytesPerSecond = 1024 * 1024D
   val LogIndexSizeMaxBytes = 10 * 1024 * 1024
   val LogIndexIntervalBytes = 4096
+  val LogIndexTwoLevelLookupEnable = false
   val LogFlushIntervalMessages = Long.MaxValue
   val LogDeleteDelayMs = 60000
   val LogFlushSchedulerIntervalMs = Long.MaxValue
@@ -127,6 +139,8 @@ object Defaults {
   val LogMessageTimestampType = "CreateTime"
   val LogMessageTimestampDifferenceMaxMs = Long.MaxValue
   val NumRecoveryThreadsPerDataDir = 1
+  val NumSegmentRecoveryThreadsPerDataDir = 1
+  val LogSegmentLazyOpenMaxSegments = 0
   val AutoCreateTopicsEnable = true
   val MinInSyncReplicas = 1
   val MessageDownConversionEnable = true
@@ -148,6 +162,8 @@ object Defaults {
   val FetchPurgatoryPurgeIntervalRequests = 1000
   val ProducerPurgatoryPurgeIntervalRequests = 1000
   val DeleteRecordsPurgatoryPurgeIntervalRequests = 1
+  val PurgatoryWatcherShards = 512
+  val PurgatoryTimerType = Timer.SystemTimerType
   val AutoLeaderRebalanceEnable = true
   val LeaderImbalancePerBrokerPercentage = 10
   val LeaderImbalanceCheckIntervalSeconds = 300
@@ -169,6 +185,7 @@ object Defaults {
   /** ********* Offset management configuration ***********/
   val OffsetMetadataMaxSize = OffsetConfig.DefaultMaxMetadataSize
   val OffsetsLoadBufferSize = OffsetConfig.DefaultLoadBufferSize
+  val OffsetsLoadThreads = OffsetConfig.DefaultLoadThreads
   val OffsetsTopicReplicationFactor = OffsetConfig.DefaultOffsetsTopicReplicationFactor
   val OffsetsTopicPartitions: Int = OffsetConfig.DefaultOffsetsTopicNumPartitions
   val OffsetsTopicSegmentBytes: Int = OffsetConfig.DefaultOffsetsTopicSegmentBytes
@@ -191,7 +208,12 @@ object Defaults {
 
   /** ********* Fetch Configuration **************/
   val MaxIncrementalFetchSessionCacheSlots = 1000
+  val MaxIncrementalFetchSessionCachePartitions = Int.MaxValue
+  val MaxIncrementalFetchSessionsPerPrincipal = Int.MaxValue
+  val IncrementalFetchSessionFullReadIntervalMs = 0L
   val FetchMaxBytes = 55 * 1024 * 1024
+  val FetchReadAheadBytes = 0
+  val NumFetchReadAheadThreads = 1
 
   /** ********* Quota Configuration ***********/
   val ProducerQuotaBytesPerSecondDefault = ClientQuotaManagerConfig.QuotaBytesPerSecondDefault
@@ -233,6 +255,8 @@ object Defaults {
   val SslClientAuthentication = SslClientAuth.NONE.name().toLowerCase(Locale.ROOT)
   val SslClientAuthenticationValidValues = SslClientAuth.VALUES.asScala.map(v => v.toString().toLowerCase(Locale.ROOT)).asJava.toArray(new Array[String](0))
   val SslPrincipalMappingRules = BrokerSecurityConfigs.DEFAULT_SSL_PRINCIPAL_MAPPING_RULES
+  val SslFileTransferMode = BrokerSecurityConfigs.DEFAULT_SSL_FILE_TRANSFER_MODE
+  val SslFileTransferModeValidValues = SslTransportLayer.FileTransferMode.values.map(_.name.toLowerCase(Locale.ROOT))
 
     /** ********* General Security configuration ***********/
   val ConnectionsMaxReauthMsDefault = 0L
@@ -342,6 +366,7 @@ object KafkaConfig {
   val BackgroundThreadsProp = "background.threads"
   val NumReplicaAlterLogDirsThreadsProp = "num.replica.alter.log.dirs.threads"
   val QueuedMaxRequestsProp = "queued.max.requests"
+  val QueuedRequestWeightsProp = "queued.request.weights"
   val QueuedMaxBytesProp = "queued.max.request.bytes"
   val RequestTimeoutMsProp = CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG
   /************* Authorizer Configuration ***********/
@@ -395,8 +420,16 @@ object KafkaConfig {
   val LogCleanerDeleteRetentionMsProp = "log.cleaner.delete.retention.ms"
   val LogCleanerMinCompactionLagMsProp = "log.cleaner.min.compaction.lag.ms"
   val LogCleanerMaxCompactionLagMsProp = "log.cleaner.max.compaction.lag.ms"
+  val LogCleanerOffsetMapTypeProp = "log.cleaner.offset.map.type"
+  val LogCleanerOffsetMapOffHeapEnableProp = "log.cleaner.offset.map.off.heap.enable"
+  val LogCleanerThreadsPerLogProp = "log.cleaner.threads.per.log"
+  val LogCleanerIncrementalEnableProp = "log.cleaner.incremental.enable"
+  val LogCleanerIncrementalMinDeadRatioProp = "log.cleaner.incremental.min.dead.ratio"
+  val LogCleanerIoAdaptiveEnableProp = "log.cleaner.io.adaptive.enable"
+  val LogCleanerIoMinBytesPerSecondProp = "log.cleaner.io.min.bytes.per.second"
   val LogIndexSizeMaxBytesProp = "log.index.size.max.bytes"
   val LogIndexIntervalBytesProp = "log.index.interval.bytes"
+  val LogIndexTwoLevelLookupEnableProp = "log.index.two.level.lookup.enable"
   val LogFlushIntervalMessagesProp = "log.flush.interval.messages"
   val LogDeleteDelayMsProp = "log.segment.delete.delay.ms"
   val LogFlushSchedulerIntervalMsProp = "log.flush.scheduler.interval.ms"
@@ -409,6 +442,8 @@ object KafkaConfig {
   val LogMessageTimestampDifferenceMaxMsProp = LogConfigPrefix + "message.timestamp.difference.max.ms"
   val LogMaxIdMapSnapshotsProp = LogConfigPrefix + "max.id.map.snapshots"
   val NumRecoveryThreadsPerDataDirProp = "num.recovery.threads.per.data.dir"
+  val NumSegmentRecoveryThreadsPerDataDirProp = "num.segment.recovery.threads.per.data.dir"
+  val LogSegmentLazyOpenMaxSegmentsProp = "log.segment.lazy.open.max.segments"
   val AutoCreateTopicsEnableProp = "auto.create.topics.enable"
   val MinInSyncReplicasProp = "min.insync.replicas"
   val CreateTopicPolicyClassNameProp = "create.topic.policy.class.name"
@@ -430,6 +465,8 @@ object KafkaConfig {
   val FetchPurgatoryPurgeIntervalRequestsProp = "fetch.purgatory.purge.interval.requests"
   val ProducerPurgatoryPurgeIntervalRequestsProp = "producer.purgatory.purge.interval.requests"
   val DeleteRecordsPurgatoryPurgeIntervalRequestsProp = "delete.records.purgatory.purge.interval.requests"
+  val PurgatoryWatcherShardsProp = "purgatory.watcher.shards"
+  val PurgatoryTimerTypeProp = "purgatory.timer.type"
   val AutoLeaderRebalanceEnableProp = "auto.leader.rebalance.enable"
   val LeaderImbalancePerBrokerPercentageProp = "leader.imbalance.per.broker.percentage"
   val LeaderImbalanceCheckIntervalSecondsProp = "leader.imbalance.check.interval.seconds"
@@ -450,6 +487,7 @@ object KafkaConfig {
   /** ********* Offset management configuration ***********/
   val OffsetMetadataMaxSizeProp = "offset.metadata.max.bytes"
   val OffsetsLoadBufferSizeProp = "offsets.load.buffer.size"
+  val OffsetsLoadThreadsProp = "offsets.load.threads"
   val OffsetsTopicReplicationFactorProp = "offsets.topic.replication.factor"
   val OffsetsTopicPartitionsProp = "offsets.topic.num.partitions"
   val OffsetsTopicSegmentBytesProp = "offsets.topic.segment.bytes"
@@ -471,7 +509,12 @@ object KafkaConfig {
 
   /** ********* Fetch Configuration **************/
   val MaxIncrementalFetchSessionCacheSlots = "max.incremental.fetch.session.cache.slots"
+  val MaxIncrementalFetchSessionCachePartitions = "max.incremental.fetch.session.cache.partitions"
+  val MaxIncrementalFetchSessionsPerPrincipal = "max.incremental.fetch.sessions.per.principal"
+  val IncrementalFetchSessionFullReadIntervalMsProp = "incremental.fetch.session.full.read.interval.ms"
   val FetchMaxBytes = "fetch.max.bytes"
+  val FetchReadAheadBytesProp = "fetch.read.ahead.bytes"
+  val NumFetchReadAheadThreadsProp = "num.fetch.read.ahead.threads"
 
   /** ********* Quota Configuration ***********/
   val ProducerQuotaBytesPerSecondDefaultProp = "quota.producer.default"
@@ -486,6 +529,8 @@ object KafkaConfig {
 
   val DeleteTopicEnableProp = "delete.topic.enable"
   val CompressionTypeProp = "compression.type"
+  val CompressionLevelProp = "compression.level"
+  val ZstdDictionaryDirProp = "compression.zstd.dictionary.dir"
 
   /** ********* Kafka Metrics Configuration ***********/
   val MetricSampleWindowMsProp = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG
@@ -520,6 +565,7 @@ object KafkaConfig {
   val SslSecureRandomImplementationProp = SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_CONFIG
   val SslClientAuthProp = BrokerSecurityConfigs.SSL_CLIENT_AUTH_CONFIG
   val SslPrincipalMappingRulesProp = BrokerSecurityConfigs.SSL_PRINCIPAL_MAPPING_RULES_CONFIG
+  val SslFileTransferModeProp = BrokerSecurityConfigs.SSL_FILE_TRANSFER_MODE_CONFIG
 
   /** ********* SASL Configuration ****************/
   val SaslMechanismInterBrokerProtocolProp = "sasl.mechanism.inter.broker.protocol"
@@ -614,6 +660,12 @@ object KafkaConfig {
   val NumReplicaAlterLogDirsThreadsDoc = "The number of threads that can move replicas between log directories, which may include disk I/O"
   val BackgroundThreadsDoc = "The number of threads to use for various background processing tasks"
   val QueuedMaxRequestsDoc = "The number of queued requests allowed for data-plane, before blocking the network threads"
+  val QueuedRequestWeightsDoc = "The weights of the classes of data-plane requests when dequeuing requests for the request " +
+  s"handler threads, as a comma separated list of class:weight pairs. The classes are ${RequestClass.values.mkString(", ")}. " +
+  "Requests of each class are queued separately, and the classes with queued requests are served in proportion to their " +
+  "weights, so that a backlog of requests of one class does not delay all the others. Classes without a weight get a weight " +
+  "of 1. When empty, requests are served in the order they were received. For example, " +
+  "<code>replication:8,produce:4,consumer.fetch:4,coordinator:2,admin:1</code>."
   val QueuedMaxRequestBytesDoc = "The number of queued bytes allowed before no more requests are read"
   val RequestTimeoutMsDoc = CommonClientConfigs.REQUEST_TIMEOUT_MS_DOC
   /************* Authorizer Configuration ***********/
@@ -728,8 +780,35 @@ object KafkaConfig {
   val LogCleanerDeleteRetentionMsDoc = "How long are delete records retained?"
   val LogCleanerMinCompactionLagMsDoc = "The minimum time a message will remain uncompacted in the log. Only applicable for logs that are being compacted."
   val LogCleanerMaxCompactionLagMsDoc = "The maximum time a message will remain ineligible for compaction in the log. Only applicable for logs that are being compacted."
+  val LogCleanerOffsetMapTypeDoc = "The map of the latest offsets of the keys used for log deduplication. The " +
+    "\"" + OffsetMap.SkimpyOffsetMapType + "\" map stores the MD5 hash of every key with its offset in 24 bytes. The " +
+    "\"" + OffsetMap.CompactOffsetMapType + "\" map uses a faster non-cryptographic hash and stores every key in 16 bytes, " +
+    s"so that more keys are deduplicated in every pass with the same $LogCleanerDedupeBufferSizeProp."
+  val LogCleanerOffsetMapOffHeapEnableDoc = "Store the \"" + OffsetMap.CompactOffsetMapType + "\" offset maps of the log " +
+    "cleaner threads off-heap rather than in the heap of the broker."
+  val LogCleanerThreadsPerLogDoc = "The number of threads used by each log cleaner thread to clean the segments of a " +
+    s"log concurrently. Each of these threads uses I/O buffers as large as those of the log cleaner thread, " +
+    s"see $LogCleanerIoBufferSizeProp. The logs are " +
+    "only cleaned concurrently with the \"" + OffsetMap.CompactOffsetMapType + "\" offset map."
+  val LogCleanerIncrementalEnableDoc = "Clean the logs incrementally with the \"" + OffsetMap.CompactOffsetMapType + "\" " +
+    "offset map: the log cleaner keeps an index of the latest offset of every key alongside the segments of each log, so " +
+    s"that the segments which were cleaned before are only cleaned again once $LogCleanerIncrementalMinDeadRatioProp of " +
+    "their records were superseded. The index uses between 20 and 40 bytes of disk space per key of the log. The " +
+    "segments with transactional records are always cleaned again."
+  val LogCleanerIncrementalMinDeadRatioDoc = "The minimum ratio of superseded records, including tombstones, of a " +
+    "group of segments which were cleaned before for the segments to be cleaned again, when the logs are cleaned " +
+    s"incrementally, see $LogCleanerIncrementalEnableProp."
+  val LogCleanerIoAdaptiveEnableDoc = "Adapt the I/O of the log cleaner to the load of the broker: the log cleaner is " +
+    s"throttled between $LogCleanerIoMinBytesPerSecondProp and $LogCleanerIoMaxBytesPerSecondProp, closer to the " +
+    "minimum the less idle the request handler threads are, the slower the log segments are flushed compared to usual " +
+    "and the closer the bytes produced and fetched are to their daily peak. A finite " +
+    s"$LogCleanerIoMaxBytesPerSecondProp should be set with this option."
+  val LogCleanerIoMinBytesPerSecondDoc = "The log cleaner will be throttled so that the sum of its read and write i/o " +
+    s"will be less than this value on average when the broker is loaded, see $LogCleanerIoAdaptiveEnableProp"
   val LogIndexSizeMaxBytesDoc = "The maximum size in bytes of the offset index"
   val LogIndexIntervalBytesDoc = "The interval with which we add an entry to the offset index"
+  val LogIndexTwoLevelLookupEnableDoc = "Whether the offset and time indexes keep the first entry of every page of the " +
+    "index in memory, so that a lookup outside of the most recent entries reads a single page of the index"
   val LogFlushIntervalMessagesDoc = "The number of messages accumulated on a log partition before messages are flushed to disk "
   val LogDeleteDelayMsDoc = "The amount of time to wait before deleting a file from the filesystem"
   val LogFlushSchedulerIntervalMsDoc = "The frequency in ms that the log flusher checks whether any log needs to be flushed to disk"
@@ -750,6 +829,16 @@ object KafkaConfig {
     "if the difference in timestamp exceeds this threshold. This configuration is ignored if log.message.timestamp.type=LogAppendTime." +
     "The maximum timestamp difference allowed should be no greater than log.retention.ms to avoid unnecessarily frequent log rolling."
   val NumRecoveryThreadsPerDataDirDoc = "The number of threads per data directory to be used for log recovery at startup and flushing at shutdown"
+  val NumSegmentRecoveryThreadsPerDataDirDoc = "The number of threads per data directory to be used to recover the unflushed " +
+    "segments of a log concurrently at startup. The threads validate the batches and rebuild the indexes of the segments, " +
+    "while the producer state is still recovered from one segment after the other by the log recovery threads. " +
+    "With the default of 1, the log recovery threads recover the segments of a log one after the other."
+  val LogSegmentLazyOpenMaxSegmentsDoc = "The maximum number of open log segment files. When positive, the file of " +
+    "an existing segment is opened when the segment is first accessed instead of when its log is loaded, and the files " +
+    "of the segments which were not used recently are closed when there are more open segments, after " +
+    s"$LogDeleteDelayMsProp to let the reads in progress complete. The active segments are never closed, so there " +
+    "may be more open segments than this with many partitions. The default of 0 opens all the segments when the logs " +
+    "are loaded and keeps them open."
   val AutoCreateTopicsEnableDoc = "Enable auto creation of topic on the server"
   val MinInSyncReplicasDoc = "When a producer sets acks to \"all\" (or \"-1\"), " +
     "min.insync.replicas specifies the minimum number of replicas that must acknowledge " +
@@ -794,6 +883,14 @@ object KafkaConfig {
   val FetchPurgatoryPurgeIntervalRequestsDoc = "The purge interval (in number of requests) of the fetch request purgatory"
   val ProducerPurgatoryPurgeIntervalRequestsDoc = "The purge interval (in number of requests) of the producer request purgatory"
   val DeleteRecordsPurgatoryPurgeIntervalRequestsDoc = "The purge interval (in number of requests) of the delete records request purgatory"
+  val PurgatoryWatcherShardsDoc = "The number of shards of the watch lists of the produce, fetch and delete records request " +
+  "purgatories. More shards reduce the contention between the request handler threads watching and completing delayed " +
+  "requests on different partitions"
+  val PurgatoryTimerTypeDoc = "The timer expiring the delayed produce, fetch and delete records requests. The " +
+  s"<code>${Timer.SystemTimerType}</code> timer allocates an entry for each delayed request and runs each expired " +
+  s"request as a separate task. The <code>${Timer.ArrayTimerType}</code> timer holds the delayed requests in arrays " +
+  "without allocating per request, and runs the requests expiring together as a single task, which reduces the " +
+  "garbage collection overhead at high request rates"
   val AutoLeaderRebalanceEnableDoc = "Enables auto leader balancing. A background thread checks the distribution of partition leaders at regular intervals, configurable by `leader.imbalance.check.interval.seconds`. If the leader imbalance exceeds `leader.imbalance.per.broker.percentage`, leader rebalance to the preferred leader for partitions is triggered."
   val LeaderImbalancePerBrokerPercentageDoc = "The ratio of leader imbalance allowed per broker. The controller would trigger a leader balance if it goes above this value per broker. The value is specified in percentage."
   val LeaderImbalanceCheckIntervalSecondsDoc = "The frequency with which the partition rebalance check is triggered by the controller"
@@ -819,6 +916,8 @@ object KafkaConfig {
   /** ********* Offset management configuration ***********/
   val OffsetMetadataMaxSizeDoc = "The maximum size for a metadata entry associated with an offset commit"
   val OffsetsLoadBufferSizeDoc = "Batch size for reading from the offsets segments when loading offsets into the cache (soft-limit, overridden if records are too large)."
+  val OffsetsLoadThreadsDoc = "The number of threads loading the partitions of the offsets topic into the cache concurrently " +
+    s"when the broker becomes their group coordinator. Each thread uses a buffer of $OffsetsLoadBufferSizeProp while it loads a partition."
   val OffsetsTopicReplicationFactorDoc = "The replication factor for the offsets topic (set higher to ensure availability). " +
   "Internal topic creation will fail until the cluster size meets this replication factor requirement."
   val OffsetsTopicPartitionsDoc = "The number of partitions for the offset commit topic (should not change after deployment)"
@@ -847,7 +946,24 @@ object KafkaConfig {
 
   /** ********* Fetch Configuration **************/
   val MaxIncrementalFetchSessionCacheSlotsDoc = "The maximum number of incremental fetch sessions that we will maintain."
+  val MaxIncrementalFetchSessionCachePartitionsDoc = "The maximum total number of partitions cached by the incremental " +
+    "fetch sessions that we will maintain. A new session may evict several smaller sessions to stay within this limit."
+  val MaxIncrementalFetchSessionsPerPrincipalDoc = "The maximum number of incremental fetch sessions of consumers " +
+    "that we will maintain for a single principal. When a principal has this many sessions, a new session of the " +
+    "principal may only evict one of its own sessions which is no longer used, so that many consumers of a principal " +
+    "cannot evict the sessions of other clients. The sessions of followers are not limited."
+  val IncrementalFetchSessionFullReadIntervalMsDoc = "If positive, the incremental fetch requests of followers only " +
+    "read the partitions of their session which were appended to, whose high watermark changed or whose leadership, " +
+    "replica or log directory state changed since the session last read them, along with the partitions listed in the " +
+    "request. All the partitions of a session are still read at least once per this interval, and the other partitions " +
+    "are also read whenever the changed partitions do not have enough data to answer the request without waiting. It must be less than replica.lag.time.max.ms, since reading a partition is what keeps a " +
+    "caught up follower in the ISR. If 0, all the partitions of a session are read by every request."
   val FetchMaxBytesDoc = "The maximum number of bytes we will return for a fetch request. Must be at least 1024."
+  val FetchReadAheadBytesDoc = "If positive, the number of bytes of a log segment read ahead of the fetches which read " +
+    "a partition sequentially, at least this many bytes behind the end of its log, such as lagging consumers. The " +
+    "segment is read ahead into the page cache by background threads, so that the network threads do not block on " +
+    "disk reads while they send the next fetches. If 0, the segments are not read ahead."
+  val NumFetchReadAheadThreadsDoc = s"The number of threads reading ahead of sequential fetches, when $FetchReadAheadBytesProp is positive."
 
   /** ********* Quota Configuration ***********/
   val ProducerQuotaBytesPerSecondDefaultDoc = "DEPRECATED: Used only when dynamic default quotas are not configured for <user>, <client-id> or <user, client-id> in Zookeeper. " +
@@ -869,6 +985,13 @@ object KafkaConfig {
   val CompressionTypeDoc = "Specify the final compression type for a given topic. This configuration accepts the standard compression codecs " +
   "('gzip', 'snappy', 'lz4', 'zstd'). It additionally accepts 'uncompressed' which is equivalent to no compression; and " +
   "'producer' which means retain the original compression codec set by the producer."
+  val CompressionLevelDoc = "The compression level used when the broker compresses batches with the codec set by " +
+  s"<code>$CompressionTypeProp</code>. Valid levels are 1 to 9 for 'gzip', 1 to 17 for 'lz4' and -131072 to 22 for 'zstd'; " +
+  "'snappy' has no levels. When not set, the default level of the codec is used."
+  val ZstdDictionaryDirDoc = "A directory of zstd dictionaries, one file per dictionary, which are registered when the broker " +
+  "starts. The broker can only validate and clean batches compressed with a registered dictionary, and recompresses the batches of a " +
+  s"topic with the dictionary selected by its <code>${TopicConfig.COMPRESSION_ZSTD_DICTIONARY_ID_CONFIG}</code> config. Older versions " +
+  "of the dictionary of a topic must be kept in the directory for as long as the topic contains data compressed with them."
 
   /** ********* Kafka Metrics Configuration ***********/
   val MetricSampleWindowMsDoc = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_DOC
@@ -910,6 +1033,7 @@ object KafkaConfig {
   val SslSecureRandomImplementationDoc = SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_DOC
   val SslClientAuthDoc = BrokerSecurityConfigs.SSL_CLIENT_AUTH_DOC
   val SslPrincipalMappingRulesDoc = BrokerSecurityConfigs.SSL_PRINCIPAL_MAPPING_RULES_DOC
+  val SslFileTransferModeDoc = BrokerSecurityConfigs.SSL_FILE_TRANSFER_MODE_DOC
 
   /** ********* Sasl Configuration ****************/
   val SaslMechanismInterBrokerProtocolDoc = "SASL mechanism used for inter-broker communication. Default is GSSAPI."
@@ -988,6 +1112,7 @@ object KafkaConfig {
       .define(NumReplicaAlterLogDirsThreadsProp, INT, null, HIGH, NumReplicaAlterLogDirsThreadsDoc)
       .define(BackgroundThreadsProp, INT, Defaults.BackgroundThreads, atLeast(1), HIGH, BackgroundThreadsDoc)
       .define(QueuedMaxRequestsProp, INT, Defaults.QueuedMaxRequests, atLeast(1), HIGH, QueuedMaxRequestsDoc)
+      .define(QueuedRequestWeightsProp, STRING, Defaults.QueuedRequestWeights, LOW, QueuedRequestWeightsDoc)
       .define(QueuedMaxBytesProp, LONG, Defaults.QueuedMaxRequestBytes, MEDIUM, QueuedMaxRequestBytesDoc)
       .define(RequestTimeoutMsProp, INT, Defaults.RequestTimeoutMs, HIGH, RequestTimeoutMsDoc)
 
@@ -1045,8 +1170,16 @@ object KafkaConfig {
       .define(LogCleanerDeleteRetentionMsProp, LONG, Defaults.LogCleanerDeleteRetentionMs, MEDIUM, LogCleanerDeleteRetentionMsDoc)
       .define(LogCleanerMinCompactionLagMsProp, LONG, Defaults.LogCleanerMinCompactionLagMs, MEDIUM, LogCleanerMinCompactionLagMsDoc)
       .define(LogCleanerMaxCompactionLagMsProp, LONG, Defaults.LogCleanerMaxCompactionLagMs, MEDIUM, LogCleanerMaxCompactionLagMsDoc)
+      .define(LogCleanerOffsetMapTypeProp, STRING, Defaults.LogCleanerOffsetMapType, in(OffsetMap.OffsetMapTypes:_*), LOW, LogCleanerOffsetMapTypeDoc)
+      .define(LogCleanerOffsetMapOffHeapEnableProp, BOOLEAN, Defaults.LogCleanerOffsetMapOffHeapEnable, LOW, LogCleanerOffsetMapOffHeapEnableDoc)
+      .define(LogCleanerThreadsPerLogProp, INT, Defaults.LogCleanerThreadsPerLog, atLeast(1), LOW, LogCleanerThreadsPerLogDoc)
+      .define(LogCleanerIncrementalEnableProp, BOOLEAN, Defaults.LogCleanerIncrementalEnable, LOW, LogCleanerIncrementalEnableDoc)
+      .define(LogCleanerIncrementalMinDeadRatioProp, DOUBLE, Defaults.LogCleanerIncrementalMinDeadRatio, between(0, 1), LOW, LogCleanerIncrementalMinDeadRatioDoc)
+      .define(LogCleanerIoAdaptiveEnableProp, BOOLEAN, Defaults.LogCleanerIoAdaptiveEnable, LOW, LogCleanerIoAdaptiveEnableDoc)
+      .define(LogCleanerIoMinBytesPerSecondProp, DOUBLE, Defaults.LogCleanerIoMinBytesPerSecond, atLeast(0), LOW, LogCleanerIoMinBytesPerSecondDoc)
       .define(LogIndexSizeMaxBytesProp, INT, Defaults.LogIndexSizeMaxBytes, atLeast(4), MEDIUM, LogIndexSizeMaxBytesDoc)
       .define(LogIndexIntervalBytesProp, INT, Defaults.LogIndexIntervalBytes, atLeast(0), MEDIUM, LogIndexIntervalBytesDoc)
+      .define(LogIndexTwoLevelLookupEnableProp, BOOLEAN, Defaults.LogIndexTwoLevelLookupEnable, LOW, LogIndexTwoLevelLookupEnableDoc)
       .define(LogFlushIntervalMessagesProp, LONG, Defaults.LogFlushIntervalMessages, atLeast(1), HIGH, LogFlushIntervalMessagesDoc)
       .define(LogDeleteDelayMsProp, LONG, Defaults.LogDeleteDelayMs, atLeast(0), HIGH, LogDeleteDelayMsDoc)
       .define(LogFlushSchedulerIntervalMsProp, LONG, Defaults.LogFlushSchedulerIntervalMs, HIGH, LogFlushSchedulerIntervalMsDoc)
@@ -1055,6 +1188,8 @@ object KafkaConfig {
       .define(LogFlushStartOffsetCheckpointIntervalMsProp, INT, Defaults.LogFlushStartOffsetCheckpointIntervalMs, atLeast(0), HIGH, LogFlushStartOffsetCheckpointIntervalMsDoc)
       .define(LogPreAllocateProp, BOOLEAN, Defaults.LogPreAllocateEnable, MEDIUM, LogPreAllocateEnableDoc)
       .define(NumRecoveryThreadsPerDataDirProp, INT, Defaults.NumRecoveryThreadsPerDataDir, atLeast(1), HIGH, NumRecoveryThreadsPerDataDirDoc)
+      .define(NumSegmentRecoveryThreadsPerDataDirProp, INT, Defaults.NumSegmentRecoveryThreadsPerDataDir, atLeast(1), MEDIUM, NumSegmentRecoveryThreadsPerDataDirDoc)
+      .define(LogSegmentLazyOpenMaxSegmentsProp, INT, Defaults.LogSegmentLazyOpenMaxSegments, atLeast(0), MEDIUM, LogSegmentLazyOpenMaxSegmentsDoc)
       .define(AutoCreateTopicsEnableProp, BOOLEAN, Defaults.AutoCreateTopicsEnable, HIGH, AutoCreateTopicsEnableDoc)
       .define(MinInSyncReplicasProp, INT, Defaults.MinInSyncReplicas, atLeast(1), HIGH, MinInSyncReplicasDoc)
       .define(LogMessageFormatVersionProp, STRING, Defaults.LogMessageFormatVersion, ApiVersionValidator, MEDIUM, LogMessageFormatVersionDoc)
@@ -1080,6 +1215,8 @@ object KafkaConfig {
       .define(FetchPurgatoryPurgeIntervalRequestsProp, INT, Defaults.FetchPurgatoryPurgeIntervalRequests, MEDIUM, FetchPurgatoryPurgeIntervalRequestsDoc)
       .define(ProducerPurgatoryPurgeIntervalRequestsProp, INT, Defaults.ProducerPurgatoryPurgeIntervalRequests, MEDIUM, ProducerPurgatoryPurgeIntervalRequestsDoc)
       .define(DeleteRecordsPurgatoryPurgeIntervalRequestsProp, INT, Defaults.DeleteRecordsPurgatoryPurgeIntervalRequests, MEDIUM, DeleteRecordsPurgatoryPurgeIntervalRequestsDoc)
+      .define(PurgatoryWatcherShardsProp, INT, Defaults.PurgatoryWatcherShards, atLeast(1), LOW, PurgatoryWatcherShardsDoc)
+      .define(PurgatoryTimerTypeProp, STRING, Defaults.PurgatoryTimerType, in(Timer.TimerTypes:_*), LOW, PurgatoryTimerTypeDoc)
       .define(AutoLeaderRebalanceEnableProp, BOOLEAN, Defaults.AutoLeaderRebalanceEnable, HIGH, AutoLeaderRebalanceEnableDoc)
       .define(LeaderImbalancePerBrokerPercentageProp, INT, Defaults.LeaderImbalancePerBrokerPercentage, HIGH, LeaderImbalancePerBrokerPercentageDoc)
       .define(LeaderImbalanceCheckIntervalSecondsProp, LONG, Defaults.LeaderImbalanceCheckIntervalSeconds, HIGH, LeaderImbalanceCheckIntervalSecondsDoc)
@@ -1103,6 +1240,7 @@ object KafkaConfig {
       /** ********* Offset management configuration ***********/
       .define(OffsetMetadataMaxSizeProp, INT, Defaults.OffsetMetadataMaxSize, HIGH, OffsetMetadataMaxSizeDoc)
       .define(OffsetsLoadBufferSizeProp, INT, Defaults.OffsetsLoadBufferSize, atLeast(1), HIGH, OffsetsLoadBufferSizeDoc)
+      .define(OffsetsLoadThreadsProp, INT, Defaults.OffsetsLoadThreads, atLeast(1), MEDIUM, OffsetsLoadThreadsDoc)
       .define(OffsetsTopicReplicationFactorProp, SHORT, Defaults.OffsetsTopicReplicationFactor, atLeast(1), HIGH, OffsetsTopicReplicationFactorDoc)
       .define(OffsetsTopicPartitionsProp, INT, Defaults.OffsetsTopicPartitions, atLeast(1), HIGH, OffsetsTopicPartitionsDoc)
       .define(OffsetsTopicSegmentBytesProp, INT, Defaults.OffsetsTopicSegmentBytes, atLeast(1), HIGH, OffsetsTopicSegmentBytesDoc)
@@ -1113,6 +1251,8 @@ object KafkaConfig {
       .define(OffsetCommitRequiredAcksProp, SHORT, Defaults.OffsetCommitRequiredAcks, HIGH, OffsetCommitRequiredAcksDoc)
       .define(DeleteTopicEnableProp, BOOLEAN, Defaults.DeleteTopicEnable, HIGH, DeleteTopicEnableDoc)
       .define(CompressionTypeProp, STRING, Defaults.CompressionType, HIGH, CompressionTypeDoc)
+      .define(CompressionLevelProp, INT, null, MEDIUM, CompressionLevelDoc)
+      .define(ZstdDictionaryDirProp, STRING, null, LOW, ZstdDictionaryDirDoc)
 
       /** ********* Transaction management configuration ***********/
       .define(TransactionalIdExpirationMsProp, INT, Defaults.TransactionalIdExpirationMs, atLeast(1), HIGH, TransactionalIdExpirationMsDoc)
@@ -1127,7 +1267,12 @@ object KafkaConfig {
 
       /** ********* Fetch Configuration **************/
       .define(MaxIncrementalFetchSessionCacheSlots, INT, Defaults.MaxIncrementalFetchSessionCacheSlots, atLeast(0), MEDIUM, MaxIncrementalFetchSessionCacheSlotsDoc)
+      .define(MaxIncrementalFetchSessionCachePartitions, INT, Defaults.MaxIncrementalFetchSessionCachePartitions, atLeast(0), LOW, MaxIncrementalFetchSessionCachePartitionsDoc)
+      .define(MaxIncrementalFetchSessionsPerPrincipal, INT, Defaults.MaxIncrementalFetchSessionsPerPrincipal, atLeast(0), LOW, MaxIncrementalFetchSessionsPerPrincipalDoc)
+      .define(IncrementalFetchSessionFullReadIntervalMsProp, LONG, Defaults.IncrementalFetchSessionFullReadIntervalMs, atLeast(0), LOW, IncrementalFetchSessionFullReadIntervalMsDoc)
       .define(FetchMaxBytes, INT, Defaults.FetchMaxBytes, atLeast(1024), MEDIUM, FetchMaxBytesDoc)
+      .define(FetchReadAheadBytesProp, INT, Defaults.FetchReadAheadBytes, atLeast(0), LOW, FetchReadAheadBytesDoc)
+      .define(NumFetchReadAheadThreadsProp, INT, Defaults.NumFetchReadAheadThreads, atLeast(1), LOW, NumFetchReadAheadThreadsDoc)
 
       /** ********* Kafka Metrics Configuration ***********/
       .define(MetricNumSamplesProp, INT, Defaults.MetricNumSamples, atLeast(1), LOW, MetricNumSamplesDoc)
@@ -1173,6 +1318,7 @@ object KafkaConfig {
       .define(SslClientAuthProp, STRING, Defaults.SslClientAuthentication, in(Defaults.SslClientAuthenticationValidValues:_*), MEDIUM, SslClientAuthDoc)
       .define(SslCipherSuitesProp, LIST, Collections.emptyList(), MEDIUM, SslCipherSuitesDoc)
       .define(SslPrincipalMappingRulesProp, STRING, Defaults.SslPrincipalMappingRules, LOW, SslPrincipalMappingRulesDoc)
+      .define(SslFileTransferModeProp, STRING, Defaults.SslFileTransferMode, in(Defaults.SslFileTransferModeValidValues:_*), LOW, SslFileTransferModeDoc)
 
       /** ********* Sasl Configuration ****************/
       .define(SaslMechanismInterBrokerProtocolProp, STRING, Defaults.SaslMechanismInterBrokerProtocol, MEDIUM, SaslMechanismInterBrokerProtocolDoc)
@@ -1362,7 +1508,9 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
 
   def numNetworkThreads = getInt(KafkaConfig.NumNetworkThreadsProp)
   def backgroundThreads = getInt(KafkaConfig.BackgroundThreadsProp)
-  val queuedMaxRequests = getInt(KafkaConfig.QueuedMaxRequestsProp)
+  def queuedMaxRequests = getInt(KafkaConfig.QueuedMaxRequestsProp)
+  def queuedRequestWeights: collection.immutable.Map[RequestClass, Int] =
+    RequestClass.parseWeights(getMap(KafkaConfig.QueuedRequestWeightsProp, getString(KafkaConfig.QueuedRequestWeightsProp)))
   val queuedMaxBytes = getLong(KafkaConfig.QueuedMaxBytesProp)
   def numIoThreads = getInt(KafkaConfig.NumIoThreadsProp)
   def messageMaxBytes = getInt(KafkaConfig.MessageMaxBytesProp)
@@ -1411,6 +1559,8 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   def logFlushIntervalMessages = getLong(KafkaConfig.LogFlushIntervalMessagesProp)
   val logCleanerThreads = getInt(KafkaConfig.LogCleanerThreadsProp)
   def numRecoveryThreadsPerDataDir = getInt(KafkaConfig.NumRecoveryThreadsPerDataDirProp)
+  val numSegmentRecoveryThreadsPerDataDir = getInt(KafkaConfig.NumSegmentRecoveryThreadsPerDataDirProp)
+  val logSegmentLazyOpenMaxSegments = getInt(KafkaConfig.LogSegmentLazyOpenMaxSegmentsProp)
   val logFlushSchedulerIntervalMs = getLong(KafkaConfig.LogFlushSchedulerIntervalMsProp)
   val logFlushOffsetCheckpointIntervalMs = getInt(KafkaConfig.LogFlushOffsetCheckpointIntervalMsProp).toLong
   val logFlushStartOffsetCheckpointIntervalMs = getInt(KafkaConfig.LogFlushStartOffsetCheckpointIntervalMsProp).toLong
@@ -1429,8 +1579,16 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   val logCleanerBackoffMs = getLong(KafkaConfig.LogCleanerBackoffMsProp)
   def logCleanerMinCleanRatio = getDouble(KafkaConfig.LogCleanerMinCleanRatioProp)
   val logCleanerEnable = getBoolean(KafkaConfig.LogCleanerEnableProp)
+  val logCleanerOffsetMapType = getString(KafkaConfig.LogCleanerOffsetMapTypeProp)
+  val logCleanerOffsetMapOffHeapEnable = getBoolean(KafkaConfig.LogCleanerOffsetMapOffHeapEnableProp)
+  val logCleanerThreadsPerLog = getInt(KafkaConfig.LogCleanerThreadsPerLogProp)
+  val logCleanerIncrementalEnable = getBoolean(KafkaConfig.LogCleanerIncrementalEnableProp)
+  val logCleanerIncrementalMinDeadRatio = getDouble(KafkaConfig.LogCleanerIncrementalMinDeadRatioProp)
+  val logCleanerIoAdaptiveEnable = getBoolean(KafkaConfig.LogCleanerIoAdaptiveEnableProp)
+  val logCleanerIoMinBytesPerSecond = getDouble(KafkaConfig.LogCleanerIoMinBytesPerSecondProp)
   def logIndexSizeMaxBytes = getInt(KafkaConfig.LogIndexSizeMaxBytesProp)
   def logIndexIntervalBytes = getInt(KafkaConfig.LogIndexIntervalBytesProp)
+  def logIndexTwoLevelLookupEnable: java.lang.Boolean = getBoolean(KafkaConfig.LogIndexTwoLevelLookupEnableProp)
   def logDeleteDelayMs = getLong(KafkaConfig.LogDeleteDelayMsProp)
   def logRollTimeMillis: java.lang.Long = Option(getLong(KafkaConfig.LogRollTimeMillisProp)).getOrElse(60 * 60 * 1000L * getInt(KafkaConfig.LogRollTimeHoursProp))
   def logRollTimeJitterMillis: java.lang.Long = Option(getLong(KafkaConfig.LogRollTimeJitterMillisProp)).getOrElse(60 * 60 * 1000L * getInt(KafkaConfig.LogRollTimeJitterHoursProp))
@@ -1461,6 +1619,8 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   val fetchPurgatoryPurgeIntervalRequests = getInt(KafkaConfig.FetchPurgatoryPurgeIntervalRequestsProp)
   val producerPurgatoryPurgeIntervalRequests = getInt(KafkaConfig.ProducerPurgatoryPurgeIntervalRequestsProp)
   val deleteRecordsPurgatoryPurgeIntervalRequests = getInt(KafkaConfig.DeleteRecordsPurgatoryPurgeIntervalRequestsProp)
+  val purgatoryWatcherShards = getInt(KafkaConfig.PurgatoryWatcherShardsProp)
+  val purgatoryTimerType = getString(KafkaConfig.PurgatoryTimerTypeProp)
   val autoLeaderRebalanceEnable = getBoolean(KafkaConfig.AutoLeaderRebalanceEnableProp)
   val leaderImbalancePerBrokerPercentage = getInt(KafkaConfig.LeaderImbalancePerBrokerPercentageProp)
   val leaderImbalanceCheckIntervalSeconds = getLong(KafkaConfig.LeaderImbalanceCheckIntervalSecondsProp)
@@ -1485,6 +1645,7 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   /** ********* Offset management configuration ***********/
   val offsetMetadataMaxSize = getInt(KafkaConfig.OffsetMetadataMaxSizeProp)
   val offsetsLoadBufferSize = getInt(KafkaConfig.OffsetsLoadBufferSizeProp)
+  val offsetsLoadThreads = getInt(KafkaConfig.OffsetsLoadThreadsProp)
   val offsetsTopicReplicationFactor = getShort(KafkaConfig.OffsetsTopicReplicationFactorProp)
   val offsetsTopicPartitions = getInt(KafkaConfig.OffsetsTopicPartitionsProp)
   val offsetCommitTimeoutMs = getInt(KafkaConfig.OffsetCommitTimeoutMsProp)
@@ -1555,10 +1716,17 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
 
   /** ********* Fetch Configuration **************/
   val maxIncrementalFetchSessionCacheSlots = getInt(KafkaConfig.MaxIncrementalFetchSessionCacheSlots)
+  val maxIncrementalFetchSessionCachePartitions: Int = getInt(KafkaConfig.MaxIncrementalFetchSessionCachePartitions)
+  val maxIncrementalFetchSessionsPerPrincipal = getInt(KafkaConfig.MaxIncrementalFetchSessionsPerPrincipal)
+  val incrementalFetchSessionFullReadIntervalMs = getLong(KafkaConfig.IncrementalFetchSessionFullReadIntervalMsProp)
   val fetchMaxBytes = getInt(KafkaConfig.FetchMaxBytes)
+  val fetchReadAheadBytes = getInt(KafkaConfig.FetchReadAheadBytesProp)
+  val numFetchReadAheadThreads = getInt(KafkaConfig.NumFetchReadAheadThreadsProp)
 
   val deleteTopicEnable = getBoolean(KafkaConfig.DeleteTopicEnableProp)
   def compressionType = getString(KafkaConfig.CompressionTypeProp)
+  def compressionLevel: java.lang.Integer = getInt(KafkaConfig.CompressionLevelProp)
+  val zstdDictionaryDir = Option(getString(KafkaConfig.ZstdDictionaryDirProp))
 
   def addReconfigurable(reconfigurable: Reconfigurable): Unit = {
     dynamicConfig.addReconfigurable(reconfigurable)
@@ -1688,10 +1856,16 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
       " to prevent unnecessary socket timeouts")
     require(replicaFetchWaitMaxMs <= replicaLagTimeMaxMs, "replica.fetch.wait.max.ms should always be less than or equal to replica.lag.time.max.ms" +
       " to prevent frequent changes in ISR")
+    require(incrementalFetchSessionFullReadIntervalMs < replicaLagTimeMaxMs, s"${KafkaConfig.IncrementalFetchSessionFullReadIntervalMsProp} " +
+      "should always be less than replica.lag.time.max.ms to keep caught up followers in the ISR")
     require(offsetCommitRequiredAcks >= -1 && offsetCommitRequiredAcks <= offsetsTopicReplicationFactor,
       "offsets.commit.required.acks must be greater or equal -1 and less or equal to offsets.topic.replication.factor")
     require(BrokerCompressionCodec.isValid(compressionType), "compression.type : " + compressionType + " is not valid." +
       " Valid options are " + BrokerCompressionCodec.brokerCompressionOptions.mkString(","))
+    require(compressionLevel == null || BrokerCompressionCodec.isValidLevel(compressionType, compressionLevel),
+      s"compression.level : $compressionLevel is not valid for compression.type $compressionType")
+    // the weights are parsed on access, which fails if they are invalid
+    queuedRequestWeights
 
     val advertisedListenerNames = advertisedListeners.map(_.listenerName).toSet
     val listenerNames = listeners.map(_.listenerName).toSet
@@ -41,6 +41,7 @@ import org.apache.kafka.common.message.ControlledShutdownRequestData
 import org.apache.kafka.common.metrics.{JmxReporter, Metrics, _}
 import org.apache.kafka.common.network._
 import org.apache.kafka.common.protocol.Errors
+import org.apache.kafka.common.record.ZstdDictionary
 import org.apache.kafka.common.requests.{ControlledShutdownRequest, ControlledShutdownResponse}
 import org.apache.kafka.common.security.scram.internals.ScramMechanism
 import org.apache.kafka.common.security.token.delegation.internals.DelegationTokenCache
@@ -62,6 +63,7 @@ object KafkaServer {
     logProps.put(LogConfig.SegmentMsProp, kafkaConfig.logRollTimeMillis)
     logProps.put(LogConfig.SegmentJitterMsProp, kafkaConfig.logRollTimeJitterMillis)
     logProps.put(LogConfig.SegmentIndexBytesProp, kafkaConfig.logIndexSizeMaxBytes)
+    logProps.put(LogConfig.SegmentIndexTwoLevelLookupEnableProp, kafkaConfig.logIndexTwoLevelLookupEnable)
     logProps.put(LogConfig.FlushMessagesProp, kafkaConfig.logFlushIntervalMessages)
     logProps.put(LogConfig.FlushMsProp, kafkaConfig.logFlushIntervalMs)
     logProps.put(LogConfig.RetentionBytesProp, kafkaConfig.logRetentionBytes)
@@ -76,6 +78,10 @@ object KafkaServer {
     logProps.put(LogConfig.CleanupPolicyProp, kafkaConfig.logCleanupPolicy)
     logProps.put(LogConfig.MinInSyncReplicasProp, kafkaConfig.minInSyncReplicas)
     logProps.put(LogConfig.CompressionTypeProp, kafkaConfig.compressionType)
+    // the broker has no default level, and `LogConfig.fromProps` copies the defaults into `Properties`, which
+    // rejects null values
+    if (kafkaConfig.compressionLevel != null)
+      logProps.put(LogConfig.CompressionLevelProp, kafkaConfig.compressionLevel)
     logProps.put(LogConfig.UncleanLeaderElectionEnableProp, kafkaConfig.uncleanLeaderElectionEnable)
     logProps.put(LogConfig.PreAllocateEnableProp, kafkaConfig.logPreAllocateEnable)
     logProps.put(LogConfig.MessageFormatVersionProp, kafkaConfig.logMessageFormatVersion.version)
@@ -256,8 +262,16 @@ class KafkaServer(val config: KafkaConfig, time: Time = Time.SYSTEM, threadNameP
 
         logDirFailureChannel = new LogDirFailureChannel(config.logDirs.size)
 
+        /* register the zstd dictionaries before any log is read */
+        config.zstdDictionaryDir.foreach { dir =>
+          val count = ZstdDictionary.registerAll(new File(dir))
+          info(s"Registered $count zstd dictionaries from $dir")
+        }
+
         /* start log manager */
-        logManager = LogManager(config, initialOfflineDirs, zkClient, brokerState, kafkaScheduler, time, brokerTopicStats, logDirFailureChannel)
+        // the request handlers are created once the logs are loaded, and are idle until then
+        logManager = LogManager(config, initialOfflineDirs, zkClient, brokerState, kafkaScheduler, time, brokerTopicStats,
+          logDirFailureChannel, () => Option(dataPlaneRequestHandlerPool).map(_.avgIdleRatio).getOrElse(1.0))
         logManager.startup()
 
         metadataCache = new MetadataCache(config.brokerId)
@@ -312,9 +326,14 @@ class KafkaServer(val config: KafkaConfig, time: Time = Time.SYSTEM, threadNameP
             brokerInfo.broker.endPoints.map { ep => ep.toJava -> CompletableFuture.completedFuture[Void](null) }.toMap
         }
 
-        val fetchManager = new FetchManager(Time.SYSTEM,
-          new FetchSessionCache(config.maxIncrementalFetchSessionCacheSlots,
-            KafkaServer.MIN_INCREMENTAL_FETCH_SESSION_EVICTION_MS))
+        val fetchSessionCache = new FetchSessionCache(config.maxIncrementalFetchSessionCacheSlots,
+          KafkaServer.MIN_INCREMENTAL_FETCH_SESSION_EVICTION_MS,
+          config.maxIncrementalFetchSessionCachePartitions,
+          config.maxIncrementalFetchSessionsPerPrincipal,
+          config.incrementalFetchSessionFullReadIntervalMs)
+        if (config.incrementalFetchSessionFullReadIntervalMs > 0)
+          replicaManager.setPartitionChangeListener(fetchSessionCache.partitionChanged)
+        val fetchManager = new FetchManager(Time.SYSTEM, fetchSessionCache)
 
         /* start processing requests */
         dataPlaneRequestProcessor = new KafkaApis(socketServer.dataPlaneRequestChannel, replicaManager, adminManager, groupCoordinator, transactionCoordinator,
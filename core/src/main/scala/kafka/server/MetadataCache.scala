@@ -19,6 +19,7 @@ package kafka.server
 
 import java.util
 import java.util.{Collections, Optional}
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.locks.ReentrantReadWriteLock
 
 import scala.collection.{Seq, Set, mutable}
@@ -147,14 +148,24 @@ class MetadataCache(brokerId: Int) extends Logging {
   }
 
   // errorUnavailableEndpoints exists to support v0 MetadataResponses
+  // The returned topic metadata is shared by the requests using the same snapshot, so it must not be modified.
   def getTopicMetadata(topics: Set[String],
                        listenerName: ListenerName,
                        errorUnavailableEndpoints: Boolean = false,
                        errorUnavailableListeners: Boolean = false): Seq[MetadataResponse.TopicMetadata] = {
     val snapshot = metadataSnapshot
     topics.toSeq.flatMap { topic =>
-      getPartitionMetadata(snapshot, topic, listenerName, errorUnavailableEndpoints, errorUnavailableListeners).map { partitionMetadata =>
-        new MetadataResponse.TopicMetadata(Errors.NONE, topic, Topic.isInternal(topic), partitionMetadata.toBuffer.asJava)
+      val key = TopicMetadataKey(topic, listenerName, errorUnavailableEndpoints, errorUnavailableListeners)
+      val topicMetadata = snapshot.topicMetadata.get(key)
+      if (topicMetadata != null)
+        Some(topicMetadata)
+      else {
+        getPartitionMetadata(snapshot, topic, listenerName, errorUnavailableEndpoints, errorUnavailableListeners).map { partitionMetadata =>
+          val newTopicMetadata = new MetadataResponse.TopicMetadata(Errors.NONE, topic, Topic.isInternal(topic),
+            partitionMetadata.toBuffer.asJava)
+          val existing = snapshot.topicMetadata.putIfAbsent(key, newTopicMetadata)
+          if (existing != null) existing else newTopicMetadata
+        }
       }
     }
   }
@@ -291,9 +302,21 @@ class MetadataCache(brokerId: Int) extends Logging {
           error(s"Listeners are not identical across brokers: $aliveNodes")
       }
 
+      // The topic metadata built for the previous snapshot remains valid for the topics which are not updated
+      // as long as the brokers and their endpoints are the same.
+      val topicMetadata = new ConcurrentHashMap[TopicMetadataKey, MetadataResponse.TopicMetadata]
+      if (aliveNodes == metadataSnapshot.aliveNodes) {
+        val updatedTopics = updateMetadataRequest.partitionStates.asScala.map(_.topicName).toSet
+        metadataSnapshot.topicMetadata.forEach { (key, value) =>
+          if (!updatedTopics.contains(key.topic))
+            topicMetadata.put(key, value)
+        }
+      }
+
       val deletedPartitions = new mutable.ArrayBuffer[TopicPartition]
       if (!updateMetadataRequest.partitionStates.iterator.hasNext) {
-        metadataSnapshot = MetadataSnapshot(metadataSnapshot.partitionStates, controllerId, aliveBrokers, aliveNodes)
+        metadataSnapshot = MetadataSnapshot(metadataSnapshot.partitionStates, controllerId, aliveBrokers, aliveNodes,
+          topicMetadata)
       } else {
         //since kafka may do partial metadata updates, we start by copying the previous state
         val partitionStates = new mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]](metadataSnapshot.partitionStates.size)
@@ -317,7 +340,7 @@ class MetadataCache(brokerId: Int) extends Logging {
               s"UpdateMetadata request sent by controller $controllerId epoch $controllerEpoch with correlation id $correlationId")
           }
         }
-        metadataSnapshot = MetadataSnapshot(partitionStates, controllerId, aliveBrokers, aliveNodes)
+        metadataSnapshot = MetadataSnapshot(partitionStates, controllerId, aliveBrokers, aliveNodes, topicMetadata)
       }
       deletedPartitions
     }
@@ -338,9 +361,18 @@ class MetadataCache(brokerId: Int) extends Logging {
     }
   }
 
+  // The topic metadata returned by getTopicMetadata is built once per snapshot for each listener and error mode,
+  // and reused by the following requests and snapshots until the topic or the brokers change.
+  case class TopicMetadataKey(topic: String,
+                              listenerName: ListenerName,
+                              errorUnavailableEndpoints: Boolean,
+                              errorUnavailableListeners: Boolean)
+
   case class MetadataSnapshot(partitionStates: mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]],
                               controllerId: Option[Int],
                               aliveBrokers: mutable.LongMap[Broker],
-                              aliveNodes: mutable.LongMap[collection.Map[ListenerName, Node]])
+                              aliveNodes: mutable.LongMap[collection.Map[ListenerName, Node]],
+                              topicMetadata: ConcurrentHashMap[TopicMetadataKey, MetadataResponse.TopicMetadata] =
+                                new ConcurrentHashMap[TopicMetadataKey, MetadataResponse.TopicMetadata])
 
 }
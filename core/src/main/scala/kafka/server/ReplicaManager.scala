@@ -105,6 +105,15 @@ case class LogReadResult(info: FetchDataInfo,
     case Some(e) => Errors.forException(e)
   }
 
+  /**
+   * True if no records were read although the log has records from the fetch offset, because of the size
+   * limits of the fetch or of a replication quota.
+   */
+  def recordsWithheld: Boolean = {
+    val fetchOffset = info.fetchOffsetMetadata.messageOffset
+    exception.isEmpty && info.records.sizeInBytes == 0 && fetchOffset >= 0 && fetchOffset < leaderLogEndOffset
+  }
+
   def withEmptyFetchInfo: LogReadResult =
     copy(info = FetchDataInfo(LogOffsetMetadata.UnknownOffsetMetadata, MemoryRecords.EMPTY))
 
@@ -121,7 +130,8 @@ case class FetchPartitionData(error: Errors = Errors.NONE,
                               lastStableOffset: Option[Long],
                               abortedTransactions: Option[List[AbortedTransaction]],
                               preferredReadReplica: Option[Int],
-                              isReassignmentFetch: Boolean)
+                              isReassignmentFetch: Boolean,
+                              recordsWithheld: Boolean = false)
 
 
 /**
@@ -186,13 +196,16 @@ class ReplicaManager(val config: KafkaConfig,
       quotaManagers, brokerTopicStats, metadataCache, logDirFailureChannel,
       DelayedOperationPurgatory[DelayedProduce](
         purgatoryName = "Produce", brokerId = config.brokerId,
-        purgeInterval = config.producerPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.producerPurgatoryPurgeIntervalRequests, shards = config.purgatoryWatcherShards,
+        timerType = config.purgatoryTimerType),
       DelayedOperationPurgatory[DelayedFetch](
         purgatoryName = "Fetch", brokerId = config.brokerId,
-        purgeInterval = config.fetchPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.fetchPurgatoryPurgeIntervalRequests, shards = config.purgatoryWatcherShards,
+        timerType = config.purgatoryTimerType),
       DelayedOperationPurgatory[DelayedDeleteRecords](
         purgatoryName = "DeleteRecords", brokerId = config.brokerId,
-        purgeInterval = config.deleteRecordsPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.deleteRecordsPurgatoryPurgeIntervalRequests, shards = config.purgatoryWatcherShards,
+        timerType = config.purgatoryTimerType),
       DelayedOperationPurgatory[DelayedElectLeader](
         purgatoryName = "ElectLeader", brokerId = config.brokerId),
       threadNamePrefix)
@@ -220,6 +233,10 @@ class ReplicaManager(val config: KafkaConfig,
 
   private var logDirFailureHandler: LogDirFailureHandler = null
 
+  // Notified when a partition led by this broker is appended to, when its high watermark changes or when its
+  // leadership, replica or log directory state changes
+  @volatile private var partitionChangeListener: TopicPartition => Unit = (_: TopicPartition) => ()
+
   private class LogDirFailureHandler(name: String, haltBrokerOnDirFailure: Boolean) extends ShutdownableThread(name) {
     override def doWork(): Unit = {
       val newOfflineLogDir = logDirFailureChannel.takeNextOfflineLogDir()
@@ -234,6 +251,12 @@ class ReplicaManager(val config: KafkaConfig,
   // Visible for testing
   private[server] val replicaSelectorOpt: Option[ReplicaSelector] = createReplicaSelector()
 
+  private val fetchReadAhead: Option[FetchReadAhead] =
+    if (config.fetchReadAheadBytes > 0)
+      Some(new FetchReadAhead(config.fetchReadAheadBytes, config.numFetchReadAheadThreads, time))
+    else
+      None
+
   newGauge("LeaderCount", () => leaderPartitionsIterator.size)
   // Visible for testing
   private[kafka] val partitionCount = newGauge("PartitionCount", () => allPartitions.size)
@@ -256,6 +279,12 @@ class ReplicaManager(val config: KafkaConfig,
       scheduler.schedule("highwatermark-checkpoint", checkpointHighWatermarks _, period = config.replicaHighWatermarkCheckpointIntervalMs, unit = TimeUnit.MILLISECONDS)
   }
 
+  def setPartitionChangeListener(listener: TopicPartition => Unit): Unit = {
+    partitionChangeListener = listener
+  }
+
+  def partitionChanged(topicPartition: TopicPartition): Unit = partitionChangeListener(topicPartition)
+
   def recordIsrChange(topicPartition: TopicPartition): Unit = {
     isrChangeSet synchronized {
       isrChangeSet += topicPartition
@@ -305,6 +334,10 @@ class ReplicaManager(val config: KafkaConfig,
     scheduler.schedule("isr-expiration", maybeShrinkIsr _, period = config.replicaLagTimeMaxMs / 2, unit = TimeUnit.MILLISECONDS)
     scheduler.schedule("isr-change-propagation", maybePropagateIsrChanges _, period = 2500L, unit = TimeUnit.MILLISECONDS)
     scheduler.schedule("shutdown-idle-replica-alter-log-dirs-thread", shutdownIdleReplicaAlterLogDirsThread _, period = 10000L, unit = TimeUnit.MILLISECONDS)
+    fetchReadAhead.foreach { readAhead =>
+      scheduler.schedule("fetch-read-ahead-expiration", () => readAhead.expireIdleStreams(),
+        period = FetchReadAhead.StreamIdleMs, unit = TimeUnit.MILLISECONDS)
+    }
 
     // If inter-broker protocol (IBP) < 1.0, the controller will send LeaderAndIsrRequest V0 which does not include isNew field.
     // In this case, the broker receiving the request cannot determine whether it is safe to create a partition if a log directory has failed.
@@ -359,6 +392,7 @@ class ReplicaManager(val config: KafkaConfig,
   }
 
   private def completeDelayedFetchOrProduceRequests(topicPartition: TopicPartition): Unit = {
+    partitionChanged(topicPartition)
     val topicPartitionOperationKey = TopicPartitionOperationKey(topicPartition)
     delayedProducePurgatory.checkAndComplete(topicPartitionOperationKey)
     delayedFetchPurgatory.checkAndComplete(topicPartitionOperationKey)
@@ -854,7 +888,8 @@ class ReplicaManager(val config: KafkaConfig,
                     quota: ReplicaQuota,
                     responseCallback: Seq[(TopicPartition, FetchPartitionData)] => Unit,
                     isolationLevel: IsolationLevel,
-                    clientMetadata: Option[ClientMetadata]): Unit = {
+                    clientMetadata: Option[ClientMetadata],
+                    remainingFetchInfos: () => Seq[(TopicPartition, PartitionData)] = () => Seq.empty): Unit = {
     val isFromFollower = Request.isValidBrokerId(replicaId)
     val isFromConsumer = !(isFromFollower || replicaId == Request.FutureLocalReplicaId)
     val fetchIsolation = if (!isFromConsumer)
@@ -866,52 +901,76 @@ class ReplicaManager(val config: KafkaConfig,
 
     // Restrict fetching to leader if request is from follower or from a client with older version (no ClientMetadata)
     val fetchOnlyFromLeader = isFromFollower || (isFromConsumer && clientMetadata.isEmpty)
-    def readFromLog(): Seq[(TopicPartition, LogReadResult)] = {
+    def readFromLog(readPartitionInfo: Seq[(TopicPartition, PartitionData)],
+                    maxBytes: Int,
+                    hardMaxBytes: Boolean): Seq[(TopicPartition, LogReadResult)] = {
       val result = readFromLocalLog(
         replicaId = replicaId,
         fetchOnlyFromLeader = fetchOnlyFromLeader,
         fetchIsolation = fetchIsolation,
-        fetchMaxBytes = fetchMaxBytes,
-        hardMaxBytesLimit = hardMaxBytesLimit,
-        readPartitionInfo = fetchInfos,
+        fetchMaxBytes = maxBytes,
+        hardMaxBytesLimit = hardMaxBytes,
+        readPartitionInfo = readPartitionInfo,
         quota = quota,
         clientMetadata = clientMetadata)
       if (isFromFollower) updateFollowerFetchState(replicaId, result)
       else result
     }
 
-    val logReadResults = readFromLog()
-
     // check if this fetch request can be satisfied right away
-    var bytesReadable: Long = 0
-    var errorReadingData = false
-    val logReadResultMap = new mutable.HashMap[TopicPartition, LogReadResult]
-    var anyPartitionsNeedHwUpdate = false
-    logReadResults.foreach { case (topicPartition, logReadResult) =>
-      if (logReadResult.error != Errors.NONE)
-        errorReadingData = true
-      bytesReadable = bytesReadable + logReadResult.info.records.sizeInBytes
-      logReadResultMap.put(topicPartition, logReadResult)
-      if (isFromFollower && logReadResult.followerNeedsHwUpdate) {
-        anyPartitionsNeedHwUpdate = true
+    def canRespondImmediately(allFetchInfos: Seq[(TopicPartition, PartitionData)],
+                              logReadResults: Seq[(TopicPartition, LogReadResult)]): Boolean = {
+      var errorReadingData = false
+      var anyPartitionsNeedHwUpdate = false
+      logReadResults.foreach { case (_, logReadResult) =>
+        if (logReadResult.error != Errors.NONE)
+          errorReadingData = true
+        if (isFromFollower && logReadResult.followerNeedsHwUpdate) {
+          anyPartitionsNeedHwUpdate = true
+        }
+      }
+
+      // respond immediately if 1) fetch request does not want to wait
+      //                        2) fetch request does not require any data
+      //                        3) has enough data to respond
+      //                        4) some error happens while reading data
+      //                        5) any of the requested partitions need HW update
+      timeout <= 0 || allFetchInfos.isEmpty || bytesRead(logReadResults) >= fetchMinBytes || errorReadingData ||
+        anyPartitionsNeedHwUpdate
+    }
+
+    def bytesRead(logReadResults: Seq[(TopicPartition, LogReadResult)]): Long =
+      logReadResults.foldLeft(0L) { case (sum, (_, logReadResult)) => sum + logReadResult.info.records.sizeInBytes }
+
+    // If the fetch session tracks the changes to its partitions, only the partitions which changed are in fetchInfos.
+    // The delayed fetch must watch all the partitions, so the remaining ones are read if the changed ones are not
+    // enough, within what is left of the response limit.
+    var allFetchInfos = fetchInfos
+    var logReadResults = readFromLog(fetchInfos, fetchMaxBytes, hardMaxBytesLimit)
+    var respondImmediately = if (fetchInfos.isEmpty) timeout <= 0 else canRespondImmediately(fetchInfos, logReadResults)
+    if (!respondImmediately) {
+      val remaining = remainingFetchInfos()
+      if (remaining.nonEmpty) {
+        val readBytes = bytesRead(logReadResults)
+        allFetchInfos = fetchInfos ++ remaining
+        logReadResults = logReadResults ++ readFromLog(remaining, math.max(0L, fetchMaxBytes - readBytes).toInt,
+          hardMaxBytesLimit || readBytes > 0)
       }
+      respondImmediately = canRespondImmediately(allFetchInfos, logReadResults)
     }
 
-    // respond immediately if 1) fetch request does not want to wait
-    //                        2) fetch request does not require any data
-    //                        3) has enough data to respond
-    //                        4) some error happens while reading data
-    //                        5) any of the requested partitions need HW update
-    if (timeout <= 0 || fetchInfos.isEmpty || bytesReadable >= fetchMinBytes || errorReadingData || anyPartitionsNeedHwUpdate) {
+    if (respondImmediately) {
       val fetchPartitionData = logReadResults.map { case (tp, result) =>
         tp -> FetchPartitionData(result.error, result.highWatermark, result.leaderLogStartOffset, result.info.records,
-          result.lastStableOffset, result.info.abortedTransactions, result.preferredReadReplica, isFromFollower && isAddingReplica(tp, replicaId))
+          result.lastStableOffset, result.info.abortedTransactions, result.preferredReadReplica,
+          isFromFollower && isAddingReplica(tp, replicaId), result.recordsWithheld)
       }
       responseCallback(fetchPartitionData)
     } else {
+      val logReadResultMap = logReadResults.toMap
       // construct the fetch results from the read results
       val fetchPartitionStatus = new mutable.ArrayBuffer[(TopicPartition, FetchPartitionStatus)]
-      fetchInfos.foreach { case (topicPartition, partitionData) =>
+      allFetchInfos.foreach { case (topicPartition, partitionData) =>
         logReadResultMap.get(topicPartition).foreach(logReadResult => {
           val logOffsetMetadata = logReadResult.info.fetchOffsetMetadata
           fetchPartitionStatus += (topicPartition -> FetchPartitionStatus(logOffsetMetadata, partitionData))
@@ -1007,6 +1066,10 @@ class ReplicaManager(val config: KafkaConfig,
             readInfo.fetchedData
           }
 
+          fetchReadAhead.foreach { readAhead =>
+            partition.log.foreach(log => readAhead.maybeReadAhead(tp, fetchDataInfo, log.logEndOffsetMetadata))
+          }
+
           LogReadResult(info = fetchDataInfo,
             highWatermark = readInfo.highWatermark,
             leaderLogStartOffset = readInfo.logStartOffset,
@@ -1248,6 +1311,10 @@ class ReplicaManager(val config: KafkaConfig,
         else
           Set.empty[Partition]
 
+        // The fetch sessions reading only the changed partitions must read these again, so that their followers
+        // learn about the new leader epoch or about the errors of the partitions
+        partitionStates.keys.foreach(partition => partitionChanged(partition.topicPartition))
+
         /*
          * KAFKA-8392
          * For topic partitions of which the broker is no longer a leader, delete metrics related to
@@ -1604,6 +1671,7 @@ class ReplicaManager(val config: KafkaConfig,
   def markPartitionOffline(tp: TopicPartition): Unit = replicaStateChangeLock synchronized {
     allPartitions.put(tp, HostedPartition.Offline)
     Partition.removeMetrics(tp)
+    partitionChanged(tp)
   }
 
   // logDir should be an absolute path
@@ -1664,6 +1732,7 @@ class ReplicaManager(val config: KafkaConfig,
     delayedProducePurgatory.shutdown()
     delayedDeleteRecordsPurgatory.shutdown()
     delayedElectLeaderPurgatory.shutdown()
+    fetchReadAhead.foreach(_.shutdown())
     if (checkpointHW)
       checkpointHighWatermarks()
     replicaSelectorOpt.foreach(_.close)
@@ -30,7 +30,7 @@ import scala.math._
  * (the units of the process don't matter, it could be bytes or a count of some other thing), and will sleep for 
  * an appropriate amount of time when maybeThrottle() is called to attain the desired rate.
  * 
- * @param desiredRatePerSec: The rate we want to hit in units/sec
+ * @param desiredRatePerSec: The rate we want to hit in units/sec, which may be updated with updateDesiredRatePerSec()
  * @param checkIntervalMs: The interval at which to check our rate
  * @param throttleDown: Does throttling increase or decrease our rate?
  * @param time: The time implementation to use
@@ -48,6 +48,13 @@ class Throttler(desiredRatePerSec: Double,
   private val checkIntervalNs = TimeUnit.MILLISECONDS.toNanos(checkIntervalMs)
   private var periodStartNs: Long = time.nanoseconds
   private var observedSoFar: Double = 0.0
+  @volatile private var desiredRate: Double = desiredRatePerSec
+
+  def currentDesiredRatePerSec: Double = desiredRate
+
+  def updateDesiredRatePerSec(updatedDesiredRatePerSec: Double): Unit = {
+    desiredRate = updatedDesiredRatePerSec
+  }
   
   def maybeThrottle(observed: Double): Unit = {
     val msPerSec = TimeUnit.SECONDS.toMillis(1)
@@ -62,6 +69,7 @@ class Throttler(desiredRatePerSec: Double,
       // we should take a little nap
       if (elapsedNs > checkIntervalNs && observedSoFar > 0) {
         val rateInSecs = (observedSoFar * nsPerSec) / elapsedNs
+        val desiredRatePerSec = desiredRate
         val needAdjustment = !(throttleDown ^ (rateInSecs > desiredRatePerSec))
         if (needAdjustment) {
           // solve for the amount of time to sleep to make us hit the desired rate
@@ -51,6 +51,21 @@ trait Timer {
   def shutdown(): Unit
 }
 
+object Timer {
+  /** The type of [[SystemTimer]] */
+  val SystemTimerType = "system"
+  /** The type of [[ArrayTimer]] */
+  val ArrayTimerType = "array"
+
+  val TimerTypes = Seq(SystemTimerType, ArrayTimerType)
+
+  def apply(timerType: String, executorName: String): Timer = timerType match {
+    case SystemTimerType => new SystemTimer(executorName)
+    case ArrayTimerType => new ArrayTimer(executorName)
+    case _ => throw new IllegalArgumentException(s"Unknown timer type $timerType, valid types are ${TimerTypes.mkString(",")}")
+  }
+}
+
 @threadsafe
 class SystemTimer(executorName: String,
                   tickMs: Long = 1,
@@ -22,10 +22,29 @@ trait TimerTask extends Runnable {
 
   private[this] var timerTaskEntry: TimerTaskEntry = null
 
+  // the bucket of an ArrayTimer holding this task, and the position of the task in the bucket.
+  // ArrayTimer holds the tasks themselves instead of allocating an entry for each task.
+  @volatile private[timer] var timerTaskBucket: TimerTaskBucket = null
+  private[timer] var timerTaskBucketIndex: Int = -1
+  private[timer] var timerTaskExpirationMs: Long = -1L
+  @volatile private[timer] var timerTaskCancelled: Boolean = false
+
   def cancel(): Unit = {
     synchronized {
       if (timerTaskEntry != null) timerTaskEntry.remove()
       timerTaskEntry = null
+      timerTaskCancelled = true
+      removeFromBucket()
+    }
+  }
+
+  private[timer] def removeFromBucket(): Unit = {
+    var currentBucket = timerTaskBucket
+    // If another thread moves this task to another bucket meanwhile, the removal from the previous bucket does
+    // nothing, thus we retry until the bucket becomes null.
+    while (currentBucket != null) {
+      currentBucket.remove(this)
+      currentBucket = timerTaskBucket
     }
   }
 
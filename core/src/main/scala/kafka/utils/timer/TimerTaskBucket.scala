@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package kafka.utils.timer
+
+import java.util.concurrent.{Delayed, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+import kafka.utils.threadsafe
+import org.apache.kafka.common.utils.Time
+
+import scala.math._
+
+/*
+ * A bucket of an ArrayTimingWheel. The tasks are held in an array, and each task records its position in the array
+ * so that it is removed in constant time by moving the last task of the array in its place. Unlike TimerTaskList,
+ * adding a task does not allocate anything once the array has grown to the number of tasks of the bucket.
+ */
+@threadsafe
+private[timer] class TimerTaskBucket(taskCounter: AtomicInteger) extends Delayed {
+
+  private[this] var tasks = new Array[TimerTask](TimerTaskBucket.InitialCapacity)
+  private[this] var count = 0
+
+  private[this] val expiration = new AtomicLong(-1L)
+
+  // Set the bucket's expiration time
+  // Returns true if the expiration time is changed
+  def setExpiration(expirationMs: Long): Boolean = {
+    expiration.getAndSet(expirationMs) != expirationMs
+  }
+
+  // Get the bucket's expiration time
+  def getExpiration(): Long = {
+    expiration.get()
+  }
+
+  def size: Int = synchronized {
+    count
+  }
+
+  // Apply the supplied function to each of tasks in this bucket
+  def foreach(f: (TimerTask)=>Unit): Unit = {
+    synchronized {
+      // iterate from the end so that tasks removed by f do not move tasks which are not visited yet
+      var i = count - 1
+      while (i >= 0) {
+        if (i < count) f(tasks(i))
+        i -= 1
+      }
+    }
+  }
+
+  // Add a timer task to this bucket
+  def add(timerTask: TimerTask): Unit = {
+    var done = false
+    while (!done) {
+      // Remove the timer task if it is already in any other bucket
+      // We do this outside of the sync block below to avoid deadlocking.
+      // We may retry until timerTask.timerTaskBucket becomes null.
+      timerTask.removeFromBucket()
+
+      synchronized {
+        if (timerTask.timerTaskBucket == null) {
+          if (count == tasks.length)
+            tasks = java.util.Arrays.copyOf(tasks, count * 2)
+          tasks(count) = timerTask
+          timerTask.timerTaskBucketIndex = count
+          timerTask.timerTaskBucket = this
+          count += 1
+          taskCounter.incrementAndGet()
+          done = true
+        }
+      }
+    }
+  }
+
+  // Remove the specified timer task from this bucket
+  def remove(timerTask: TimerTask): Unit = {
+    synchronized {
+      if (timerTask.timerTaskBucket eq this) {
+        val index = timerTask.timerTaskBucketIndex
+        count -= 1
+        val last = tasks(count)
+        tasks(index) = last
+        last.timerTaskBucketIndex = index
+        tasks(count) = null
+        timerTask.timerTaskBucketIndex = -1
+        timerTask.timerTaskBucket = null
+        taskCounter.decrementAndGet()
+      }
+    }
+  }
+
+  // Remove all tasks and apply the supplied function to each of them
+  def flush(f: (TimerTask)=>Unit): Unit = {
+    synchronized {
+      val flushed = count
+      var i = 0
+      while (i < flushed) {
+        val timerTask = tasks(i)
+        timerTask.timerTaskBucketIndex = -1
+        timerTask.timerTaskBucket = null
+        i += 1
+      }
+      count = 0
+      taskCounter.addAndGet(-flushed)
+      expiration.set(-1L)
+
+      // f may add tasks to other buckets only, so the tasks are applied after the bucket is emptied. The array is
+      // kept for the next cycle of the wheel, unless it grew much larger than what the bucket held this cycle.
+      val flushedTasks = tasks
+      if (flushedTasks.length > TimerTaskBucket.InitialCapacity && flushed < flushedTasks.length / 4)
+        tasks = new Array[TimerTask](max(TimerTaskBucket.InitialCapacity, flushedTasks.length / 2))
+      i = 0
+      while (i < flushed) {
+        val timerTask = flushedTasks(i)
+        flushedTasks(i) = null
+        f(timerTask)
+        i += 1
+      }
+    }
+  }
+
+  def getDelay(unit: TimeUnit): Long = {
+    unit.convert(max(getExpiration - Time.SYSTEM.hiResClockMs, 0), TimeUnit.MILLISECONDS)
+  }
+
+  def compareTo(d: Delayed): Int = {
+
+    val other = d.asInstanceOf[TimerTaskBucket]
+
+    if(getExpiration < other.getExpiration) -1
+    else if(getExpiration > other.getExpiration) 1
+    else 0
+  }
+
+}
+
+private[timer] object TimerTaskBucket {
+  val InitialCapacity = 16
+}
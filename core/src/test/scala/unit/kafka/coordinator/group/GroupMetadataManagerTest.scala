@@ -19,6 +19,7 @@ package kafka.coordinator.group
 
 import java.lang.management.ManagementFactory
 import java.nio.ByteBuffer
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch}
 import java.util.concurrent.locks.ReentrantLock
 import java.util.{Collections, Optional}
 
@@ -61,6 +62,7 @@ class GroupMetadataManagerTest {
   var partition: Partition = null
   var defaultOffsetRetentionMs = Long.MaxValue
   var metrics: kMetrics = null
+  var offsetConfig: OffsetConfig = null
 
   val groupId = "foo"
   val groupInstanceId = Some("bar")
@@ -75,7 +77,7 @@ class GroupMetadataManagerTest {
   def setUp(): Unit = {
     val config = KafkaConfig.fromProps(TestUtils.createBrokerConfig(nodeId = 0, zkConnect = ""))
 
-    val offsetConfig = OffsetConfig(maxMetadataSize = config.offsetMetadataMaxSize,
+    offsetConfig = OffsetConfig(maxMetadataSize = config.offsetMetadataMaxSize,
       loadBufferSize = config.offsetsLoadBufferSize,
       offsetsRetentionMs = config.offsetsRetentionMinutes * 60 * 1000L,
       offsetsRetentionCheckIntervalMs = config.offsetsRetentionCheckIntervalMs,
@@ -90,7 +92,7 @@ class GroupMetadataManagerTest {
 
     // make two partitions of the group topic to make sure some partitions are not owned by the coordinator
     zkClient = EasyMock.createNiceMock(classOf[KafkaZkClient])
-    EasyMock.expect(zkClient.getTopicPartitionCount(Topic.GROUP_METADATA_TOPIC_NAME)).andReturn(Some(2))
+    EasyMock.expect(zkClient.getTopicPartitionCount(Topic.GROUP_METADATA_TOPIC_NAME)).andStubReturn(Some(2))
     EasyMock.replay(zkClient)
 
     metrics = new kMetrics()
@@ -2390,4 +2392,170 @@ class GroupMetadataManagerTest {
     assertTrue(partitionLoadTime("partition-load-time-max") >= 0.0)
     assertTrue(partitionLoadTime( "partition-load-time-avg") >= 0.0)
   }
+
+  @Test
+  def testPartitionLoadMetricsPerPartition(): Unit = {
+    val groupMetadataTopicPartition = groupTopicPartition
+    val startOffset = 15L
+    val committedOffsets = Map(
+      new TopicPartition("foo", 0) -> 23L,
+      new TopicPartition("foo", 1) -> 455L,
+      new TopicPartition("bar", 0) -> 8992L
+    )
+
+    val offsetCommitRecords = createCommittedOffsetRecords(committedOffsets)
+    val records = MemoryRecords.withRecords(startOffset, CompressionType.NONE, offsetCommitRecords.toArray: _*)
+    expectGroupMetadataLoad(groupMetadataTopicPartition, startOffset, records)
+    EasyMock.replay(replicaManager)
+    groupMetadataManager.loadGroupsAndOffsets(groupMetadataTopicPartition, _ => ())
+
+    def partitionLoadMetric(name: String): Double = {
+      val tags = Map("partition" -> groupMetadataTopicPartition.partition.toString).asJava
+      metrics.metric(metrics.metricName(name, "group-coordinator-metrics", tags)).metricValue.asInstanceOf[Double]
+    }
+
+    assertEquals(records.sizeInBytes.toDouble, partitionLoadMetric("partition-load-bytes"), 0)
+    assertTrue(partitionLoadMetric("partition-load-time-ms") >= 0.0)
+  }
+
+  @Test
+  def testPartitionLoadMetricsRemovedOnUnload(): Unit = {
+    val records = MemoryRecords.withRecords(0L, CompressionType.NONE,
+      createCommittedOffsetRecords(Map(new TopicPartition("foo", 0) -> 23L)).toArray: _*)
+    expectGroupMetadataLoad(groupTopicPartition, 0L, records)
+    EasyMock.replay(replicaManager)
+
+    val tags = Map("partition" -> groupTopicPartition.partition.toString).asJava
+    val loadBytesMetric = metrics.metricName("partition-load-bytes", "group-coordinator-metrics", tags)
+    val loadTimeMetric = metrics.metricName("partition-load-time-ms", "group-coordinator-metrics", tags)
+
+    groupMetadataManager.startup(enableMetadataExpiration = false)
+    try {
+      groupMetadataManager.loadGroupsAndOffsets(groupTopicPartition, _ => ())
+      assertTrue(metrics.metrics.containsKey(loadBytesMetric))
+      assertTrue(metrics.metrics.containsKey(loadTimeMetric))
+
+      groupMetadataManager.removeGroupsForPartition(groupTopicPartition.partition, _ => ())
+      TestUtils.waitUntilTrue(() => !metrics.metrics.containsKey(loadBytesMetric) &&
+        !metrics.metrics.containsKey(loadTimeMetric), "Load metrics of the unloaded partition were not removed")
+    } finally {
+      groupMetadataManager.shutdown()
+    }
+  }
+
+  @Test
+  def testScheduleLoadGroupAndOffsetsWithMultipleLoadThreads(): Unit = {
+    val otherTopicPartition = new TopicPartition(Topic.GROUP_METADATA_TOPIC_NAME, groupPartitionId + 1)
+    val committedOffsets = Map(new TopicPartition("foo", 0) -> 23L)
+    val records = MemoryRecords.withRecords(0L, CompressionType.NONE, createCommittedOffsetRecords(committedOffsets).toArray: _*)
+    val loadAllowed = new CountDownLatch(1)
+    expectBlockedGroupMetadataLoad(groupTopicPartition, records, loadAllowed)
+    EasyMock.expect(replicaManager.getLog(otherTopicPartition)).andStubReturn(None)
+    EasyMock.replay(replicaManager)
+
+    val manager = new GroupMetadataManager(0, ApiVersion.latestVersion, offsetConfig.copy(loadThreads = 2),
+      replicaManager, zkClient, time, metrics)
+    manager.startup(enableMetadataExpiration = false)
+    try {
+      manager.scheduleLoadGroupAndOffsets(groupTopicPartition.partition, _ => ())
+      manager.scheduleLoadGroupAndOffsets(otherTopicPartition.partition, _ => ())
+
+      // the other partition is loaded while the load of the first one is blocked
+      TestUtils.waitUntilTrue(() => manager.isPartitionOwned(otherTopicPartition.partition),
+        "Partition was not loaded while the load of another partition was in progress")
+      assertTrue(manager.isPartitionLoading(groupTopicPartition.partition))
+
+      loadAllowed.countDown()
+      TestUtils.waitUntilTrue(() => manager.isPartitionOwned(groupTopicPartition.partition),
+        "Partition was not loaded")
+      assertFalse(manager.isLoading)
+      val group = manager.getGroup(groupId).getOrElse(fail("Group was not loaded into the cache"))
+      assertEquals(Some(23L), group.offset(new TopicPartition("foo", 0)).map(_.offset))
+    } finally {
+      loadAllowed.countDown()
+      manager.shutdown()
+    }
+  }
+
+  @Test
+  def testRemoveGroupsForPartitionWaitsForPartitionLoad(): Unit = {
+    val records = MemoryRecords.withRecords(0L, CompressionType.NONE,
+      createCommittedOffsetRecords(Map(new TopicPartition("foo", 0) -> 23L)).toArray: _*)
+    val loadAllowed = new CountDownLatch(1)
+    expectBlockedGroupMetadataLoad(groupTopicPartition, records, loadAllowed)
+    EasyMock.replay(replicaManager)
+
+    val manager = new GroupMetadataManager(0, ApiVersion.latestVersion, offsetConfig.copy(loadThreads = 2),
+      replicaManager, zkClient, time, metrics)
+    manager.startup(enableMetadataExpiration = false)
+    try {
+      val unloadedGroups = new ConcurrentLinkedQueue[String]()
+      manager.scheduleLoadGroupAndOffsets(groupTopicPartition.partition, _ => ())
+      manager.removeGroupsForPartition(groupTopicPartition.partition, group => unloadedGroups.add(group.groupId))
+      loadAllowed.countDown()
+
+      // the unload runs after the load, so it removes the loaded group and the partition is not owned in the end
+      TestUtils.waitUntilTrue(() => !unloadedGroups.isEmpty, "Loaded group was not unloaded")
+      assertEquals(List(groupId), unloadedGroups.asScala.toList)
+      assertFalse(manager.isPartitionLoading(groupTopicPartition.partition))
+      assertFalse(manager.isPartitionOwned(groupTopicPartition.partition))
+      assertEquals(None, manager.getGroup(groupId))
+    } finally {
+      loadAllowed.countDown()
+      manager.shutdown()
+    }
+  }
+
+  @Test
+  def testScheduleHandleTxnCompletionWaitsForPartitionLoad(): Unit = {
+    val producerId = 1000L
+    val producerEpoch: Short = 2
+    val committedOffsets = Map(new TopicPartition("foo", 0) -> 23L)
+
+    val buffer = ByteBuffer.allocate(1024)
+    appendTransactionalOffsetCommits(buffer, producerId, producerEpoch, 0L, committedOffsets)
+    buffer.flip()
+    val loadAllowed = new CountDownLatch(1)
+    expectBlockedGroupMetadataLoad(groupTopicPartition, MemoryRecords.readableRecords(buffer), loadAllowed)
+    EasyMock.replay(replicaManager)
+
+    val manager = new GroupMetadataManager(0, ApiVersion.latestVersion, offsetConfig.copy(loadThreads = 2),
+      replicaManager, zkClient, time, metrics)
+    manager.startup(enableMetadataExpiration = false)
+    try {
+      manager.scheduleLoadGroupAndOffsets(groupTopicPartition.partition, _ => ())
+      manager.scheduleHandleTxnCompletion(producerId, Set(groupTopicPartition.partition), isCommit = true)
+      loadAllowed.countDown()
+
+      // the completion runs after the load, so it commits the pending offsets of the loaded group
+      TestUtils.waitUntilTrue(() => manager.getGroup(groupId).exists(_.offset(new TopicPartition("foo", 0)).isDefined),
+        "Pending transactional offsets of the loaded group were not committed")
+      val group = manager.getGroup(groupId).get
+      assertEquals(Some(23L), group.offset(new TopicPartition("foo", 0)).map(_.offset))
+      assertFalse(group.hasPendingOffsetCommitsFromProducer(producerId))
+    } finally {
+      loadAllowed.countDown()
+      manager.shutdown()
+    }
+  }
+
+  /**
+   * Mock the log of the given partition of the offsets topic, whose read blocks until the load is allowed
+   */
+  private def expectBlockedGroupMetadataLoad(groupMetadataTopicPartition: TopicPartition,
+                                             records: MemoryRecords,
+                                             loadAllowed: CountDownLatch): Unit = {
+    val logMock: Log = EasyMock.mock(classOf[Log])
+    // the calls of the mocks are otherwise serialized, so the blocked read would block the reads of the other loads
+    EasyMock.makeThreadSafe(replicaManager, false)
+    EasyMock.expect(replicaManager.getLog(groupMetadataTopicPartition)).andStubAnswer(new IAnswer[Option[Log]] {
+      override def answer: Option[Log] = {
+        loadAllowed.await()
+        Some(logMock)
+      }
+    })
+    val endOffset = expectGroupMetadataLoad(logMock, 0L, records)
+    EasyMock.expect(replicaManager.getLogEndOffset(groupMetadataTopicPartition)).andStubReturn(Some(endOffset))
+    EasyMock.replay(logMock)
+  }
 }
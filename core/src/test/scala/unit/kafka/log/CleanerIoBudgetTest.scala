@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import kafka.utils.MockTime
+import org.junit.Assert._
+import org.junit.Test
+
+class CleanerIoBudgetTest {
+  private val time = new MockTime()
+  private val minBytesPerSec = 1000.0
+  private val maxBytesPerSec = 5000.0
+  private var load = BrokerLoad.Idle
+  private val budget = new CleanerIoBudget(() => load, time)
+
+  private def update(): Double = {
+    time.sleep(CleanerIoBudget.UpdateIntervalMs)
+    budget.update(minBytesPerSec, maxBytesPerSec)
+  }
+
+  @Test
+  def testBudgetBacksOffAtOnceAndSpeedsUpGradually(): Unit = {
+    assertEquals(maxBytesPerSec, update(), 0.0)
+
+    load = load.copy(requestHandlerIdleRatio = CleanerIoBudget.LowIdleRatio)
+    assertEquals(minBytesPerSec, update(), 0.0)
+
+    load = BrokerLoad.Idle
+    val increase = (maxBytesPerSec - minBytesPerSec) * CleanerIoBudget.IncreaseFraction
+    assertEquals(minBytesPerSec + increase, update(), 0.001)
+    assertTrue(update() > minBytesPerSec + increase)
+    for (_ <- 0 until 100)
+      update()
+    assertEquals(maxBytesPerSec, budget.bytesPerSec, 1.0)
+  }
+
+  @Test
+  def testBudgetWithinBounds(): Unit = {
+    assertEquals(maxBytesPerSec, update(), 0.0)
+    // the bounds may be reconfigured
+    assertEquals(2000.0, budget.update(minBytesPerSec, 2000.0), 0.0)
+    load = load.copy(requestHandlerIdleRatio = 0.0)
+    assertEquals(1500.0, budget.update(1500.0, 2000.0), 0.0)
+  }
+
+  @Test
+  def testPressureOfRequestHandlers(): Unit = {
+    def pressure(idleRatio: Double): Double =
+      CleanerIoBudget.pressure(BrokerLoad.Idle.copy(requestHandlerIdleRatio = idleRatio), peakBytesPerSec = 0.0)
+
+    assertEquals(0.0, pressure(1.0), 0.0)
+    assertEquals(0.0, pressure(CleanerIoBudget.HighIdleRatio), 0.0)
+    assertEquals(0.5, pressure((CleanerIoBudget.HighIdleRatio + CleanerIoBudget.LowIdleRatio) / 2), 0.001)
+    assertEquals(1.0, pressure(CleanerIoBudget.LowIdleRatio), 0.0)
+    assertEquals(1.0, pressure(0.0), 0.0)
+  }
+
+  @Test
+  def testPressureOfFlushes(): Unit = {
+    def pressure(recentFlushTimeMs: Double, meanFlushTimeMs: Double): Double =
+      CleanerIoBudget.pressure(BrokerLoad.Idle.copy(recentFlushTimeMs = recentFlushTimeMs,
+        meanFlushTimeMs = meanFlushTimeMs), peakBytesPerSec = 0.0)
+
+    // no log was flushed yet
+    assertEquals(0.0, pressure(0.0, 0.0), 0.0)
+    assertEquals(0.0, pressure(5.0, 10.0), 0.0)
+    assertEquals(0.0, pressure(10.0, 10.0), 0.0)
+    assertEquals(0.5, pressure(20.0, 10.0), 0.001)
+    assertEquals(1.0, pressure(10.0 * CleanerIoBudget.SlowFlushRatio, 10.0), 0.0)
+  }
+
+  @Test
+  def testPressureOfTraffic(): Unit = {
+    def pressure(bytesPerSec: Double, peakBytesPerSec: Double): Double =
+      CleanerIoBudget.pressure(BrokerLoad.Idle.copy(bytesPerSec = bytesPerSec), peakBytesPerSec)
+
+    assertEquals(0.0, pressure(0.0, 0.0), 0.0)
+    assertEquals(0.0, pressure(100.0, 1000.0), 0.0)
+    assertEquals(0.0, pressure(1000.0 * CleanerIoBudget.LowTrafficRatio, 1000.0), 0.0)
+    assertEquals(CleanerIoBudget.MaxTrafficPressure, pressure(1000.0, 1000.0), 0.0)
+  }
+
+  @Test
+  def testPeakTrafficDecays(): Unit = {
+    load = load.copy(bytesPerSec = 1000.0)
+    val peakBudget = maxBytesPerSec - (maxBytesPerSec - minBytesPerSec) * CleanerIoBudget.MaxTrafficPressure
+    assertEquals(peakBudget, update(), 0.001)
+
+    // the traffic drops off its peak
+    load = load.copy(bytesPerSec = 100.0)
+    update()
+    // the traffic is steady long enough to become the peak
+    time.sleep(10 * CleanerIoBudget.PeakDecayMs)
+    assertEquals(peakBudget, update(), 0.001)
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+import kafka.utils.TestUtils
+import org.apache.kafka.common.utils.Utils
+import org.junit.Assert._
+import org.junit.{After, Test}
+
+class CleanerKeyIndexTest {
+  private val dir = TestUtils.tempDir()
+  private var index: CleanerKeyIndex = _
+
+  @After
+  def teardown(): Unit = {
+    if (index != null)
+      index.close()
+    Utils.delete(dir)
+  }
+
+  @Test
+  def testPutAndGet(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    assertEquals(-1L, index.endOffset)
+    for (i <- 0 until 1000)
+      assertEquals(-1L, index.putKey(key(i), i))
+    assertEquals(999L, index.putKey(key(999), 1000L))
+    assertEquals(1000, index.size)
+    assertEquals(1000L, index.latestOffset)
+    for (i <- 0 until 999)
+      assertEquals(i.toLong, index.get(key(i)))
+    assertEquals(1000L, index.get(key(999)))
+    assertEquals(-1L, index.get(key(1000)))
+  }
+
+  @Test
+  def testGrow(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    val initialSlots = index.slots
+    for (i <- 0 until initialSlots)
+      index.putKey(key(i), i)
+    assertTrue("The index should grow before it is half full", index.slots >= 2 * initialSlots)
+    assertEquals(initialSlots, index.size)
+    for (i <- 0 until initialSlots)
+      assertEquals(i.toLong, index.get(key(i)))
+    assertFalse("The file of the index should be replaced", new File(dir, CleanerKeyIndex.FileName + ".tmp").exists)
+  }
+
+  @Test
+  def testCommitAndReopen(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    for (i <- 0 until 100)
+      index.putKey(key(i), i)
+    index.updateLatestOffset(149L)
+    index.commit(Seq(new CleanedSegmentStats(0L, 1024, records = 50, deadRecords = 10, tombstones = 5),
+      new CleanedSegmentStats(50L, 2048, records = 50, hasTransactions = true)))
+    assertEquals(150L, index.endOffset)
+    index.close()
+
+    index = new CleanerKeyIndex(dir)
+    assertEquals(150L, index.endOffset)
+    assertEquals(149L, index.latestOffset)
+    assertEquals(100, index.size)
+    for (i <- 0 until 100)
+      assertEquals(i.toLong, index.get(key(i)))
+    assertEquals(Set(0L, 50L), index.segmentStats.keySet)
+    val stats = index.segmentStats(0L)
+    assertEquals(1024, stats.size)
+    assertEquals(50, stats.records)
+    assertEquals(10, stats.deadRecords)
+    assertEquals(5, stats.tombstones)
+    assertEquals(45, stats.liveKeys)
+    assertFalse(stats.hasTransactions)
+    assertTrue(index.segmentStats(50L).hasTransactions)
+  }
+
+  @Test
+  def testIndexIsInvalidUntilCommitted(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    index.putKey(key(0), 0L)
+    index.commit(Seq.empty)
+    assertEquals(1L, index.endOffset)
+
+    index.beginUpdate()
+    index.putKey(key(1), 1L)
+    index.close()
+
+    index = new CleanerKeyIndex(dir)
+    assertEquals("An index which was not committed should not be valid", -1L, index.endOffset)
+    index.clear()
+    assertEquals(0, index.size)
+    assertEquals(-1L, index.get(key(0)))
+  }
+
+  @Test
+  def testIndexIsInvalidWithoutSegmentStats(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    index.putKey(key(0), 0L)
+    index.commit(Seq(new CleanedSegmentStats(0L, 100)))
+    index.close()
+
+    Files.write(new File(dir, CleanerKeyIndex.SegmentStatsFileName).toPath, "0\n2\n0 100 1 0 0 false\n".getBytes)
+    index = new CleanerKeyIndex(dir)
+    assertEquals(-1L, index.endOffset)
+  }
+
+  @Test
+  def testDeleteIfExists(): Unit = {
+    index = new CleanerKeyIndex(dir)
+    index.commit(Seq.empty)
+    index.close()
+    index = null
+    CleanerKeyIndex.deleteIfExists(dir)
+    assertFalse(new File(dir, CleanerKeyIndex.FileName).exists)
+    assertFalse(new File(dir, CleanerKeyIndex.SegmentStatsFileName).exists)
+  }
+
+  private def key(key: Int): ByteBuffer = ByteBuffer.wrap(key.toString.getBytes)
+}
@@ -197,6 +197,28 @@ class LogCleanerIntegrationTest extends AbstractLogCleanerIntegrationTest with K
     }
   }
 
+  @Test
+  def testPartitionCleanTimeMetrics(): Unit = {
+    val topicPartition = topicPartitions(0)
+    cleaner = makeCleaner(partitions = Seq(topicPartition), backOffMs = 100)
+    val log = cleaner.logs.get(topicPartition)
+    writeDups(numKeys = 100, numDups = 3, log = log, codec = codec)
+    val firstDirty = log.activeSegment.baseOffset
+    cleaner.startup()
+    assertTrue("The log should have been cleaned", cleaner.awaitCleaned(topicPartition, firstDirty))
+
+    val scope = "partition.0.topic.log"
+    def metricExists(metricName: String): Boolean =
+      KafkaYammerMetrics.defaultRegistry.allMetrics.asScala.keys.exists(k => k.getName == metricName && k.getScope == scope)
+    assertTrue(getGauge[Long](LogCleaner.LastCleanTimeMsMetricName, scope).value() >= 0)
+    assertTrue(getGauge[Long](LogCleaner.LastCleanCpuTimeMsMetricName, scope).value() >= 0)
+
+    // the metrics are removed when the partition stops being cleaned, e.g. when it is deleted
+    cleaner.abortCleaning(topicPartition)
+    assertFalse(metricExists(LogCleaner.LastCleanTimeMsMetricName))
+    assertFalse(metricExists(LogCleaner.LastCleanCpuTimeMsMetricName))
+  }
+
   @Test
   def testIsThreadFailed(): Unit = {
     val metricName = "DeadThreadCount"
@@ -1443,6 +1443,249 @@ class LogCleanerTest {
     assertEquals("Map should contain second value", offsetEnd, map.get(key(1)))
   }
 
+  @Test
+  def testBuildCompactOffsetMapBeyondOffsetRange(): Unit = {
+    val map = new CompactOffsetMap(1024)
+    val logProps = new Properties()
+    logProps.put(LogConfig.SegmentBytesProp, 120: java.lang.Integer)
+    logProps.put(LogConfig.SegmentIndexBytesProp, 120: java.lang.Integer)
+    logProps.put(LogConfig.CleanupPolicyProp, LogConfig.Compact)
+    val log = makeLog(config = LogConfig(logProps))
+    val cleaner = makeCleaner(Int.MaxValue)
+    // the second offset can not be stored relative to the first one
+    val offsetEnd = Int.MaxValue + 10L
+    writeToLog(log, Seq((0, 0), (1, 1)), Seq(0L, offsetEnd))
+    cleaner.buildOffsetMap(log, 0L, offsetEnd + 1L, map, new CleanerStats())
+    assertEquals("The map should be full after the first offset.", 0L, map.latestOffset)
+    assertEquals(1, map.size)
+    assertEquals(0L, map.get(key(0)))
+    assertEquals(-1L, map.get(key(1)))
+    map.close()
+  }
+
+  @Test
+  def testBuildCompactOffsetMapConcurrently(): Unit = {
+    val log = makeLog()
+    writeToLog(log, (0 until 500).map(i => (i % 100, i)))
+    val sequentialCleaner = makeCompactCleaner(parallelism = 1)
+    val concurrentCleaner = makeCompactCleaner(parallelism = 2)
+
+    // with a map which fits all the keys, and one which is filled while it is built
+    try {
+      for (memory <- Seq(64 * 1024, 20 * CompactOffsetMap.BytesPerEntry)) {
+        val sequentialMap = new CompactOffsetMap(memory)
+        val concurrentMap = new CompactOffsetMap(memory)
+        val sequentialStats = new CleanerStats()
+        val concurrentStats = new CleanerStats()
+        sequentialCleaner.buildOffsetMap(log, 0L, log.activeSegment.baseOffset, sequentialMap, sequentialStats)
+        concurrentCleaner.buildOffsetMap(log, 0L, log.activeSegment.baseOffset, concurrentMap, concurrentStats)
+
+        assertEquals(sequentialMap.latestOffset, concurrentMap.latestOffset)
+        assertEquals(sequentialMap.size, concurrentMap.size)
+        for (i <- 0 until 100)
+          assertEquals(s"The offset of key $i should match", sequentialMap.get(key(i)), concurrentMap.get(key(i)))
+        assertEquals(sequentialStats.mapBytesRead, concurrentStats.mapBytesRead)
+      }
+    } finally concurrentCleaner.shutdownWorkers()
+  }
+
+  @Test
+  def testCleanSegmentGroupsConcurrently(): Unit = {
+    val tp = new TopicPartition("test", 0)
+    val producerId = 1L
+    val producerEpoch = 0.toShort
+
+    def writeAndClean(dir: File, cleaner: Cleaner): (Long, Log) = {
+      val log = makeLog(dir = dir)
+      writeToLog(log, (0 until 200).map(i => (i % 50, i)))
+      // a transaction spanning several groups of segments, after which the groups are cleaned sequentially
+      val appendProducer = appendTransactionalAsLeader(log, producerId, producerEpoch)
+      for (i <- 0 until 20) {
+        appendProducer(Seq(i, 50 + i))
+        writeToLog(log, Seq((i, i)))
+      }
+      log.appendAsLeader(commitMarker(producerId, producerEpoch), leaderEpoch = 0, origin = AppendOrigin.Coordinator)
+      writeToLog(log, (0 until 200).map(i => (i % 50, i)))
+      log.roll()
+
+      val (endOffset, _) = cleaner.doClean(LogToClean(tp, log, 0L, log.activeSegment.baseOffset),
+        deleteHorizonMs = Long.MaxValue)
+      (endOffset, log)
+    }
+
+    val concurrentCleaner = makeCompactCleaner(parallelism = 2)
+    try {
+      val (sequentialEndOffset, sequentialLog) = writeAndClean(dir, makeCompactCleaner(parallelism = 1))
+      val (concurrentEndOffset, concurrentLog) = writeAndClean(TestUtils.randomPartitionLogDir(tmpdir), concurrentCleaner)
+      assertTrue("The log should be cleaned in several groups", concurrentLog.numberOfSegments > 2)
+      assertEquals(sequentialEndOffset, concurrentEndOffset)
+      assertEquals(LogTest.keysInLog(sequentialLog), LogTest.keysInLog(concurrentLog))
+      assertEquals(offsetsInLog(sequentialLog), offsetsInLog(concurrentLog))
+      assertEquals(lastOffsetsPerBatchInLog(sequentialLog), lastOffsetsPerBatchInLog(concurrentLog))
+    } finally concurrentCleaner.shutdownWorkers()
+  }
+
+  @Test
+  def testCleanIncrementally(): Unit = {
+    val tp = new TopicPartition("test", 0)
+    val log = makeLog()
+    val cleaner = makeCompactCleaner(parallelism = 1, incrementalMinDeadRatio = Some(0.5))
+
+    def clean(firstDirtyOffset: Long): Long =
+      cleaner.doClean(LogToClean(tp, log, firstDirtyOffset, log.activeSegment.baseOffset), deleteHorizonMs = Long.MaxValue)._1
+
+    def keyIndex[T](f: CleanerKeyIndex => T): T = {
+      val index = new CleanerKeyIndex(log.dir)
+      try f(index) finally index.close()
+    }
+
+    // the index is built the first time the log is cleaned
+    writeToLog(log, (0 until 100).map(i => (i, i)))
+    log.roll()
+    var endOffset = clean(0L)
+    keyIndex { index =>
+      assertEquals(endOffset, index.endOffset)
+      assertEquals(100, index.size)
+      assertEquals(log.logSegments(0L, endOffset).map(_.baseOffset).toSet, index.segmentStats.keySet)
+    }
+    val firstSegment = log.logSegments.head
+    val firstSegmentRecords = firstSegment.readNextOffset.toInt
+    assertTrue(s"Unexpected number of records $firstSegmentRecords in the first segment",
+      firstSegmentRecords >= 10 && firstSegmentRecords < 20)
+
+    // less than half of the records of the first segment are superseded, which is not cleaned again
+    writeToLog(log, (0 until 5).map(i => (i, i + 100)))
+    log.roll()
+    endOffset = clean(endOffset)
+    assertTrue("The first segment should not be cleaned again", log.logSegments.head eq firstSegment)
+    assertEquals(((0 until 100) ++ (0 until 5)).map(_.toLong).toList, LogTest.keysInLog(log).toList)
+    keyIndex { index =>
+      assertEquals(endOffset, index.endOffset)
+      assertEquals(100, index.size)
+      assertEquals(5, index.segmentStats(firstSegment.baseOffset).deadRecords)
+    }
+
+    // more than half of the records of the first segment are superseded, which is cleaned with the index
+    writeToLog(log, (5 until 10).map(i => (i, i + 100)))
+    log.roll()
+    endOffset = clean(endOffset)
+    assertFalse("The first segment should be cleaned again", log.logSegments.head eq firstSegment)
+    assertEquals(((10 until 100) ++ (0 until 10)).map(_.toLong).toList, LogTest.keysInLog(log).toList)
+    keyIndex { index =>
+      assertEquals(endOffset, index.endOffset)
+      assertEquals(0, index.segmentStats(log.logSegments.head.baseOffset).deadRecords)
+    }
+
+    // the index is deleted when the log is cleaned without it
+    writeToLog(log, Seq((0, 200)))
+    log.roll()
+    makeCompactCleaner(parallelism = 1).doClean(LogToClean(tp, log, endOffset, log.activeSegment.baseOffset),
+      deleteHorizonMs = Long.MaxValue)
+    assertFalse(new File(log.dir, CleanerKeyIndex.FileName).exists)
+    assertFalse(new File(log.dir, CleanerKeyIndex.SegmentStatsFileName).exists)
+  }
+
+  @Test
+  def testCleanIncrementallyPrunesStaleKeys(): Unit = {
+    val tp = new TopicPartition("test", 0)
+    val log = makeLog()
+    val cleaner = makeCompactCleaner(parallelism = 1, incrementalMinDeadRatio = Some(0.5))
+
+    def clean(firstDirtyOffset: Long, deleteHorizonMs: Long): Long =
+      cleaner.doClean(LogToClean(tp, log, firstDirtyOffset, log.activeSegment.baseOffset), deleteHorizonMs)._1
+
+    def keyIndexSize: Int = {
+      val index = new CleanerKeyIndex(log.dir)
+      try index.size finally index.close()
+    }
+
+    writeToLog(log, (0 until 100).map(i => (i, i)))
+    log.roll()
+    var endOffset = clean(0L, deleteHorizonMs = 0L)
+    assertEquals(100, keyIndexSize)
+
+    // the tombstones are removed, but their keys are kept in the index
+    for (key <- 0 until 60)
+      log.appendAsLeader(tombstoneRecord(key), leaderEpoch = 0)
+    log.roll()
+    endOffset = clean(endOffset, deleteHorizonMs = Long.MaxValue)
+    assertEquals((60 until 100).map(_.toLong).toList, LogTest.keysInLog(log).toList)
+    assertEquals(100, keyIndexSize)
+
+    // more than half of the keys of the index are stale, so it is rebuilt without them
+    writeToLog(log, Seq((100, 100)))
+    log.roll()
+    clean(endOffset, deleteHorizonMs = Long.MaxValue)
+    assertEquals(41, keyIndexSize)
+  }
+
+  @Test
+  def testCleanIncrementallyRemovesExpiredTombstones(): Unit = {
+    val tp = new TopicPartition("test", 0)
+    val log = makeLog()
+    val cleaner = makeCompactCleaner(parallelism = 1, incrementalMinDeadRatio = Some(0.5))
+
+    def clean(firstDirtyOffset: Long, deleteHorizonMs: Long): Long =
+      cleaner.doClean(LogToClean(tp, log, firstDirtyOffset, log.activeSegment.baseOffset), deleteHorizonMs)._1
+
+    def tombstonesInLog: Int =
+      log.logSegments.toSeq.flatMap(_.log.records.asScala).count(!_.hasValue)
+
+    writeToLog(log, (0 until 100).map(i => (i, i)))
+    log.roll()
+    var endOffset = clean(0L, deleteHorizonMs = 0L)
+
+    // few records of each segment are superseded, so the segments are skipped and the tombstones are retained
+    val deletedKeys = 0 until 100 by 10
+    for (key <- deletedKeys)
+      log.appendAsLeader(tombstoneRecord(key), leaderEpoch = 0)
+    log.roll()
+    endOffset = clean(endOffset, deleteHorizonMs = 0L)
+    assertEquals((0 until 100).map(_.toLong).toList, LogTest.keysInLog(log).toList)
+    assertEquals(deletedKeys.size, tombstonesInLog)
+
+    // once the tombstones expired, they are removed along with the records they superseded
+    writeToLog(log, Seq((100, 100)))
+    log.roll()
+    clean(endOffset, deleteHorizonMs = Long.MaxValue)
+    assertEquals((0 to 100).filterNot(deletedKeys.contains).map(_.toLong).toList, LogTest.keysInLog(log).toList)
+    assertEquals(0, tombstonesInLog)
+  }
+
+  @Test
+  def testKeyIndexDeletedWhenUnused(): Unit = {
+    val tp = new TopicPartition("test", 0)
+    val log = makeLog()
+    val indexFile = new File(log.dir, CleanerKeyIndex.FileName)
+
+    def buildKeyIndex(): Unit = {
+      writeToLog(log, (0 until 10).map(i => (i, i)))
+      log.roll()
+      makeCompactCleaner(parallelism = 1, incrementalMinDeadRatio = Some(0.5))
+        .doClean(LogToClean(tp, log, 0L, log.activeSegment.baseOffset), deleteHorizonMs = Long.MaxValue)
+      assertTrue(indexFile.exists)
+    }
+
+    // the index is deleted when the cleanup policy of the log does not compact it anymore
+    buildKeyIndex()
+    val logProps = new Properties()
+    logProps.put(LogConfig.CleanupPolicyProp, LogConfig.Delete)
+    log.updateConfig(LogConfig.fromProps(logConfig.originals, logProps))
+    assertFalse(indexFile.exists)
+
+    // the index is deleted when the log cleaner starts with incremental cleaning disabled
+    log.updateConfig(logConfig)
+    buildKeyIndex()
+    val logs = new Pool[TopicPartition, Log]()
+    logs.put(tp, log)
+    val logCleaner = new LogCleaner(CleanerConfig(backOffMs = Long.MaxValue), logDirs = Array(dir), logs = logs,
+      logDirFailureChannel = new LogDirFailureChannel(1), time = time)
+    try {
+      logCleaner.startup()
+      assertFalse(indexFile.exists)
+    } finally logCleaner.shutdown()
+  }
+
   /**
    * Test building a partial offset map of part of a log segment
    */
@@ -1656,6 +1899,18 @@ class LogCleanerTest {
                 time = time,
                 checkDone = checkDone)
 
+  private def makeCompactCleaner(parallelism: Int, incrementalMinDeadRatio: Option[Double] = None) =
+    new Cleaner(id = 0,
+                offsetMap = new CompactOffsetMap(64 * 1024),
+                ioBufferSize = 64 * 1024,
+                maxIoBufferSize = 64 * 1024,
+                dupBufferLoadFactor = 0.75,
+                throttler = throttler,
+                time = time,
+                checkDone = _ => (),
+                parallelism = parallelism,
+                incrementalMinDeadRatio = incrementalMinDeadRatio)
+
   private def writeToLog(log: Log, seq: Iterable[(Int, Int)]): Iterable[Long] = {
     for ((key, value) <- seq) yield log.appendAsLeader(record(key, value), leaderEpoch = 0).firstOffset.get
   }
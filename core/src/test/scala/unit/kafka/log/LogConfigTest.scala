@@ -24,6 +24,7 @@ import kafka.utils.TestUtils
 import org.apache.kafka.common.config.ConfigDef.Importance.MEDIUM
 import org.apache.kafka.common.config.ConfigDef.Type.INT
 import org.apache.kafka.common.config.{ConfigException, TopicConfig}
+import org.apache.kafka.common.errors.InvalidConfigurationException
 import org.junit.{Assert, Test}
 import org.junit.Assert._
 import org.scalatest.Assertions._
@@ -41,10 +42,12 @@ class LogConfigTest {
   def ensureNoStaticInitializationOrderDependency(): Unit = {
     // Access any KafkaConfig val to load KafkaConfig object before LogConfig.
     assertTrue(KafkaConfig.LogRetentionTimeMillisProp != null)
-    assertTrue(LogConfig.configNames.forall { config =>
+    // the zstd dictionary of a topic is the only topic config without a broker default
+    assertTrue(LogConfig.configNames.filterNot(_ == LogConfig.ZstdDictionaryIdProp).forall { config =>
       val serverConfigOpt = LogConfig.serverConfigName(config)
       serverConfigOpt.isDefined && (serverConfigOpt.get != null)
     })
+    assertEquals(None, LogConfig.serverConfigName(LogConfig.ZstdDictionaryIdProp))
   }
 
   @Test
@@ -62,6 +65,22 @@ class LogConfigTest {
     assertEquals(2 * millisInHour, logProps.get(LogConfig.RetentionMsProp))
   }
 
+  @Test
+  def testFromPropsWithDefaultBrokerConfig(): Unit = {
+    // topic creation and config updates build the topic config on top of the broker defaults like this
+    val kafkaConfig = KafkaConfig.fromProps(TestUtils.createBrokerConfig(nodeId = 0, zkConnect = ""))
+    val topicProps = new Properties
+    topicProps.setProperty(LogConfig.CompressionTypeProp, "gzip")
+    val logConfig = LogConfig.fromProps(KafkaServer.copyKafkaConfigToLog(kafkaConfig), topicProps)
+    assertEquals(None, logConfig.compressionLevel)
+
+    val kafkaProps = TestUtils.createBrokerConfig(nodeId = 0, zkConnect = "")
+    kafkaProps.put(KafkaConfig.CompressionTypeProp, "gzip")
+    kafkaProps.put(KafkaConfig.CompressionLevelProp, "5")
+    val logConfigWithLevel = LogConfig.fromProps(KafkaServer.copyKafkaConfigToLog(KafkaConfig.fromProps(kafkaProps)), topicProps)
+    assertEquals(Some(5), logConfigWithLevel.compressionLevel)
+  }
+
   @Test
   def testFromPropsEmpty(): Unit = {
     val p = new Properties()
@@ -79,6 +98,7 @@ class LogConfigTest {
       case LogConfig.MinCleanableDirtyRatioProp => assertPropertyInvalid(name, "not_a_number", "-0.1", "1.2")
       case LogConfig.MinInSyncReplicasProp => assertPropertyInvalid(name, "not_a_number", "0", "-1")
       case LogConfig.MessageFormatVersionProp => assertPropertyInvalid(name, "")
+      case LogConfig.CompressionLevelProp => assertPropertyInvalid(name, "not_a_number")
       case _ => assertPropertyInvalid(name, "not_a_number", "-1")
     })
   }
@@ -93,6 +113,25 @@ class LogConfigTest {
     }
   }
 
+  @Test
+  def testCompressionLevelConfig(): Unit = {
+    val props = new Properties
+    props.setProperty(LogConfig.CompressionTypeProp, "gzip")
+    props.setProperty(LogConfig.CompressionLevelProp, "9")
+    LogConfig.validate(props)
+    assertEquals(Some(9), LogConfig(props).compressionLevel)
+
+    props.setProperty(LogConfig.CompressionLevelProp, "10")
+    intercept[InvalidConfigurationException] {
+      LogConfig.validate(props)
+    }
+
+    // the level of the producer codec is not known when the topic config is validated
+    props.setProperty(LogConfig.CompressionTypeProp, "producer")
+    LogConfig.validate(props)
+    assertEquals(None, LogConfig(new Properties).compressionLevel)
+  }
+
   @Test
   def shouldValidateThrottledReplicasConfig(): Unit = {
     assertTrue(isValid("*"))
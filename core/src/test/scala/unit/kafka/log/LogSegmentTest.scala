@@ -287,6 +287,89 @@ class LogSegmentTest {
     }
   }
 
+  @Test
+  def testLazyOpenWithOpenSegments(): Unit = {
+    val time = new kafka.utils.MockTime()
+    val openSegments = new OpenLogSegments(maxOpenSegments = 1, time.scheduler, closeDelayMs = 1000L)
+    try {
+      for (offset <- Seq(0L, 10L)) {
+        val seg = LogSegment.open(logDir, offset, LogConfig(), time)
+        seg.append(offset + 1, RecordBatch.NO_TIMESTAMP, -1L, records(offset, "hello", "there"))
+        seg.close()
+      }
+      val seg0 = LogSegment.open(logDir, 0L, LogConfig(), time, fileAlreadyExists = true, openSegments = Some(openSegments))
+      val seg1 = LogSegment.open(logDir, 10L, LogConfig(), time, fileAlreadyExists = true, openSegments = Some(openSegments))
+      segments ++= Seq(seg0, seg1)
+      val size = records(0L, "hello", "there").sizeInBytes
+      assertFalse(seg0.lazyLog.isOpen)
+      assertEquals(size, seg0.size)
+      assertEquals(0, openSegments.size)
+
+      checkEquals(records(0L, "hello", "there").records.iterator, seg0.read(0L, 1000).records.records.iterator)
+      val seg0Records = seg0.log
+      assertEquals(1, openSegments.size)
+
+      // opening another segment releases the file of the first one, which is closed after the delay
+      checkEquals(records(10L, "hello", "there").records.iterator, seg1.read(10L, 1000).records.records.iterator)
+      assertFalse(seg0.lazyLog.isOpen)
+      assertTrue(seg1.lazyLog.isOpen)
+      assertEquals(1, openSegments.size)
+      assertEquals(size, seg0.size)
+      assertTrue(seg0Records.channel.isOpen)
+      time.sleep(1000L)
+      assertFalse(seg0Records.channel.isOpen)
+
+      // the released file is reopened on the next access
+      checkEquals(records(0L, "hello", "there").records.iterator, seg0.read(0L, 1000).records.records.iterator)
+      assertTrue(seg0.lazyLog.isOpen)
+      assertFalse(seg1.lazyLog.isOpen)
+
+      // the file of a pinned segment is never released
+      seg0.lazyLog.pin()
+      checkEquals(records(10L, "hello", "there").records.iterator, seg1.read(10L, 1000).records.records.iterator)
+      assertTrue(seg0.lazyLog.isOpen)
+      assertEquals(1, openSegments.size)
+    } finally {
+      openSegments.removeMetrics()
+    }
+  }
+
+  @Test
+  def testTruncateOnlyKeepsWrittenSegmentsPinned(): Unit = {
+    val time = new kafka.utils.MockTime()
+    val openSegments = new OpenLogSegments(maxOpenSegments = 1, time.scheduler, closeDelayMs = 1000L)
+    try {
+      for (offset <- Seq(0L, 10L)) {
+        val seg = LogSegment.open(logDir, offset, LogConfig(), time)
+        seg.append(offset + 1, RecordBatch.NO_TIMESTAMP, -1L, records(offset, "hello", "there"))
+        seg.close()
+      }
+      val seg0 = LogSegment.open(logDir, 0L, LogConfig(), time, fileAlreadyExists = true, openSegments = Some(openSegments))
+      val seg1 = LogSegment.open(logDir, 10L, LogConfig(), time, fileAlreadyExists = true, openSegments = Some(openSegments))
+      segments ++= Seq(seg0, seg1)
+
+      // the file of a segment which is not written to can be released once it is truncated
+      seg0.truncateTo(2L)
+      assertFalse(seg0.lazyLog.isPinned)
+      checkEquals(records(10L, "hello", "there").records.iterator, seg1.read(10L, 1000).records.records.iterator)
+      assertFalse(seg0.lazyLog.isOpen)
+      assertEquals(1, openSegments.size)
+
+      // a segment which is written to stays pinned
+      seg1.lazyLog.pin()
+      seg1.truncateTo(12L)
+      assertTrue(seg1.lazyLog.isPinned)
+      checkEquals(records(0L, "hello", "there").records.iterator, seg0.read(0L, 1000).records.records.iterator)
+      assertTrue(seg1.lazyLog.isOpen)
+
+      // once unpinned, the segments are bounded again
+      seg1.lazyLog.unpin()
+      assertEquals(1, openSegments.size)
+    } finally {
+      openSegments.removeMetrics()
+    }
+  }
+
   @Test
   def testRecoverTransactionIndex(): Unit = {
     val segment = createSegment(100)
@@ -348,6 +431,19 @@ class LogSegmentTest {
     assertEquals(75L, abortedTxn.firstOffset)
     assertEquals(106L, abortedTxn.lastOffset)
     assertEquals(100L, abortedTxn.lastStableOffset)
+
+    // recover the batches and the indexes first, then the producer state, as when the segments are recovered concurrently
+    stateManager = new ProducerStateManager(topicPartition, logDir)
+    assertEquals(0, segment.recoverIndexes())
+    segment.recoverProducerState(stateManager)
+    assertEquals(108L, stateManager.mapEndOffset)
+
+    abortedTxns = segment.txnIndex.allAbortedTxns
+    assertEquals(1, abortedTxns.size)
+    abortedTxn = abortedTxns.head
+    assertEquals(pid2, abortedTxn.producerId)
+    assertEquals(102L, abortedTxn.firstOffset)
+    assertEquals(106L, abortedTxn.lastOffset)
   }
 
   private def endTxnRecords(controlRecordType: ControlRecordType,
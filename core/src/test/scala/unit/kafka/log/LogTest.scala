@@ -20,6 +20,8 @@ package kafka.log
 import java.io._
 import java.nio.ByteBuffer
 import java.nio.file.{Files, Paths}
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
 import java.util.regex.Pattern
 import java.util.{Collections, Optional, Properties}
 
@@ -2574,6 +2576,49 @@ class LogTest {
     }
   }
 
+  @Test
+  def testConcurrentSegmentRecovery(): Unit = {
+    val logConfig = LogTest.createLogConfig(segmentBytes = 1000, indexIntervalBytes = 1)
+    var log = createLog(logDir, logConfig)
+    val pid = 1L
+    val epoch = 0.toShort
+    for (seq <- 0 until 50)
+      log.appendAsLeader(TestUtils.records(List(new SimpleRecord(mockTime.milliseconds, "value".getBytes)),
+        producerId = pid, producerEpoch = epoch, sequence = seq), leaderEpoch = 0)
+    val numSegments = log.numberOfSegments
+    assertTrue(numSegments > 3)
+    val logEndOffset = log.logEndOffset
+    // the next segments are deleted when the second segment is corrupted below
+    val secondSegment = log.logSegments.toSeq(1)
+    val secondSegmentNextOffset = log.logSegments.toSeq(2).baseOffset
+    log.close()
+
+    val executor = Executors.newFixedThreadPool(4)
+    try {
+      val bytesScanned = new AtomicLong
+      val recoveryContext = new LogRecoveryContext(Some(executor), bytes => bytesScanned.addAndGet(bytes))
+      log = createLog(logDir, logConfig, recoveryPoint = 0L, recoveryContext = recoveryContext)
+      assertEquals(logEndOffset, log.logEndOffset)
+      assertEquals(numSegments, log.numberOfSegments)
+      assertEquals(0, recoveryContext.segmentsRemaining)
+      assertEquals(log.size, bytesScanned.get)
+      assertEquals(Some(49), log.activeProducersWithLastSequence.get(pid))
+      // the offset indexes are rebuilt
+      for (offset <- 0L until logEndOffset)
+        assertEquals(offset, readLog(log, offset, 1).records.batches.iterator.next.lastOffset)
+      log.close()
+
+      TestUtils.appendNonsenseToFile(secondSegment.log.file, 100)
+      log = createLog(logDir, logConfig, recoveryPoint = 0L, recoveryContext = recoveryContext)
+      assertEquals(secondSegmentNextOffset, log.logEndOffset)
+      assertEquals(2, log.numberOfSegments)
+      assertEquals(0, recoveryContext.segmentsRemaining)
+      assertEquals(Some(secondSegmentNextOffset.toInt - 1), log.activeProducersWithLastSequence.get(pid))
+    } finally {
+      executor.shutdown()
+    }
+  }
+
   @Test
   def testOverCompactedLogRecovery(): Unit = {
     // append some messages to create some segments
@@ -4345,9 +4390,10 @@ class LogTest {
                         scheduler: Scheduler = mockTime.scheduler,
                         time: Time = mockTime,
                         maxProducerIdExpirationMs: Int = 60 * 60 * 1000,
-                        producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs): Log = {
+                        producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs,
+                        recoveryContext: LogRecoveryContext = new LogRecoveryContext()): Log = {
     LogTest.createLog(dir, config, brokerTopicStats, scheduler, time, logStartOffset, recoveryPoint,
-      maxProducerIdExpirationMs, producerIdExpirationCheckIntervalMs)
+      maxProducerIdExpirationMs, producerIdExpirationCheckIntervalMs, recoveryContext)
   }
 
   private def createLogWithOffsetOverflow(logConfig: LogConfig): (Log, LogSegment) = {
@@ -4414,7 +4460,8 @@ object LogTest {
                 logStartOffset: Long = 0L,
                 recoveryPoint: Long = 0L,
                 maxProducerIdExpirationMs: Int = 60 * 60 * 1000,
-                producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs): Log = {
+                producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs,
+                recoveryContext: LogRecoveryContext = new LogRecoveryContext()): Log = {
     Log(dir = dir,
       config = config,
       logStartOffset = logStartOffset,
@@ -4424,7 +4471,8 @@ object LogTest {
       time = time,
       maxProducerIdExpirationMs = maxProducerIdExpirationMs,
       producerIdExpirationCheckIntervalMs = producerIdExpirationCheckIntervalMs,
-      logDirFailureChannel = new LogDirFailureChannel(10))
+      logDirFailureChannel = new LogDirFailureChannel(10),
+      recoveryContext = recoveryContext)
   }
 
   /**
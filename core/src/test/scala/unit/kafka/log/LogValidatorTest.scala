@@ -18,6 +18,7 @@ package kafka.log
 
 import java.nio.ByteBuffer
 import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
 
 import kafka.api.{ApiVersion, KAFKA_2_0_IV1, KAFKA_2_3_IV1}
 import kafka.common.{LongRef, RecordValidationException}
@@ -199,6 +200,7 @@ class LogValidatorTest {
     val now = System.currentTimeMillis()
     // The timestamps should be overwritten
     val records = createRecords(magicValue = magic, timestamp = 1234L, codec = CompressionType.GZIP)
+    val recompressionsBefore = recompressionCount()
     val validatedResults = LogValidator.validateMessagesAndAssignOffsets(
       records,
       topicPartition,
@@ -228,6 +230,7 @@ class LogValidatorTest {
 
     verifyRecordConversionStats(validatedResults.recordConversionStats, numConvertedRecords = 0, records,
       compressed = true)
+    assertEquals(recompressionsBefore, recompressionCount())
   }
 
   @Test
@@ -373,6 +376,7 @@ class LogValidatorTest {
       new SimpleRecord(timestampSeq(1), "there".getBytes),
       new SimpleRecord(timestampSeq(2), "beautiful".getBytes))
 
+    val recompressionsBefore = recompressionCount()
     val validatingResults = LogValidator.validateMessagesAndAssignOffsets(records,
       topicPartition,
       offsetCounter = new LongRef(0),
@@ -412,6 +416,8 @@ class LogValidatorTest {
 
     verifyRecordConversionStats(validatingResults.recordConversionStats, numConvertedRecords = 3, records,
       compressed = true)
+    // the records are compressed by the broker, but they were not compressed by the producer
+    assertEquals(recompressionsBefore, recompressionCount())
   }
 
   @Test
@@ -419,6 +425,77 @@ class LogValidatorTest {
     checkRecompression(RecordBatch.MAGIC_VALUE_V2)
   }
 
+  @Test
+  def testRecompressionWithCompressionLevel(): Unit = {
+    val value = ("compressible " * 500).getBytes
+    val records = MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord(value), new SimpleRecord(value))
+
+    def recompress(compressionLevel: Option[Int]): MemoryRecords = {
+      LogValidator.validateMessagesAndAssignOffsets(records,
+        topicPartition,
+        offsetCounter = new LongRef(0),
+        time = time,
+        now = System.currentTimeMillis(),
+        sourceCodec = NoCompressionCodec,
+        targetCodec = GZIPCompressionCodec,
+        compactedTopic = false,
+        magic = RecordBatch.MAGIC_VALUE_V2,
+        timestampType = TimestampType.CREATE_TIME,
+        timestampDiffMaxMs = 1000L,
+        partitionLeaderEpoch = RecordBatch.NO_PARTITION_LEADER_EPOCH,
+        origin = AppendOrigin.Client,
+        interBrokerProtocolVersion = ApiVersion.latestVersion,
+        brokerTopicStats = brokerTopicStats,
+        compressionLevel = compressionLevel).validatedRecords
+    }
+
+    val fastest = recompress(Some(Deflater.BEST_SPEED))
+    val smallest = recompress(Some(Deflater.BEST_COMPRESSION))
+    // a level which is not valid for the codec is ignored
+    val default = recompress(Some(20))
+    for (validatedRecords <- Seq(fastest, smallest, default)) {
+      val batch = validatedRecords.batches.asScala.head
+      assertTrue(batch.isValid)
+      assertEquals(CompressionType.GZIP, batch.compressionType)
+      assertEquals(Seq(ByteBuffer.wrap(value), ByteBuffer.wrap(value)), batch.asScala.map(_.value).toSeq)
+    }
+    assertTrue(smallest.sizeInBytes <= fastest.sizeInBytes)
+  }
+
+  @Test
+  def testRecompressionCountedForDifferentCodecs(): Unit = {
+    def validate(sourceCodec: CompressionCodec, targetCodec: CompressionCodec): Unit = {
+      val records = createRecords(magicValue = RecordBatch.MAGIC_VALUE_V2,
+        codec = CompressionType.forId(sourceCodec.codec))
+      LogValidator.validateMessagesAndAssignOffsets(records,
+        topicPartition,
+        offsetCounter = new LongRef(0),
+        time = time,
+        now = System.currentTimeMillis(),
+        sourceCodec = sourceCodec,
+        targetCodec = targetCodec,
+        compactedTopic = false,
+        magic = RecordBatch.MAGIC_VALUE_V2,
+        timestampType = TimestampType.CREATE_TIME,
+        timestampDiffMaxMs = 1000L,
+        partitionLeaderEpoch = RecordBatch.NO_PARTITION_LEADER_EPOCH,
+        origin = AppendOrigin.Client,
+        interBrokerProtocolVersion = ApiVersion.latestVersion,
+        brokerTopicStats = brokerTopicStats)
+    }
+
+    val recompressionsBefore = recompressionCount()
+    validate(NoCompressionCodec, GZIPCompressionCodec)
+    validate(GZIPCompressionCodec, GZIPCompressionCodec)
+    assertEquals(recompressionsBefore, recompressionCount())
+    validate(GZIPCompressionCodec, LZ4CompressionCodec)
+    assertEquals(recompressionsBefore + 3, recompressionCount())
+  }
+
+  // the meters are registered in the default registry, so they may have been marked by other tests
+  private def recompressionCount(): Long =
+    brokerTopicStats.topicStats(topicPartition.topic).produceRecompressionsRate.count
+
   @Test
   def testCreateTimeUpConversionV0ToV1(): Unit = {
     checkCreateTimeUpConversionFromV0(RecordBatch.MAGIC_VALUE_V1)
@@ -136,6 +136,57 @@ class OffsetIndexTest {
     assertEquals(None, idx.fetchUpperBoundOffset(second, 200))
   }
 
+  @Test
+  def testTwoLevelLookup(): Unit = {
+    // enough entries for tens of pages before the warm section
+    val maxEntries = 20000
+    val plainIdx = new OffsetIndex(nonExistentTempFile(), baseOffset, maxIndexSize = maxEntries * 8)
+    var twoLevelIdx = new OffsetIndex(nonExistentTempFile(), baseOffset, maxIndexSize = maxEntries * 8,
+      twoLevelLookup = true)
+
+    def appendEntries(from: Int, until: Int, step: Int): Unit = {
+      for (i <- from until until) {
+        plainIdx.append(baseOffset + i * step + 1, i * 10)
+        twoLevelIdx.append(baseOffset + i * step + 1, i * 10)
+      }
+    }
+
+    def assertSameLookups(): Unit = {
+      for (offset <- (baseOffset - 1) to (plainIdx.lastOffset + 1) by 7L)
+        assertEquals(plainIdx.lookup(offset), twoLevelIdx.lookup(offset))
+      // between the positions of the entries, as an exact match may be found as the upper bound or not by either search
+      for (fetchSize <- 5 to maxEntries * 10 by 130) {
+        val fetchOffset = OffsetPosition(baseOffset, 0)
+        assertEquals(plainIdx.fetchUpperBoundOffset(fetchOffset, fetchSize),
+          twoLevelIdx.fetchUpperBoundOffset(fetchOffset, fetchSize))
+      }
+    }
+
+    assertSameLookups()
+    appendEntries(0, maxEntries / 2, 3)
+    assertSameLookups()
+    appendEntries(maxEntries / 2, maxEntries, 3)
+    assertSameLookups()
+
+    // the pages after the truncation point are appended to again, with other entries
+    plainIdx.truncateTo(baseOffset + 3 * maxEntries / 4)
+    twoLevelIdx.truncateTo(baseOffset + 3 * maxEntries / 4)
+    assertSameLookups()
+    appendEntries(plainIdx.entries, maxEntries, 5)
+    assertSameLookups()
+
+    // the sparse level of an existing index is filled by the lookups, and the pages it holds after the truncation
+    // point are appended to again
+    twoLevelIdx.close()
+    twoLevelIdx = new OffsetIndex(twoLevelIdx.file, baseOffset, twoLevelLookup = true)
+    assertSameLookups()
+    plainIdx.truncateTo(baseOffset + maxEntries)
+    twoLevelIdx.truncateTo(baseOffset + maxEntries)
+    assertSameLookups()
+    appendEntries(plainIdx.entries, maxEntries, 7)
+    assertSameLookups()
+  }
+
   @Test
   def testReopen(): Unit = {
     val first = OffsetPosition(51, 0)
@@ -57,10 +57,84 @@ class OffsetMapTest {
     assertEquals(map.get(key(i-1L)), i-1L)
   }
 
+  @Test
+  def testCompactBasicValidation(): Unit = {
+    for (offHeap <- Seq(false, true)) {
+      validateMap(new CompactOffsetMap(10 * 2 * CompactOffsetMap.BytesPerEntry, offHeap), 10).close()
+      validateMap(new CompactOffsetMap(100 * 2 * CompactOffsetMap.BytesPerEntry, offHeap), 100).close()
+      validateMap(new CompactOffsetMap(1000 * 2 * CompactOffsetMap.BytesPerEntry, offHeap), 1000).close()
+      validateMap(new CompactOffsetMap(5000 * 2 * CompactOffsetMap.BytesPerEntry, offHeap), 5000).close()
+    }
+  }
+
+  @Test
+  def testCompactClear(): Unit = {
+    val map = new CompactOffsetMap(4000)
+    for(i <- 0 until 10)
+      map.put(key(i), i + 100)
+    for(i <- 0 until 10)
+      assertEquals(i + 100L, map.get(key(i)))
+    map.clear()
+    assertEquals(0, map.size)
+    assertEquals(-1L, map.latestOffset)
+    for(i <- 0 until 10)
+      assertEquals(-1L, map.get(key(i)))
+    // the offsets are relative to the first offset put after clearing the map
+    map.put(key(0), 5L)
+    assertEquals(5L, map.get(key(0)))
+  }
+
+  @Test
+  def testCompactGetWhenFull(): Unit = {
+    val map = new CompactOffsetMap(4096)
+    var i = 37L  //any value would do
+    while (map.size < map.slots) {
+      map.put(key(i), i)
+      i = i + 1L
+    }
+    assertEquals(-1L, map.get(key(i)))
+    assertEquals(i - 1L, map.get(key(i - 1L)))
+  }
+
+  @Test
+  def testCompactOffsetRange(): Unit = {
+    val map = new CompactOffsetMap(4096)
+    assertTrue(map.canPut(0L))
+    map.put(key(0), 100L)
+    assertFalse(map.canPut(99L))
+    assertTrue(map.canPut(100L + Int.MaxValue - 1))
+    assertFalse(map.canPut(100L + Int.MaxValue))
+    map.put(key(1), 100L + Int.MaxValue - 1)
+    assertEquals(100L, map.get(key(0)))
+    assertEquals(100L + Int.MaxValue - 1, map.get(key(1)))
+    assertEquals(100L + Int.MaxValue - 1, map.latestOffset)
+  }
+
+  @Test
+  def testCompactKeysOfAnyLengthAndPosition(): Unit = {
+    val map = new CompactOffsetMap(4096)
+    val bytes = (0 until 64).map(_.toByte).toArray
+    // every length covers a different number of blocks and trailing bytes of the hash
+    for (length <- 1 to 40)
+      map.put(ByteBuffer.wrap(bytes, 0, length).slice(), length)
+    for (length <- 1 to 40) {
+      val key = ByteBuffer.allocate(length + 3)
+      key.put(Array[Byte](9, 9, 9))
+      key.put(bytes, 0, length)
+      key.flip()
+      key.position(3)
+      assertEquals(length.toLong, map.get(key))
+      assertEquals("The position of the key should not change", 3, key.position())
+      assertEquals(-1L, map.get(ByteBuffer.wrap(bytes, 1, length).slice()))
+    }
+  }
+
   def key(key: Long) = ByteBuffer.wrap(key.toString.getBytes)
   
-  def validateMap(items: Int, loadFactor: Double = 0.5): SkimpyOffsetMap = {
-    val map = new SkimpyOffsetMap((items/loadFactor * 24).toInt)
+  def validateMap(items: Int, loadFactor: Double = 0.5): SkimpyOffsetMap =
+    validateMap(new SkimpyOffsetMap((items/loadFactor * 24).toInt), items)
+
+  def validateMap[T <: OffsetMap](map: T, items: Int): T = {
     for(i <- 0 until items)
       map.put(key(i), i)
     for(i <- 0 until items)
@@ -97,6 +97,31 @@ class TimeIndexTest {
     idx.maybeAppend(10000L, 1000L, true)
   }
 
+  @Test
+  def testTwoLevelLookup(): Unit = {
+    // the entries span pages, as pages are not a multiple of the entry size
+    val maxEntries = 5000
+    val plainIdx = new TimeIndex(nonExistantTempFile(), baseOffset, maxIndexSize = maxEntries * 12)
+    val twoLevelIdx = new TimeIndex(nonExistantTempFile(), baseOffset, maxIndexSize = maxEntries * 12,
+      twoLevelLookup = true)
+    for (i <- 1 until maxEntries) {
+      plainIdx.maybeAppend(i * 10, baseOffset + i * 3)
+      twoLevelIdx.maybeAppend(i * 10, baseOffset + i * 3)
+    }
+
+    for (timestamp <- 0L to maxEntries * 10L by 7L)
+      assertEquals(plainIdx.lookup(timestamp), twoLevelIdx.lookup(timestamp))
+
+    // truncation searches the offsets of the entries
+    for (offset <- Seq(baseOffset + 3000, baseOffset + 2999, baseOffset + 10)) {
+      plainIdx.truncateTo(offset)
+      twoLevelIdx.truncateTo(offset)
+      assertEquals(plainIdx.entries, twoLevelIdx.entries)
+      for (timestamp <- 0L to maxEntries * 10L by 7L)
+        assertEquals(plainIdx.lookup(timestamp), twoLevelIdx.lookup(timestamp))
+    }
+  }
+
   private def appendEntries(numEntries: Int): Unit = {
     for (i <- 1 to numEntries)
       idx.maybeAppend(i * 10, i * 10 + baseOffset)
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import java.net.InetAddress
+import java.util
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import com.yammer.metrics.core.Gauge
+import kafka.metrics.KafkaYammerMetrics
+import kafka.network.RequestChannel.ShutdownRequest
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.config.ConfigException
+import org.apache.kafka.common.memory.MemoryPool
+import org.apache.kafka.common.network.{ClientInformation, ListenerName}
+import org.apache.kafka.common.protocol.ApiKeys
+import org.apache.kafka.common.record.MemoryRecords
+import org.apache.kafka.common.requests.FetchRequest.PartitionData
+import org.apache.kafka.common.requests._
+import org.apache.kafka.common.security.auth.{KafkaPrincipal, SecurityProtocol}
+import org.easymock.EasyMock
+import org.junit.Assert._
+import org.junit.Test
+import org.scalatest.Assertions.intercept
+
+import scala.collection.JavaConverters._
+
+class RequestQueueTest {
+
+  @Test
+  def testRequestClass(): Unit = {
+    assertEquals(RequestClass.Replication, RequestClass(followerFetchRequest()))
+    assertEquals(RequestClass.ConsumerFetch, RequestClass(consumerFetchRequest()))
+    assertEquals(RequestClass.Produce, RequestClass(produceRequest()))
+    assertEquals(RequestClass.Admin, RequestClass(metadataRequest()))
+  }
+
+  @Test
+  def testParseWeights(): Unit = {
+    assertEquals(Map.empty, RequestClass.parseWeights(Map.empty))
+    assertEquals(Map(RequestClass.Replication -> 8, RequestClass.Produce -> 4, RequestClass.ConsumerFetch -> 1,
+      RequestClass.Coordinator -> 1, RequestClass.Admin -> 1),
+      RequestClass.parseWeights(Map("replication" -> "8", "produce" -> "4")))
+    intercept[ConfigException](RequestClass.parseWeights(Map("unknown" -> "1")))
+    intercept[ConfigException](RequestClass.parseWeights(Map("produce" -> "0")))
+    intercept[ConfigException](RequestClass.parseWeights(Map("produce" -> "a")))
+  }
+
+  @Test
+  def testFifoWithoutWeights(): Unit = {
+    val queue = new RequestQueue(10)
+    val requests = Seq(metadataRequest(), produceRequest(), followerFetchRequest(), metadataRequest())
+    requests.foreach(queue.put)
+    assertEquals(4, queue.totalSize)
+    assertEquals(2, queue.size(RequestClass.Admin))
+    requests.foreach(request => assertSame(request, queue.poll(0)))
+    assertNull(queue.poll(0))
+  }
+
+  @Test
+  def testWeightedDequeue(): Unit = {
+    val queue = new RequestQueue(100, RequestClass.parseWeights(Map("produce" -> "3")))
+    val metadataRequests = (0 until 20).map(_ => metadataRequest())
+    val produceRequests = (0 until 20).map(_ => produceRequest())
+    // a backlog of admin requests queued before the produce requests
+    metadataRequests.foreach(queue.put)
+    produceRequests.foreach(queue.put)
+
+    val dequeued = (0 until 8).map(_ => queue.poll(0))
+    assertEquals(6, dequeued.count(produceRequests.contains))
+    assertEquals(2, dequeued.count(metadataRequests.contains))
+    // requests of a class are dequeued in order
+    assertEquals(produceRequests.take(6), dequeued.filter(produceRequests.contains))
+    assertEquals(metadataRequests.take(2), dequeued.filter(metadataRequests.contains))
+  }
+
+  @Test
+  def testShutdownRequestsFirst(): Unit = {
+    val queue = new RequestQueue(10)
+    val request = produceRequest()
+    queue.put(request)
+    queue.putShutdown()
+    assertEquals(ShutdownRequest, queue.take())
+    assertSame(request, queue.take())
+  }
+
+  @Test
+  def testReconfigureCapacity(): Unit = {
+    val queue = new RequestQueue(1)
+    queue.put(produceRequest())
+
+    val queued = new CountDownLatch(1)
+    val thread = new Thread(() => {
+      queue.put(produceRequest())
+      queued.countDown()
+    })
+    thread.start()
+    assertFalse(queued.await(100, TimeUnit.MILLISECONDS))
+
+    queue.reconfigure(2, Map.empty)
+    assertTrue(queued.await(30, TimeUnit.SECONDS))
+    assertEquals(2, queue.totalSize)
+    thread.join()
+  }
+
+  @Test
+  def testRequestChannelQueueMetrics(): Unit = {
+    val channel = new RequestChannel(10, "RequestQueueTest", RequestClass.parseWeights(Map("replication" -> "2")))
+    try {
+      channel.sendRequest(followerFetchRequest())
+      channel.sendRequest(produceRequest())
+      assertEquals(Some(1), queueSizeGauge(channel, RequestClass.Replication))
+      assertEquals(Some(1), queueSizeGauge(channel, RequestClass.Produce))
+      assertEquals(Some(0), queueSizeGauge(channel, RequestClass.Admin))
+
+      channel.reconfigureRequestQueue(10, Map.empty)
+      assertEquals(RequestClass.Replication, RequestClass(channel.receiveRequest(0).asInstanceOf[RequestChannel.Request]))
+      assertEquals(Some(0), queueSizeGauge(channel, RequestClass.Replication))
+    } finally {
+      channel.shutdown()
+    }
+    assertEquals(None, queueSizeGauge(channel, RequestClass.Replication))
+  }
+
+  private def queueSizeGauge(channel: RequestChannel, requestClass: RequestClass): Option[Int] = {
+    KafkaYammerMetrics.defaultRegistry.allMetrics.asScala
+      .filter { case (name, _) => name.getName == channel.requestQueueSizeMetricName &&
+        name.getMBeanName.endsWith(s"queue=${requestClass.name}") }
+      .collectFirst { case (_, gauge: Gauge[_]) => gauge.value.asInstanceOf[Int] }
+  }
+
+  private def consumerFetchRequest(): RequestChannel.Request =
+    buildRequest(FetchRequest.Builder.forConsumer(0, 1, new util.HashMap[TopicPartition, PartitionData]))
+
+  private def followerFetchRequest(): RequestChannel.Request =
+    buildRequest(FetchRequest.Builder.forReplica(ApiKeys.FETCH.latestVersion, 1, 0, 1,
+      new util.HashMap[TopicPartition, PartitionData]))
+
+  private def produceRequest(): RequestChannel.Request =
+    buildRequest(ProduceRequest.Builder.forCurrentMagic(1.toShort, 1000, new util.HashMap[TopicPartition, MemoryRecords]))
+
+  private def metadataRequest(): RequestChannel.Request =
+    buildRequest(MetadataRequest.Builder.allTopics())
+
+  private def buildRequest[T <: AbstractRequest](builder: AbstractRequest.Builder[T]): RequestChannel.Request = {
+    val request = builder.build()
+    val buffer = request.serialize(new RequestHeader(builder.apiKey, request.version, "", 0))
+    val requestChannelMetrics: RequestChannel.Metrics = EasyMock.createNiceMock(classOf[RequestChannel.Metrics])
+
+    // read the header from the buffer first so that the body can be read next from the Request constructor
+    val header = RequestHeader.parse(buffer)
+    val context = new RequestContext(header, "1", InetAddress.getLocalHost, KafkaPrincipal.ANONYMOUS,
+      ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT), SecurityProtocol.PLAINTEXT, ClientInformation.EMPTY)
+    new RequestChannel.Request(processor = 1, context = context, startTimeNanos = 0, MemoryPool.NONE, buffer,
+      requestChannelMetrics)
+  }
+}
@@ -230,6 +230,134 @@ class DelayedOperationTest {
     assertTrue("Operation should have completed", op.isCompleted)
   }
 
+  /**
+    * Verify that completion attempts on a key while another thread is completing the operations of that key
+    * return without blocking, and are covered by another pass of the other thread.
+    */
+  @Test
+  def testCheckAndCompleteBatchedWithConcurrentCompletion(): Unit = {
+    executorService = Executors.newSingleThreadExecutor()
+    val tryCompleteSemaphore = new Semaphore(1)
+    val key = "key"
+
+    val blockingOp = new MockDelayedOperation(100000L) {
+      override def tryComplete() = {
+        tryCompleteSemaphore.acquire()
+        tryCompleteSemaphore.release()
+        false
+      }
+    }
+    val op = new MockDelayedOperation(100000L)
+    purgatory.tryCompleteElseWatch(blockingOp, Seq(key))
+    purgatory.tryCompleteElseWatch(op, Seq(key))
+
+    tryCompleteSemaphore.acquire()
+    val future = runOnAnotherThread(purgatory.checkAndComplete(key), shouldComplete = false)
+    TestUtils.waitUntilTrue(() => tryCompleteSemaphore.hasQueuedThreads, "Not attempting to complete")
+    op.completable = true
+    assertEquals("Completion should be left to the other thread", 0, purgatory.checkAndComplete(key))
+    assertFalse("Operation should not have completed", op.isCompleted)
+    tryCompleteSemaphore.release()
+    future.get(10, TimeUnit.SECONDS)
+    assertTrue("Operation should have completed", op.isCompleted)
+    assertFalse(blockingOp.isCompleted)
+    assertEquals(1, purgatory.watched)
+  }
+
+  /**
+    * Verify that a thread holding the lock of an operation completes it while another thread is completing
+    * the operations of the same key.
+    */
+  @Test
+  def testCheckAndCompleteWithOperationLockHeldDuringConcurrentCompletion(): Unit = {
+    executorService = Executors.newSingleThreadExecutor()
+    val tryCompleteSemaphore = new Semaphore(1)
+    val key = "key"
+
+    val blockingOp = new MockDelayedOperation(100000L) {
+      override def tryComplete() = {
+        tryCompleteSemaphore.acquire()
+        tryCompleteSemaphore.release()
+        false
+      }
+    }
+    val opLock = new ReentrantLock
+    val op = new MockDelayedOperation(100000L, Some(opLock))
+    purgatory.tryCompleteElseWatch(blockingOp, Seq(key))
+    purgatory.tryCompleteElseWatch(op, Seq(key))
+
+    tryCompleteSemaphore.acquire()
+    val future = runOnAnotherThread(purgatory.checkAndComplete(key), shouldComplete = false)
+    TestUtils.waitUntilTrue(() => tryCompleteSemaphore.hasQueuedThreads, "Not attempting to complete")
+    inLock(opLock) {
+      op.completable = true
+      assertEquals("Operation should be completed by the thread holding its lock", 1, purgatory.checkAndComplete(key))
+    }
+    assertTrue("Operation should have completed", op.isCompleted)
+    tryCompleteSemaphore.release()
+    future.get(10, TimeUnit.SECONDS)
+    assertFalse(blockingOp.isCompleted)
+    assertEquals(1, purgatory.watched)
+  }
+
+  /**
+    * Verify that a thread stops completing the operations of a key after `MaxCompletionPasses` passes when attempts
+    * keep being requested for it, and that the reaper makes the remaining passes.
+    */
+  @Test
+  def testCheckAndCompleteBoundedWithContinuousRequests(): Unit = {
+    purgatory.shutdown()
+    purgatory = DelayedOperationPurgatory[MockDelayedOperation](purgatoryName = "mock", reaperEnabled = false)
+    val key = "key"
+
+    // requests another attempt for the key on every attempt to complete it, as a continuously triggered key would
+    class RequestingOperation extends MockDelayedOperation(100000L) {
+      var attempts = 0
+      private var requesting = false
+      override def tryComplete() = {
+        if (!requesting) {
+          attempts += 1
+          requesting = true
+          try purgatory.checkAndComplete(key)
+          finally requesting = false
+        }
+        false
+      }
+    }
+    val op = new RequestingOperation
+    purgatory.tryCompleteElseWatch(op, Seq(key))
+
+    op.attempts = 0
+    assertEquals(0, purgatory.checkAndComplete(key))
+    assertEquals(DelayedOperationPurgatory.MaxCompletionPasses, op.attempts)
+
+    purgatory.advanceClock(0L)
+    assertEquals("The reaper should make the remaining passes", 2 * DelayedOperationPurgatory.MaxCompletionPasses, op.attempts)
+  }
+
+  @Test
+  def testSingleShard(): Unit = {
+    val singleShardPurgatory = DelayedOperationPurgatory[MockDelayedOperation](purgatoryName = "mock-single-shard",
+      shards = 1)
+    try {
+      val ops = (1 to 10).map { i =>
+        val op = new MockDelayedOperation(100000L)
+        assertFalse(singleShardPurgatory.tryCompleteElseWatch(op, Seq(s"key$i", "all")))
+        op
+      }
+      assertEquals(20, singleShardPurgatory.watched)
+      ops.head.completable = true
+      assertEquals(1, singleShardPurgatory.checkAndComplete("key1"))
+      ops.foreach(_.completable = true)
+      assertEquals(9, singleShardPurgatory.checkAndComplete("all"))
+      assertEquals(0, singleShardPurgatory.checkAndComplete("key2"))
+      // completed operations are only removed from the other keys when these are checked or purged
+      assertEquals(8, singleShardPurgatory.watched)
+    } finally {
+      singleShardPurgatory.shutdown()
+    }
+  }
+
   /**
     * Test `tryComplete` with multiple threads to verify that there are no timing windows
     * when completion is not performed even if the thread that makes the operation completable
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.server
+
+import kafka.utils.{MockTime, TestUtils}
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.record.{CompressionType, FileRecords, MemoryRecords, SimpleRecord}
+import org.junit.Assert.assertEquals
+import org.junit.{After, Before, Test}
+
+class FetchReadAheadTest {
+  private val time = new MockTime()
+  private val topicPartition = new TopicPartition("foo", 0)
+  private val readAheadBytes = 2048
+  private var records: FileRecords = _
+  private var readAhead: FetchReadAhead = _
+
+  @Before
+  def setUp(): Unit = {
+    records = FileRecords.open(TestUtils.tempFile())
+    for (_ <- 0 until 10)
+      records.append(MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord(new Array[Byte](1000))))
+    readAhead = new FetchReadAhead(readAheadBytes, 1, time)
+  }
+
+  @After
+  def tearDown(): Unit = {
+    readAhead.shutdown()
+    records.close()
+  }
+
+  private def fetch(start: Int, size: Int): Unit = {
+    val fetchedData = FetchDataInfo(LogOffsetMetadata(0L, 0L, start), records.slice(start, size))
+    readAhead.maybeReadAhead(topicPartition, fetchedData, LogOffsetMetadata(100L, 0L, records.sizeInBytes))
+  }
+
+  private def bytesReadAhead: Long = TestUtils.meterCount(FetchReadAhead.BytesMetricName)
+
+  @Test
+  def testSequentialFetchesAreReadAhead(): Unit = {
+    fetch(0, 1000)
+    assertEquals(0L, bytesReadAhead)
+
+    fetch(1000, 1000)
+    TestUtils.waitUntilTrue(() => bytesReadAhead == readAheadBytes, "The segment should be read ahead")
+
+    // the fetch was read ahead, and more than half of the bytes read ahead are fetched, so that the segment is read
+    // ahead again from the end of the previous read-ahead
+    fetch(2000, 1500)
+    assertEquals(1L, TestUtils.meterCount(FetchReadAhead.HitsMetricName))
+    assertEquals(0L, TestUtils.meterCount(FetchReadAhead.MissesMetricName))
+    TestUtils.waitUntilTrue(() => bytesReadAhead == readAheadBytes + 1500,
+      "The segment should be read ahead after the previous read-ahead")
+
+    // another reader of the partition is not sequential yet
+    fetch(6000, 500)
+    assertEquals(readAheadBytes + 1500L, bytesReadAhead)
+  }
+
+  @Test
+  def testFetchesNearTheLogEndAreNotReadAhead(): Unit = {
+    val start = records.sizeInBytes - readAheadBytes - 500
+    fetch(start, 500)
+    fetch(start + 500, 500)
+    fetch(start + 1000, 500)
+    assertEquals(0L, bytesReadAhead)
+  }
+
+  @Test
+  def testIdleReadersAreExpired(): Unit = {
+    fetch(0, 1000)
+    time.sleep(FetchReadAhead.StreamIdleMs + 1)
+    readAhead.expireIdleStreams()
+    fetch(1000, 1000)
+    assertEquals(0L, bytesReadAhead)
+  }
+}
@@ -25,6 +25,7 @@ import org.apache.kafka.common.protocol.Errors
 import org.apache.kafka.common.record.Records
 import org.apache.kafka.common.requests.FetchMetadata.{FINAL_EPOCH, INVALID_SESSION_ID}
 import org.apache.kafka.common.requests.{FetchRequest, FetchResponse, FetchMetadata => JFetchMetadata}
+import org.apache.kafka.common.security.auth.KafkaPrincipal
 import org.junit.Assert._
 import org.junit.rules.Timeout
 import org.junit.{Rule, Test}
@@ -126,6 +127,115 @@ class FetchSessionTest {
     assertEquals(3, cache.totalPartitions)
   }
 
+  @Test
+  def testPartitionWeightedEviction(): Unit = {
+    val cache = new FetchSessionCache(10, 100, maxPartitions = 30)
+    val id1 = cache.maybeCreateSession(0, false, 10, () => dummyCreate(10))
+    val id2 = cache.maybeCreateSession(0, false, 10, () => dummyCreate(10))
+    val id3 = cache.maybeCreateSession(0, false, 5, () => dummyCreate(5))
+    assertCacheContains(cache, id1, id2, id3)
+    Seq(id1, id2, id3).foreach(id => cache.touch(cache.get(id).get, 200))
+
+    // a larger session evicts as many smaller sessions as needed to fit in the cached partitions
+    val id4 = cache.maybeCreateSession(210, false, 20, () => dummyCreate(20))
+    assertTrue(id4 > 0)
+    assertEquals(2, cache.size)
+    assertEquals(30, cache.totalPartitions)
+    assertEquals(2, cache.evictionsMeter.count)
+    assertTrue(cache.get(id3).isEmpty)
+
+    // sessions are not evicted unless enough of them can be evicted
+    assertEquals(INVALID_SESSION_ID, cache.maybeCreateSession(220, false, 15, () => dummyCreate(15)))
+    assertEquals(INVALID_SESSION_ID, cache.maybeCreateSession(220, true, 40, () => dummyCreate(40)))
+    assertEquals(2, cache.size)
+    assertEquals(2, cache.evictionsMeter.count)
+  }
+
+  @Test
+  def testMaxPartitionsEnforcedOnIncrementalUpdates(): Unit = {
+    val time = new MockTime()
+    val cache = new FetchSessionCache(10, 1000, maxPartitions = 3)
+    val fetchManager = new FetchManager(time, cache)
+
+    // Create a new fetch session with foo-0 and foo-1
+    val reqData1 = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    reqData1.put(new TopicPartition("foo", 0), new FetchRequest.PartitionData(0, 0, 100, Optional.empty()))
+    reqData1.put(new TopicPartition("foo", 1), new FetchRequest.PartitionData(10, 0, 100, Optional.empty()))
+    val context1 = fetchManager.newContext(JFetchMetadata.INITIAL, reqData1, EMPTY_PART_LIST, false)
+    val respData1 = new util.LinkedHashMap[TopicPartition, FetchResponse.PartitionData[Records]]
+    respData1.put(new TopicPartition("foo", 0), new FetchResponse.PartitionData(Errors.NONE, 100, 100, 100, null, null))
+    respData1.put(new TopicPartition("foo", 1), new FetchResponse.PartitionData(Errors.NONE, 10, 10, 10, null, null))
+    val resp1 = context1.updateAndGenerateResponseData(respData1)
+    assertTrue(resp1.sessionId() != INVALID_SESSION_ID)
+    assertEquals(2, cache.totalPartitions)
+
+    // Adding a partition keeps the session within the limit
+    val reqData2 = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    reqData2.put(new TopicPartition("bar", 0), new FetchRequest.PartitionData(15, 0, 100, Optional.empty()))
+    val context2 = fetchManager.newContext(new JFetchMetadata(resp1.sessionId(), 1), reqData2, EMPTY_PART_LIST, false)
+    assertEquals(classOf[IncrementalFetchContext], context2.getClass)
+    assertEquals(3, cache.totalPartitions)
+
+    // Adding another partition would exceed the limit, so the session is closed
+    val reqData3 = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    reqData3.put(new TopicPartition("bar", 1), new FetchRequest.PartitionData(15, 0, 100, Optional.empty()))
+    val context3 = fetchManager.newContext(new JFetchMetadata(resp1.sessionId(), 2), reqData3, EMPTY_PART_LIST, false)
+    assertEquals(classOf[SessionErrorContext], context3.getClass)
+    assertEquals(Errors.FETCH_SESSION_ID_NOT_FOUND,
+      context3.updateAndGenerateResponseData(new util.LinkedHashMap[TopicPartition, FetchResponse.PartitionData[Records]]).error)
+    assertTrue(cache.get(resp1.sessionId()).isEmpty)
+    assertEquals(0, cache.totalPartitions)
+  }
+
+  @Test
+  def testSessionsPerPrincipal(): Unit = {
+    val alice = new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "alice")
+    val bob = new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "bob")
+    val cache = new FetchSessionCache(10, 100, maxSessionsPerPrincipal = 2)
+    val id1 = cache.maybeCreateSession(0, false, 10, () => dummyCreate(10), alice)
+    val id2 = cache.maybeCreateSession(0, false, 10, () => dummyCreate(10), alice)
+    assertEquals(INVALID_SESSION_ID, cache.maybeCreateSession(10, false, 20, () => dummyCreate(20), alice))
+    val id3 = cache.maybeCreateSession(10, false, 5, () => dummyCreate(5), bob)
+    // the sessions of followers are not limited
+    val id4 = cache.maybeCreateSession(10, true, 5, () => dummyCreate(5), alice)
+    assertCacheContains(cache, id1, id2, id3, id4)
+    assertEquals(2, cache.sessionsOf(alice))
+    assertEquals(1, cache.sessionsOf(bob))
+
+    // a new session of the principal replaces its least recently used session once it is stale
+    cache.touch(cache.get(id2).get, 150)
+    val id5 = cache.maybeCreateSession(160, false, 5, () => dummyCreate(5), alice)
+    assertCacheContains(cache, id2, id3, id4, id5)
+    assertEquals(2, cache.sessionsOf(alice))
+    assertEquals(1, cache.evictionsMeter.count)
+    assertEquals(5, cache.creationsMeter.count)
+
+    cache.remove(id2)
+    cache.remove(id5)
+    assertEquals(0, cache.sessionsOf(alice))
+  }
+
+  @Test
+  def testFetchRequestMeters(): Unit = {
+    val cache = new FetchSessionCache(10, 1000)
+    val fetchManager = new FetchManager(new MockTime(), cache)
+    val tp = new TopicPartition("foo", 0)
+    val request = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    request.put(tp, new FetchRequest.PartitionData(0, 0, 100, Optional.empty()))
+    val response = new util.LinkedHashMap[TopicPartition, FetchResponse.PartitionData[Records]]
+    response.put(tp, new FetchResponse.PartitionData(Errors.NONE, 100, 100, 100, null, null))
+
+    val context1 = fetchManager.newContext(JFetchMetadata.INITIAL, request, EMPTY_PART_LIST, false)
+    val sessionId = context1.updateAndGenerateResponseData(response).sessionId()
+    fetchManager.newContext(new JFetchMetadata(sessionId, 1), new util.LinkedHashMap[TopicPartition,
+      FetchRequest.PartitionData], EMPTY_PART_LIST, false)
+    fetchManager.newContext(new JFetchMetadata(sessionId, 2), new util.LinkedHashMap[TopicPartition,
+      FetchRequest.PartitionData], EMPTY_PART_LIST, false)
+    assertEquals(1, cache.fullFetchRequestsMeter.count)
+    assertEquals(2, cache.incrementalFetchRequestsMeter.count)
+    assertEquals(1, cache.creationsMeter.count)
+  }
+
   val EMPTY_PART_LIST = Collections.unmodifiableList(new util.ArrayList[TopicPartition]())
 
 
@@ -349,6 +459,70 @@ class FetchSessionTest {
     assertTrue(resp2.sessionId > 0)
   }
 
+  @Test
+  def testChangedPartitions(): Unit = {
+    val time = new MockTime()
+    val cache = new FetchSessionCache(10, 1000, fullReadIntervalMs = 5000)
+    val fetchManager = new FetchManager(time, cache)
+    val foo0 = new TopicPartition("foo", 0)
+    val foo1 = new TopicPartition("foo", 1)
+    val foo2 = new TopicPartition("foo", 2)
+
+    // Create a follower fetch session with foo-0, foo-1 and foo-2
+    val reqData1 = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    Seq(foo0, foo1, foo2).foreach(reqData1.put(_, new FetchRequest.PartitionData(0, 0, 100, Optional.empty())))
+    val context1 = fetchManager.newContext(JFetchMetadata.INITIAL, reqData1, EMPTY_PART_LIST, true)
+    assertEquals(None, context1.changedPartitions)
+    val respData1 = new util.LinkedHashMap[TopicPartition, FetchResponse.PartitionData[Records]]
+    Seq(foo0, foo1, foo2).foreach(respData1.put(_, new FetchResponse.PartitionData(
+      Errors.NONE, 10, 10, 0, null, null)))
+    val sessionId = context1.updateAndGenerateResponseData(respData1).sessionId
+    assertTrue(sessionId != INVALID_SESSION_ID)
+
+    def newIncrementalContext(epoch: Int, reqData: FetchSession.REQ_MAP = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData],
+                              toForget: util.List[TopicPartition] = EMPTY_PART_LIST): FetchContext = {
+      val context = fetchManager.newContext(new JFetchMetadata(sessionId, epoch), reqData, toForget, true)
+      assertEquals(classOf[IncrementalFetchContext], context.getClass)
+      context
+    }
+
+    // Nothing changed
+    assertEquals(Some(Seq.empty), newIncrementalContext(1).changedPartitions.map(_.map(_._1)))
+
+    // The changed partitions are read along with the partitions of the request
+    cache.partitionChanged(foo1)
+    cache.partitionChanged(new TopicPartition("bar", 0))
+    val reqData3 = new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData]
+    reqData3.put(foo2, new FetchRequest.PartitionData(5, 0, 100, Optional.empty()))
+    val context3 = newIncrementalContext(2, reqData3)
+    assertEquals(Some(Seq(foo2, foo1)), context3.changedPartitions.map(_.map(_._1)))
+    assertEquals(5, context3.changedPartitions.get.head._2.fetchOffset)
+
+    // Partitions marked as changed are read again by the next request
+    context3.markChanged(Seq(foo1))
+    assertEquals(Some(Seq(foo1)), newIncrementalContext(3).changedPartitions.map(_.map(_._1)))
+
+    // The changes to forgotten partitions are no longer tracked
+    val context5 = newIncrementalContext(4, toForget = Collections.singletonList(foo0))
+    assertEquals(Some(Seq.empty), context5.changedPartitions.map(_.map(_._1)))
+    cache.partitionChanged(foo0)
+    cache.partitionChanged(foo2)
+    assertEquals(Some(Seq(foo2)), newIncrementalContext(5).changedPartitions.map(_.map(_._1)))
+
+    // All the partitions are read once per interval
+    cache.partitionChanged(foo1)
+    time.sleep(5000)
+    assertEquals(None, newIncrementalContext(6).changedPartitions)
+    assertEquals(Some(Seq.empty), newIncrementalContext(7).changedPartitions.map(_.map(_._1)))
+
+    // The changes to the partitions of consumer sessions are not tracked
+    val consumerContext = fetchManager.newContext(JFetchMetadata.INITIAL, reqData1, EMPTY_PART_LIST, false)
+    val consumerSessionId = consumerContext.updateAndGenerateResponseData(respData1).sessionId
+    cache.partitionChanged(foo0)
+    assertEquals(None, fetchManager.newContext(new JFetchMetadata(consumerSessionId, 1),
+      new util.LinkedHashMap[TopicPartition, FetchRequest.PartitionData], EMPTY_PART_LIST, false).changedPartitions)
+  }
+
   @Test
   def testFetchSessionExpiration(): Unit = {
     val time = new MockTime()
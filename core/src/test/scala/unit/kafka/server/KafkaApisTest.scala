@@ -627,7 +627,7 @@ class KafkaApisTest {
     replicaManager.fetchMessages(anyLong, anyInt, anyInt, anyInt, anyBoolean,
       anyObject[Seq[(TopicPartition, FetchRequest.PartitionData)]], anyObject[ReplicaQuota],
       anyObject[Seq[(TopicPartition, FetchPartitionData)] => Unit](), anyObject[IsolationLevel],
-      anyObject[Option[ClientMetadata]])
+      anyObject[Option[ClientMetadata]], anyObject[() => Seq[(TopicPartition, FetchRequest.PartitionData)]]())
     expectLastCall[Unit].andAnswer(new IAnswer[Unit] {
       def answer: Unit = {
         val callback = getCurrentArguments.apply(7).asInstanceOf[(Seq[(TopicPartition, FetchPartitionData)] => Unit)]
@@ -646,7 +646,8 @@ class KafkaApisTest {
     expect(fetchManager.newContext(anyObject[JFetchMetadata],
       anyObject[util.Map[TopicPartition, FetchRequest.PartitionData]],
       anyObject[util.List[TopicPartition]],
-      anyBoolean)).andReturn(fetchContext)
+      anyBoolean,
+      anyObject[KafkaPrincipal])).andReturn(fetchContext)
 
     val capturedResponse = expectNoThrottling()
     EasyMock.expect(clientQuotaManager.maybeRecordAndGetThrottleTimeMs(
@@ -1209,7 +1210,7 @@ class KafkaApisTest {
     replicaManager.fetchMessages(anyLong, anyInt, anyInt, anyInt, anyBoolean,
       anyObject[Seq[(TopicPartition, FetchRequest.PartitionData)]], anyObject[ReplicaQuota],
       anyObject[Seq[(TopicPartition, FetchPartitionData)] => Unit](), anyObject[IsolationLevel],
-      anyObject[Option[ClientMetadata]])
+      anyObject[Option[ClientMetadata]], anyObject[() => Seq[(TopicPartition, FetchRequest.PartitionData)]]())
     expectLastCall[Unit].andAnswer(new IAnswer[Unit] {
       def answer: Unit = {
         val callback = getCurrentArguments.apply(7).asInstanceOf[Seq[(TopicPartition, FetchPartitionData)] => Unit]
@@ -1223,7 +1224,8 @@ class KafkaApisTest {
     expect(fetchManager.newContext(anyObject[JFetchMetadata],
       anyObject[util.Map[TopicPartition, FetchRequest.PartitionData]],
       anyObject[util.List[TopicPartition]],
-      anyBoolean)).andReturn(fetchContext)
+      anyBoolean,
+      anyObject[KafkaPrincipal])).andReturn(fetchContext)
 
     expect(replicaQuotaManager.record(anyLong()))
     expect(replicaManager.getLogConfig(EasyMock.eq(tp0))).andReturn(None)
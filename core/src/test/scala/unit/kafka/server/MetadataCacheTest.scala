@@ -498,4 +498,48 @@ class MetadataCacheTest {
     assertEquals(initialBrokerIds.toSet, aliveBrokersFromCache.map(_.id).toSet)
   }
 
+  @Test
+  def getTopicMetadataReusedUntilTopicOrBrokersChange(): Unit = {
+    val cache = new MetadataCache(0)
+    val securityProtocol = SecurityProtocol.PLAINTEXT
+    val listenerName = ListenerName.forSecurityProtocol(securityProtocol)
+    def brokers(port: Int) = Seq(new UpdateMetadataBroker()
+      .setId(0)
+      .setEndpoints(Seq(new UpdateMetadataEndpoint()
+        .setHost("foo")
+        .setPort(port)
+        .setSecurityProtocol(securityProtocol.id)
+        .setListener(listenerName.value)).asJava))
+    def partitionState(topic: String, leaderEpoch: Int) = new UpdateMetadataPartitionState()
+      .setTopicName(topic)
+      .setPartitionIndex(0)
+      .setControllerEpoch(1)
+      .setLeader(0)
+      .setLeaderEpoch(leaderEpoch)
+      .setIsr(asList[Integer](0))
+      .setZkVersion(1)
+      .setReplicas(asList[Integer](0))
+    def update(partitionStates: Seq[UpdateMetadataPartitionState], port: Int): Unit = {
+      val version = ApiKeys.UPDATE_METADATA.latestVersion
+      cache.updateMetadata(15, new UpdateMetadataRequest.Builder(version, 2, 1, brokerEpoch,
+        partitionStates.asJava, brokers(port).asJava).build())
+    }
+    def topicMetadata(topic: String) = cache.getTopicMetadata(Set(topic), listenerName).head
+
+    update(Seq(partitionState("foo", 0), partitionState("bar", 0)), 9092)
+    val foo = topicMetadata("foo")
+    val bar = topicMetadata("bar")
+    assertSame(foo, topicMetadata("foo"))
+    assertNotSame(foo, cache.getTopicMetadata(Set("foo"), listenerName, errorUnavailableEndpoints = true).head)
+
+    // only the metadata of the updated topic is rebuilt
+    update(Seq(partitionState("foo", 1)), 9092)
+    assertEquals(Optional.of(1), topicMetadata("foo").partitionMetadata.get(0).leaderEpoch)
+    assertSame(bar, topicMetadata("bar"))
+
+    // the metadata of all topics is rebuilt when the brokers change
+    update(Seq.empty, 9093)
+    assertNotSame(bar, topicMetadata("bar"))
+  }
+
 }
@@ -1134,6 +1134,48 @@ class ReplicaManagerTest {
     assertEquals(Errors.NOT_LEADER_FOR_PARTITION, fetchResult.get.error)
   }
 
+  @Test
+  def testPartitionChangedOnLeadershipAndReplicaChanges(): Unit = {
+    val mockTimer = new MockTimer
+    val replicaManager = setupReplicaManagerWithMockedPurgatories(mockTimer, aliveBrokerIds = Seq(0, 1))
+    val changed = new java.util.concurrent.ConcurrentLinkedQueue[TopicPartition]
+    replicaManager.setPartitionChangeListener(changed.add(_))
+
+    val tp0 = new TopicPartition(topic, 0)
+    val offsetCheckpoints = new LazyOffsetCheckpoints(replicaManager.highWatermarkCheckpoints)
+    replicaManager.createPartition(tp0).createLogIfNotExists(0, isNew = false, isFutureReplica = false, offsetCheckpoints)
+    val partition0Replicas = Seq[Integer](0, 1).asJava
+
+    def leaderAndIsrRequest(leader: Int, leaderEpoch: Int): LeaderAndIsrRequest =
+      new LeaderAndIsrRequest.Builder(ApiKeys.LEADER_AND_ISR.latestVersion, 0, 0, brokerEpoch,
+        Seq(new LeaderAndIsrPartitionState()
+          .setTopicName(tp0.topic)
+          .setPartitionIndex(tp0.partition)
+          .setControllerEpoch(0)
+          .setLeader(leader)
+          .setLeaderEpoch(leaderEpoch)
+          .setIsr(partition0Replicas)
+          .setZkVersion(0)
+          .setReplicas(partition0Replicas)
+          .setIsNew(true)).asJava,
+        Set(new Node(0, "host1", 0), new Node(1, "host2", 1)).asJava).build()
+
+    replicaManager.becomeLeaderOrFollower(1, leaderAndIsrRequest(leader = 0, leaderEpoch = 1), (_, _) => ())
+    assertTrue("Becoming the leader should mark the partition changed", changed.contains(tp0))
+
+    changed.clear()
+    replicaManager.becomeLeaderOrFollower(1, leaderAndIsrRequest(leader = 1, leaderEpoch = 2), (_, _) => ())
+    assertTrue("Becoming a follower should mark the partition changed", changed.contains(tp0))
+
+    changed.clear()
+    replicaManager.stopReplica(tp0, deletePartition = false)
+    assertTrue("Stopping the replica should mark the partition changed", changed.contains(tp0))
+
+    changed.clear()
+    replicaManager.markPartitionOffline(tp0)
+    assertTrue("Taking the partition offline should mark it changed", changed.contains(tp0))
+  }
+
   @Test
   def testClearProducePurgatoryOnStopReplica(): Unit = {
     val mockTimer = new MockTimer
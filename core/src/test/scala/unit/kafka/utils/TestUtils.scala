@@ -1050,6 +1050,8 @@ object TestUtils extends Logging {
                    initialDefaultConfig = defaultConfig,
                    cleanerConfig = cleanerConfig,
                    recoveryThreadsPerDataDir = 4,
+                   segmentRecoveryThreadsPerDataDir = 1,
+                   maxLazyOpenSegments = 0,
                    flushCheckMs = 1000L,
                    flushRecoveryOffsetCheckpointMs = 10000L,
                    flushStartOffsetCheckpointMs = 10000L,
@@ -1059,7 +1061,8 @@ object TestUtils extends Logging {
                    time = time,
                    brokerState = BrokerState(),
                    brokerTopicStats = new BrokerTopicStats,
-                   logDirFailureChannel = new LogDirFailureChannel(logDirs.size))
+                   logDirFailureChannel = new LogDirFailureChannel(logDirs.size),
+                   requestHandlerIdleRatio = () => 1.0)
   }
 
   def produceMessages(servers: Seq[KafkaServer],
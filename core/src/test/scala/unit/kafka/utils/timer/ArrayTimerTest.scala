@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package kafka.utils.timer
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.collection.mutable.ArrayBuffer
+
+class ArrayTimerTest extends TimerTest {
+
+  private class LatchTask(override val delayMs: Long, latch: CountDownLatch, fail: Boolean = false) extends TimerTask {
+    def run(): Unit = {
+      latch.countDown()
+      if (fail)
+        throw new RuntimeException("expected")
+    }
+  }
+
+  override protected def newTimer(): Timer = new ArrayTimer("test", tickMs = 1, wheelSize = 3)
+
+  @Test
+  def testCancelledTaskRemoved(): Unit = {
+    val latch = new CountDownLatch(2)
+    val tasks = (0 until 10).map { i => new LatchTask(1000 + i, latch) }
+    tasks.foreach(timer.add)
+    assertEquals(10, timer.size)
+
+    tasks.take(8).foreach(_.cancel())
+    assertEquals(2, timer.size)
+    // cancelling twice has no effect
+    tasks.head.cancel()
+    assertEquals(2, timer.size)
+
+    while (timer.advanceClock(2000)) {}
+    assertTrue(latch.await(3, TimeUnit.SECONDS))
+    assertEquals(0, timer.size)
+  }
+
+  @Test
+  def testAddCancelledTaskAgain(): Unit = {
+    val latch = new CountDownLatch(1)
+    val task = new LatchTask(10, latch)
+    timer.add(task)
+    task.cancel()
+    assertEquals(0, timer.size)
+
+    timer.add(task)
+    assertEquals(1, timer.size)
+    while (timer.advanceClock(2000)) {}
+    assertTrue(latch.await(3, TimeUnit.SECONDS))
+  }
+
+  @Test
+  def testExpiredTasksRunAfterFailedTask(): Unit = {
+    val latch = new CountDownLatch(3)
+    val tasks = ArrayBuffer(new LatchTask(5, latch), new LatchTask(5, latch, fail = true), new LatchTask(5, latch))
+    tasks.foreach(timer.add)
+
+    while (timer.advanceClock(2000)) {}
+    assertTrue("tasks expiring with a failed task should run", latch.await(3, TimeUnit.SECONDS))
+  }
+}
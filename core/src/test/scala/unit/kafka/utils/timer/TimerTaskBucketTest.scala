@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package kafka.utils.timer
+
+import org.junit.Assert._
+import java.util.concurrent.atomic._
+import org.junit.Test
+
+import scala.collection.mutable.ArrayBuffer
+
+class TimerTaskBucketTest {
+
+  private class TestTask(val delayMs: Long) extends TimerTask {
+    def run(): Unit = { }
+  }
+
+  @Test
+  def testAll(): Unit = {
+    val sharedCounter = new AtomicInteger(0)
+    val bucket1 = new TimerTaskBucket(sharedCounter)
+    val bucket2 = new TimerTaskBucket(sharedCounter)
+
+    // more tasks than the initial capacity of the buckets
+    val tasks = (1 to 40).map { i =>
+      val task = new TestTask(0L)
+      bucket1.add(task)
+      assertEquals(i, sharedCounter.get)
+      task
+    }
+
+    // moving tasks to another bucket shouldn't change the task count
+    tasks.take(10).foreach(bucket2.add)
+    assertEquals(30, bucket1.size)
+    assertEquals(10, bucket2.size)
+    assertEquals(tasks.size, sharedCounter.get)
+
+    // cancel tasks in the middle and at the end of a bucket
+    tasks.slice(20, 25).foreach(_.cancel())
+    tasks.last.cancel()
+    assertEquals(24, bucket1.size)
+    assertEquals(34, sharedCounter.get)
+
+    val remaining = new ArrayBuffer[TimerTask]()
+    bucket1.foreach(remaining += _)
+    assertEquals((tasks.slice(10, 20) ++ tasks.slice(25, 39)).toSet, remaining.toSet)
+
+    val flushed = new ArrayBuffer[TimerTask]()
+    bucket1.flush(flushed += _)
+    assertEquals(remaining.toSet, flushed.toSet)
+    assertEquals(0, bucket1.size)
+    assertEquals(10, sharedCounter.get)
+
+    // cancelling flushed tasks doesn't change the task count
+    flushed.foreach(_.cancel())
+    assertEquals(10, sharedCounter.get)
+
+    bucket2.foreach(_.cancel())
+    assertEquals(0, bucket2.size)
+    assertEquals(0, sharedCounter.get)
+  }
+
+}
@@ -36,11 +36,13 @@ class TimerTest {
     }
   }
 
-  private[this] var timer: Timer = null
+  protected var timer: Timer = null
+
+  protected def newTimer(): Timer = new SystemTimer("test", tickMs = 1, wheelSize = 3)
 
   @Before
   def setup(): Unit = {
-    timer = new SystemTimer("test", tickMs = 1, wheelSize = 3)
+    timer = newTimer()
   }
 
   @After
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.common;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.FileRecords;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.apache.kafka.common.utils.Checksums;
+import org.apache.kafka.common.utils.Crc32;
+import org.apache.kafka.common.utils.Crc32C;
+import org.apache.kafka.common.utils.PureJavaCrc32C;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+/**
+ * Measures the checksums computed when validating record batches: CRC32C over heap arrays, direct buffers and
+ * file regions, the pure Java CRC32C used before Java 9, and the CRC32 of legacy records.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChecksumsBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    private int size;
+
+    private byte[] bytes;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+    private ByteBuffer[] heapBuffers;
+    private File file;
+    private FileRecords fileRecords;
+    private RecordBatch fileBatch;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bytes = new byte[size];
+        new Random(0).nextBytes(bytes);
+        heapBuffer = ByteBuffer.wrap(bytes);
+        directBuffer = ByteBuffer.allocateDirect(size);
+        directBuffer.put(bytes);
+        directBuffer.flip();
+
+        // the same bytes split in the chunks of 16 KB
+        int chunks = (size + 16383) / 16384;
+        heapBuffers = new ByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++) {
+            int offset = i * 16384;
+            heapBuffers[i] = ByteBuffer.wrap(bytes, offset, Math.min(16384, size - offset)).slice();
+        }
+
+        // a batch with a single record, about the size of the benchmark
+        file = Files.createTempFile("checksums-benchmark", ".log").toFile();
+        fileRecords = FileRecords.open(file);
+        fileRecords.append(MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord(bytes)));
+        fileRecords.flush();
+        fileBatch = fileRecords.batches().iterator().next();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileRecords.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public long crc32cHeapArray() {
+        return Crc32C.compute(bytes, 0, size);
+    }
+
+    @Benchmark
+    public long crc32cHeapBuffer() {
+        return Crc32C.compute(heapBuffer, 0, size);
+    }
+
+    @Benchmark
+    public long crc32cDirectBuffer() {
+        return Crc32C.compute(directBuffer, 0, size);
+    }
+
+    @Benchmark
+    public long crc32cHeapBuffers() {
+        Checksum crc = Crc32C.create();
+        Checksums.update(crc, heapBuffers);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long crc32cPureJava() {
+        Checksum crc = new PureJavaCrc32C();
+        crc.update(bytes, 0, size);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long crc32HeapArray() {
+        return Crc32.crc32(bytes, 0, size);
+    }
+
+    /**
+     * Validate a batch of a file by reading it in chunks, as done for batches which have not been loaded.
+     */
+    @Benchmark
+    public RecordBatch validateFileBatch() {
+        fileBatch.ensureValid();
+        return fileBatch;
+    }
+
+    /**
+     * Validate a batch of a file by loading it in memory first, as done before batches were validated in chunks.
+     */
+    @Benchmark
+    public RecordBatch validateLoadedFileBatch() {
+        ByteBuffer buffer = ByteBuffer.allocate(fileBatch.sizeInBytes());
+        fileBatch.writeTo(buffer);
+        buffer.flip();
+        RecordBatch batch = MemoryRecords.readableRecords(buffer).firstBatch();
+        batch.ensureValid();
+        return batch;
+    }
+}
@@ -123,8 +123,10 @@ public class ReplicaFetcherThreadBenchmark {
                 JavaConverters.asScalaIteratorConverter(new ArrayList<File>().iterator()).asScala().toSeq(),
                 new scala.collection.mutable.HashMap<>(),
                 logConfig,
-                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5"),
+                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5", "skimpy", false, 1, false, 0.5, false, 0.0),
                 1,
+                1,
+                0,
                 1000L,
                 10000L,
                 10000L,
@@ -134,6 +136,7 @@ public class ReplicaFetcherThreadBenchmark {
                 new BrokerState(),
                 brokerTopicStats,
                 logDirFailureChannel,
+                () -> 1.0,
                 Time.SYSTEM);
 
         LinkedHashMap<TopicPartition, FetchResponse.PartitionData<BaseRecords>> initialFetched = new LinkedHashMap<>();
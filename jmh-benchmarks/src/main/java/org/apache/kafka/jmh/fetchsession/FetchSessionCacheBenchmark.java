@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.fetchsession;
+
+import kafka.server.CachedPartition;
+import kafka.server.FetchSessionCache;
+import org.apache.kafka.common.requests.FetchMetadata;
+import org.apache.kafka.common.security.auth.KafkaPrincipal;
+import org.apache.kafka.common.utils.ImplicitLinkedHashCollection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the broker fetch session cache under churn: many consumers of a few principals create sessions in a
+ * cache also holding the large sessions of followers, which keep fetching. The auxiliary counters report how many
+ * consumer sessions are created and rejected, and how many follower sessions are evicted and have to be created
+ * again by a full fetch request.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FetchSessionCacheBenchmark {
+    private static final int CACHE_SLOTS = 1000;
+    private static final long EVICTION_MS = 1000L;
+    private static final int FOLLOWERS = 50;
+    private static final int FOLLOWER_PARTITIONS = 1000;
+    private static final int CONSUMER_PARTITIONS = 10;
+    private static final int PRINCIPALS = 20;
+
+    @Param({"2147483647", "20"})
+    private int maxSessionsPerPrincipal;
+
+    @Param({"2147483647", "55000"})
+    private int maxPartitions;
+
+    private FetchSessionCache cache;
+    private KafkaPrincipal[] principals;
+    private int[] followerSessions;
+    private long now;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SessionCounters {
+        public long consumerSessionsCreated;
+        public long consumerSessionsRejected;
+        public long followerSessionsEvicted;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            consumerSessionsCreated = 0;
+            consumerSessionsRejected = 0;
+            followerSessionsEvicted = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cache = new FetchSessionCache(CACHE_SLOTS, EVICTION_MS, maxPartitions, maxSessionsPerPrincipal, 0L);
+        principals = new KafkaPrincipal[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++)
+            principals[i] = new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "consumer-" + i);
+        followerSessions = new int[FOLLOWERS];
+        for (int i = 0; i < FOLLOWERS; i++)
+            followerSessions[i] = createFollowerSession();
+        now = 0;
+        next = 0;
+    }
+
+    private int createFollowerSession() {
+        return cache.maybeCreateSession(now, true, FOLLOWER_PARTITIONS, () -> partitions(FOLLOWER_PARTITIONS),
+            KafkaPrincipal.ANONYMOUS);
+    }
+
+    private static ImplicitLinkedHashCollection<CachedPartition> partitions(int size) {
+        ImplicitLinkedHashCollection<CachedPartition> partitions = new ImplicitLinkedHashCollection<>(size);
+        for (int i = 0; i < size; i++)
+            partitions.add(new CachedPartition("topic-" + (i % 100), i / 100));
+        return partitions;
+    }
+
+    /**
+     * Creates the session of a consumer, one millisecond after the previous one, then lets a follower fetch with its
+     * session, or create a new one if it was evicted.
+     */
+    @Benchmark
+    public int createConsumerSession(SessionCounters counters) {
+        now++;
+        next++;
+        int sessionId = cache.maybeCreateSession(now, false, CONSUMER_PARTITIONS, () -> partitions(CONSUMER_PARTITIONS),
+            principals[next % PRINCIPALS]);
+        if (sessionId == FetchMetadata.INVALID_SESSION_ID)
+            counters.consumerSessionsRejected++;
+        else
+            counters.consumerSessionsCreated++;
+
+        int follower = next % FOLLOWERS;
+        if (cache.get(followerSessions[follower]).isDefined()) {
+            cache.touch(cache.get(followerSessions[follower]).get(), now);
+        } else {
+            counters.followerSessionsEvicted++;
+            followerSessions[follower] = createFollowerSession();
+        }
+        return sessionId;
+    }
+}
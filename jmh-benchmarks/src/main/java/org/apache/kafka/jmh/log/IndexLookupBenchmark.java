@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.log;
+
+import kafka.log.OffsetIndex;
+import kafka.log.OffsetPosition;
+import kafka.log.TimeIndex;
+import kafka.log.TimestampOffset;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups of random targets before the warm section of offset and time indexes, as when consumers catch
+ * up on older segments, with and without the two-level lookup.
+ *
+ * The <code>offsetLookup</code> and <code>timeLookup</code> benchmarks measure the searches, with the indexes in the
+ * page cache. The indexes are reopened before every iteration, so that their sparse levels are filled again by the
+ * lookups, as for the segments loaded by a broker.
+ *
+ * The latency of cold lookups depends on the pages of the indexes read from disk rather than on the searches. The
+ * <code>coldOffsetLookups</code> and <code>coldTimeLookups</code> benchmarks drop the page cache and reopen the indexes
+ * before every iteration, then measure the first lookups in each index. Dropping the page cache requires running the
+ * benchmarks as root on Linux.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndexLookupBenchmark {
+
+    // an entry every 4096 bytes of 256 byte records, as with the default index interval
+    private static final int OFFSET_INTERVAL = 16;
+    private static final int POSITION_INTERVAL = 4096;
+    private static final int TIMESTAMP_INTERVAL = 10;
+    // the entries of the warm section of the indexes, which are not looked up
+    private static final int WARM_SECTION_BYTES = 8192;
+    // the lookups in each index measured by the cold benchmarks
+    private static final int COLD_LOOKUPS_PER_INDEX = 16;
+
+    @Param({"false", "true"})
+    private boolean twoLevelLookup;
+
+    @Param({"10"})
+    private int indexes;
+
+    @Param({"262144", "2097152"})
+    private int indexBytes;
+
+    private final Random random = new Random(1);
+    private File dir;
+    private File[] offsetIndexFiles;
+    private File[] timeIndexFiles;
+    private OffsetIndex[] offsetIndexes;
+    private TimeIndex[] timeIndexes;
+    private int coldOffsetEntries;
+    private int coldTimeEntries;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("kafka-index-lookup").toFile();
+        offsetIndexFiles = new File[indexes];
+        timeIndexFiles = new File[indexes];
+        for (int i = 0; i < indexes; i++) {
+            OffsetIndex offsetIndex = new OffsetIndex(new File(dir, i + ".index"), 0L, indexBytes, true, false);
+            TimeIndex timeIndex = new TimeIndex(new File(dir, i + ".timeindex"), 0L, indexBytes, true, false);
+            for (int entry = 0; !offsetIndex.isFull(); entry++)
+                offsetIndex.append((long) entry * OFFSET_INTERVAL, entry * POSITION_INTERVAL);
+            for (int entry = 0; !timeIndex.isFull(); entry++)
+                timeIndex.maybeAppend((long) (entry + 1) * TIMESTAMP_INTERVAL, (long) entry * OFFSET_INTERVAL, false);
+            // the page cache only drops the pages written to disk
+            offsetIndex.flush();
+            timeIndex.flush();
+            coldOffsetEntries = offsetIndex.entries() - WARM_SECTION_BYTES / 8;
+            coldTimeEntries = timeIndex.entries() - WARM_SECTION_BYTES / 12;
+            offsetIndex.close();
+            timeIndex.close();
+            offsetIndexFiles[i] = offsetIndex.file();
+            timeIndexFiles[i] = timeIndex.file();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openIndexes() {
+        offsetIndexes = new OffsetIndex[indexes];
+        timeIndexes = new TimeIndex[indexes];
+        for (int i = 0; i < indexes; i++) {
+            offsetIndexes[i] = new OffsetIndex(offsetIndexFiles[i], 0L, -1, false, twoLevelLookup);
+            timeIndexes[i] = new TimeIndex(timeIndexFiles[i], 0L, -1, false, twoLevelLookup);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeIndexes() {
+        for (int i = 0; i < indexes; i++) {
+            offsetIndexes[i].closeHandler();
+            timeIndexes[i].closeHandler();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.delete(dir);
+    }
+
+    @Benchmark
+    public OffsetPosition offsetLookup() {
+        return lookup(offsetIndexes[random.nextInt(indexes)]);
+    }
+
+    @Benchmark
+    public TimestampOffset timeLookup() {
+        return lookup(timeIndexes[random.nextInt(indexes)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void coldOffsetLookups(ColdIndexes cold, Blackhole bh) {
+        for (OffsetIndex index : cold.offsetIndexes) {
+            for (int i = 0; i < COLD_LOOKUPS_PER_INDEX; i++)
+                bh.consume(lookup(index));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void coldTimeLookups(ColdIndexes cold, Blackhole bh) {
+        for (TimeIndex index : cold.timeIndexes) {
+            for (int i = 0; i < COLD_LOOKUPS_PER_INDEX; i++)
+                bh.consume(lookup(index));
+        }
+    }
+
+    private OffsetPosition lookup(OffsetIndex index) {
+        return index.lookup((long) random.nextInt(coldOffsetEntries) * OFFSET_INTERVAL + random.nextInt(OFFSET_INTERVAL));
+    }
+
+    private TimestampOffset lookup(TimeIndex index) {
+        return index.lookup((long) random.nextInt(coldTimeEntries) * TIMESTAMP_INTERVAL + random.nextInt(TIMESTAMP_INTERVAL));
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdIndexes {
+        private OffsetIndex[] offsetIndexes;
+        private TimeIndex[] timeIndexes;
+
+        @Setup(Level.Iteration)
+        public void openIndexes(IndexLookupBenchmark benchmark) throws IOException {
+            dropPageCache();
+            offsetIndexes = new OffsetIndex[benchmark.indexes];
+            timeIndexes = new TimeIndex[benchmark.indexes];
+            for (int i = 0; i < benchmark.indexes; i++) {
+                offsetIndexes[i] = new OffsetIndex(benchmark.offsetIndexFiles[i], 0L, -1, false, benchmark.twoLevelLookup);
+                timeIndexes[i] = new TimeIndex(benchmark.timeIndexFiles[i], 0L, -1, false, benchmark.twoLevelLookup);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeIndexes() {
+            for (int i = 0; i < offsetIndexes.length; i++) {
+                offsetIndexes[i].closeHandler();
+                timeIndexes[i].closeHandler();
+            }
+        }
+
+        private static void dropPageCache() throws IOException {
+            try {
+                Files.write(Paths.get("/proc/sys/vm/drop_caches"), "1".getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new IOException("Failed to drop the page cache, the cold benchmarks must run as root on Linux", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.log;
+
+import kafka.log.CompactOffsetMap;
+import kafka.log.OffsetMap;
+import kafka.log.SkimpyOffsetMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a pass of the log cleaner over the offset map of a cleaner thread: the keys of the dirty section of a log
+ * are put into the map, as when the map is built, and then looked up, as when the segments are cleaned. The same keys
+ * are used for every type of map, so that the number of keys fits in the default map and the denser maps are less
+ * loaded.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OffsetMapBenchmark {
+
+    private static final double LOAD_FACTOR = 0.9;
+    private static final int SKIMPY_BYTES_PER_ENTRY = 24;
+
+    @Param({"skimpy", "compact", "compact-off-heap"})
+    private String mapType;
+
+    @Param({"16777216"})
+    private int memory;
+
+    @Param({"16", "64"})
+    private int keySize;
+
+    private OffsetMap map;
+    private ByteBuffer[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (mapType) {
+            case "skimpy":
+                map = new SkimpyOffsetMap(memory, "MD5");
+                break;
+            case "compact":
+                map = new CompactOffsetMap(memory, false);
+                break;
+            case "compact-off-heap":
+                map = new CompactOffsetMap(memory, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown map type " + mapType);
+        }
+        Random random = new Random(1);
+        keys = new ByteBuffer[(int) (memory / SKIMPY_BYTES_PER_ENTRY * LOAD_FACTOR)];
+        for (int i = 0; i < keys.length; i++) {
+            byte[] key = new byte[keySize];
+            random.nextBytes(key);
+            keys[i] = ByteBuffer.wrap(key);
+            keys[i].putInt(0, i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        map.close();
+    }
+
+    @Benchmark
+    public long buildAndLookup() {
+        map.clear();
+        for (int i = 0; i < keys.length; i++)
+            map.put(keys[i], i);
+        long offsets = 0;
+        for (ByteBuffer key : keys)
+            offsets += map.get(key);
+        return offsets;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.metadata;
+
+import kafka.server.MetadataCache;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataBroker;
+import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataEndpoint;
+import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataPartitionState;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.requests.MetadataResponse;
+import org.apache.kafka.common.requests.UpdateMetadataRequest;
+import org.apache.kafka.common.security.auth.SecurityProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.collection.JavaConverters;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the metadata requests of all the topics of a large cluster:
+ * <ul>
+ * <li>allTopicsMetadata builds the response of a request, as clients refreshing their metadata;</li>
+ * <li>allTopicsMetadataAfterUpdate does the same after an UpdateMetadata request changing the leader of one
+ *     partition, so that the metadata of one topic is rebuilt.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetadataCacheBenchmark {
+
+    @Param({"100", "1000"})
+    private int topics;
+
+    @Param({"30"})
+    private int partitionsPerTopic;
+
+    private static final int BROKERS = 30;
+    private static final int REPLICATION_FACTOR = 3;
+
+    private final ListenerName listenerName = ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT);
+    private final short version = ApiKeys.METADATA.latestVersion();
+    private MetadataCache metadataCache;
+    private scala.collection.Set<String> topicNames;
+    private List<UpdateMetadataBroker> brokers;
+    private int leaderEpoch = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        brokers = new ArrayList<>();
+        for (int id = 0; id < BROKERS; id++) {
+            brokers.add(new UpdateMetadataBroker()
+                .setId(id)
+                .setEndpoints(Collections.singletonList(new UpdateMetadataEndpoint()
+                    .setHost("host-" + id)
+                    .setPort(9092)
+                    .setSecurityProtocol(SecurityProtocol.PLAINTEXT.id)
+                    .setListener(listenerName.value()))));
+        }
+        List<UpdateMetadataPartitionState> partitionStates = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int topic = 0; topic < topics; topic++) {
+            names.add("topic-" + topic);
+            for (int partition = 0; partition < partitionsPerTopic; partition++)
+                partitionStates.add(partitionState("topic-" + topic, partition, 0));
+        }
+        topicNames = JavaConverters.asScalaSet(names);
+        metadataCache = new MetadataCache(0);
+        update(partitionStates);
+    }
+
+    private UpdateMetadataPartitionState partitionState(String topic, int partition, int leaderEpoch) {
+        List<Integer> replicas = new ArrayList<>(REPLICATION_FACTOR);
+        for (int i = 0; i < REPLICATION_FACTOR; i++)
+            replicas.add((partition + i) % BROKERS);
+        return new UpdateMetadataPartitionState()
+            .setTopicName(topic)
+            .setPartitionIndex(partition)
+            .setControllerEpoch(1)
+            .setLeader(replicas.get(0))
+            .setLeaderEpoch(leaderEpoch)
+            .setIsr(replicas)
+            .setZkVersion(1)
+            .setReplicas(replicas);
+    }
+
+    private void update(List<UpdateMetadataPartitionState> partitionStates) {
+        metadataCache.updateMetadata(1, new UpdateMetadataRequest.Builder(ApiKeys.UPDATE_METADATA.latestVersion(),
+            1, 1, 1, partitionStates, brokers).build());
+    }
+
+    private ByteBuffer allTopicsResponse() {
+        List<MetadataResponse.TopicMetadata> topicMetadata = JavaConverters.seqAsJavaList(
+            metadataCache.getTopicMetadata(topicNames, listenerName, false, true));
+        List<Node> nodes = Arrays.asList(new Node(0, "host-0", 9092));
+        return MetadataResponse.prepareResponse(0, nodes, "cluster", 0, topicMetadata,
+            MetadataResponse.AUTHORIZED_OPERATIONS_OMITTED).serialize(ApiKeys.METADATA, version, 0);
+    }
+
+    @Benchmark
+    public ByteBuffer allTopicsMetadata() {
+        return allTopicsResponse();
+    }
+
+    @Benchmark
+    public ByteBuffer allTopicsMetadataAfterUpdate() {
+        leaderEpoch++;
+        update(Collections.singletonList(partitionState("topic-0", 0, leaderEpoch)));
+        return allTopicsResponse();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.network;
+
+import org.apache.kafka.common.network.DefaultChannelMetadataRegistry;
+import org.apache.kafka.common.network.SslTransportLayer;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of sending a log segment over an SSL connection with {@link SslTransportLayer#transferFrom}
+ * for each {@link SslTransportLayer.FileTransferMode}. Both ends of the connection run on the benchmark thread
+ * over loopback, so the results include decryption on the receiving side, which is the same for every mode.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SslFileTransferBenchmark {
+
+    private static final String PASSWORD = "benchmark-password";
+
+    @Param({"COPY", "MMAP"})
+    private SslTransportLayer.FileTransferMode fileTransferMode;
+
+    @Param({"65536", "1048576", "16777216"})
+    private int fileSize;
+
+    private File tempDir;
+    private FileChannel fileChannel;
+    private Selector selector;
+    private ServerSocketChannel serverSocketChannel;
+    private SslTransportLayer sender;
+    private SslTransportLayer receiver;
+    private ByteBuffer receiveBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("kafka-ssl-benchmark").toFile();
+        SSLContext sslContext = sslContext(new File(tempDir, "keystore.p12"));
+
+        File segment = new File(tempDir, "00000000000000000000.log");
+        byte[] data = new byte[fileSize];
+        new Random(0).nextBytes(data);
+        Files.write(segment.toPath(), data);
+        fileChannel = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+
+        selector = Selector.open();
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel receiverChannel = SocketChannel.open(serverSocketChannel.getLocalAddress());
+        SocketChannel senderChannel = serverSocketChannel.accept();
+        senderChannel.configureBlocking(false);
+        receiverChannel.configureBlocking(false);
+
+        SSLEngine senderEngine = sslContext.createSSLEngine();
+        senderEngine.setUseClientMode(false);
+        SSLEngine receiverEngine = sslContext.createSSLEngine();
+        receiverEngine.setUseClientMode(true);
+        sender = SslTransportLayer.create("sender", senderChannel.register(selector, SelectionKey.OP_READ),
+            senderEngine, new DefaultChannelMetadataRegistry(), fileTransferMode);
+        receiver = SslTransportLayer.create("receiver", receiverChannel.register(selector, SelectionKey.OP_READ),
+            receiverEngine, new DefaultChannelMetadataRegistry());
+
+        while (!sender.ready() || !receiver.ready()) {
+            selector.selectNow();
+            if (!sender.ready())
+                sender.handshake();
+            if (!receiver.ready())
+                receiver.handshake();
+            selector.selectedKeys().clear();
+        }
+        receiveBuffer = ByteBuffer.allocate(64 * 1024);
+
+        // like a broker receiving a fetch request, the sender must read from the connection before it can send
+        // files, which completes any TLSv1.3 post-handshake messages
+        ByteBuffer request = ByteBuffer.wrap(new byte[] {1, 2, 3, 4});
+        while (request.hasRemaining())
+            receiver.write(request);
+        int requestBytes = 0;
+        while (requestBytes < request.capacity()) {
+            receiveBuffer.clear();
+            requestBytes += Math.max(sender.read(receiveBuffer), 0);
+        }
+    }
+
+    /**
+     * Creates a self-signed key pair with `keytool` since the JDK has no public API to generate certificates.
+     */
+    private static SSLContext sslContext(File keyStoreFile) throws Exception {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "benchmark", "-keyalg", "RSA",
+            "-keysize", "2048", "-validity", "1", "-dname", "CN=localhost", "-storetype", "PKCS12",
+            "-keystore", keyStoreFile.getAbsolutePath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .inheritIO()
+            .start();
+        if (process.waitFor() != 0)
+            throw new IllegalStateException("Failed to generate the benchmark key store with " + keytool);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keyStoreFile)) {
+            keyStore.load(in, PASSWORD.toCharArray());
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD.toCharArray());
+        // the self-signed certificate of the key entry is its own trust anchor
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        serverSocketChannel.close();
+        selector.close();
+        fileChannel.close();
+        Utils.delete(tempDir);
+    }
+
+    @Benchmark
+    public long transferSegment() throws IOException {
+        long position = 0;
+        long received = 0;
+        while (position < fileSize) {
+            position += sender.transferFrom(fileChannel, position, fileSize - position);
+            received += drainReceiver();
+        }
+        return received;
+    }
+
+    private long drainReceiver() throws IOException {
+        long received = 0;
+        int read;
+        do {
+            receiveBuffer.clear();
+            read = receiver.read(receiveBuffer);
+            received += Math.max(read, 0);
+        } while (read > 0);
+        return received;
+    }
+}
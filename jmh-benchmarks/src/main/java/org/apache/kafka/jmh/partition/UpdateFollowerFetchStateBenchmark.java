@@ -84,8 +84,10 @@ public class UpdateFollowerFetchStateBenchmark {
                 JavaConverters.asScalaIteratorConverter(new ArrayList<File>().iterator()).asScala().toSeq(),
                 new scala.collection.mutable.HashMap<>(),
                 logConfig,
-                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5"),
+                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5", "skimpy", false, 1, false, 0.5, false, 0.0),
                 1,
+                1,
+                0,
                 1000L,
                 10000L,
                 10000L,
@@ -95,6 +97,7 @@ public class UpdateFollowerFetchStateBenchmark {
                 new BrokerState(),
                 brokerTopicStats,
                 logDirFailureChannel,
+                () -> 1.0,
                 Time.SYSTEM);
         OffsetCheckpoints offsetCheckpoints = Mockito.mock(OffsetCheckpoints.class);
         Mockito.when(offsetCheckpoints.fetch(logDir.getAbsolutePath(), topicPartition)).thenReturn(Option.apply(0L));
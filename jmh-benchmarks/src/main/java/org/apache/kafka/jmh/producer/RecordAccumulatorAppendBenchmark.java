@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.producer;
+
+import org.apache.kafka.clients.ApiVersions;
+import org.apache.kafka.clients.producer.internals.BufferPool;
+import org.apache.kafka.clients.producer.internals.ProducerBatch;
+import org.apache.kafka.clients.producer.internals.RecordAccumulator;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link RecordAccumulator#append} and {@link RecordAccumulator#appendAll} when many
+ * threads append to a few partitions. A background thread drains and deallocates batches like the sender does, so
+ * appends also contend with draining for the partition locks. Use {@code -t} to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(16)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecordAccumulatorAppendBenchmark {
+
+    private static final int RECORDS_PER_APPEND = 16;
+    private static final String TOPIC = "topic";
+
+    @Param({"1", "4", "16"})
+    private int partitionCount;
+
+    @Param({"100", "1000"})
+    private int recordSize;
+
+    @Param({"NONE", "LZ4"})
+    private CompressionType compressionType;
+
+    private final Metrics metrics = new Metrics();
+    private final Time time = Time.SYSTEM;
+    private Cluster cluster;
+    private Node node;
+    private TopicPartition[] partitions;
+    private RecordAccumulator accumulator;
+    private byte[] value;
+    private List<RecordAccumulator.SerializedRecord> records;
+    private Thread drainer;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        node = new Node(0, "localhost", 9092);
+        partitions = new TopicPartition[partitionCount];
+        List<PartitionInfo> partitionInfos = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new TopicPartition(TOPIC, i);
+            partitionInfos.add(new PartitionInfo(TOPIC, i, node, new Node[] {node}, new Node[] {node}));
+        }
+        cluster = new Cluster("cluster", Collections.singletonList(node), partitionInfos,
+            Collections.emptySet(), Collections.emptySet());
+
+        int batchSize = 16384;
+        accumulator = new RecordAccumulator(new LogContext(), batchSize, compressionType, 0, 100L, 120000,
+            metrics, "producer-metrics", time, new ApiVersions(), null,
+            new BufferPool(32 * 1024 * 1024L, batchSize, metrics, time, "producer-metrics"));
+
+        value = new byte[recordSize];
+        new Random(0).nextBytes(value);
+        records = new ArrayList<>(RECORDS_PER_APPEND);
+        for (int i = 0; i < RECORDS_PER_APPEND; i++)
+            records.add(new RecordAccumulator.SerializedRecord(0L, null, value, Record.EMPTY_HEADERS, null));
+
+        running = true;
+        drainer = new Thread(this::drainBatches, "benchmark-drainer");
+        drainer.start();
+    }
+
+    private void drainBatches() {
+        while (running) {
+            Map<Integer, List<ProducerBatch>> drained = accumulator.drain(cluster, Collections.singleton(node),
+                Integer.MAX_VALUE, time.milliseconds());
+            for (List<ProducerBatch> batches : drained.values()) {
+                for (ProducerBatch batch : batches)
+                    accumulator.deallocate(batch);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        drainer.join();
+        accumulator.close();
+        metrics.close();
+    }
+
+    private TopicPartition randomPartition() {
+        return partitions[ThreadLocalRandom.current().nextInt(partitionCount)];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS_PER_APPEND)
+    public void appendOneByOne() throws InterruptedException {
+        TopicPartition tp = randomPartition();
+        for (int i = 0; i < RECORDS_PER_APPEND; i++)
+            accumulator.append(tp, 0L, null, value, Record.EMPTY_HEADERS, null, Long.MAX_VALUE, false, time.milliseconds());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS_PER_APPEND)
+    public List<RecordAccumulator.RecordAppendResult> appendAll() throws InterruptedException {
+        List<RecordAccumulator.RecordAppendResult> results = new ArrayList<>(RECORDS_PER_APPEND);
+        accumulator.appendAll(randomPartition(), records, Long.MAX_VALUE, time.milliseconds(), results);
+        return results;
+    }
+}
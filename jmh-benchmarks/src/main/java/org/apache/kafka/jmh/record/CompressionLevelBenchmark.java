@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.record;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of building a batch at different compression levels, along with the compression ratio
+ * obtained. The ratio is reported as the auxiliary counters <code>uncompressedBytes</code> and
+ * <code>compressedBytes</code>, whose quotient does not depend on the number of operations.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressionLevelBenchmark {
+
+    // codec and level, the level being omitted for the default level of the codec
+    @Param({"gzip", "gzip:1", "gzip:9", "lz4", "lz4:9", "lz4:17", "zstd", "zstd:-5", "zstd:1", "zstd:9", "zstd:19"})
+    private String compression;
+
+    @Param({"100", "1000"})
+    private int recordSize;
+
+    @Param({"16384", "1048576"})
+    private int batchSize;
+
+    private CompressionType compressionType;
+    private Integer compressionLevel;
+    private byte[][] values;
+    private ByteBuffer buffer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CompressionCounters {
+        public long uncompressedBytes;
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            uncompressedBytes = 0;
+            compressedBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] parts = compression.split(":");
+        compressionType = CompressionType.forName(parts[0]);
+        compressionLevel = parts.length > 1 ? Integer.valueOf(parts[1]) : null;
+        if (compressionLevel != null && !compressionType.isValidLevel(compressionLevel))
+            throw new IllegalArgumentException("Invalid level " + compressionLevel + " for " + compressionType);
+
+        // structured values with some entropy, compressing like typical JSON payloads
+        Random random = new Random(0);
+        values = new byte[Math.max(1, batchSize / recordSize)][];
+        for (int i = 0; i < values.length; i++)
+            values[i] = value(random, recordSize);
+        buffer = ByteBuffer.allocate(2 * batchSize + 1024);
+    }
+
+    private static byte[] value(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size + 64);
+        while (builder.length() < size) {
+            builder.append(String.format(Locale.ROOT, "{\"id\":%d,\"type\":\"%s\",\"amount\":%.2f},",
+                random.nextInt(100000), random.nextBoolean() ? "order" : "refund", random.nextDouble() * 1000));
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public MemoryRecords compress(CompressionCounters counters) {
+        buffer.clear();
+        MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, RecordBatch.CURRENT_MAGIC_VALUE, compressionType,
+            compressionLevel, null, TimestampType.CREATE_TIME, 0L, RecordBatch.NO_TIMESTAMP, RecordBatch.NO_PRODUCER_ID,
+            RecordBatch.NO_PRODUCER_EPOCH, RecordBatch.NO_SEQUENCE, false, false, RecordBatch.NO_PARTITION_LEADER_EPOCH);
+        for (byte[] value : values)
+            builder.append(0L, null, value);
+        MemoryRecords records = builder.build();
+        counters.uncompressedBytes += builder.uncompressedBytesWritten();
+        counters.compressedBytes += records.sizeInBytes();
+        return records;
+    }
+}
@@ -24,10 +24,13 @@ import org.apache.kafka.common.record.MemoryRecordsBuilder;
 import org.apache.kafka.common.record.MutableRecordBatch;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.RecordCursor;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.common.utils.CloseableIterator;
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.OperationsPerInvocation;
 import org.openjdk.jmh.annotations.Param;
@@ -38,6 +41,7 @@ import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
@@ -83,6 +87,39 @@ public class RecordBatchIterationBenchmark {
     private int[] batchSizes;
     private BufferSupplier bufferSupplier;
 
+    /**
+     * Reports the bytes allocated by the benchmark thread per record read, which is what the cursor based
+     * iteration is meant to reduce.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class AllocationCounters {
+        private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        private long allocatedBytes;
+        private long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            allocatedBytes = 0;
+            records = 0;
+        }
+
+        public double allocatedBytesPerRecord() {
+            return records == 0 ? 0 : (double) allocatedBytes / records;
+        }
+
+        long threadAllocatedBytes() {
+            return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        void record(long startAllocatedBytes, long records) {
+            this.allocatedBytes += threadAllocatedBytes() - startAllocatedBytes;
+            this.records += records;
+        }
+    }
+
     @Setup
     public void init() {
         bufferSupplier = BufferSupplier.create();
@@ -146,6 +183,58 @@ public class RecordBatchIterationBenchmark {
         }
     }
 
+    @OperationsPerInvocation(value = batchCount)
+    @Fork(jvmArgsAppend = "-Xmx8g")
+    @Benchmark
+    public void measureCursorForVariableBatchSize(Blackhole bh) throws IOException {
+        for (int i = 0; i < batchCount; ++i) {
+            for (RecordBatch batch : MemoryRecords.readableRecords(batchBuffers[i].duplicate()).batches()) {
+                try (RecordCursor cursor = batch.cursor(bufferSupplier)) {
+                    while (cursor.advance())
+                        bh.consume(cursor.current());
+                }
+            }
+        }
+    }
+
+    @OperationsPerInvocation(value = batchCount)
+    @Fork(jvmArgsAppend = "-Xmx8g")
+    @Benchmark
+    public void measureStreamingIteratorValuesForVariableBatchSize(Blackhole bh, AllocationCounters counters) throws IOException {
+        long startAllocatedBytes = counters.threadAllocatedBytes();
+        long records = 0;
+        for (int i = 0; i < batchCount; ++i) {
+            for (RecordBatch batch : MemoryRecords.readableRecords(batchBuffers[i].duplicate()).batches()) {
+                try (CloseableIterator<Record> iterator = batch.streamingIterator(bufferSupplier)) {
+                    while (iterator.hasNext()) {
+                        bh.consume(iterator.next().value());
+                        records++;
+                    }
+                }
+            }
+        }
+        counters.record(startAllocatedBytes, records);
+    }
+
+    @OperationsPerInvocation(value = batchCount)
+    @Fork(jvmArgsAppend = "-Xmx8g")
+    @Benchmark
+    public void measureCursorValuesForVariableBatchSize(Blackhole bh, AllocationCounters counters) throws IOException {
+        long startAllocatedBytes = counters.threadAllocatedBytes();
+        long records = 0;
+        for (int i = 0; i < batchCount; ++i) {
+            for (RecordBatch batch : MemoryRecords.readableRecords(batchBuffers[i].duplicate()).batches()) {
+                try (RecordCursor cursor = batch.cursor(bufferSupplier)) {
+                    while (cursor.advance()) {
+                        bh.consume(cursor.current().value());
+                        records++;
+                    }
+                }
+            }
+        }
+        counters.record(startAllocatedBytes, records);
+    }
+
     @OperationsPerInvocation(value = batchCount)
     @Fork(jvmArgsAppend = "-Xmx8g")
     @Benchmark
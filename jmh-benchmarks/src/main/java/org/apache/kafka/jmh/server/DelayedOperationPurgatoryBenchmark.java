@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.server;
+
+import kafka.server.DelayedOperation;
+import kafka.server.DelayedOperationPurgatory;
+import kafka.utils.timer.SystemTimer;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Measures the throughput of the purgatory watch lists with several request handler threads:
+ * <ul>
+ * <li>watchThenComplete watches an operation on a random key, then completes it, as a delayed produce
+ *     completed by the next follower fetch;</li>
+ * <li>checkWithoutCompleting checks the operations of a random key without completing any, as the delayed
+ *     fetches of a partition checked after every append which does not satisfy them.</li>
+ * </ul>
+ * The "previous" implementation is a copy of the watch lists of the purgatory before they were made lock-free, with
+ * a lock per shard taken to look up, add and remove the watchers of a key. Its number of shards was fixed to 512.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class DelayedOperationPurgatoryBenchmark {
+
+    @Param({"16", "512", "4096"})
+    private int shards;
+
+    @Param({"1000", "100000"})
+    private int keys;
+
+    @Param({"current", "previous"})
+    private String implementation;
+
+    // operations which are never completed, watched on every key for checkWithoutCompleting
+    private static final int WATCHED_PER_KEY = 4;
+
+    private WatchLists purgatory;
+    private Seq<Object>[] watchKeys;
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void setup() {
+        if (implementation.equals("current"))
+            purgatory = new CurrentWatchLists(shards);
+        else
+            purgatory = new PreviousWatchLists(shards);
+        watchKeys = new Seq[keys];
+        for (int i = 0; i < keys; i++) {
+            watchKeys[i] = JavaConverters.asScalaBuffer(Collections.<Object>singletonList("key-" + i));
+            for (int j = 0; j < WATCHED_PER_KEY; j++)
+                purgatory.tryCompleteElseWatch(new MockOperation(), watchKeys[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        purgatory.shutdown();
+    }
+
+    @Benchmark
+    public int watchThenComplete() {
+        Seq<Object> key = watchKeys[ThreadLocalRandom.current().nextInt(keys)];
+        MockOperation operation = new MockOperation();
+        purgatory.tryCompleteElseWatch(operation, key);
+        operation.completable = true;
+        return purgatory.checkAndComplete(key.head());
+    }
+
+    @Benchmark
+    public int checkWithoutCompleting() {
+        return purgatory.checkAndComplete(watchKeys[ThreadLocalRandom.current().nextInt(keys)].head());
+    }
+
+    private interface WatchLists {
+        boolean tryCompleteElseWatch(MockOperation operation, Seq<Object> watchKeys);
+
+        int checkAndComplete(Object key);
+
+        void shutdown();
+    }
+
+    private static class CurrentWatchLists implements WatchLists {
+        private final DelayedOperationPurgatory<MockOperation> purgatory;
+
+        CurrentWatchLists(int shards) {
+            purgatory = new DelayedOperationPurgatory<>("benchmark", new SystemTimer("benchmark", 1, 20,
+                Time.SYSTEM.hiResClockMs()), 0, 1000, false, false, shards);
+        }
+
+        @Override
+        public boolean tryCompleteElseWatch(MockOperation operation, Seq<Object> watchKeys) {
+            return purgatory.tryCompleteElseWatch(operation, watchKeys);
+        }
+
+        @Override
+        public int checkAndComplete(Object key) {
+            return purgatory.checkAndComplete(key);
+        }
+
+        @Override
+        public void shutdown() {
+            purgatory.shutdown();
+        }
+    }
+
+    /**
+     * The watch lists of DelayedOperationPurgatory before they were made lock-free, without the timer which is
+     * disabled for both implementations.
+     */
+    private static class PreviousWatchLists implements WatchLists {
+        private final ReentrantLock[] locks;
+        private final ConcurrentHashMap<Object, Watchers>[] watchersByKey;
+
+        @SuppressWarnings("unchecked")
+        PreviousWatchLists(int shards) {
+            locks = new ReentrantLock[shards];
+            watchersByKey = new ConcurrentHashMap[shards];
+            for (int i = 0; i < shards; i++) {
+                locks[i] = new ReentrantLock();
+                watchersByKey[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        private int shard(Object key) {
+            return Math.abs(key.hashCode() % locks.length);
+        }
+
+        @Override
+        public boolean tryCompleteElseWatch(MockOperation operation, Seq<Object> watchKeys) {
+            if (operation.tryComplete())
+                return true;
+            scala.collection.Iterator<Object> keys = watchKeys.iterator();
+            while (keys.hasNext()) {
+                if (operation.isCompleted())
+                    return false;
+                Object key = keys.next();
+                int shard = shard(key);
+                locks[shard].lock();
+                try {
+                    watchersByKey[shard].computeIfAbsent(key, Watchers::new).operations.add(operation);
+                } finally {
+                    locks[shard].unlock();
+                }
+            }
+            return operation.maybeTryComplete();
+        }
+
+        @Override
+        public int checkAndComplete(Object key) {
+            int shard = shard(key);
+            Watchers watchers;
+            locks[shard].lock();
+            try {
+                watchers = watchersByKey[shard].get(key);
+            } finally {
+                locks[shard].unlock();
+            }
+            return watchers == null ? 0 : tryCompleteWatched(watchers);
+        }
+
+        private int tryCompleteWatched(Watchers watchers) {
+            int completed = 0;
+            Iterator<MockOperation> iter = watchers.operations.iterator();
+            while (iter.hasNext()) {
+                MockOperation curr = iter.next();
+                if (curr.isCompleted()) {
+                    iter.remove();
+                } else if (curr.maybeTryComplete()) {
+                    iter.remove();
+                    completed++;
+                }
+            }
+            if (watchers.operations.isEmpty()) {
+                int shard = shard(watchers.key);
+                locks[shard].lock();
+                try {
+                    if (watchersByKey[shard].get(watchers.key) == watchers && watchers.operations.isEmpty())
+                        watchersByKey[shard].remove(watchers.key);
+                } finally {
+                    locks[shard].unlock();
+                }
+            }
+            return completed;
+        }
+
+        @Override
+        public void shutdown() {}
+
+        private static class Watchers {
+            private final Object key;
+            private final ConcurrentLinkedQueue<MockOperation> operations = new ConcurrentLinkedQueue<>();
+
+            Watchers(Object key) {
+                this.key = key;
+            }
+        }
+    }
+
+    private static class MockOperation extends DelayedOperation {
+        private volatile boolean completable = false;
+
+        MockOperation() {
+            super(30000L, Option.empty());
+        }
+
+        @Override
+        public boolean tryComplete() {
+            return completable && forceComplete();
+        }
+
+        @Override
+        public void onExpiration() {}
+
+        @Override
+        public void onComplete() {}
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.timer;
+
+import kafka.server.DelayedOperation;
+import kafka.utils.timer.Timer;
+import kafka.utils.timer.Timer$;
+import kafka.utils.timer.TimerTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Option;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the timers of the purgatories with several request handler threads adding tasks, while
+ * a reaper thread advances the clock as the purgatory does, and <code>pendingTasks</code> tasks wait in the timer:
+ * <ul>
+ * <li>addThenCancel adds a task then cancels it, as a delayed produce completed before its timeout;</li>
+ * <li>addExpiring adds a task expiring within a few milliseconds, as a delayed fetch with a short max wait.</li>
+ * </ul>
+ * Run with <code>-prof gc</code> to compare the allocation rate of the timers.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class TimerBenchmark {
+
+    @Param({"system", "array"})
+    private String timerType;
+
+    @Param({"10000", "100000"})
+    private int pendingTasks;
+
+    // the timeout of the tasks which are cancelled or waiting, as the default timeout of produce requests
+    private static final long TIMEOUT_MS = 30000L;
+    // the maximum delay of the tasks which expire
+    private static final int EXPIRING_DELAY_MS = 5;
+
+    private Timer timer;
+    private Thread reaper;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        timer = Timer$.MODULE$.apply(timerType, "benchmark");
+        for (int i = 0; i < pendingTasks; i++)
+            timer.add(new NoOpTask(TIMEOUT_MS + i % 1000));
+        running = true;
+        reaper = new Thread(() -> {
+            while (running)
+                timer.advanceClock(200L);
+        }, "benchmark-reaper");
+        reaper.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        reaper.join();
+        timer.shutdown();
+    }
+
+    @Benchmark
+    public TimerTask addThenCancel() {
+        TimerTask task = new NoOpTask(TIMEOUT_MS);
+        timer.add(task);
+        task.cancel();
+        return task;
+    }
+
+    @Benchmark
+    public TimerTask addExpiring() {
+        TimerTask task = new NoOpTask(ThreadLocalRandom.current().nextInt(EXPIRING_DELAY_MS + 1));
+        timer.add(task);
+        return task;
+    }
+
+    private static class NoOpTask extends DelayedOperation {
+        NoOpTask(long delayMs) {
+            super(delayMs, Option.empty());
+        }
+
+        @Override
+        public boolean tryComplete() {
+            return false;
+        }
+
+        @Override
+        public void onExpiration() {}
+
+        @Override
+        public void onComplete() {}
+    }
+}